@@ -8,14 +8,11 @@
 package org.red5.client.net.rtmp;
 
 import java.io.File;
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.util.Arrays;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.mina.core.buffer.IoBuffer;
-import org.bouncycastle.util.BigIntegers;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPHandshake;
 import org.red5.server.net.rtmp.message.Constants;
@@ -88,17 +85,8 @@ public class OutboundHandshake extends RTMPHandshake {
     @Override
     protected void createHandshakeBytes() {
         log.trace("createHandshakeBytes");
-        BigInteger bi = new BigInteger((Constants.HANDSHAKE_SIZE * 8), random);
-        handshakeBytes = BigIntegers.asUnsignedByteArray(bi);
-        // prevent AOOB error that can occur, sometimes
-        if (handshakeBytes.length < Constants.HANDSHAKE_SIZE) {
-            // resize the handshake bytes
-            ByteBuffer b = ByteBuffer.allocate(Constants.HANDSHAKE_SIZE);
-            b.put(handshakeBytes);
-            b.put((byte) 0x13);
-            b.flip();
-            handshakeBytes = b.array();
-        }
+        handshakeBytes = new byte[Constants.HANDSHAKE_SIZE];
+        fillRandomBytes(handshakeBytes, 0, Constants.HANDSHAKE_SIZE);
     }
 
     /**
@@ -264,8 +252,8 @@ public class OutboundHandshake extends RTMPHandshake {
                 }
             }
             // create the response
-            BigInteger bi = new BigInteger(Constants.HANDSHAKE_SIZE * 8, random);
-            byte[] c2 = BigIntegers.asUnsignedByteArray(bi);
+            byte[] c2 = new byte[Constants.HANDSHAKE_SIZE];
+            fillRandomBytes(c2, 0, Constants.HANDSHAKE_SIZE);
             // calculate response now
             byte[] signatureResp = new byte[DIGEST_LENGTH];
             byte[] digestResp = new byte[DIGEST_LENGTH];
@@ -0,0 +1,114 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.red5.server.net.rtmp.codec.RTMP;
+import org.red5.server.service.PendingCall;
+
+/**
+ * Reports the heap retained per RTMP connection, with and without compact mode. An idle connection is freshly created; an active one has
+ * the usual command, audio and video channels, a reserved stream, a pending call, a remembered buffer duration and a few attributes. The
+ * result of interest is the <code>retainedBytesPerConnection</code> secondary metric, the timing is only how long it took to build the set.
+ * Build with <code>mvn -Pbenchmark test-compile</code> and run {@link #main(String[])} on the test class path. The figures are taken from
+ * heap usage after forced collections, so they depend on the JVM, its object layout and heap settings; compare the rows of one run rather
+ * than the numbers of different runs.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xms1g", "-Xmx1g" })
+public class ConnectionFootprintBenchmark {
+
+    private static final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+    @Param({ "false", "true" })
+    public boolean compact;
+
+    @Param({ "false", "true" })
+    public boolean active;
+
+    @Param({ "10000" })
+    public int connections;
+
+    public long retainedBytesPerConnection;
+
+    private RTMPConnection[] retained;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        RTMPConnection.setCompactDefault(compact);
+        retained = new RTMPConnection[connections];
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        retained = null;
+        RTMPConnection.setCompactDefault(false);
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    @Benchmark
+    public int retained() {
+        long before = usedHeap();
+        for (int i = 0; i < connections; i++) {
+            RTMPConnection conn = new RTMPMinaConnection();
+            if (active) {
+                conn.setStateCode(RTMP.STATE_CONNECTED);
+                conn.getChannel(2);
+                conn.getChannel(3);
+                conn.getChannel(4);
+                conn.reserveStreamId();
+                conn.registerPendingCall(conn.getTransactionId(), new PendingCall("onBWDone"));
+                conn.rememberStreamBufferDuration(1, 1000);
+                conn.setAttribute("user", "viewer" + i);
+                conn.setAttribute("flashVer", "FMLE/3.0");
+            }
+            retained[i] = conn;
+        }
+        retainedBytesPerConnection = (usedHeap() - before) / connections;
+        return retained.length;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder().include(ConnectionFootprintBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
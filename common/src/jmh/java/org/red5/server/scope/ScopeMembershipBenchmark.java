@@ -0,0 +1,103 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.scope;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.scope.ScopeMembershipTest.TestConnection;
+
+/**
+ * Join, leave and lookup cost for a scope holding a large number of members.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScopeMembershipBenchmark {
+
+    @Param({ "1000", "10000", "100000" })
+    public int members;
+
+    private org.red5.server.scope.Scope room;
+
+    private TestConnection[] connections;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        room = new org.red5.server.scope.Scope(null, ScopeType.APPLICATION, "room", false);
+        connections = new TestConnection[members];
+        for (int i = 0; i < members; i++) {
+            connections[i] = new TestConnection(room);
+            room.connect(connections[i]);
+        }
+    }
+
+    private TestConnection member() {
+        return connections[ThreadLocalRandom.current().nextInt(members)];
+    }
+
+    /**
+     * One viewer joining and leaving a full room.
+     */
+    @Benchmark
+    public boolean joinLeave() {
+        TestConnection conn = new TestConnection(room);
+        boolean joined = room.connect(conn);
+        room.disconnect(conn);
+        return joined;
+    }
+
+    @Benchmark
+    public IConnection lookupBySessionId() {
+        return room.lookupConnection(member().getSessionId());
+    }
+
+    @Benchmark
+    public IConnection lookupByClient() {
+        return room.lookupConnection(member().getClient());
+    }
+
+    /**
+     * Walks the membership the way a scope wide broadcast does.
+     */
+    @Benchmark
+    public void broadcastIteration(Blackhole bh) {
+        for (IConnection conn : room.getClientConnections()) {
+            bh.consume(conn);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder().include(ScopeMembershipBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
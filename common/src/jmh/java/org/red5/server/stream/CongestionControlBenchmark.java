@@ -0,0 +1,122 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.red5.codec.VideoFrameType;
+
+/**
+ * Plays a live stream to a subscriber behind a throttled socket, in simulated time, and reports how much piles up in the write queue with
+ * and without the {@link CongestionController}. The stream is about 2 Mbit/s of 30 fps video in two second groups of pictures, every other
+ * interframe disposable, plus 64 kbit/s of audio which is never dropped; the socket drains <code>linkRate</code> bytes per millisecond. The
+ * results of interest are the secondary metrics: <code>maxQueuedBytes</code>, <code>meanQueueDelay</code> in milliseconds and the frames
+ * sent and dropped; the timing is only the cost of the simulation.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 1)
+@Fork(1)
+public class CongestionControlBenchmark {
+
+    private static final int FPS = 30;
+
+    private static final int GOP = 60;
+
+    private static final int KEYFRAME_SIZE = 60000;
+
+    private static final int INTERFRAME_SIZE = 7000;
+
+    private static final int AUDIO_SIZE = 160;
+
+    @Param({ "false", "true" })
+    public boolean controlled;
+
+    /**
+     * Socket drain rate in bytes per millisecond
+     */
+    @Param({ "100", "200", "400" })
+    public int linkRate;
+
+    @Param({ "120" })
+    public int seconds;
+
+    public long maxQueuedBytes;
+
+    public long meanQueueDelay;
+
+    public long framesSent;
+
+    public long framesDropped;
+
+    private CongestionController controller;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        controller = new CongestionController(500, 4 * 1024 * 1024);
+        maxQueuedBytes = meanQueueDelay = framesSent = framesDropped = 0L;
+    }
+
+    @Benchmark
+    public long throttled() {
+        long queued = 0L, written = 0L, delaySum = 0L;
+        int frame = 0;
+        long duration = seconds * 1000L;
+        for (long now = 0L; now < duration; now++) {
+            // the socket drains at the link rate
+            long drained = Math.min(queued, linkRate);
+            queued -= drained;
+            written += drained;
+            if (now % 20L == 0L) {
+                queued += AUDIO_SIZE;
+            }
+            if (now * FPS / 1000L >= frame) {
+                int index = frame++ % GOP;
+                VideoFrameType type = index == 0 ? VideoFrameType.KEYFRAME : (index % 2 == 0 ? VideoFrameType.DISPOSABLE : VideoFrameType.INTERFRAME);
+                int size = index == 0 ? KEYFRAME_SIZE : INTERFRAME_SIZE;
+                if (!controlled || controller.canSend(type, false, size, queued, written, now)) {
+                    queued += size;
+                    framesSent++;
+                } else {
+                    framesDropped++;
+                }
+            }
+            maxQueuedBytes = Math.max(maxQueuedBytes, queued);
+            delaySum += queued / linkRate;
+        }
+        meanQueueDelay = delaySum / duration;
+        return written;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder().include(CongestionControlBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
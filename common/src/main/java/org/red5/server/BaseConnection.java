@@ -668,6 +668,15 @@ public abstract class BaseConnection extends AttributeStore implements IConnecti
         return 0;
     }
 
+    /**
+     * Count of outgoing bytes not yet written.
+     *
+     * @return pending bytes, -1 if unknown
+     */
+    public long getPendingWriteBytes() {
+        return -1;
+    }
+
     /**
      * Count of outgoing video messages not yet written.
      *
@@ -28,6 +28,7 @@ import org.red5.server.api.IConnection;
 import org.red5.server.api.Red5;
 import org.red5.server.api.persistence.IPersistable;
 import org.red5.server.api.scope.IScope;
+import org.red5.server.scope.Scope;
 import org.red5.server.stream.bandwidth.ClientServerDetection;
 import org.red5.server.stream.bandwidth.ServerClientDetection;
 import org.slf4j.Logger;
@@ -168,6 +169,11 @@ public class Client extends AttributeStore implements IClient {
         if (scope == null) {
             return getConnections();
         }
+        if (scope instanceof Scope) {
+            // indexed lookup by id
+            IClient cli = ((Scope) scope).lookupClient(id);
+            return cli != null ? cli.getConnections() : Collections.emptySet();
+        }
         Set<IClient> scopeClients = scope.getClients();
         if (scopeClients.contains(this)) {
             for (IClient cli : scopeClients) {
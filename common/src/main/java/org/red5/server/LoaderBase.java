@@ -8,8 +8,13 @@
 package org.red5.server;
 
 import java.io.File;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.red5.server.api.IApplicationContext;
 import org.red5.server.api.IApplicationLoader;
@@ -39,7 +44,13 @@ public abstract class LoaderBase implements ApplicationContextAware {
     /**
      * Current Red5 application context, set by the different loaders.
      */
-    public static final Map<String, IApplicationContext> red5AppCtx = new HashMap<>();
+    public static final Map<String, IApplicationContext> red5AppCtx = new ConcurrentHashMap<>();
+
+    /**
+     * Start-up state of the web applications being loaded, keyed by application name (context path without the leading slash). Each entry
+     * completes with true once the application has started or false if it failed to start.
+     */
+    private static final ConcurrentMap<String, CompletableFuture<Boolean>> applicationStartups = new ConcurrentHashMap<>();
 
     /**
      * Loader for new applications.
@@ -140,6 +151,63 @@ public abstract class LoaderBase implements ApplicationContextAware {
         return red5AppCtx.remove(path);
     }
 
+    /**
+     * Registers an application as starting; connections to it may be held with {@link #awaitApplication(String, long)} until the returned
+     * future is completed by the loader.
+     *
+     * @param name
+     *            application name, the context path without the leading slash
+     * @return future to complete with true when started or false on failure
+     */
+    public static CompletableFuture<Boolean> applicationStarting(String name) {
+        CompletableFuture<Boolean> startup = new CompletableFuture<>();
+        CompletableFuture<Boolean> previous = applicationStartups.put(name, startup);
+        if (previous != null) {
+            // release anyone still waiting on an earlier attempt
+            previous.complete(Boolean.FALSE);
+        }
+        return startup;
+    }
+
+    /**
+     * Returns whether the named application has finished starting. Applications which were never registered as starting are reported as
+     * ready.
+     *
+     * @param name
+     *            application name
+     * @return true if the application is not starting
+     */
+    public static boolean isApplicationReady(String name) {
+        CompletableFuture<Boolean> startup = applicationStartups.get(name);
+        return startup == null || startup.isDone();
+    }
+
+    /**
+     * Waits for the named application to finish starting, without regard to any other application.
+     *
+     * @param name
+     *            application name
+     * @param timeout
+     *            maximum time to wait in milliseconds
+     * @return true if the application started or is not managed by a loader, false if it failed or did not start in time
+     */
+    public static boolean awaitApplication(String name, long timeout) {
+        CompletableFuture<Boolean> startup = applicationStartups.get(name);
+        if (startup == null) {
+            return true;
+        }
+        try {
+            return startup.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.debug("Application {} did not start within {}ms", name, timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.debug("Application {} failed to start", name, e.getCause());
+        }
+        return false;
+    }
+
     /**
      * Getter for application context
      *
@@ -227,6 +227,15 @@ public interface IConnection extends ICoreObject, ICastingAttributeStore {
      */
     long getPendingMessages();
 
+    /**
+     * Total number of bytes that are scheduled to be written to the connection.
+     *
+     * @return Number of bytes pending, or -1 if the transport cannot tell
+     */
+    default long getPendingWriteBytes() {
+        return -1L;
+    }
+
     /**
      * Return number of written bytes the client reports to have received. This is the last value of the BytesRead message received from a client.
      *
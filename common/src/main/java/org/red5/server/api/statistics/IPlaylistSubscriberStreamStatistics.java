@@ -36,4 +36,25 @@ public interface IPlaylistSubscriberStreamStatistics extends IStreamStatistics {
      */
     public double getEstimatedBufferFill();
 
+    /**
+     * Return the number of bytes queued for writing to the client's connection.
+     *
+     * @return number of bytes, or -1 if the transport cannot tell
+     */
+    public long getPendingWriteBytes();
+
+    /**
+     * Return the number of live video frames dropped because the client's connection was congested.
+     *
+     * @return number of frames
+     */
+    public long getDroppedVideoFrames();
+
+    /**
+     * Return the size of the live video frames dropped because the client's connection was congested.
+     *
+     * @return number of bytes
+     */
+    public long getDroppedVideoBytes();
+
 }
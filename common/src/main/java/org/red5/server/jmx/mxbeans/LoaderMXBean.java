@@ -28,6 +28,13 @@ public interface LoaderMXBean extends ShutdownMXBean {
      */
     public boolean startWebApplication(String application) throws ServletException;
 
+    /**
+     * Returns one line per webapp from the last start-up: its state, time queued, time to start and the time spent in each phase.
+     *
+     * @return start-up report
+     */
+    public String[] getStartupReport();
+
     /**
      * <p>removeContext.</p>
      *
@@ -122,4 +122,11 @@ public interface RTMPConnectionMXBean extends AttributeStoreMXBean {
      */
     public long getPendingMessages();
 
+    /**
+     * <p>getPendingWriteBytes.</p>
+     *
+     * @return a long
+     */
+    public long getPendingWriteBytes();
+
 }
@@ -0,0 +1,88 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import javax.management.MXBean;
+
+/**
+ * Handshake throughput, latency and crypto pool statistics for RTMP / RTMPE.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface RTMPHandshakeMXBean {
+
+    /**
+     * Returns the number of handshakes that completed successfully.
+     *
+     * @return completed handshake count
+     */
+    public long getCompletedHandshakes();
+
+    /**
+     * Returns the number of handshakes that failed validation.
+     *
+     * @return failed handshake count
+     */
+    public long getFailedHandshakes();
+
+    /**
+     * Returns the number of encrypted (RTMPE) handshakes performed.
+     *
+     * @return encrypted handshake count
+     */
+    public long getEncryptedHandshakes();
+
+    /**
+     * Returns the average time in microseconds from C1 receipt to C2 validation.
+     *
+     * @return average handshake latency
+     */
+    public long getAverageHandshakeMicros();
+
+    /**
+     * Returns the longest time in microseconds from C1 receipt to C2 validation.
+     *
+     * @return max handshake latency
+     */
+    public long getMaxHandshakeMicros();
+
+    /**
+     * Returns the completed handshakes per second, averaged since the last reset.
+     *
+     * @return handshake rate
+     */
+    public double getHandshakesPerSecond();
+
+    /**
+     * Returns the number of pre-generated Diffie-Hellman key pairs ready for use.
+     *
+     * @return key pairs available
+     */
+    public int getKeyPairPoolSize();
+
+    /**
+     * Returns the number of key pairs taken from the pool.
+     *
+     * @return pool hits
+     */
+    public long getKeyPairPoolHits();
+
+    /**
+     * Returns the number of key pairs generated inline because the pool was empty.
+     *
+     * @return pool misses
+     */
+    public long getKeyPairPoolMisses();
+
+    /**
+     * Resets the handshake counters.
+     */
+    public void resetStatistics();
+
+}
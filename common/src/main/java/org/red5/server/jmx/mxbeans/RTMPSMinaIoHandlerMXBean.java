@@ -0,0 +1,90 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import javax.management.MXBean;
+
+/**
+ * TLS handshake statistics for the RTMPS transport.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface RTMPSMinaIoHandlerMXBean {
+
+    /**
+     * Returns the number of TLS handshakes that completed.
+     *
+     * @return handshake count
+     */
+    public long getHandshakeCount();
+
+    /**
+     * Returns the number of completed handshakes that resumed a cached session or ticket. Resumption is recognized by session id, which
+     * TLS 1.3 changes on every handshake, so only earlier protocol versions are counted.
+     *
+     * @return resumed handshake count
+     */
+    public long getResumedHandshakeCount();
+
+    /**
+     * Returns the fraction of completed handshakes that were resumptions, between 0 and 1.
+     *
+     * @return resumption rate
+     */
+    public double getResumptionRate();
+
+    /**
+     * Returns the average TLS handshake time in microseconds, measured from session creation until the session is secured.
+     *
+     * @return average handshake latency
+     */
+    public long getAverageHandshakeMicros();
+
+    /**
+     * Returns the longest TLS handshake time in microseconds.
+     *
+     * @return max handshake latency
+     */
+    public long getMaxHandshakeMicros();
+
+    /**
+     * Returns the number of sessions whose handshake has started but not yet completed.
+     *
+     * @return pending handshake count
+     */
+    public int getPendingHandshakes();
+
+    /**
+     * Returns the maximum number of entries in the server TLS session cache.
+     *
+     * @return session cache size
+     */
+    public int getSessionCacheSize();
+
+    /**
+     * Returns the server TLS session cache timeout in seconds.
+     *
+     * @return session timeout
+     */
+    public int getSessionTimeout();
+
+    /**
+     * Returns whether stateless session tickets are enabled, as set at startup by the
+     * <code>jdk.tls.server.enableSessionTicketExtension</code> system property.
+     *
+     * @return true if session tickets are enabled
+     */
+    public boolean isSessionTicketsEnabled();
+
+    /**
+     * Resets the handshake counters.
+     */
+    public void resetStatistics();
+
+}
@@ -0,0 +1,107 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.jmx.mxbeans;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.management.MXBean;
+
+import org.red5.metrics.LatencyHistogram;
+
+/**
+ * Per stream end to end latency tracing of live packets, from ingest in the publisher's decoder to the socket write of each subscriber.
+ * Results are keyed by stage: decode, dispatch, pipe_push, play_engine_send, encode, socket_write and total.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface StreamLatencyMXBean {
+
+    /**
+     * Returns the names of the traced streams; "*" means every stream.
+     *
+     * @return stream names
+     */
+    public List<String> getTracedStreams();
+
+    /**
+     * Starts tracing the given stream, or every stream for "*".
+     *
+     * @param name
+     *            published stream name
+     */
+    public void traceStream(String name);
+
+    /**
+     * Stops tracing the given stream, or stops tracing every stream for "*", and discards its results.
+     *
+     * @param name
+     *            published stream name
+     */
+    public void untraceStream(String name);
+
+    /**
+     * Returns how many packets of a traced stream are sampled: one in this many.
+     *
+     * @return sample rate
+     */
+    public int getSampleRate();
+
+    /**
+     * Sets how many packets of a traced stream are sampled: one in this many.
+     *
+     * @param sampleRate
+     *            sample rate, at least 1
+     */
+    public void setSampleRate(int sampleRate);
+
+    /**
+     * Returns the latency of a stream by stage.
+     *
+     * @param name
+     *            published stream name
+     * @return snapshots by stage, empty if the stream has no results
+     */
+    public Map<String, LatencyHistogram.Snapshot> getStreamLatency(String name);
+
+    /**
+     * Returns the ids of the subscribers of a stream which have results.
+     *
+     * @param name
+     *            published stream name
+     * @return subscriber ids
+     */
+    public List<String> getSubscribers(String name);
+
+    /**
+     * Returns the end to end latency of every subscriber of a stream.
+     *
+     * @param name
+     *            published stream name
+     * @return snapshots by subscriber id
+     */
+    public Map<String, LatencyHistogram.Snapshot> getSubscriberTotals(String name);
+
+    /**
+     * Returns the latency of one subscriber of a stream by stage.
+     *
+     * @param name
+     *            published stream name
+     * @param subscriberId
+     *            subscriber id, the session id of its connection
+     * @return snapshots by stage, empty if the subscriber has no results
+     */
+    public Map<String, LatencyHistogram.Snapshot> getSubscriberLatency(String name, String subscriberId);
+
+    /**
+     * Clears the results of every traced stream.
+     */
+    public void resetStatistics();
+
+}
@@ -10,6 +10,7 @@ package org.red5.server.messaging;
 import java.io.IOException;
 import java.util.Map;
 
+import org.red5.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -93,9 +94,12 @@ public class InMemoryPushPushPipe extends AbstractPipe {
         if (log.isDebugEnabled()) {
             log.debug("pushMessage: {} to {} consumers", message, consumers.size());
         }
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        int delivered = 0;
         for (IConsumer consumer : consumers) {
             try {
                 ((IPushableConsumer) consumer).pushMessage(this, message);
+                delivered++;
             } catch (Throwable t) {
                 if (t instanceof IOException) {
                     throw (IOException) t;
@@ -104,6 +108,10 @@ public class InMemoryPushPushPipe extends AbstractPipe {
             }
 
         }
+        if (Metrics.ENABLED) {
+            Metrics.PIPE_PUSH.recordSince(start);
+            Metrics.PIPE_DELIVERIES.add(delivered);
+        }
     }
 
 }
@@ -0,0 +1,299 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmp;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.KeyAgreement;
+import javax.crypto.Mac;
+import javax.crypto.spec.DHParameterSpec;
+import javax.crypto.spec.DHPublicKeySpec;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.red5.server.jmx.mxbeans.RTMPHandshakeMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Shared crypto state for the RTMP / RTMPE handshake fast path. The Diffie-Hellman parameter spec is built once, server key pairs are
+ * pre-generated into a bounded pool that is refilled in the background, and the stateless-between-calls primitives (HMAC, key agreement,
+ * key factory) are kept per-thread so a reconnect storm does not pay a provider lookup per handshake. Every pooled key pair is handed out
+ * exactly once.
+ *
+ * The pool size is controlled by the <code>rtmp.handshake.keypair.pool</code> system property (default 64, 0 disables pooling).
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class HandshakeCrypto implements RTMPHandshakeMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(HandshakeCrypto.class);
+
+    /** Diffie-Hellman parameters; "Second Oakley Default Group" from RFC2409 with generator 2 */
+    public static final DHParameterSpec DH_PARAMETER_SPEC = new DHParameterSpec(RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE);
+
+    private static final int POOL_CAPACITY = Integer.getInteger("rtmp.handshake.keypair.pool", 64);
+
+    // refill is kicked off once the pool drops to a quarter of its capacity
+    private static final int POOL_LOW_WATER = Math.max(1, POOL_CAPACITY / 4);
+
+    private static final HandshakeCrypto instance = new HandshakeCrypto();
+
+    private static final ThreadLocal<Mac> hmacSHA256 = ThreadLocal.withInitial(() -> {
+        try {
+            return Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    });
+
+    private static final ThreadLocal<KeyAgreement> keyAgreement = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyAgreement.getInstance("DH");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("DH key agreement is not available", e);
+        }
+    });
+
+    private static final ThreadLocal<KeyFactory> keyFactory = ThreadLocal.withInitial(() -> {
+        try {
+            return KeyFactory.getInstance("DH");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("DH key factory is not available", e);
+        }
+    });
+
+    private static final ThreadLocal<KeyPairGenerator> keyPairGenerator = ThreadLocal.withInitial(() -> {
+        try {
+            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
+            keyGen.initialize(DH_PARAMETER_SPEC);
+            return keyGen;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("DH key pair generator is not available", e);
+        }
+    });
+
+    private final BlockingQueue<KeyPair> keyPairs = new ArrayBlockingQueue<>(Math.max(1, POOL_CAPACITY));
+
+    private final AtomicBoolean refilling = new AtomicBoolean();
+
+    private final LongAdder poolHits = new LongAdder();
+
+    private final LongAdder poolMisses = new LongAdder();
+
+    private final LongAdder completed = new LongAdder();
+
+    private final LongAdder failed = new LongAdder();
+
+    private final LongAdder encrypted = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private volatile long statsStart = System.nanoTime();
+
+    private HandshakeCrypto() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oName = new ObjectName("org.red5.server:type=RTMPHandshake");
+            if (!mbs.isRegistered(oName)) {
+                mbs.registerMBean(new StandardMBean(this, RTMPHandshakeMXBean.class, true), oName);
+            }
+        } catch (Exception e) {
+            log.debug("Error on jmx registration", e);
+        }
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return handshake crypto
+     */
+    public static HandshakeCrypto getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns a Diffie-Hellman key pair that has never been handed out before. A pre-generated pair is used when available, otherwise
+     * one is generated on the calling thread.
+     *
+     * @return key pair
+     * @throws GeneralSecurityException on key generation failure
+     */
+    public KeyPair takeKeyPair() throws GeneralSecurityException {
+        KeyPair keyPair = POOL_CAPACITY > 0 ? keyPairs.poll() : null;
+        if (keyPair != null) {
+            poolHits.increment();
+        } else {
+            poolMisses.increment();
+            keyPair = keyPairGenerator.get().generateKeyPair();
+        }
+        if (POOL_CAPACITY > 0 && keyPairs.size() <= POOL_LOW_WATER) {
+            refill();
+        }
+        return keyPair;
+    }
+
+    /**
+     * Fills the key pair pool in the background; only one refill runs at a time.
+     */
+    public void refill() {
+        if (refilling.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("rtmp-handshake-keypair-refill").start(() -> {
+                try {
+                    KeyPairGenerator keyGen = keyPairGenerator.get();
+                    while (keyPairs.remainingCapacity() > 0) {
+                        if (!keyPairs.offer(keyGen.generateKeyPair())) {
+                            break;
+                        }
+                    }
+                } catch (Throwable t) {
+                    log.warn("Key pair pool refill failed", t);
+                } finally {
+                    refilling.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Computes the Diffie-Hellman shared secret for the given private key and peer public key bytes.
+     *
+     * @param privateKey
+     *            local private key
+     * @param publicKeyBytes
+     *            peer public key
+     * @return shared secret
+     * @throws GeneralSecurityException on agreement failure
+     */
+    public static byte[] sharedSecret(PrivateKey privateKey, byte[] publicKeyBytes) throws GeneralSecurityException {
+        PublicKey otherPublicKey = keyFactory.get().generatePublic(new DHPublicKeySpec(new BigInteger(1, publicKeyBytes), RTMPHandshake.DH_MODULUS, RTMPHandshake.DH_BASE));
+        KeyAgreement agreement = keyAgreement.get();
+        agreement.init(privateKey);
+        agreement.doPhase(otherPublicKey, true);
+        return agreement.generateSecret();
+    }
+
+    /**
+     * Returns the calling thread's HmacSHA256 instance; callers must init it before use.
+     *
+     * @return mac
+     */
+    public static Mac hmacSHA256() {
+        return hmacSHA256.get();
+    }
+
+    /**
+     * Records a handshake outcome.
+     *
+     * @param startNanos
+     *            value of {@link System#nanoTime()} when C1 was received
+     * @param success
+     *            true if C2 validated
+     * @param encryptedType
+     *            true for RTMPE
+     */
+    public void record(long startNanos, boolean success, boolean encryptedType) {
+        if (success) {
+            long elapsed = System.nanoTime() - startNanos;
+            completed.increment();
+            totalNanos.add(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+            if (encryptedType) {
+                encrypted.increment();
+            }
+        } else {
+            failed.increment();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCompletedHandshakes() {
+        return completed.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getFailedHandshakes() {
+        return failed.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEncryptedHandshakes() {
+        return encrypted.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAverageHandshakeMicros() {
+        long count = completed.sum();
+        return count > 0 ? (totalNanos.sum() / count) / 1000L : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxHandshakeMicros() {
+        return maxNanos.get() / 1000L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getHandshakesPerSecond() {
+        double seconds = (System.nanoTime() - statsStart) / 1_000_000_000d;
+        return seconds > 0 ? completed.sum() / seconds : 0d;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getKeyPairPoolSize() {
+        return keyPairs.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getKeyPairPoolHits() {
+        return poolHits.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getKeyPairPoolMisses() {
+        return poolMisses.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetStatistics() {
+        completed.reset();
+        failed.reset();
+        encrypted.reset();
+        totalNanos.reset();
+        maxNanos.set(0L);
+        poolHits.reset();
+        poolMisses.reset();
+        statsStart = System.nanoTime();
+    }
+
+}
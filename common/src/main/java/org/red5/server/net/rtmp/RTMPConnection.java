@@ -42,6 +42,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.red5.io.CapsExMask;
 import org.red5.io.FourCcInfoMask;
+import org.red5.metrics.Metrics;
 import org.red5.server.BaseConnection;
 import org.red5.server.api.Red5;
 import org.red5.server.api.event.IEvent;
@@ -60,6 +61,7 @@ import org.red5.server.exception.ClientRejectedException;
 import org.red5.server.net.protocol.RTMPDecodeState;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
 import org.red5.server.net.rtmp.event.ClientBW;
@@ -87,6 +89,8 @@ import org.red5.server.stream.OutputStream;
 import org.red5.server.stream.PlaylistSubscriberStream;
 import org.red5.server.stream.SingleItemSubscriberStream;
 import org.red5.server.stream.StreamService;
+import org.red5.server.stream.trace.TraceSample;
+import org.red5.server.util.ArrayConcurrentMap;
 import org.red5.server.util.ScopeUtils;
 import org.springframework.core.task.TaskRejectedException;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
@@ -162,6 +166,29 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      */
     private static final AtomicIntegerFieldUpdater<RTMPConnection> receivedQueueSizeUpdater = AtomicIntegerFieldUpdater.newUpdater(RTMPConnection.class, "receivedQueueSize");
 
+    /**
+     * Default for compact mode, read from the <code>rtmp.connection.compact</code> system property. In compact mode a connection uses small
+     * array backed maps for its channels, streams and attributes, creates its pending call, deferred result, pending video and stream buffer
+     * collections and its received packet queue on first use, and shares one virtual thread executor with all other compact connections.
+     * This trades a little write cost on those collections for a much smaller heap footprint on servers holding many mostly idle connections.
+     */
+    private static volatile boolean compactDefault = Boolean.getBoolean("rtmp.connection.compact");
+
+    /**
+     * Virtual thread executor shared by compact connections.
+     */
+    private static final ExecutorService sharedExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Whether this connection was created in compact mode; fixed at construction.
+     */
+    protected final transient boolean compact = compactDefault;
+
+    /**
+     * Whether this connection publishes a stream whose latency is traced
+     */
+    private transient volatile boolean latencyTraced;
+
     /**
      * Initial channel capacity
      */
@@ -207,19 +234,19 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *
      * @see org.red5.server.net.rtmp.Channel
      */
-    protected transient ConcurrentMap<Integer, Channel> channels = new ConcurrentHashMap<>(channelsInitalCapacity, 0.9f, channelsConcurrencyLevel);
+    protected transient ConcurrentMap<Integer, Channel> channels = compact ? new ArrayConcurrentMap<>() : new ConcurrentHashMap<>(channelsInitalCapacity, 0.9f, channelsConcurrencyLevel);
 
     /**
      * Client streams
      *
      * @see org.red5.server.api.stream.IClientStream
      */
-    protected transient ConcurrentMap<Number, IClientStream> streams = new ConcurrentHashMap<>(streamsInitalCapacity, 0.9f, streamsConcurrencyLevel);
+    protected transient ConcurrentMap<Number, IClientStream> streams = compact ? new ArrayConcurrentMap<>() : new ConcurrentHashMap<>(streamsInitalCapacity, 0.9f, streamsConcurrencyLevel);
 
     /**
      * Reserved stream ids. Stream id's directly relate to individual NetStream instances.
      */
-    protected transient Set<Number> reservedStreams = Collections.newSetFromMap(new ConcurrentHashMap<Number, Boolean>(reservedStreamsInitalCapacity, 0.9f, reservedStreamsConcurrencyLevel));
+    protected transient Set<Number> reservedStreams = Collections.newSetFromMap(compact ? new ArrayConcurrentMap<Number, Boolean>() : new ConcurrentHashMap<Number, Boolean>(reservedStreamsInitalCapacity, 0.9f, reservedStreamsConcurrencyLevel));
 
     /**
      * Received packet queue size
@@ -232,16 +259,16 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     protected AtomicInteger transactionId = new AtomicInteger(1);
 
     /**
-     * Hash map that stores pending calls and ids as pairs.
+     * Hash map that stores pending calls and ids as pairs; null until first use in compact mode.
      */
-    protected transient ConcurrentMap<Integer, IPendingServiceCall> pendingCalls = new ConcurrentHashMap<>(pendingCallsInitalCapacity, 0.75f, pendingCallsConcurrencyLevel);
+    protected transient volatile ConcurrentMap<Integer, IPendingServiceCall> pendingCalls = compact ? null : new ConcurrentHashMap<>(pendingCallsInitalCapacity, 0.75f, pendingCallsConcurrencyLevel);
 
     /**
-     * Deferred results set.
+     * Deferred results set; null until first use in compact mode.
      *
      * @see org.red5.server.net.rtmp.DeferredResult
      */
-    protected transient CopyOnWriteArraySet<DeferredResult> deferredResults = new CopyOnWriteArraySet<>();
+    protected transient volatile CopyOnWriteArraySet<DeferredResult> deferredResults = compact ? null : new CopyOnWriteArraySet<>();
 
     /**
      * Last ping round trip time
@@ -290,9 +317,9 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     protected AtomicLong clientBytesRead = new AtomicLong(0L);
 
     /**
-     * Map for pending video packets keyed by stream id.
+     * Map for pending video packets keyed by stream id; null until first use in compact mode.
      */
-    protected transient ConcurrentMap<Number, AtomicInteger> pendingVideos = new ConcurrentHashMap<>(1, 0.9f, 1);
+    protected transient volatile ConcurrentMap<Number, AtomicInteger> pendingVideos = compact ? null : new ConcurrentHashMap<>(1, 0.9f, 1);
 
     /**
      * Number of (NetStream) streams used.
@@ -300,9 +327,9 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     private AtomicInteger usedStreams = new AtomicInteger(0);
 
     /**
-     * Remembered stream buffer durations.
+     * Remembered stream buffer durations; null until first use in compact mode.
      */
-    private transient ConcurrentMap<Number, Integer> streamBuffers = new ConcurrentHashMap<>(1, 0.9f, 1);
+    private transient volatile ConcurrentMap<Number, Integer> streamBuffers = compact ? null : new ConcurrentHashMap<>(1, 0.9f, 1);
 
     /**
      * Maximum time in milliseconds to wait for a valid handshake.
@@ -346,7 +373,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     /**
      * Thread pool for message handling.
      */
-    protected transient ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    protected transient ExecutorService executor = compact ? sharedExecutor : Executors.newVirtualThreadPerTaskExecutor();
 
     /**
      * Keep-alive worker flag
@@ -386,9 +413,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      * on GC finalization). The loop blocks in {@code receivedPacketQueue.poll(timeout)}, which is
      * virtual-thread-aware, so an idle connection unmounts from its carrier and holds no platform
      * thread; the virtual thread terminates when the loop exits on close. Per-connection ordering
-     * is preserved because there is still a single serial loop per connection.
+     * is preserved because there is still a single serial loop per connection. Compact connections submit their loop to a shared
+     * executor instead.
      */
-    protected transient ExecutorService receivedPacketExecutor = Executors.newVirtualThreadPerTaskExecutor();
+    protected transient ExecutorService receivedPacketExecutor = compact ? sharedExecutor : Executors.newVirtualThreadPerTaskExecutor();
 
     /**
      * Future which takes packets from the queue and passes them to the handler.
@@ -396,9 +424,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     protected transient Future<?> receivedPacketFuture;
 
     /**
-     * Queue for received RTMP packets. This is a transfer queue from which packets are passed to a handler.
+     * Queue for received RTMP packets. This is a transfer queue from which packets are passed to a handler. Created with the first
+     * received packet in compact mode.
      */
-    protected volatile LinkedTransferQueue<Packet> receivedPacketQueue = new LinkedTransferQueue<>();
+    protected volatile LinkedTransferQueue<Packet> receivedPacketQueue = compact ? null : new LinkedTransferQueue<>();
 
     /**
      * Creates anonymous RTMP connection without scope.
@@ -411,6 +440,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         // We start with an anonymous connection without a scope.
         // These parameters will be set during the call of "connect" later.
         super(type);
+        // small connection attribute sets do not need a hash table
+        if (compact) {
+            attributes = new ArrayConcurrentMap<>(attributes);
+        }
         // create a decoder state
         decoderState = new RTMPDecodeState(getSessionId());
         // set running flag
@@ -1075,7 +1108,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Stream
      */
     private void customizeStream(Number streamId, AbstractClientStream stream) {
-        Integer buffer = streamBuffers.get(streamId.doubleValue());
+        Integer buffer = streamBuffers != null ? streamBuffers.get(streamId.doubleValue()) : null;
         if (buffer != null) {
             stream.setClientBufferDuration(buffer);
         }
@@ -1169,10 +1202,18 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         // kill all the collections etc
         channels.clear();
         streams.clear();
-        pendingCalls.clear();
-        deferredResults.clear();
-        pendingVideos.clear();
-        streamBuffers.clear();
+        if (pendingCalls != null) {
+            pendingCalls.clear();
+        }
+        if (deferredResults != null) {
+            deferredResults.clear();
+        }
+        if (pendingVideos != null) {
+            pendingVideos.clear();
+        }
+        if (streamBuffers != null) {
+            streamBuffers.clear();
+        }
         if (isTrace) {
             // dump memory stats
             log.trace("Memory at close - free: {}K total: {}K", Runtime.getRuntime().freeMemory() / 1024, Runtime.getRuntime().totalMemory() / 1024);
@@ -1256,8 +1297,12 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         if (d > 0.0d) {
             if (streams.remove(d) != null) {
                 usedStreams.decrementAndGet();
-                pendingVideos.remove(d);
-                streamBuffers.remove(d);
+                if (pendingVideos != null) {
+                    pendingVideos.remove(d);
+                }
+                if (streamBuffers != null) {
+                    streamBuffers.remove(d);
+                }
             } else {
                 if (isTrace) {
                     log.trace("Failed to remove stream id: {} streams: {}", d, streams);
@@ -1352,7 +1397,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Call service
      */
     public void registerPendingCall(int invokeId, IPendingServiceCall call) {
-        pendingCalls.put(invokeId, call);
+        pendingCalls().put(invokeId, call);
     }
 
     /**
@@ -1494,7 +1539,8 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      * @return Pending call service object
      */
     public IPendingServiceCall getPendingCall(int invokeId) {
-        return pendingCalls.get(invokeId);
+        ConcurrentMap<Integer, IPendingServiceCall> calls = pendingCalls;
+        return calls != null ? calls.get(invokeId) : null;
     }
 
     /**
@@ -1505,7 +1551,8 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      * @return Pending call service object
      */
     public IPendingServiceCall retrievePendingCall(int invokeId) {
-        return pendingCalls.remove(invokeId);
+        ConcurrentMap<Integer, IPendingServiceCall> calls = pendingCalls;
+        return calls != null ? calls.remove(invokeId) : null;
     }
 
     /**
@@ -1527,7 +1574,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         if (message.getMessage() instanceof VideoData) {
             Number streamId = message.getHeader().getStreamId();
             final AtomicInteger value = new AtomicInteger();
-            AtomicInteger old = pendingVideos.putIfAbsent(streamId.doubleValue(), value);
+            AtomicInteger old = pendingVideos().putIfAbsent(streamId.doubleValue(), value);
             if (old == null) {
                 old = value;
             }
@@ -1618,8 +1665,12 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
         if (maxHandlingTimeout > 0) {
             packet.setExpirationTime(System.currentTimeMillis() + maxHandlingTimeout);
         }
+        if (Metrics.ENABLED) {
+            packet.setReceivedNanos(System.nanoTime());
+        }
         // queue the packet
-        if (receivedPacketQueue.offer(packet)) {
+        final LinkedTransferQueue<Packet> queue = receivedPacketQueue();
+        if (queue.offer(packet)) {
             // increment the queue size
             receivedQueueSizeUpdater.incrementAndGet(this);
         }
@@ -1631,7 +1682,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                 try {
                     do {
                         // DTS appears to be off only by < 10ms
-                        Packet p = receivedPacketQueue.poll(maxPollTimeout, TimeUnit.MILLISECONDS); // wait for packet with timeout
+                        Packet p = queue.poll(maxPollTimeout, TimeUnit.MILLISECONDS); // wait for packet with timeout
                         if (p != null) {
                             if (isTrace) {
                                 log.trace("Handle received packet: {}", p);
@@ -1640,6 +1691,11 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                             receivedQueueSizeUpdater.decrementAndGet(this);
                             // create a task to handle the packet
                             ReceivedMessageTask task = new ReceivedMessageTask(conn, p);
+                            long handlerStart = 0L;
+                            if (Metrics.ENABLED) {
+                                handlerStart = System.nanoTime();
+                                Metrics.RTMP_DISPATCH.record(handlerStart - p.getReceivedNanos());
+                            }
                             // process the packet inline on this per-connection receiver thread. Previously this was
                             // dispatched to a per-connection virtual-thread executor and immediately join()-ed, which
                             // added a virtual-thread spawn + CompletableFuture allocation + two context switches per
@@ -1647,6 +1703,9 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                             // preserved because this loop is single-threaded. ReceivedMessageTask.get() records any
                             // handler exception via the connection "exception" attribute, matching prior behavior.
                             task.get();
+                            if (Metrics.ENABLED) {
+                                Metrics.RTMP_HANDLER.recordSince(handlerStart);
+                            }
                         }
                     } while (state.getState() < RTMP.STATE_ERROR); // keep processing unless we pass the error state
                 } catch (InterruptedException e) {
@@ -1659,7 +1718,7 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
                     }
                 } finally {
                     receivedPacketFuture = null;
-                    receivedPacketQueue.clear();
+                    queue.clear();
                 }
             });
         }
@@ -1674,12 +1733,20 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     public void messageSent(Packet message) {
         //log.info("messageSent: {}", message);
         IRTMPEvent event = message.getMessage();
+        if (event instanceof BaseEvent) {
+            TraceSample trace = ((BaseEvent) event).getTraceSample();
+            if (trace != null) {
+                ((BaseEvent) event).setTraceSample(null);
+                trace.complete();
+            }
+        }
         if (event instanceof VideoData) {
             log.debug("Video message sent");
             Number streamId = message.getHeader().getStreamId();
-            AtomicInteger pending = pendingVideos.get(streamId.doubleValue());
+            ConcurrentMap<Number, AtomicInteger> videos = pendingVideos;
+            AtomicInteger pending = videos != null ? videos.get(streamId.doubleValue()) : null;
             if (isTrace) {
-                log.trace("Stream id: {} pending: {} total pending videos: {}", streamId, pending, pendingVideos.size());
+                log.trace("Stream id: {} pending: {} total pending videos: {}", streamId, pending, videos != null ? videos.size() : 0);
             }
             if (pending != null) {
                 pending.decrementAndGet();
@@ -1713,9 +1780,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
     /** {@inheritDoc} */
     @Override
     public long getPendingVideoMessages(Number streamId) {
-        AtomicInteger pendingCount = pendingVideos.get(streamId.doubleValue());
+        ConcurrentMap<Number, AtomicInteger> videos = pendingVideos;
+        AtomicInteger pendingCount = videos != null ? videos.get(streamId.doubleValue()) : null;
         if (isTrace) {
-            log.trace("Stream id: {} pendingCount: {} total pending videos: {}", streamId, pendingCount, pendingVideos.size());
+            log.trace("Stream id: {} pendingCount: {} total pending videos: {}", streamId, pendingCount, videos != null ? videos.size() : 0);
         }
         return pendingCount != null ? pendingCount.intValue() : 0;
     }
@@ -1895,7 +1963,15 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Result to register
      */
     public void registerDeferredResult(DeferredResult result) {
-        deferredResults.add(result);
+        CopyOnWriteArraySet<DeferredResult> results = deferredResults;
+        if (results == null) {
+            synchronized (this) {
+                if ((results = deferredResults) == null) {
+                    deferredResults = results = new CopyOnWriteArraySet<>();
+                }
+            }
+        }
+        results.add(result);
     }
 
     /**
@@ -1905,7 +1981,10 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      *            Result to unregister
      */
     public void unregisterDeferredResult(DeferredResult result) {
-        deferredResults.remove(result);
+        CopyOnWriteArraySet<DeferredResult> results = deferredResults;
+        if (results != null) {
+            results.remove(result);
+        }
     }
 
     /**
@@ -1915,7 +1994,115 @@ public abstract class RTMPConnection extends BaseConnection implements IStreamCa
      * @param bufferDuration a int
      */
     public void rememberStreamBufferDuration(int streamId, int bufferDuration) {
-        streamBuffers.put(streamId, bufferDuration);
+        ConcurrentMap<Number, Integer> buffers = streamBuffers;
+        if (buffers == null) {
+            synchronized (this) {
+                if ((buffers = streamBuffers) == null) {
+                    streamBuffers = buffers = new ArrayConcurrentMap<>();
+                }
+            }
+        }
+        buffers.put(streamId, bufferDuration);
+    }
+
+    /**
+     * Returns the pending calls map, creating it on first use.
+     *
+     * @return pending calls
+     */
+    private ConcurrentMap<Integer, IPendingServiceCall> pendingCalls() {
+        ConcurrentMap<Integer, IPendingServiceCall> calls = pendingCalls;
+        if (calls == null) {
+            synchronized (this) {
+                if ((calls = pendingCalls) == null) {
+                    pendingCalls = calls = new ArrayConcurrentMap<>();
+                }
+            }
+        }
+        return calls;
+    }
+
+    /**
+     * Returns the pending videos map, creating it on first use.
+     *
+     * @return pending video counts keyed by stream id
+     */
+    private ConcurrentMap<Number, AtomicInteger> pendingVideos() {
+        ConcurrentMap<Number, AtomicInteger> videos = pendingVideos;
+        if (videos == null) {
+            synchronized (this) {
+                if ((videos = pendingVideos) == null) {
+                    pendingVideos = videos = new ArrayConcurrentMap<>();
+                }
+            }
+        }
+        return videos;
+    }
+
+    /**
+     * Returns the received packet queue, creating it on first use.
+     *
+     * @return received packet queue
+     */
+    private LinkedTransferQueue<Packet> receivedPacketQueue() {
+        LinkedTransferQueue<Packet> queue = receivedPacketQueue;
+        if (queue == null) {
+            synchronized (this) {
+                if ((queue = receivedPacketQueue) == null) {
+                    receivedPacketQueue = queue = new LinkedTransferQueue<>();
+                }
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Returns whether this connection uses the compact memory layout.
+     *
+     * @return true if compact
+     */
+    public boolean isCompact() {
+        return compact;
+    }
+
+    /**
+     * Returns whether this connection publishes a stream whose latency is traced, in which case the decoder samples its packets.
+     *
+     * @return true if traced
+     * @see org.red5.server.stream.trace.StreamLatencyTracer
+     */
+    public boolean isLatencyTraced() {
+        return latencyTraced;
+    }
+
+    /**
+     * Sets whether this connection publishes a stream whose latency is traced.
+     *
+     * @param latencyTraced
+     *            true if traced
+     */
+    public void setLatencyTraced(boolean latencyTraced) {
+        this.latencyTraced = latencyTraced;
+    }
+
+    /**
+     * Sets whether connections created from now on use the compact memory layout. Existing connections are not affected.
+     *
+     * @param compact
+     *            true to create compact connections
+     * @see #isCompact()
+     */
+    public static void setCompactDefault(boolean compact) {
+        compactDefault = compact;
+    }
+
+    /**
+     * Returns whether new connections are created in compact mode.
+     *
+     * @return true if new connections are compact
+     */
+    public static boolean isCompactDefault() {
+        return compactDefault;
     }
 
     /**
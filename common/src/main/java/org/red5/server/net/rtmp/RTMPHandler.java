@@ -14,6 +14,7 @@ import java.util.Map;
 
 import org.red5.io.CapsExMask;
 import org.red5.io.object.StreamAction;
+import org.red5.server.LoaderBase;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.IContext;
 import org.red5.server.api.IServer;
@@ -86,6 +87,11 @@ public class RTMPHandler extends BaseRTMPHandler {
      */
     private boolean dispatchStreamActions;
 
+    /**
+     * Maximum time in milliseconds a connect is held while its target application is still starting.
+     */
+    private long applicationStartTimeout = 30000L;
+
     /**
      * Setter for server object.
      *
@@ -143,6 +149,25 @@ public class RTMPHandler extends BaseRTMPHandler {
         this.dispatchStreamActions = dispatchStreamActions;
     }
 
+    /**
+     * <p>Getter for the field <code>applicationStartTimeout</code>.</p>
+     *
+     * @return maximum time in milliseconds to hold a connect for a starting application
+     */
+    public long getApplicationStartTimeout() {
+        return applicationStartTimeout;
+    }
+
+    /**
+     * Sets how long a connect is held while the requested application is still starting; connects to other applications are not held.
+     *
+     * @param applicationStartTimeout
+     *            time in milliseconds, 0 to not wait
+     */
+    public void setApplicationStartTimeout(long applicationStartTimeout) {
+        this.applicationStartTimeout = applicationStartTimeout;
+    }
+
     /** {@inheritDoc} */
     @Override
     protected void onChunkSize(RTMPConnection conn, Channel channel, Header source, ChunkSize chunkSize) {
@@ -324,6 +349,11 @@ public class RTMPHandler extends BaseRTMPHandler {
             params.put("path", path);
             // connection setup
             conn.setup(host, path, params);
+            // hold the connect until the requested application has started, other applications are unaffected
+            String app = path.indexOf('/') > 0 ? path.substring(0, path.indexOf('/')) : path;
+            if (!LoaderBase.isApplicationReady(app) && !LoaderBase.awaitApplication(app, applicationStartTimeout)) {
+                log.info("Application {} is not started, continuing connect for {}", app, conn.getSessionId());
+            }
             try {
                 // Lookup server scope when connected using host and application name
                 IGlobalScope global = server.lookupGlobal(host, path);
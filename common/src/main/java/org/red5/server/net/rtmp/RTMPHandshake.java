@@ -12,18 +12,18 @@ import java.nio.ByteBuffer;
 import java.security.InvalidKeyException;
 import java.security.KeyFactory;
 import java.security.KeyPair;
-import java.security.KeyPairGenerator;
+import java.security.PrivateKey;
 import java.security.PublicKey;
 import java.security.Security;
 import java.security.spec.KeySpec;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyAgreement;
 import javax.crypto.Mac;
 import javax.crypto.interfaces.DHPublicKey;
-import javax.crypto.spec.DHParameterSpec;
 import javax.crypto.spec.DHPublicKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
@@ -123,11 +123,23 @@ public abstract class RTMPHandshake implements IHandshake {
     /** Constant <code>KEY_LENGTH=128</code> */
     protected static final int KEY_LENGTH = 128;
 
-    /** Constant <code>random</code> */
+    /**
+     * Shared random source, contended under concurrent handshakes.
+     *
+     * @deprecated use {@link #fillRandomBytes(byte[], int, int)}
+     */
+    @Deprecated
     protected static final Random random = new Random();
 
+    // only set when a caller supplies its own agreement; the fast path uses the per-thread agreement in HandshakeCrypto
     protected KeyAgreement keyAgreement;
 
+    // private half of the DH key pair handed out for this handshake
+    protected PrivateKey privateKey;
+
+    // nano time at which the first handshake bytes were received, used for latency metrics
+    protected long handshakeStartNanos;
+
     protected Cipher cipherOut;
 
     protected Cipher cipherIn;
@@ -199,6 +211,7 @@ public abstract class RTMPHandshake implements IHandshake {
         calculateHMAC_SHA256(outgoingPublicKey, 0, outgoingPublicKey.length, sharedSecret, KEY_LENGTH, rc4keyOut, 0);
         log.debug("RC4 Out Key: {}", Hex.encodeHexString(Arrays.copyOfRange(rc4keyOut, 0, 16)));
         try {
+            // ciphers are stateful for the life of the connection, so they cannot be shared
             cipherOut = Cipher.getInstance("RC4");
             cipherOut.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(rc4keyOut, 0, 16, "RC4"));
         } catch (Exception e) {
@@ -239,20 +252,16 @@ public abstract class RTMPHandshake implements IHandshake {
     }
 
     /**
-     * Creates a Diffie-Hellman key pair.
+     * Creates a Diffie-Hellman key pair. Pairs come from the pre-generated pool in {@link HandshakeCrypto} and are never reused.
      *
      * @return dh keypair
      */
     protected KeyPair generateKeyPair() {
         KeyPair keyPair = null;
-        DHParameterSpec keySpec = new DHParameterSpec(DH_MODULUS, DH_BASE);
         try {
-            KeyPairGenerator keyGen = KeyPairGenerator.getInstance("DH");
-            keyGen.initialize(keySpec);
-            keyPair = keyGen.generateKeyPair();
-            keyAgreement = KeyAgreement.getInstance("DH");
-            // key agreement is initialized with "this" ends private key
-            keyAgreement.init(keyPair.getPrivate());
+            keyPair = HandshakeCrypto.getInstance().takeKeyPair();
+            // key agreement happens against "this" ends private key when the peers public key is known
+            privateKey = keyPair.getPrivate();
         } catch (Exception e) {
             log.error("Error generating keypair", e);
         }
@@ -281,10 +290,20 @@ public abstract class RTMPHandshake implements IHandshake {
      * @param publicKeyBytes
      *            public key bytes
      * @param agreement
-     *            key agreement
+     *            key agreement initialized with the private key or null to use the key pair from {@link #generateKeyPair()}
      * @return shared secret bytes if client used a supported validation scheme
      */
     protected byte[] getSharedSecret(byte[] publicKeyBytes, KeyAgreement agreement) {
+        if (agreement == null) {
+            byte[] sharedSecret = null;
+            try {
+                sharedSecret = HandshakeCrypto.sharedSecret(privateKey, publicKeyBytes);
+                log.debug("Shared secret [{}]: {}", sharedSecret.length, Hex.encodeHexString(sharedSecret));
+            } catch (Exception e) {
+                log.error("Exception getting the shared secret", e);
+            }
+            return sharedSecret;
+        }
         BigInteger otherPublicKeyInt = new BigInteger(1, publicKeyBytes);
         try {
             KeyFactory keyFactory = KeyFactory.getInstance("DH");
@@ -395,16 +414,12 @@ public abstract class RTMPHandshake implements IHandshake {
             log.trace("calculateHMAC_SHA256 - keyLen: {} key: {}", keyLen, Hex.encodeHexString(Arrays.copyOf(key, keyLen)));
             //log.trace("calculateHMAC_SHA256 - digestOffset: {} digest: {}", digestOffset, Hex.encodeHexString(Arrays.copyOfRange(digest, digestOffset, digestOffset + DIGEST_LENGTH)));
         }
-        byte[] calcDigest;
         try {
-            Mac hmac = Mac.getInstance("Hmac-SHA256", BouncyCastleProvider.PROVIDER_NAME);
-            hmac.init(new SecretKeySpec(Arrays.copyOf(key, keyLen), "HmacSHA256"));
-            byte[] actualMessage = Arrays.copyOfRange(message, messageOffset, messageOffset + messageLen);
-            calcDigest = hmac.doFinal(actualMessage);
-            //if (log.isTraceEnabled()) {
-            //    log.trace("Calculated digest: {}", Hex.encodeHexString(calcDigest));
-            //}
-            System.arraycopy(calcDigest, 0, digest, digestOffset, DIGEST_LENGTH);
+            Mac hmac = HandshakeCrypto.hmacSHA256();
+            // keys shorter than the requested length are zero padded, as Arrays.copyOf would
+            hmac.init(keyLen <= key.length ? new SecretKeySpec(key, 0, keyLen, "HmacSHA256") : new SecretKeySpec(Arrays.copyOf(key, keyLen), "HmacSHA256"));
+            hmac.update(message, messageOffset, messageLen);
+            hmac.doFinal(digest, digestOffset);
         } catch (InvalidKeyException e) {
             log.error("Invalid key", e);
         } catch (Exception e) {
@@ -632,6 +647,56 @@ public abstract class RTMPHandshake implements IHandshake {
         System.arraycopy(output, 0, array, offset, 8);
     }
 
+    /**
+     * Fills a range of the given array with random bytes. Handshake padding is not key material, so the per-thread generator is used
+     * rather than a shared one.
+     *
+     * @param bytes
+     *            destination
+     * @param offset
+     *            start offset
+     * @param length
+     *            number of bytes
+     */
+    protected static void fillRandomBytes(byte[] bytes, int offset, int length) {
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        int end = offset + length;
+        while (offset + 8 <= end) {
+            long value = rnd.nextLong();
+            for (int i = 0; i < 8; i++) {
+                bytes[offset++] = (byte) value;
+                value >>>= 8;
+            }
+        }
+        if (offset < end) {
+            long value = rnd.nextLong();
+            while (offset < end) {
+                bytes[offset++] = (byte) value;
+                value >>>= 8;
+            }
+        }
+    }
+
+    /**
+     * Marks the receipt of the first handshake bytes from the peer.
+     */
+    protected void markHandshakeStart() {
+        handshakeStartNanos = System.nanoTime();
+    }
+
+    /**
+     * Records the outcome of this handshake in the handshake metrics.
+     *
+     * @param success
+     *            true if the handshake completed
+     */
+    protected void recordHandshake(boolean success) {
+        if (handshakeStartNanos != 0L) {
+            HandshakeCrypto.getInstance().record(handshakeStartNanos, success, useEncryption());
+            handshakeStartNanos = 0L;
+        }
+    }
+
     /**
      * Returns whether or not a given handshake type is valid.
      *
@@ -261,6 +261,15 @@ public class RTMPMinaConnection extends RTMPConnection implements RTMPMinaConnec
         return 0;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public long getPendingWriteBytes() {
+        if (ioSession != null) {
+            return ioSession.getScheduledWriteBytes();
+        }
+        return 0;
+    }
+
     /** {@inheritDoc} */
     @Override
     public long getReadBytes() {
@@ -24,6 +24,7 @@ import org.red5.io.object.DataTypes;
 import org.red5.io.object.Deserializer;
 import org.red5.io.object.Input;
 import org.red5.io.object.StreamAction;
+import org.red5.metrics.Metrics;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.net.protocol.ProtocolException;
 import org.red5.server.net.protocol.RTMPDecodeState;
@@ -32,6 +33,7 @@ import org.red5.server.net.rtmp.RTMPUtils;
 import org.red5.server.net.rtmp.event.Abort;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
 import org.red5.server.net.rtmp.event.ClientBW;
@@ -59,6 +61,9 @@ import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
 import org.red5.server.so.SharedObjectMessage;
 import org.red5.server.stream.StreamService;
+import org.red5.server.stream.trace.Stage;
+import org.red5.server.stream.trace.StreamLatencyTracer;
+import org.red5.server.stream.trace.TraceSample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -118,6 +123,8 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
                 if (!conn.getSessionId().equals(state.getSessionId())) {
                     log.warn("Session decode overlap: {} != {}", conn.getSessionId(), state.getSessionId());
                 }
+                // ingest time of the bytes in this buffer, only taken for connections publishing a traced stream
+                final long ingestNanos = conn.isLatencyTraced() ? System.nanoTime() : 0L;
                 int remaining;
                 int iterations = 0;
                 int consecutiveUnknownTypes = 0;
@@ -135,7 +142,18 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
                         break;
                     }
                     final int positionBeforeDecode = buffer.position();
+                    final long decodeStart = Metrics.ENABLED ? System.nanoTime() : 0L;
                     final Object decodedObject = decode(conn, state, buffer);
+                    if (Metrics.ENABLED) {
+                        Metrics.RTMP_DECODED_BYTES.add(buffer.position() - positionBeforeDecode);
+                        if (decodedObject != null) {
+                            Metrics.RTMP_DECODE.recordSince(decodeStart);
+                            Metrics.RTMP_DECODED_MESSAGES.increment();
+                        }
+                    }
+                    if (ingestNanos != 0L && decodedObject instanceof Packet) {
+                        traceSample((Packet) decodedObject, ingestNanos);
+                    }
                     if (buffer.position() == positionBeforeDecode && decodedObject == null) {
                         if (!state.canContinueDecoding()) {
                             // state is BUFFER or DESTROYED; need more data or connection is done
@@ -385,6 +403,25 @@ public class RTMPProtocolDecoder implements Constants, IEventDecoder {
         return packet;
     }
 
+    /**
+     * Stamps a sampled audio or video message of a traced connection with a latency trace sample.
+     *
+     * @param packet
+     *            decoded packet
+     * @param ingestNanos
+     *            {@link System#nanoTime()} when the buffer holding the end of the packet reached the decoder
+     */
+    private void traceSample(Packet packet, long ingestNanos) {
+        IRTMPEvent message = packet.getMessage();
+        if (message instanceof AudioData || message instanceof VideoData) {
+            TraceSample sample = StreamLatencyTracer.sample(ingestNanos);
+            if (sample != null) {
+                sample.mark(Stage.DECODE);
+                ((BaseEvent) message).setTraceSample(sample);
+            }
+        }
+    }
+
     /**
      * Decodes packet header.
      *
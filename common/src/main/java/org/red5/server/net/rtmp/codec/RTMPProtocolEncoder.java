@@ -16,6 +16,7 @@ import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.VideoFrameType;
 import org.red5.io.object.Output;
 import org.red5.io.object.Serializer;
+import org.red5.metrics.Metrics;
 import org.red5.server.api.IConnection.Encoding;
 import org.red5.server.api.service.IPendingServiceCall;
 import org.red5.server.api.service.IServiceCall;
@@ -26,6 +27,7 @@ import org.red5.server.net.rtmp.RTMPUtils;
 import org.red5.server.net.rtmp.codec.RTMP.LiveTimestampMapping;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.BytesRead;
 import org.red5.server.net.rtmp.event.ChunkSize;
 import org.red5.server.net.rtmp.event.ClientBW;
@@ -51,6 +53,8 @@ import org.red5.server.net.rtmp.status.StatusObject;
 import org.red5.server.service.Call;
 import org.red5.server.so.ISharedObjectEvent;
 import org.red5.server.so.ISharedObjectMessage;
+import org.red5.server.stream.trace.Stage;
+import org.red5.server.stream.trace.TraceSample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -105,6 +109,16 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
     public IoBuffer encode(Object message) throws Exception {
         if (message != null) {
             try {
+                if (Metrics.ENABLED) {
+                    long start = System.nanoTime();
+                    IoBuffer out = encodePacket((Packet) message);
+                    Metrics.RTMP_ENCODE.recordSince(start);
+                    if (out != null) {
+                        Metrics.RTMP_ENCODED_MESSAGES.increment();
+                        Metrics.RTMP_ENCODED_BYTES.add(out.remaining());
+                    }
+                    return out;
+                }
                 return encodePacket((Packet) message);
             } catch (Exception e) {
                 log.error("Error encoding", e);
@@ -205,6 +219,12 @@ public class RTMPProtocolEncoder implements Constants, IEventEncoder {
                 data.free();
                 out.flip();
                 data = null;
+                if (message instanceof BaseEvent) {
+                    TraceSample trace = ((BaseEvent) message).getTraceSample();
+                    if (trace != null) {
+                        trace.mark(Stage.ENCODE);
+                    }
+                }
             }
         }
         message.release();
@@ -16,6 +16,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.red5.server.api.event.IEventListener;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.stream.trace.TraceSample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,6 +69,11 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
      */
     protected AtomicInteger refcount = new AtomicInteger(1);
 
+    /**
+     * Latency trace sample, set on sampled packets of traced live streams
+     */
+    protected transient TraceSample traceSample;
+
     /**
      * <p>Constructor for BaseEvent.</p>
      */
@@ -182,6 +188,25 @@ public abstract class BaseEvent implements Constants, IRTMPEvent, Externalizable
         this.source = source;
     }
 
+    /**
+     * Returns the latency trace sample carried by this event.
+     *
+     * @return trace sample or null if this event is not traced
+     */
+    public TraceSample getTraceSample() {
+        return traceSample;
+    }
+
+    /**
+     * Sets the latency trace sample carried by this event.
+     *
+     * @param traceSample
+     *            trace sample
+     */
+    public void setTraceSample(TraceSample traceSample) {
+        this.traceSample = traceSample;
+    }
+
     /**
      * {@inheritDoc}
      *
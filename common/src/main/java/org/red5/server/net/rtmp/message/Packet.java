@@ -51,6 +51,11 @@ public class Packet implements Externalizable {
      */
     private transient long expirationTime = 0L;
 
+    /**
+     * Time the packet was queued for handling, from {@link System#nanoTime()}; only set when metrics are enabled
+     */
+    private transient long receivedNanos;
+
     /**
      * Flag representing processed status
      */
@@ -195,6 +200,24 @@ public class Packet implements Externalizable {
         this.expirationTime = expirationTime;
     }
 
+    /**
+     * Returns the time the packet was queued for handling.
+     *
+     * @return {@link System#nanoTime()} when queued, or zero if not recorded
+     */
+    public long getReceivedNanos() {
+        return receivedNanos;
+    }
+
+    /**
+     * Set the time the packet was queued for handling.
+     *
+     * @param receivedNanos {@link System#nanoTime()} when queued
+     */
+    public void setReceivedNanos(long receivedNanos) {
+        this.receivedNanos = receivedNanos;
+    }
+
     /**
      * Returns true if expiration time has been reached and false otherwise.
      *
@@ -10,6 +10,7 @@ package org.red5.server.scope;
 import java.beans.ConstructorProperties;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.red5.server.AttributeStore;
@@ -99,9 +100,9 @@ public abstract class BasicScope extends AttributeStore implements IBasicScope,
     protected transient CopyOnWriteArraySet<IScopeSecurityHandler> securityHandlers;
 
     /**
-     * List of event listeners
+     * Set of event listeners; a concurrent hash set so joining a large scope does not copy every existing listener
      */
-    protected transient CopyOnWriteArraySet<IEventListener> listeners;
+    protected transient Set<IEventListener> listeners;
 
     /**
      * Creates unnamed scope
@@ -129,7 +130,7 @@ public abstract class BasicScope extends AttributeStore implements IBasicScope,
         this.type = type;
         this.name = name;
         this.persistent = persistent;
-        this.listeners = new CopyOnWriteArraySet<IEventListener>();
+        this.listeners = ConcurrentHashMap.newKeySet();
         this.creation = System.nanoTime();
     }
 
@@ -10,18 +10,19 @@ package org.red5.server.scope;
 import java.beans.ConstructorProperties;
 import java.io.IOException;
 import java.lang.management.ManagementFactory;
+import java.util.AbstractSet;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentSkipListSet;
-import java.util.concurrent.CopyOnWriteArraySet;
-import java.util.stream.Collectors;
+import java.util.function.Function;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
@@ -29,7 +30,6 @@ import javax.management.StandardMBean;
 import javax.management.openmbean.CompositeData;
 
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.Strings;
 import org.red5.server.Server;
 import org.red5.server.api.IClient;
 import org.red5.server.api.IConnection;
@@ -134,9 +134,14 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     private final transient ConcurrentScopeSet children = new ConcurrentScopeSet();
 
     /**
-     * Connected clients map
+     * Connected clients, keyed by client id
      */
-    private final transient CopyOnWriteArraySet<IClient> clients = new CopyOnWriteArraySet<>();
+    private final transient ConcurrentMap<String, IClient> clientsById = new ConcurrentHashMap<>();
+
+    /**
+     * Connected clients set, a view of clientsById
+     */
+    private final transient Set<IClient> clients = new IndexedSet<>(clientsById, IClient::getId);
 
     /**
      * Statistics about connections to the scope.
@@ -149,9 +154,14 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     protected final transient StatisticsCounter subscopeStats = new StatisticsCounter();
 
     /**
-     * Set of connections connected to this scope
+     * Connections connected to this scope, keyed by session id
+     */
+    private final transient ConcurrentMap<String, IConnection> connectionsBySessionId = new ConcurrentHashMap<>();
+
+    /**
+     * Set of connections connected to this scope, a view of connectionsBySessionId
      */
-    protected final transient Set<IConnection> connections = new ConcurrentSkipListSet<>();
+    protected final transient Set<IConnection> connections = new IndexedSet<>(connectionsBySessionId, IConnection::getSessionId);
 
     /**
      * Mbean object name.
@@ -256,9 +266,6 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 // timeout while connecting client
                 return false;
             }
-            if (!connections.add(conn)) {
-                log.warn("Connection: {} was already present in scope connections", conn);
-            }
             final IClient client = conn.getClient();
             // we would not get this far if there is no handler
             if (hasHandler() && !getHandler().join(client, this)) {
@@ -270,6 +277,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 // timeout while connecting client
                 return false;
             }
+            // only added once joined, as broadcasts walk the set live
+            final boolean added = connections.add(conn);
+            if (!added) {
+                log.warn("Connection: {} was already present in scope connections", conn);
+            }
             // add the client and event listener
             if (clients.contains(client) || (clients.add(client) && addEventListener(conn))) {
                 log.debug("Added client id {}", client.getId());
@@ -287,6 +299,9 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 return true;
             } else {
                 log.warn("Connection failed, client not added");
+                if (added) {
+                    connections.remove(conn);
+                }
             }
         } else {
             log.debug("Connection failed, scope is disabled");
@@ -444,10 +459,58 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     @Override
     public Set<IBroadcastStream> getBroadcastStreams() {
         Set<IBroadcastStream> streams = new HashSet<>();
-        children.getBasicScopes(ScopeType.BROADCAST).stream().filter(bs -> ((IBroadcastScope) bs).getClientBroadcastStream() != null).forEach(bs -> streams.add(((IBroadcastScope) bs).getClientBroadcastStream()));
+        for (IBasicScope bs : children.viewBasicScopes(ScopeType.BROADCAST)) {
+            IClientBroadcastStream cbs = ((IBroadcastScope) bs).getClientBroadcastStream();
+            if (cbs != null) {
+                streams.add(cbs);
+            }
+        }
         return streams;
     }
 
+    /**
+     * Registers a publish or subscribe alias for a broadcast scope of this scope. The alias resolves through
+     * {@link #getBroadcastScope(String)} for as long as the scope's stream reports it from
+     * {@link IClientBroadcastStream#containsAlias(String)} or {@link IClientBroadcastStream#getNameAlias()}.
+     *
+     * @param alias
+     *            stream alias
+     * @param broadcastName
+     *            name of the broadcast scope
+     */
+    public void registerBroadcastAlias(String alias, String broadcastName) {
+        if (alias != null && broadcastName != null) {
+            children.aliases.put(alias, broadcastName);
+        }
+    }
+
+    /**
+     * Removes an alias registered with {@link #registerBroadcastAlias(String, String)}.
+     *
+     * @param alias
+     *            stream alias
+     * @param broadcastName
+     *            name of the broadcast scope
+     */
+    public void unregisterBroadcastAlias(String alias, String broadcastName) {
+        if (alias != null && broadcastName != null) {
+            children.aliases.remove(alias, broadcastName);
+        }
+    }
+
+    /**
+     * Indexes every alias of the stream attached to a broadcast scope of this scope.
+     *
+     * @param scope
+     *            broadcast scope
+     */
+    public void registerBroadcastAliases(IBroadcastScope scope) {
+        IClientBroadcastStream cbs = scope.getClientBroadcastStream();
+        if (cbs != null) {
+            children.indexAliases(scope.getName(), cbs);
+        }
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -473,31 +536,11 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
      */
     public Set<String> getBasicScopeNames(ScopeType type) {
         if (type != null) {
-            // if its broadcast type then also check aliases
+            // if its broadcast type then also include aliases
             if (type == ScopeType.BROADCAST) {
-                final Set<String> broadcastNames = new HashSet<>();
-                Set<IBasicScope> broadcastScopes = children.stream().filter(child -> child.getType().equals(type)).collect(Collectors.toSet());
-                broadcastScopes.forEach(bs -> {
-                    // add the streams name
-                    broadcastNames.add(bs.getName());
-                    // add any aliases
-                    IClientBroadcastStream stream = ((IBroadcastScope) bs).getClientBroadcastStream();
-                    if (stream != null) {
-                        // publish alias if it exists
-                        String nameAlias = stream.getAlias();
-                        if (nameAlias != null) {
-                            broadcastNames.add(nameAlias);
-                        }
-                        // subscribe aliases
-                        if (stream.hasAlias()) {
-                            broadcastNames.addAll(stream.getAliases());
-                        }
-                    }
-                });
-                return broadcastNames;
-            } else {
-                return children.stream().filter(child -> child.getType().equals(type)).map(IBasicScope::getName).collect(Collectors.toSet());
+                return children.getBroadcastNamesAndAliases();
             }
+            return children.getNames(type);
         }
         return getScopeNames();
     }
@@ -517,7 +560,18 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
      * @return Set of clients bound to scope
      */
     public Set<IClient> getClients() {
-        return clients;
+        return Collections.unmodifiableSet(clients);
+    }
+
+    /**
+     * Returns the connected client with the given id.
+     *
+     * @param id
+     *            client id
+     * @return client or null if not connected to this scope
+     */
+    public IClient lookupClient(String id) {
+        return id != null ? clientsById.get(id) : null;
     }
 
     /** {@inheritDoc} */
@@ -537,64 +591,43 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
     /** {@inheritDoc} */
     @Override
     public IConnection lookupConnection(String sessionId) {
-        for (IConnection conn : connections) {
-            if (Strings.CS.equals(conn.getSessionId(), sessionId)) {
-                return conn;
-            }
-        }
-        return null;
+        return sessionId != null ? connectionsBySessionId.get(sessionId) : null;
     }
 
     /**
      * {@inheritDoc}
      *
+     * Returns a live, read-only view of the connections to this scope, not including those of its child scopes. The view is not a
+     * snapshot: iteration is weakly consistent, so connections may join or leave while a broadcast walks it, and a caller needing a
+     * stable collection should copy it. Connections are only in it once the handler has accepted their join.
+     *
      * @return a {@link java.util.Set} object
      */
     public Set<IConnection> getClientConnections() {
-        Set<IConnection> result = new HashSet<IConnection>(3);
-        log.debug("Client count: {}", clients.size());
-        for (IClient cli : clients) {
-            Set<IConnection> set = cli.getConnections();
-            log.debug("Client connection count: {}", set.size());
-            if (set.size() > 1) {
-                log.warn("Client connections exceeded expected single count; size: {}", set.size());
-            }
-            for (IConnection conn : set) {
-                result.add(conn);
-            }
-        }
-        return result;
+        return Collections.unmodifiableSet(connections);
     }
 
     /** {@inheritDoc} */
     @Deprecated
     public Set<IConnection> lookupConnections(IClient client) {
         HashSet<IConnection> result = new HashSet<IConnection>(1);
-        if (clients.contains(client)) {
-            for (IClient cli : clients) {
-                if (cli.equals(client)) {
-                    Set<IConnection> set = cli.getConnections();
-                    if (set.size() > 1) {
-                        log.warn("Client connections exceeded expected single count; size: {}", set.size());
-                    }
-                    result.add(set.iterator().next());
-                    break;
-                }
-            }
+        IConnection conn = lookupConnection(client);
+        if (conn != null) {
+            result.add(conn);
         }
         return result;
     }
 
     /** {@inheritDoc} */
     public IConnection lookupConnection(IClient client) {
-        for (IClient cli : clients) {
-            if (cli.equals(client)) {
-                Set<IConnection> set = cli.getConnections();
-                if (set.size() > 1) {
-                    log.warn("Client connections exceeded expected single count; size: {}", set.size());
-                }
-                return set.iterator().next();
+        IClient cli = client != null ? lookupClient(client.getId()) : null;
+        if (cli != null) {
+            Set<IConnection> set = cli.getConnections();
+            if (set.size() > 1) {
+                log.warn("Client connections exceeded expected single count; size: {}", set.size());
             }
+            Iterator<IConnection> it = set.iterator();
+            return it.hasNext() ? it.next() : null;
         }
         return null;
     }
@@ -1353,10 +1386,104 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
         return true;
     }
 
+    /**
+     * Concurrent set backed by a map keyed on an identifying property of its elements, giving O(1) membership, add and remove without
+     * copying on write. Iteration is weakly consistent.
+     *
+     * @param <T>
+     *            element type
+     */
+    private static final class IndexedSet<T> extends AbstractSet<T> {
+
+        private final ConcurrentMap<String, T> map;
+
+        private final Function<T, String> keyFunction;
+
+        IndexedSet(ConcurrentMap<String, T> map, Function<T, String> keyFunction) {
+            this.map = map;
+            this.keyFunction = keyFunction;
+        }
+
+        @SuppressWarnings("unchecked")
+        private String keyOf(Object o) {
+            try {
+                return keyFunction.apply((T) o);
+            } catch (ClassCastException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean add(T e) {
+            String key = keyFunction.apply(e);
+            return key != null && map.putIfAbsent(key, e) == null;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            String key = o != null ? keyOf(o) : null;
+            if (key != null) {
+                T existing = map.get(key);
+                return existing != null && existing.equals(o) && map.remove(key, existing);
+            }
+            return false;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            String key = o != null ? keyOf(o) : null;
+            if (key != null) {
+                T existing = map.get(key);
+                return existing != null && existing.equals(o);
+            }
+            return false;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return map.values().iterator();
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return map.isEmpty();
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+
+    }
+
+    /**
+     * Child scope set, kept ordered for iteration and indexed by type and name so lookups do not walk every child. Broadcast aliases
+     * map to the name of the broadcast scope they resolve to; the owning stream is checked on lookup so a stale entry never matches.
+     */
     private final class ConcurrentScopeSet extends ConcurrentSkipListSet<IBasicScope> {
 
         private static final long serialVersionUID = 283917025588555L;
 
+        // children by type then name
+        private final transient Map<ScopeType, ConcurrentMap<String, IBasicScope>> typeIndex = new EnumMap<>(ScopeType.class);
+
+        // child names across all types, with the number of children sharing each name
+        private final transient ConcurrentMap<String, Integer> names = new ConcurrentHashMap<>();
+
+        // broadcast alias to broadcast scope name
+        private final transient ConcurrentMap<String, String> aliases = new ConcurrentHashMap<>();
+
+        {
+            for (ScopeType type : ScopeType.values()) {
+                typeIndex.put(type, new ConcurrentHashMap<>());
+            }
+        }
+
         @Override
         public boolean add(IBasicScope scope) {
             log.debug("Add child scope: {}", scope);
@@ -1381,6 +1508,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                         // add the entry
                         added = super.add(scope);
                         if (added) {
+                            index(scope);
                             subscopeStats.increment();
                         } else {
                             log.debug("Subscope was not added");
@@ -1411,6 +1539,7 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             boolean removed = false;
             // remove the entry, ensure removed value is equal to the given object
             if (super.remove(scope)) {
+                unindex((IBasicScope) scope);
                 subscopeStats.decrement();
                 if (hasHandler()) {
                     IScopeHandler hdlr = getHandler();
@@ -1430,15 +1559,57 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
             return removed;
         }
 
+        @Override
+        public void clear() {
+            super.clear();
+            typeIndex.values().forEach(Map::clear);
+            names.clear();
+            aliases.clear();
+        }
+
+        private void index(IBasicScope scope) {
+            String name = scope.getName();
+            typeIndex.get(scope.getType()).put(name, scope);
+            names.merge(name, 1, Integer::sum);
+            if (scope instanceof IBroadcastScope) {
+                IClientBroadcastStream cbs = ((IBroadcastScope) scope).getClientBroadcastStream();
+                if (cbs != null) {
+                    indexAliases(name, cbs);
+                }
+            }
+        }
+
+        private void unindex(IBasicScope scope) {
+            String name = scope.getName();
+            typeIndex.get(scope.getType()).remove(name, scope);
+            names.computeIfPresent(name, (key, count) -> count > 1 ? count - 1 : null);
+            if (scope instanceof IBroadcastScope) {
+                IClientBroadcastStream cbs = ((IBroadcastScope) scope).getClientBroadcastStream();
+                if (cbs != null) {
+                    cbs.getAliases().forEach(alias -> aliases.remove(alias, name));
+                    String nameAlias = cbs.getNameAlias();
+                    if (nameAlias != null) {
+                        aliases.remove(nameAlias, name);
+                    }
+                }
+            }
+        }
+
+        private void indexAliases(String name, IClientBroadcastStream cbs) {
+            cbs.getAliases().forEach(alias -> aliases.put(alias, name));
+            String nameAlias = cbs.getNameAlias();
+            if (nameAlias != null) {
+                aliases.put(nameAlias, name);
+            }
+        }
+
         /**
          * Returns the scope names.
          *
          * @return names
          */
         public Set<String> getNames() {
-            Set<String> names = new HashSet<String>();
-            stream().forEach(child -> names.add(child.getName()));
-            return names;
+            return new HashSet<>(names.keySet());
         }
 
         /**
@@ -1451,13 +1622,40 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
                 log.debug("hasName: {}", name);
             }
             if (name != null) {
-                return stream().filter(child -> child.getName().equals(name)).findFirst().isPresent();
+                return names.containsKey(name);
             } else {
                 log.info("Invalid scope name, null is not allowed");
             }
             return false;
         }
 
+        /**
+         * Returns the names of the child scopes of a given type.
+         *
+         * @param type
+         *            Scope type
+         * @return names
+         */
+        public Set<String> getNames(ScopeType type) {
+            return new HashSet<>(typeIndex.get(type).keySet());
+        }
+
+        /**
+         * Returns the broadcast scope names along with every alias that currently resolves to one of them.
+         *
+         * @return names and aliases
+         */
+        public Set<String> getBroadcastNamesAndAliases() {
+            ConcurrentMap<String, IBasicScope> broadcasts = typeIndex.get(ScopeType.BROADCAST);
+            Set<String> result = new HashSet<>(broadcasts.keySet());
+            aliases.forEach((alias, name) -> {
+                if (resolveAlias(alias) != null) {
+                    result.add(alias);
+                }
+            });
+            return result;
+        }
+
         /**
          * Returns child scopes for a given type.
          *
@@ -1466,7 +1664,18 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
          * @return set of scopes matching type
          */
         public Set<IBasicScope> getBasicScopes(ScopeType type) {
-            return stream().filter(child -> child.getType().equals(type)).collect(Collectors.toUnmodifiableSet());
+            return Set.copyOf(typeIndex.get(type).values());
+        }
+
+        /**
+         * Returns the child scopes for a given type without copying.
+         *
+         * @param type
+         *            Scope type
+         * @return live, unmodifiable view of the scopes
+         */
+        public Collection<IBasicScope> viewBasicScopes(ScopeType type) {
+            return Collections.unmodifiableCollection(typeIndex.get(type).values());
         }
 
         /**
@@ -1479,45 +1688,48 @@ public class Scope extends BasicScope implements IScope, IScopeStatistics, Scope
          * @return scope
          */
         public IBasicScope getBasicScope(ScopeType type, String name) {
-            Optional<IBasicScope> scope = null;
+            if (name == null) {
+                return null;
+            }
             // skip type check?
             if (ScopeType.UNDEFINED.equals(type)) {
-                scope = stream().filter(child -> child.getName().equals(name)).findFirst();
-            } else {
-                // if its broadcast type then allow an alias match in addition to the name match
-                if (ScopeType.BROADCAST.equals(type)) {
-                    // checks publish and subscribe aliases
-                    for (IBasicScope child : this) {
-                        // ensure type is broadcast type, since we'll pull out a cbs
-                        if (child.getType().equals(type)) {
-                            String childName = child.getName();
-                            IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
-                            if (cbs != null) {
-                                String pubName = cbs.getPublishedName();
-                                if (childName.equals(name)) {
-                                    log.debug("Scope found by name: {} on {}", name, pubName);
-                                    return child;
-                                } else if (cbs.containsAlias(name)) {
-                                    log.debug("Scope found with alias: {} on {}", name, pubName);
-                                    return child;
-                                } else {
-                                    log.debug("No match for name or alias of {} on published stream: {}", name, pubName);
-                                }
-                            } else {
-                                //log.debug("Broadcast scope: {} has no stream attached", name);
-                                if (childName.equals(name)) {
-                                    log.debug("Scope found by name: {} but has no stream", name);
-                                    return child;
-                                }
-                            }
-                        }
+                // same precedence as the ordered set: name first, then type
+                for (ConcurrentMap<String, IBasicScope> byName : typeIndex.values()) {
+                    IBasicScope child = byName.get(name);
+                    if (child != null) {
+                        return child;
                     }
-                } else {
-                    scope = stream().filter(child -> child.getType().equals(type) && child.getName().equals(name)).findFirst();
                 }
+                return null;
             }
-            if (scope != null && scope.isPresent()) {
-                return scope.get();
+            IBasicScope child = typeIndex.get(type).get(name);
+            // if its broadcast type then allow an alias match in addition to the name match
+            if (child == null && ScopeType.BROADCAST.equals(type)) {
+                child = resolveAlias(name);
+                if (child != null) {
+                    log.debug("Scope found with alias: {} on {}", name, child.getName());
+                }
+            }
+            return child;
+        }
+
+        /**
+         * Returns the broadcast scope an alias resolves to, checking that its stream still carries the alias.
+         *
+         * @param alias
+         *            publish or subscribe alias
+         * @return broadcast scope or null
+         */
+        private IBasicScope resolveAlias(String alias) {
+            String name = aliases.get(alias);
+            if (name != null) {
+                IBasicScope child = typeIndex.get(ScopeType.BROADCAST).get(name);
+                if (child != null) {
+                    IClientBroadcastStream cbs = ((IBroadcastScope) child).getClientBroadcastStream();
+                    if (cbs != null && (cbs.containsAlias(alias) || alias.equals(cbs.getNameAlias()))) {
+                        return child;
+                    }
+                }
             }
             return null;
         }
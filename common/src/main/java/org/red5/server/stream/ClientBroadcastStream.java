@@ -68,6 +68,7 @@ import org.red5.server.messaging.IPushableConsumer;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.VideoData;
@@ -75,8 +76,11 @@ import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.net.rtmp.status.Status;
 import org.red5.server.net.rtmp.status.StatusCodes;
+import org.red5.server.scope.Scope;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.StatusMessage;
+import org.red5.server.stream.trace.StreamLatencyTracer;
+import org.red5.server.stream.trace.TraceSample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.jmx.export.annotation.ManagedResource;
@@ -249,15 +253,18 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
             }
             // deregister with jmx
             unregisterJMX();
+            StreamLatencyTracer.getInstance().unpublished(this);
             setState(StreamState.CLOSED);
             // clear our aliases and from local registry
             if (aliases != null) {
                 localAliases.removeAll(aliases);
+                aliases.forEach(alias -> indexAlias(alias, false));
                 aliases.clear();
             }
             // remove publish alias
             if (nameAlias != null) {
                 localAliases.remove(nameAlias);
+                indexAlias(nameAlias, false);
                 nameAlias = null;
             }
         }
@@ -383,6 +390,10 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
                         try {
                             // create new RTMP message, initialize it and push through pipe
                             RTMPMessage msg = RTMPMessage.build(rtmpEvent, eventTime);
+                            TraceSample trace = rtmpEvent instanceof BaseEvent ? ((BaseEvent) rtmpEvent).getTraceSample() : null;
+                            if (trace != null) {
+                                StreamLatencyTracer.getInstance().dispatched(publishedName, trace);
+                            }
                             if (isDebug && rtmpEvent instanceof VideoData) {
                                 log.debug("Pushing video to livePipe: ts={} subscribers={}", eventTime, subscriberStats.getCurrent());
                             }
@@ -956,6 +967,8 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
         // We send the start messages before the first packet is received.
         // This is required so FME actually starts publishing.
         sendStartNotifications(Red5.getConnectionLocal());
+        // enables latency tracing of the publisher if this stream is traced
+        StreamLatencyTracer.getInstance().publishing(this);
         // force recording if set
         if (automaticRecording) {
             //log.debug("Starting automatic recording of {}", publishedName);
@@ -1082,6 +1095,7 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
         }
         // check local registry first then attempt the add
         if (!localAliases.contains(alias) && aliases.add(alias)) {
+            indexAlias(alias, true);
             return true;
         }
         return false;
@@ -1140,8 +1154,33 @@ public class ClientBroadcastStream extends AbstractClientStream implements IClie
                 log.warn("Publish name: {} has hijacked previously registered alias", nameAlias);
             }
         }
+        if (this.nameAlias != null && !this.nameAlias.equals(nameAlias)) {
+            indexAlias(this.nameAlias, false);
+        }
         // this will overwrite any existing value
         this.nameAlias = nameAlias;
+        if (nameAlias != null) {
+            indexAlias(nameAlias, true);
+        }
+    }
+
+    /**
+     * Keeps the scope's alias index in step with this stream so aliased lookups resolve without walking every broadcast scope.
+     *
+     * @param alias
+     *            publish or subscribe alias
+     * @param register
+     *            true to register, false to remove
+     */
+    private void indexAlias(String alias, boolean register) {
+        IScope scope = getScope();
+        if (scope instanceof Scope && publishedName != null) {
+            if (register) {
+                ((Scope) scope).registerBroadcastAlias(alias, publishedName);
+            } else {
+                ((Scope) scope).unregisterBroadcastAlias(alias, publishedName);
+            }
+        }
     }
 
     /** {@inheritDoc} */
@@ -0,0 +1,330 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import org.red5.codec.VideoFrameType;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Live video frame dropping for a single subscriber, driven by the bytes scheduled for writing on its connection rather than a count of
+ * pending video messages, so audio, data and large frames sitting in the write queue are all accounted for.
+ * <p>
+ * The rate at which the connection drains is estimated from its written byte count, and the queued bytes divided by that rate give the time
+ * the queue takes to drain. As the drain time grows past multiples of the maximum queue delay the controller escalates through its levels:
+ * <ul>
+ * <li>{@link Level#DISPOSABLE} drops disposable interframes</li>
+ * <li>{@link Level#INTERFRAMES} drops all interframes, sending keyframes only</li>
+ * <li>{@link Level#GOP} drops whole groups of pictures, keyframes included</li>
+ * </ul>
+ * Queued bytes above the maximum go straight to {@link Level#GOP}. Escalation is immediate, while a level is only left once the drain time is
+ * below half its threshold, so the level does not flap around a threshold. Once an interframe or keyframe has been dropped the following frames
+ * cannot be decoded, so nothing but configuration is sent until the next keyframe.
+ * <p>
+ * An instance belongs to one subscriber and is updated by the thread pushing its messages; the statistics may be read from any thread.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class CongestionController {
+
+    private static final Logger log = LoggerFactory.getLogger(CongestionController.class);
+
+    /**
+     * Minimum milliseconds between drain rate samples
+     */
+    private static final long SAMPLE_INTERVAL = 100L;
+
+    /**
+     * Weight of a new sample in the drain rate estimate
+     */
+    private static final double ALPHA = 0.25d;
+
+    /**
+     * Drop levels, from lightest to heaviest.
+     */
+    public enum Level {
+        NONE, DISPOSABLE, INTERFRAMES, GOP;
+    }
+
+    private static final Level[] LEVELS = Level.values();
+
+    private final long maxQueueDelay;
+
+    private final long maxQueuedBytes;
+
+    private volatile Level level = Level.NONE;
+
+    private boolean waitingForKeyframe;
+
+    private long lastSample = -1L;
+
+    private long lastWritten;
+
+    private long lastQueued;
+
+    /**
+     * Estimated drain rate in bytes per millisecond, zero until measured
+     */
+    private volatile double drainRate;
+
+    private volatile long queuedBytes;
+
+    private volatile long queueDelay;
+
+    private volatile long droppedDisposable;
+
+    private volatile long droppedInterframes;
+
+    private volatile long droppedKeyframes;
+
+    private volatile long droppedBytes;
+
+    private volatile long levelChanges;
+
+    private volatile long maxObservedBytes;
+
+    /**
+     * Creates a controller.
+     *
+     * @param maxQueueDelay
+     *            milliseconds of queued data at which disposable frames start being dropped; interframes are dropped at twice and whole groups
+     *            of pictures at four times this
+     * @param maxQueuedBytes
+     *            queued bytes at which whole groups of pictures are dropped regardless of the drain rate, zero or less for no limit
+     */
+    public CongestionController(long maxQueueDelay, long maxQueuedBytes) {
+        this.maxQueueDelay = Math.max(1L, maxQueueDelay);
+        this.maxQueuedBytes = maxQueuedBytes > 0L ? maxQueuedBytes : Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks whether a live video frame may be sent, recording it as dropped if not.
+     *
+     * @param video
+     *            video frame
+     * @param queuedBytes
+     *            bytes scheduled for writing on the connection, negative if the transport cannot tell
+     * @param writtenBytes
+     *            total bytes written by the connection
+     * @param now
+     *            current time in milliseconds
+     * @return true if the frame may be sent
+     */
+    public boolean canSend(VideoData video, long queuedBytes, long writtenBytes, long now) {
+        int size = video.getData() != null ? video.getData().limit() : 0;
+        return canSend(video.getFrameType(), video.isConfig() || video.isEndOfSequence(), size, queuedBytes, writtenBytes, now);
+    }
+
+    /**
+     * Checks whether a live video frame may be sent, recording it as dropped if not.
+     *
+     * @param type
+     *            frame type
+     * @param config
+     *            true for decoder configuration or end of sequence, which is always sent
+     * @param size
+     *            frame size in bytes
+     * @param queuedBytes
+     *            bytes scheduled for writing on the connection, negative if the transport cannot tell
+     * @param writtenBytes
+     *            total bytes written by the connection
+     * @param now
+     *            current time in milliseconds
+     * @return true if the frame may be sent
+     */
+    public boolean canSend(VideoFrameType type, boolean config, int size, long queuedBytes, long writtenBytes, long now) {
+        if (queuedBytes < 0L) {
+            // no signal, leave the level and the drain rate estimate as they are
+            return true;
+        }
+        update(queuedBytes, writtenBytes, now);
+        if (config || type == VideoFrameType.COMMAND_FRAME) {
+            return true;
+        }
+        boolean keyframe = type == VideoFrameType.KEYFRAME || type == VideoFrameType.GENERATED_KEYFRAME;
+        Level current = level;
+        boolean send;
+        if (current == Level.GOP) {
+            send = false;
+        } else if (waitingForKeyframe || current == Level.INTERFRAMES) {
+            send = keyframe;
+        } else if (current == Level.DISPOSABLE) {
+            send = type != VideoFrameType.DISPOSABLE;
+        } else {
+            send = true;
+        }
+        if (send) {
+            if (keyframe) {
+                waitingForKeyframe = false;
+            }
+            return true;
+        }
+        if (keyframe) {
+            droppedKeyframes++;
+        } else if (type == VideoFrameType.DISPOSABLE) {
+            droppedDisposable++;
+        } else {
+            droppedInterframes++;
+        }
+        droppedBytes += size;
+        // disposable frames are not referenced, anything else breaks decoding until the next keyframe
+        if (type != VideoFrameType.DISPOSABLE) {
+            waitingForKeyframe = true;
+        }
+        return false;
+    }
+
+    /**
+     * Updates the drain rate estimate and the level from the state of the write queue.
+     */
+    private void update(long queued, long written, long now) {
+        if (lastSample < 0L) {
+            lastSample = now;
+            lastWritten = written;
+            lastQueued = queued;
+        } else if (now - lastSample >= SAMPLE_INTERVAL) {
+            double rate = (written - lastWritten) / (double) (now - lastSample);
+            // unless the queue stayed busy the writes only show what was offered, which is a floor for what the link can take
+            if ((lastQueued > 0L && queued > 0L) || rate > drainRate) {
+                double current = drainRate;
+                drainRate = current > 0d ? current + ALPHA * (rate - current) : rate;
+            }
+            lastSample = now;
+            lastWritten = written;
+            lastQueued = queued;
+        }
+        queuedBytes = queued;
+        if (queued > maxObservedBytes) {
+            maxObservedBytes = queued;
+        }
+        double rate = drainRate;
+        long delay = queued <= 0L ? 0L : rate > 0d ? (long) (queued / rate) : 0L;
+        queueDelay = delay;
+        Level target = queued >= maxQueuedBytes ? Level.GOP : levelFor(delay);
+        Level current = level;
+        if (target.ordinal() > current.ordinal()) {
+            setLevel(current, target);
+        } else if (current != Level.NONE && target.ordinal() < current.ordinal() && delay < threshold(current) / 2L && queued < maxQueuedBytes / 2L) {
+            // step down one level at a time
+            setLevel(current, LEVELS[current.ordinal() - 1]);
+        }
+    }
+
+    private Level levelFor(long delay) {
+        for (int i = LEVELS.length - 1; i > 0; i--) {
+            if (delay >= threshold(LEVELS[i])) {
+                return LEVELS[i];
+            }
+        }
+        return Level.NONE;
+    }
+
+    /**
+     * Drain time at which a level is entered.
+     */
+    private long threshold(Level level) {
+        return level == Level.NONE ? 0L : maxQueueDelay << (level.ordinal() - 1);
+    }
+
+    private void setLevel(Level from, Level to) {
+        if (log.isDebugEnabled()) {
+            log.debug("Congestion level change: {} -> {} queued: {} delay: {} rate: {}", from, to, queuedBytes, queueDelay, drainRate);
+        }
+        level = to;
+        levelChanges++;
+    }
+
+    /**
+     * Resets the state, for instance on seek or when a new item starts playing. Statistics are kept.
+     */
+    public void reset() {
+        level = Level.NONE;
+        waitingForKeyframe = false;
+        lastSample = -1L;
+    }
+
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns whether frames are being dropped until the next keyframe.
+     *
+     * @return true if waiting for a keyframe
+     */
+    public boolean isWaitingForKeyframe() {
+        return waitingForKeyframe;
+    }
+
+    /**
+     * Returns the estimated drain rate of the connection.
+     *
+     * @return bytes per millisecond, zero if not yet measured
+     */
+    public double getDrainRate() {
+        return drainRate;
+    }
+
+    /**
+     * Returns the bytes queued on the connection when last checked.
+     *
+     * @return bytes
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the highest number of bytes seen queued on the connection.
+     *
+     * @return bytes
+     */
+    public long getMaxQueuedBytes() {
+        return maxObservedBytes;
+    }
+
+    /**
+     * Returns the estimated time to drain the queue when last checked.
+     *
+     * @return milliseconds
+     */
+    public long getQueueDelay() {
+        return queueDelay;
+    }
+
+    public long getDroppedDisposable() {
+        return droppedDisposable;
+    }
+
+    public long getDroppedInterframes() {
+        return droppedInterframes;
+    }
+
+    public long getDroppedKeyframes() {
+        return droppedKeyframes;
+    }
+
+    /**
+     * Returns the total number of frames dropped.
+     *
+     * @return frames
+     */
+    public long getDroppedFrames() {
+        return droppedDisposable + droppedInterframes + droppedKeyframes;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    public long getLevelChanges() {
+        return levelChanges;
+    }
+
+}
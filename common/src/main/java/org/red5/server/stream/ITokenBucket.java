@@ -46,6 +46,15 @@ public interface ITokenBucket {
      */
     long acquireTokenBestEffort(long upperLimitCount);
 
+    /**
+     * Takes tokens whether or not they are available, leaving the bucket in debt. For traffic which must be sent but should still count
+     * against the limit.
+     *
+     * @param tokenCount
+     *            Number of tokens
+     */
+    void consume(long tokenCount);
+
     /**
      * Get the capacity of this bucket in Byte.
      *
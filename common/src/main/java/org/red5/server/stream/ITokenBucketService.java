@@ -0,0 +1,64 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import org.red5.server.api.IConnection;
+
+/**
+ * A service used to create and manage token buckets. Buckets form a hierarchy: tokens taken from a connection's bucket are also taken from
+ * the bucket of its scope and from the global bucket, so egress can be limited at each level.
+ *
+ * @author The Red5 Project
+ * @author Steven Gong (steven.gong@gmail.com)
+ */
+public interface ITokenBucketService {
+    /** Constant <code>KEY="TokenBucketService"</code> */
+    public static final String KEY = "TokenBucketService";
+
+    /** Constant <code>BEAN_NAME="tokenBucketService"</code> */
+    public static final String BEAN_NAME = "tokenBucketService";
+
+    /**
+     * Create a token bucket.
+     *
+     * @param capacity
+     *            Capacity of the bucket, in bytes.
+     * @param bytesPerSecond
+     *            Rate the bucket refills at, in bytes per second like the service's other rates.
+     * @return null if fail to create.
+     */
+    ITokenBucket createTokenBucket(long capacity, long bytesPerSecond);
+
+    /**
+     * Remove this bucket.
+     *
+     * @param bucket
+     *            Bucket to remove
+     */
+    void removeTokenBucket(ITokenBucket bucket);
+
+    /**
+     * Returns the egress bucket of a connection, creating it on first use. It draws on the buckets of the connection's scope and of the
+     * whole server.
+     *
+     * @param conn
+     *            Connection
+     * @return bucket
+     */
+    ITokenBucket getConnectionBucket(IConnection conn);
+
+    /**
+     * Adapts the rate of a connection's bucket to its measured round trip time, write queue depth and throughput. Cheap enough to call
+     * for every message; the rate is only re-evaluated periodically.
+     *
+     * @param conn
+     *            Connection
+     * @return true if the connection was found congested when last evaluated
+     */
+    boolean adapt(IConnection conn);
+}
@@ -34,6 +34,7 @@ import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IBroadcastStream;
 import org.red5.server.api.stream.IPlayItem;
 import org.red5.server.api.stream.IPlaylistSubscriberStream;
+import org.red5.server.api.stream.IStreamCapableConnection;
 import org.red5.server.api.stream.ISubscriberStream;
 import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
@@ -55,6 +56,7 @@ import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
 import org.red5.server.net.rtmp.event.Aggregate;
 import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.BaseEvent;
 import org.red5.server.net.rtmp.event.IRTMPEvent;
 import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.Ping;
@@ -67,6 +69,8 @@ import org.red5.server.net.rtmp.status.StatusCodes;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
+import org.red5.server.stream.trace.StreamLatencyTracer;
+import org.red5.server.stream.trace.TraceSample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -101,6 +105,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
 
     private IProviderService providerService;
 
+    private ITokenBucketService tokenBucketService;
+
     private Number streamId;
 
     /**
@@ -161,6 +167,22 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
      */
     private int maxSequentialPendingVideoFrames = 10;
 
+    /**
+     * Milliseconds of data queued for writing on the connection at which live video starts being dropped; zero to drop by the number of
+     * pending video frames instead
+     */
+    private int maxQueueDelay;
+
+    /**
+     * Bytes queued for writing on the connection at which whole groups of pictures are dropped, zero for no limit
+     */
+    private long maxQueuedBytes;
+
+    /**
+     * Drop controller driven by the connection's write queue, created on first use
+     */
+    private CongestionController congestionController;
+
     /**
      * the number of sequential video frames with > 0 pending frames
      */
@@ -259,6 +281,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         schedulingService = builder.schedulingService;
         consumerService = builder.consumerService;
         providerService = builder.providerService;
+        tokenBucketService = builder.tokenBucketService;
         // get the stream id
         streamId = subscriberStream.getStreamId();
     }
@@ -279,6 +302,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         //Required for play engine
         private IProviderService providerService;
 
+        //Optional, paces egress when set
+        private ITokenBucketService tokenBucketService;
+
         public Builder(ISubscriberStream subscriberStream, ISchedulingService schedulingService, IConsumerService consumerService, IProviderService providerService) {
             this.subscriberStream = subscriberStream;
             this.schedulingService = schedulingService;
@@ -286,6 +312,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             this.providerService = providerService;
         }
 
+        public Builder tokenBucketService(ITokenBucketService tokenBucketService) {
+            this.tokenBucketService = tokenBucketService;
+            return this;
+        }
+
         public PlayEngine build() {
             return new PlayEngine(this);
         }
@@ -445,6 +476,9 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                     // drop all frames up to the next keyframe
                     videoFrameDropper.reset(IFrameDropper.SEND_KEYFRAMES_CHECK);
                     waitingForKeyframe = true;
+                    if (congestionController != null) {
+                        congestionController.reset();
+                    }
                     log.debug("playItem: set waitingForKeyframe=true, SEND_KEYFRAMES_CHECK mode");
                     if (in instanceof IBroadcastScope) {
                         IBroadcastStream stream = (IBroadcastStream) ((IBroadcastScope) in).getClientBroadcastStream();
@@ -895,6 +929,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 msgInReference.set(null);
             }
             subscriberStream.setState(StreamState.CLOSED);
+            IStreamCapableConnection conn = subscriberStream.getConnection();
+            if (conn != null) {
+                // results of a traced stream stop following this subscriber
+                StreamLatencyTracer.getInstance().unsubscribed(subscriberStream.getBroadcastStreamPublishName(), conn.getSessionId());
+            }
             clearWaitJobs();
             releasePendingMessage();
             lastMessageTs = 0;
@@ -947,6 +986,15 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 // too many messages already queued on the connection
                 return false;
             }
+            // pace by the measured capacity of the connection, the message stays pending until there are tokens for it
+            if (tokenBucketService != null) {
+                IStreamCapableConnection conn = subscriberStream.getConnection();
+                if (conn != null) {
+                    tokenBucketService.adapt(conn);
+                    IoBuffer data = ((IStreamData<?>) message).getData();
+                    return data == null || tokenBucketService.getConnectionBucket(conn).acquireToken(data.limit(), 0);
+                }
+            }
             return true;
         } else {
             String itemName = "Undefined";
@@ -1090,8 +1138,20 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
      *            incoming RTMP message
      */
     private void sendMessage(RTMPMessage messageIn) {
+        sendMessage(messageIn, null);
+    }
+
+    /**
+     * Send an RTMP message, carrying a subscriber's latency trace sample.
+     *
+     * @param messageIn
+     *            incoming RTMP message
+     * @param trace
+     *            trace sample for the outgoing message or null
+     */
+    private void sendMessage(RTMPMessage messageIn, TraceSample trace) {
         IRTMPEvent eventIn = messageIn.getBody();
-        IRTMPEvent event;
+        BaseEvent event;
         switch (eventIn.getDataType()) {
             case Constants.TYPE_AGGREGATE:
                 event = new Aggregate(((Aggregate) eventIn).getData());
@@ -1106,6 +1166,7 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                 event = new Notify(((Notify) eventIn).getData());
                 break;
         }
+        event.setTraceSample(trace);
         // get the incoming event time
         int eventTime = eventIn.getTimestamp();
         // get the incoming event source type and set on the outgoing event
@@ -1641,6 +1702,11 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
             IRTMPEvent body = rtmpMessage.getBody();
             if (body instanceof IStreamData) {
                 final String subscribedStreamName = subscriberStream.getBroadcastStreamPublishName();
+                // follow a sampled packet of a traced stream to this subscriber
+                TraceSample trace = body instanceof BaseEvent ? ((BaseEvent) body).getTraceSample() : null;
+                if (trace != null) {
+                    trace = trace.fork(sessionId);
+                }
                 // the subscriber paused
                 if (subscriberStream.getState() == StreamState.PAUSED) {
                     if (log.isInfoEnabled() && shouldLogPacketDrop()) {
@@ -1693,7 +1759,27 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                 // which may trigger an OutOfMemory exception. To mitigate this, we check the size of
                                 // pending video messages and drop video packets until the queue is below the threshold.
                                 // only check for frame dropping if the codec supports it
-                                long pendingVideos = pendingVideoMessages();
+                                IStreamCapableConnection conn = subscriberStream.getConnection();
+                                // the bytes queued for writing on the connection, when the transport can tell
+                                long queuedBytes = maxQueueDelay > 0 ? conn.getPendingWriteBytes() : -1L;
+                                long pendingVideos = 0L;
+                                if (queuedBytes >= 0L) {
+                                    CongestionController congestion = getCongestionController();
+                                    if (!congestion.canSend((VideoData) body, queuedBytes, conn.getWrittenBytes(), System.currentTimeMillis())) {
+                                        droppedPacketsCount++;
+                                        if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+                                            log.info("Drop packet. Write queue congested. sessionId={} stream={} level={} queued={} delay={} dropped={}", new Object[] { sessionId, subscribedStreamName, congestion.getLevel(), queuedBytes, congestion.getQueueDelay(), droppedPacketsCount });
+                                        }
+                                        notifyInsufficientBandwidth();
+                                        return;
+                                    }
+                                } else {
+                                    pendingVideos = pendingVideoMessages();
+                                }
+                                // a congested link keeps the frame dropper from returning to sending all frames
+                                if (tokenBucketService != null && tokenBucketService.adapt(conn)) {
+                                    pendingVideos = Math.max(pendingVideos, 1L);
+                                }
                                 if (isTrace) {
                                     log.trace("Pending messages sessionId={} stream={} pending={} threshold={} sequential={} dropped={}", new Object[] { sessionId, subscribedStreamName, pendingVideos, maxPendingVideoFrames, numSequentialPendingVideoFrames, droppedPacketsCount });
                                 }
@@ -1717,7 +1803,8 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                     // reset number of sequential pending frames if 1 or 0 are pending
                                     numSequentialPendingVideoFrames = 0;
                                 }
-                                if (pendingVideos > maxPendingVideoFrames || numSequentialPendingVideoFrames > maxSequentialPendingVideoFrames) {
+                                // the frame count thresholds apply when the write queue cannot be checked
+                                if (queuedBytes < 0L && (pendingVideos > maxPendingVideoFrames || numSequentialPendingVideoFrames > maxSequentialPendingVideoFrames)) {
                                     droppedPacketsCount++;
                                     if (log.isInfoEnabled() && shouldLogPacketDrop()) {
                                         log.info("Drop packet. Pending above threshold. sessionId={} stream={} pending={} threshold={} sequential={} dropped={}", new Object[] { sessionId, subscribedStreamName, pendingVideos, maxPendingVideoFrames, numSequentialPendingVideoFrames, droppedPacketsCount });
@@ -1732,6 +1819,19 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                                     videoFrameDropper.dropPacket(rtmpMessage);
                                     return;
                                 }
+                                // drop rather than queue frames the connection has no capacity for
+                                if (tokenBucketService != null) {
+                                    IoBuffer data = ((VideoData) body).getData();
+                                    if (data != null && !tokenBucketService.getConnectionBucket(conn).acquireToken(data.limit(), 0)) {
+                                        droppedPacketsCount++;
+                                        if (log.isInfoEnabled() && shouldLogPacketDrop()) {
+                                            log.info("Drop packet. Failed to acquire token. sessionId={} stream={} dropped={}", sessionId, subscribedStreamName, droppedPacketsCount);
+                                        }
+                                        notifyInsufficientBandwidth();
+                                        videoFrameDropper.dropPacket(rtmpMessage);
+                                        return;
+                                    }
+                                }
                                 // we are ok to send, check if we should send buffered frame
                                 if (bufferedInterframeIdx > -1) {
                                     IVideoStreamCodec.FrameData fd = videoCodec.getInterframe(bufferedInterframeIdx++);
@@ -1763,9 +1863,16 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
                         rtmpMessage = RTMPMessage.build(body);
                     } else if (!receiveAudio) {
                         return;
+                    } else if (tokenBucketService != null) {
+                        // audio is never dropped, but counts against the connection so video only gets what is left
+                        IoBuffer data = ((AudioData) body).getData();
+                        IStreamCapableConnection conn = subscriberStream.getConnection();
+                        if (data != null && conn != null) {
+                            tokenBucketService.getConnectionBucket(conn).consume(data.limit());
+                        }
                     }
                 }
-                sendMessage(rtmpMessage);
+                sendMessage(rtmpMessage, trace);
             } else {
                 throw new RuntimeException(String.format("Expected IStreamData but got %s (type %s)", body.getClass(), body.getDataType()));
             }
@@ -1776,6 +1883,38 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         }
     }
 
+    /**
+     * Notifies the client about dropped frames, at most once per buffer check interval.
+     */
+    private void notifyInsufficientBandwidth() {
+        long now = System.currentTimeMillis();
+        if (bufferCheckInterval > 0 && now >= nextCheckBufferUnderrun) {
+            sendInsufficientBandwidthStatus(currentItem.get());
+            nextCheckBufferUnderrun = now + bufferCheckInterval;
+        }
+    }
+
+    /**
+     * Returns the write queue drop controller, creating it on first use.
+     *
+     * @return congestion controller
+     */
+    private CongestionController getCongestionController() {
+        if (congestionController == null) {
+            congestionController = new CongestionController(maxQueueDelay, maxQueuedBytes);
+        }
+        return congestionController;
+    }
+
+    /**
+     * Returns the write queue drop controller of this subscriber.
+     *
+     * @return congestion controller, or null if live video is not dropped by the write queue or nothing has been checked yet
+     */
+    public CongestionController getCongestion() {
+        return congestionController;
+    }
+
     /**
      * Get number of pending video messages
      *
@@ -2231,4 +2370,26 @@ public final class PlayEngine implements IFilter, IPushableConsumer, IPipeConnec
         this.maxSequentialPendingVideoFrames = maxSequentialPendingVideoFrames;
     }
 
+    /**
+     * Sets the milliseconds of data queued for writing on the connection at which live video starts being dropped. Disposable frames are
+     * dropped above this, interframes above twice and whole groups of pictures above four times this. Zero drops by the number of pending
+     * video frames instead, as do transports which cannot report their queued bytes.
+     *
+     * @param maxQueueDelay
+     *            milliseconds
+     */
+    public void setMaxQueueDelay(int maxQueueDelay) {
+        this.maxQueueDelay = maxQueueDelay;
+    }
+
+    /**
+     * Sets the bytes queued for writing on the connection at which whole groups of pictures are dropped regardless of the drain rate.
+     *
+     * @param maxQueuedBytes
+     *            bytes, zero for no limit
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
 }
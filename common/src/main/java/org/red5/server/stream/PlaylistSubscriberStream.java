@@ -21,6 +21,7 @@ import org.red5.server.api.statistics.IPlaylistSubscriberStreamStatistics;
 import org.red5.server.api.stream.IPlayItem;
 import org.red5.server.api.stream.IPlaylistController;
 import org.red5.server.api.stream.IPlaylistSubscriberStream;
+import org.red5.server.api.stream.IStreamCapableConnection;
 import org.red5.server.api.stream.IStreamAwareScopeHandler;
 import org.red5.server.api.stream.OperationNotSupportedException;
 import org.red5.server.api.stream.StreamState;
@@ -122,6 +123,16 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
      */
     private int maxSequentialPendingVideoFrames = 10;
 
+    /**
+     * see PlayEngine.maxQueueDelay
+     */
+    private int maxQueueDelay;
+
+    /**
+     * see PlayEngine.maxQueuedBytes
+     */
+    private long maxQueuedBytes;
+
     /**
      * Constructs a new PlaylistSubscriberStream.
      */
@@ -138,6 +149,9 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         engine.setMaxPendingVideoFrames(maxPendingVideoFrames);
         // set the max sequential pending video frames to the play engine
         engine.setMaxSequentialPendingVideoFrames(maxSequentialPendingVideoFrames);
+        // set the write queue limits for dropping live video
+        engine.setMaxQueueDelay(maxQueueDelay);
+        engine.setMaxQueuedBytes(maxQueuedBytes);
         return engine;
     }
 
@@ -196,7 +210,12 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
                     //try the parent
                     providerService = (IProviderService) scope.getParent().getContext().getBean(IProviderService.BEAN_NAME);
                 }
-                engine = new PlayEngine.Builder(this, schedulingService, consumerService, providerService).build();
+                // optional egress pacing
+                ITokenBucketService tokenBucketService = null;
+                if (ctx.hasBean(ITokenBucketService.BEAN_NAME)) {
+                    tokenBucketService = (ITokenBucketService) ctx.getBean(ITokenBucketService.BEAN_NAME);
+                }
+                engine = new PlayEngine.Builder(this, schedulingService, consumerService, providerService).tokenBucketService(tokenBucketService).build();
             } else {
                 throw new IllegalStateException("Scope was null on start playing");
             }
@@ -209,6 +228,9 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         engine.setMaxPendingVideoFrames(maxPendingVideoFrames);
         // set the max sequential pending video frames to the play engine
         engine.setMaxSequentialPendingVideoFrames(maxSequentialPendingVideoFrames);
+        // set the write queue limits for dropping live video
+        engine.setMaxQueueDelay(maxQueueDelay);
+        engine.setMaxQueuedBytes(maxQueuedBytes);
         // Start playback engine
         engine.start();
         // Notify subscribers on start
@@ -901,6 +923,24 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         return (buffered * 100.0) / buffer;
     }
 
+    /** {@inheritDoc} */
+    public long getPendingWriteBytes() {
+        IStreamCapableConnection conn = getConnection();
+        return conn != null ? conn.getPendingWriteBytes() : -1L;
+    }
+
+    /** {@inheritDoc} */
+    public long getDroppedVideoFrames() {
+        CongestionController congestion = engine != null ? engine.getCongestion() : null;
+        return congestion != null ? congestion.getDroppedFrames() : 0L;
+    }
+
+    /** {@inheritDoc} */
+    public long getDroppedVideoBytes() {
+        CongestionController congestion = engine != null ? engine.getCongestion() : null;
+        return congestion != null ? congestion.getDroppedBytes() : 0L;
+    }
+
     /**
      * <p>Setter for the field <code>maxPendingVideoFrames</code>.</p>
      *
@@ -921,6 +961,26 @@ public class PlaylistSubscriberStream extends AbstractClientStream implements IP
         this.maxSequentialPendingVideoFrames = maxSequentialPendingVideoFrames;
     }
 
+    /**
+     * <p>Setter for the field <code>maxQueueDelay</code>.</p>
+     *
+     * @param maxQueueDelay
+     *            milliseconds of queued data at which live video starts being dropped, zero to count pending video frames instead
+     */
+    public void setMaxQueueDelay(int maxQueueDelay) {
+        this.maxQueueDelay = maxQueueDelay;
+    }
+
+    /**
+     * <p>Setter for the field <code>maxQueuedBytes</code>.</p>
+     *
+     * @param maxQueuedBytes
+     *            queued bytes at which whole groups of pictures are dropped, zero for no limit
+     */
+    public void setMaxQueuedBytes(long maxQueuedBytes) {
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
     /** {@inheritDoc} */
     public String scheduleOnceJob(IScheduledJob job) {
         String jobName = schedulingService.addScheduledOnceJob(10, job);
@@ -31,6 +31,9 @@ import org.red5.server.net.rtmp.event.Notify;
 import org.red5.server.net.rtmp.event.VideoData;
 import org.red5.server.net.rtmp.message.Constants;
 import org.red5.server.stream.consumer.FileConsumer;
+import org.red5.server.stream.consumer.JournalFileConsumer;
+import org.red5.server.stream.consumer.RecordingJournal;
+import org.red5.server.stream.consumer.WebmFileConsumer;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
@@ -100,7 +103,8 @@ public class RecordingListener implements IRecordingListener {
         // get stream filename generator
         IStreamFilenameGenerator generator = (IStreamFilenameGenerator) ScopeUtils.getScopeService(scope, IStreamFilenameGenerator.class, DefaultStreamFilenameGenerator.class);
         // generate filename
-        String fileName = generator.generateFilename(scope, name, ".flv", GenerationType.RECORD);
+        // names ending in a webm extension are recorded as is, others as flv
+        String fileName = generator.generateFilename(scope, name, WebmFileConsumer.handles(name) ? null : ".flv", GenerationType.RECORD);
         File file = null;
         if (generator.resolvesToAbsolutePath()) {
             file = new File(fileName);
@@ -181,7 +185,19 @@ public class RecordingListener implements IRecordingListener {
                 keyFrameCache.removeKeyFrameMeta(file);
             }
             // get instance via spring
-            if (scope.getContext().hasBean("fileConsumer")) {
+            if (!isAppend && scope.getContext().hasBean("recordingJournal")) {
+                log.debug("Context contains a recording journal");
+                recordingConsumer = new JournalFileConsumer(scope, file, (RecordingJournal) scope.getContext().getBean("recordingJournal"));
+            } else if (WebmFileConsumer.handles(file.getName())) {
+                if (scope.getContext().hasBean("webmFileConsumer")) {
+                    log.debug("Context contains a webm file consumer");
+                    recordingConsumer = (FileConsumer) scope.getContext().getBean("webmFileConsumer");
+                    recordingConsumer.setScope(scope);
+                    recordingConsumer.setFile(file);
+                } else {
+                    recordingConsumer = new WebmFileConsumer(scope, file);
+                }
+            } else if (scope.getContext().hasBean("fileConsumer")) {
                 log.debug("Context contains a file consumer");
                 recordingConsumer = (FileConsumer) scope.getContext().getBean("fileConsumer");
                 recordingConsumer.setScope(scope);
@@ -228,7 +228,12 @@ public class SingleItemSubscriberStream extends AbstractClientStream implements
                     //try the parent
                     providerService = (IProviderService) scope.getParent().getContext().getBean(IProviderService.BEAN_NAME);
                 }
-                engine = new PlayEngine.Builder(this, schedulingService, consumerService, providerService).build();
+                // optional egress pacing
+                ITokenBucketService tokenBucketService = null;
+                if (ctx.hasBean(ITokenBucketService.BEAN_NAME)) {
+                    tokenBucketService = (ITokenBucketService) ctx.getBean(ITokenBucketService.BEAN_NAME);
+                }
+                engine = new PlayEngine.Builder(this, schedulingService, consumerService, providerService).tokenBucketService(tokenBucketService).build();
             } else {
                 log.info("Scope was null on start");
             }
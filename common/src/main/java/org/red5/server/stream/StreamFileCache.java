@@ -0,0 +1,435 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.red5.server.api.scope.IScope;
+import org.red5.server.jmx.mxbeans.StreamFileCacheMXBean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Caches the outcome of resolving a stream name in a scope to a VOD file, including names which resolved to nothing. Live stream names
+ * are looked up as VOD files first, so without this every subscribe costs several filesystem calls, which hurts on network mounts.
+ * Resolutions expire after a short time, missing files sooner than found ones, and are dropped early when a file is created or deleted in
+ * the directory they point at. Directory events are not delivered for changes made by other hosts on network filesystems, so there the
+ * expiry is what bounds staleness.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@ManagedResource(objectName = "org.red5.server:name=streamFileCache,type=StreamFileCache")
+public class StreamFileCache implements StreamFileCacheMXBean, InitializingBean, DisposableBean {
+
+    private static Logger log = LoggerFactory.getLogger(StreamFileCache.class);
+
+    // milliseconds a resolved file is trusted
+    private long positiveTtl = 30000L;
+
+    // milliseconds a missing file is trusted
+    private long negativeTtl = 2000L;
+
+    private long maxEntries = 10000L;
+
+    // whether to watch the directories of cached resolutions
+    private boolean watchEnabled = true;
+
+    private Cache<String, Resolution> cache;
+
+    private WatchService watchService;
+
+    private Thread watcher;
+
+    // cache keys by watched directory
+    private final ConcurrentMap<Path, Set<String>> directories = new ConcurrentHashMap<>();
+
+    private final LongAdder negativeHits = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    /** {@inheritDoc} */
+    public void afterPropertiesSet() throws Exception {
+        cache = Caffeine.newBuilder().maximumSize(maxEntries).expireAfter(new Expiry<String, Resolution>() {
+
+            @Override
+            public long expireAfterCreate(String key, Resolution value, long currentTime) {
+                return TimeUnit.MILLISECONDS.toNanos(value.isFound() ? positiveTtl : negativeTtl);
+            }
+
+            @Override
+            public long expireAfterUpdate(String key, Resolution value, long currentTime, long currentDuration) {
+                return expireAfterCreate(key, value, currentTime);
+            }
+
+            @Override
+            public long expireAfterRead(String key, Resolution value, long currentTime, long currentDuration) {
+                return currentDuration;
+            }
+
+        }).recordStats().build();
+        if (watchEnabled) {
+            try {
+                watchService = FileSystems.getDefault().newWatchService();
+                watcher = new Thread(this::watch, "StreamFileCacheWatcher");
+                watcher.setDaemon(true);
+                watcher.start();
+            } catch (IOException e) {
+                log.warn("Directory watching is not available, resolutions will only expire", e);
+            }
+        }
+        log.debug("Stream file cache - positive ttl: {} negative ttl: {} max entries: {}", positiveTtl, negativeTtl, maxEntries);
+    }
+
+    /** {@inheritDoc} */
+    public void destroy() throws Exception {
+        if (watchService != null) {
+            watchService.close();
+            watchService = null;
+        }
+        if (watcher != null) {
+            watcher.interrupt();
+            watcher = null;
+        }
+        directories.clear();
+        if (cache != null) {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Returns the cache key of a stream name in a scope.
+     *
+     * @param scope
+     *            scope
+     * @param name
+     *            stream name as requested
+     * @return key
+     */
+    public static String getKey(IScope scope, String name) {
+        return scope.getContextPath() + '/' + name;
+    }
+
+    /**
+     * Returns the cached resolution of a stream name.
+     *
+     * @param scope
+     *            scope
+     * @param name
+     *            stream name
+     * @return resolution or null if there is none or it expired
+     */
+    public Resolution get(IScope scope, String name) {
+        return get(getKey(scope, name));
+    }
+
+    /**
+     * Returns the cached resolution for a key.
+     *
+     * @param key
+     *            key
+     * @return resolution or null if there is none or it expired
+     */
+    public Resolution get(String key) {
+        Resolution resolution = cache.getIfPresent(key);
+        if (resolution != null && !resolution.isFound()) {
+            negativeHits.increment();
+        }
+        return resolution;
+    }
+
+    /**
+     * Caches the resolution of a stream name.
+     *
+     * @param scope
+     *            scope
+     * @param name
+     *            stream name
+     * @param file
+     *            resolved file or null if the stream name did not resolve to an existing file
+     * @param candidate
+     *            file which was looked for, used to watch its directory when the file was not found; may be null
+     */
+    public void put(IScope scope, String name, File file, File candidate) {
+        put(getKey(scope, name), file, candidate);
+    }
+
+    /**
+     * Caches a resolution.
+     *
+     * @param key
+     *            key
+     * @param file
+     *            resolved file or null if the key did not resolve to an existing file
+     * @param candidate
+     *            file which was looked for, used to watch its directory when the file was not found; may be null
+     */
+    public void put(String key, File file, File candidate) {
+        Path directory = null;
+        String fileName = null;
+        File target = file != null ? file : candidate;
+        if (target != null) {
+            Path path = target.getAbsoluteFile().toPath();
+            directory = path.getParent();
+            fileName = String.valueOf(path.getFileName());
+        }
+        cache.put(key, new Resolution(file, directory, fileName));
+        if (directory != null && watchService != null) {
+            Set<String> keys = directories.computeIfAbsent(directory, this::register);
+            if (keys != null) {
+                keys.add(key);
+                if (keys.size() > maxEntries) {
+                    prune(keys);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the resolution for a key.
+     *
+     * @param key
+     *            key
+     */
+    public void invalidate(String key) {
+        cache.invalidate(key);
+    }
+
+    private Set<String> register(Path directory) {
+        try {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_DELETE);
+            log.debug("Watching {}", directory);
+            return ConcurrentHashMap.newKeySet();
+        } catch (ClosedWatchServiceException | IOException e) {
+            // the directory may not exist yet, expiry covers it
+            log.trace("Could not watch {}", directory, e);
+        }
+        return null;
+    }
+
+    private void prune(Set<String> keys) {
+        keys.removeIf(key -> !cache.asMap().containsKey(key));
+    }
+
+    private void watch() {
+        WatchService service = watchService;
+        while (service != null && !Thread.currentThread().isInterrupted()) {
+            WatchKey watchKey;
+            try {
+                watchKey = service.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+            Path directory = (Path) watchKey.watchable();
+            for (WatchEvent<?> event : watchKey.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    invalidate(directory, null);
+                } else {
+                    invalidate(directory, String.valueOf(((Path) event.context()).getFileName()));
+                }
+            }
+            if (!watchKey.reset()) {
+                // directory is gone
+                invalidate(directory, null);
+                directories.remove(directory);
+            }
+        }
+        log.debug("Watcher exiting");
+    }
+
+    /**
+     * Drops the resolutions pointing at a file in a directory.
+     *
+     * @param directory
+     *            directory
+     * @param fileName
+     *            name of the file which changed or null for every file
+     */
+    void invalidate(Path directory, String fileName) {
+        Set<String> keys = directories.get(directory);
+        if (keys != null) {
+            for (Iterator<String> it = keys.iterator(); it.hasNext();) {
+                String key = it.next();
+                Resolution resolution = cache.asMap().get(key);
+                if (resolution == null) {
+                    it.remove();
+                } else if (fileName == null || fileName.equals(resolution.fileName)) {
+                    log.trace("Invalidating {} for change of {} in {}", key, fileName, directory);
+                    invalidations.increment();
+                    cache.invalidate(key);
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    public long getPositiveTtl() {
+        return positiveTtl;
+    }
+
+    /**
+     * Sets how long a resolved file is trusted.
+     *
+     * @param positiveTtl
+     *            milliseconds
+     */
+    public void setPositiveTtl(long positiveTtl) {
+        this.positiveTtl = positiveTtl;
+    }
+
+    /** {@inheritDoc} */
+    public long getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    /**
+     * Sets how long a missing file is trusted. A file written under a name which was looked up within this time is only found once it
+     * expires, unless its directory is watched.
+     *
+     * @param negativeTtl
+     *            milliseconds
+     */
+    public void setNegativeTtl(long negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+    /** {@inheritDoc} */
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    public boolean isWatchEnabled() {
+        return watchEnabled;
+    }
+
+    public void setWatchEnabled(boolean watchEnabled) {
+        this.watchEnabled = watchEnabled;
+    }
+
+    /** {@inheritDoc} */
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+
+    /** {@inheritDoc} */
+    public long getHits() {
+        return cache.stats().hitCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    /** {@inheritDoc} */
+    public long getMisses() {
+        return cache.stats().missCount();
+    }
+
+    /** {@inheritDoc} */
+    public double getHitRatio() {
+        CacheStats stats = cache.stats();
+        return stats.requestCount() > 0L ? stats.hitRate() : 0d;
+    }
+
+    /** {@inheritDoc} */
+    public long getEvictions() {
+        return cache.stats().evictionCount();
+    }
+
+    /** {@inheritDoc} */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /** {@inheritDoc} */
+    public int getWatchedDirectories() {
+        return directories.size();
+    }
+
+    /** {@inheritDoc} */
+    public void invalidateAll() {
+        cache.invalidateAll();
+        directories.values().forEach(Set::clear);
+    }
+
+    /**
+     * Outcome of resolving a stream name.
+     */
+    public static final class Resolution {
+
+        private final File file;
+
+        private final Path directory;
+
+        private final String fileName;
+
+        Resolution(File file, Path directory, String fileName) {
+            this.file = file;
+            this.directory = directory;
+            this.fileName = fileName;
+        }
+
+        /**
+         * Returns the resolved file.
+         *
+         * @return file or null if the name did not resolve to an existing file
+         */
+        public File getFile() {
+            return file;
+        }
+
+        public boolean isFound() {
+            return file != null;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Returns the file which was looked for.
+         *
+         * @return file, or null if none was looked for
+         */
+        public File getCandidate() {
+            return directory != null ? directory.resolve(fileName).toFile() : null;
+        }
+
+    }
+
+}
@@ -0,0 +1,172 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.bandwidth;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket of a single connection whose speed follows the state of the link. Once per interval the connection's round trip time, write
+ * queue depth and the bytes it actually delivered are fed in: when the queue grows or the round trip time rises well above the lowest seen,
+ * the link is congested and the speed drops to a fraction of the measured throughput; otherwise it climbs back additively towards the
+ * configured maximum, or to unlimited once the limit is no longer close to the traffic.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class AdaptiveTokenBucket extends TokenBucket {
+
+    /**
+     * Factor applied to the throughput on congestion
+     */
+    private static final double DECREASE = 0.85d;
+
+    /**
+     * Fraction of the maximum added per interval without congestion
+     */
+    private static final double INCREASE = 0.05d;
+
+    /**
+     * Round trip time above twice the lowest seen, plus this many milliseconds, is taken as queueing in the network
+     */
+    private static final int RTT_SLACK = 20;
+
+    private final double maxSpeed;
+
+    private final double minSpeed;
+
+    private final long interval;
+
+    private final long burstMillis;
+
+    private final long initialCapacity;
+
+    private final long maxPending;
+
+    private final AtomicLong lastAdapt = new AtomicLong();
+
+    private volatile long lastWritten;
+
+    private volatile int minRtt = -1;
+
+    private volatile double throughput;
+
+    private volatile boolean congested;
+
+    /**
+     * Creates a bucket.
+     *
+     * @param capacity
+     *            capacity in bytes at the highest speed
+     * @param burstMillis
+     *            milliseconds of traffic the bucket holds at a reduced speed
+     * @param maxSpeed
+     *            highest speed in bytes per millisecond, zero or less for unlimited
+     * @param minSpeed
+     *            lowest speed congestion may reduce the bucket to, in bytes per millisecond
+     * @param interval
+     *            milliseconds between adaptations
+     * @param maxPending
+     *            write queue depth, in messages, above which the connection is congested
+     * @param parent
+     *            parent bucket or null
+     * @param scheduler
+     *            scheduler for non blocking callbacks or null
+     */
+    public AdaptiveTokenBucket(long capacity, long burstMillis, double maxSpeed, double minSpeed, long interval, long maxPending, TokenBucket parent, ScheduledExecutorService scheduler) {
+        super(capacity, maxSpeed, parent, scheduler);
+        this.initialCapacity = capacity;
+        this.burstMillis = burstMillis;
+        this.maxSpeed = maxSpeed;
+        this.minSpeed = Math.max(1d, minSpeed);
+        this.interval = interval;
+        this.maxPending = maxPending;
+    }
+
+    /**
+     * Adapts the speed to the state of the connection, at most once per interval.
+     *
+     * @param now
+     *            current time in milliseconds
+     * @param rtt
+     *            last round trip time in milliseconds, negative if unknown
+     * @param pending
+     *            messages waiting in the connection's write queue
+     * @param written
+     *            total bytes written by the connection
+     */
+    public void adapt(long now, int rtt, long pending, long written) {
+        long last = lastAdapt.get();
+        if (now - last < interval || !lastAdapt.compareAndSet(last, now)) {
+            return;
+        }
+        long delivered = written - lastWritten;
+        lastWritten = written;
+        if (last == 0L) {
+            // the first call only sets the baseline
+            return;
+        }
+        throughput = Math.max(0L, delivered) / (double) (now - last);
+        if (rtt > 0 && (minRtt <= 0 || rtt < minRtt)) {
+            minRtt = rtt;
+        }
+        congested = pending > maxPending || (rtt > 0 && minRtt > 0 && rtt > minRtt * 2 + RTT_SLACK);
+        double current = getSpeed();
+        double next = current;
+        if (congested) {
+            // the link drains at about the measured throughput; send a little less so the queue empties
+            double base = current > 0d ? Math.min(current, throughput > 0d ? throughput : current) : throughput;
+            next = Math.max(minSpeed, base * DECREASE);
+        } else if (current > 0d) {
+            if (maxSpeed > 0d) {
+                next = Math.min(maxSpeed, current + Math.max(minSpeed, maxSpeed * INCREASE));
+            } else if (current > throughput * 4d) {
+                // the limit is far above the traffic, stop limiting
+                next = 0d;
+            } else {
+                next = current + Math.max(minSpeed, current * INCREASE);
+            }
+        }
+        if (next != current) {
+            // the capacity follows the speed so a reduced bucket holds the same time worth of traffic
+            setCapacity(next > 0d && next != maxSpeed ? (long) (next * burstMillis) : initialCapacity);
+            setSpeed(next);
+        }
+    }
+
+    /**
+     * Returns whether the last adaptation found the connection congested.
+     *
+     * @return true if congested
+     */
+    public boolean isCongested() {
+        return congested;
+    }
+
+    /**
+     * Returns the throughput measured over the last interval.
+     *
+     * @return bytes per millisecond
+     */
+    public double getThroughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the lowest round trip time seen.
+     *
+     * @return milliseconds, negative if unknown
+     */
+    public int getMinRtt() {
+        return minRtt;
+    }
+
+    public double getMaxSpeed() {
+        return maxSpeed;
+    }
+
+}
@@ -0,0 +1,330 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.bandwidth;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.red5.server.stream.ITokenBucket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Lock free token bucket, optionally drawing on a parent bucket so that buckets form a hierarchy.
+ * <p>
+ * The bucket is kept as a single "theoretical arrival time" in the style of the generic cell rate algorithm: the instant at which the bucket
+ * will be full again. Taking tokens moves it forward by the time their refill takes, and a take is allowed while it stays within one
+ * bucket's worth of time from now, so acquiring is a single compare and set with no refill thread. A request larger than the capacity is
+ * granted when the bucket is full, leaving it in debt, so that large key frames cannot stall a stream forever.
+ * <p>
+ * A speed of zero or less means the bucket does not limit, though it still passes takes on to its parent.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class TokenBucket implements ITokenBucket {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucket.class);
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    /**
+     * Longest a waiting acquisition parks before checking for a reset or a change of speed
+     */
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10L);
+
+    private final TokenBucket parent;
+
+    private final ScheduledExecutorService scheduler;
+
+    private volatile long capacity;
+
+    /**
+     * Bytes per millisecond; zero or less for unlimited
+     */
+    private volatile double speed;
+
+    /**
+     * Instant, in {@link System#nanoTime()}, at which the bucket is full again
+     */
+    private final AtomicLong fullAt = new AtomicLong(System.nanoTime());
+
+    /**
+     * Incremented on reset, to fail waiting acquisitions
+     */
+    private final AtomicInteger generation = new AtomicInteger();
+
+    private final Set<PendingCallback> callbacks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Creates a bucket.
+     *
+     * @param capacity
+     *            capacity in bytes
+     * @param speed
+     *            bytes per millisecond, zero or less for unlimited
+     * @param parent
+     *            parent bucket or null
+     * @param scheduler
+     *            scheduler for non blocking callbacks, if null callbacks are not supported
+     */
+    public TokenBucket(long capacity, double speed, TokenBucket parent, ScheduledExecutorService scheduler) {
+        this.capacity = Math.max(1L, capacity);
+        this.speed = speed;
+        this.parent = parent;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Time in nanoseconds to refill the given number of tokens.
+     */
+    private static long refillNanos(long tokens, double speed) {
+        return (long) (tokens * NANOS_PER_MILLI / speed);
+    }
+
+    /**
+     * Takes tokens from this bucket only.
+     *
+     * @return nanoseconds the take moved the bucket by, so it can be returned; -1 if there were not enough tokens
+     */
+    private long take(long tokens) {
+        double currentSpeed = speed;
+        if (currentSpeed <= 0d) {
+            return 0L;
+        }
+        long cost = refillNanos(tokens, currentSpeed);
+        long burst = refillNanos(capacity, currentSpeed);
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long base = current - now > 0 ? current : now;
+            // allowed within one bucket's worth of time, or always when full
+            if (base + cost - now > burst && base != now) {
+                return -1L;
+            }
+            if (fullAt.compareAndSet(current, base + cost)) {
+                return cost;
+            }
+        }
+    }
+
+    /**
+     * Tries to take tokens from this bucket and every ancestor, all or nothing.
+     *
+     * @param tokens
+     *            number of tokens
+     * @return true if taken
+     */
+    public boolean tryAcquire(long tokens) {
+        long cost = take(tokens);
+        if (cost < 0L) {
+            return false;
+        }
+        if (parent != null && !parent.tryAcquire(tokens)) {
+            fullAt.addAndGet(-cost);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Takes tokens from this bucket and every ancestor whether or not they are available, leaving buckets in debt. For traffic which must
+     * be sent but should still count against the limits.
+     *
+     * @param tokens
+     *            number of tokens
+     */
+    @Override
+    public void consume(long tokens) {
+        double currentSpeed = speed;
+        if (currentSpeed > 0d) {
+            long cost = refillNanos(tokens, currentSpeed);
+            long now = System.nanoTime();
+            fullAt.accumulateAndGet(now, (current, time) -> (current - time > 0 ? current : time) + cost);
+        }
+        if (parent != null) {
+            parent.consume(tokens);
+        }
+    }
+
+    /**
+     * Returns the number of tokens currently available in this bucket and its ancestors.
+     *
+     * @return available tokens
+     */
+    public long getAvailable() {
+        long available = Long.MAX_VALUE;
+        double currentSpeed = speed;
+        if (currentSpeed > 0d) {
+            long debt = Math.max(0L, fullAt.get() - System.nanoTime());
+            available = Math.max(0L, capacity - (long) (debt * currentSpeed / NANOS_PER_MILLI));
+        }
+        return parent != null ? Math.min(available, parent.getAvailable()) : available;
+    }
+
+    /**
+     * Returns the time until the given number of tokens should be available in this bucket and its ancestors.
+     *
+     * @param tokens
+     *            number of tokens
+     * @return nanoseconds, zero if available now
+     */
+    public long getDelayNanos(long tokens) {
+        long delay = 0L;
+        double currentSpeed = speed;
+        if (currentSpeed > 0d) {
+            long now = System.nanoTime();
+            long debt = Math.max(0L, fullAt.get() - now);
+            // oversize requests wait for a full bucket
+            delay = tokens >= capacity ? debt : Math.max(0L, debt + refillNanos(tokens, currentSpeed) - refillNanos(capacity, currentSpeed));
+        }
+        return parent != null ? Math.max(delay, parent.getDelayNanos(tokens)) : delay;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean acquireToken(long tokenCount, long wait) {
+        if (tryAcquire(tokenCount)) {
+            return true;
+        }
+        if (wait == 0L) {
+            return false;
+        }
+        final int gen = generation.get();
+        final long deadline = wait > 0L ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(wait) : Long.MAX_VALUE;
+        do {
+            long park = Math.min(Math.max(getDelayNanos(tokenCount), 100000L), MAX_PARK_NANOS);
+            if (wait > 0L) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0L) {
+                    return false;
+                }
+                park = Math.min(park, remaining);
+            }
+            LockSupport.parkNanos(this, park);
+            if (Thread.currentThread().isInterrupted() || generation.get() != gen) {
+                return false;
+            }
+        } while (!tryAcquire(tokenCount));
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean acquireTokenNonblocking(long tokenCount, ITokenBucketCallback callback) {
+        if (tryAcquire(tokenCount)) {
+            return true;
+        }
+        if (callback != null && scheduler != null) {
+            PendingCallback pending = new PendingCallback(callback, tokenCount);
+            callbacks.add(pending);
+            pending.future = scheduler.schedule(pending, Math.max(getDelayNanos(tokenCount), 100000L), TimeUnit.NANOSECONDS);
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long acquireTokenBestEffort(long upperLimitCount) {
+        long tokens;
+        do {
+            tokens = Math.min(upperLimitCount, getAvailable());
+        } while (tokens > 0L && !tryAcquire(tokens));
+        return Math.max(0L, tokens);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getSpeed() {
+        return speed;
+    }
+
+    /**
+     * Changes the capacity.
+     *
+     * @param capacity
+     *            capacity in bytes
+     */
+    protected void setCapacity(long capacity) {
+        this.capacity = Math.max(1L, capacity);
+    }
+
+    /**
+     * Changes the refill speed. Tokens already taken keep their place in the bucket.
+     *
+     * @param speed
+     *            bytes per millisecond, zero or less for unlimited
+     */
+    public void setSpeed(double speed) {
+        this.speed = speed;
+    }
+
+    public TokenBucket getParent() {
+        return parent;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void reset() {
+        generation.incrementAndGet();
+        fullAt.set(System.nanoTime());
+        for (PendingCallback pending : callbacks) {
+            if (callbacks.remove(pending)) {
+                ScheduledFuture<?> future = pending.future;
+                if (future != null) {
+                    future.cancel(false);
+                }
+                try {
+                    pending.callback.reset(this, pending.tokenCount);
+                } catch (Exception e) {
+                    log.warn("Exception in token bucket callback reset", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Callback waiting for tokens to become available.
+     */
+    private final class PendingCallback implements Runnable {
+
+        final ITokenBucketCallback callback;
+
+        final long tokenCount;
+
+        volatile ScheduledFuture<?> future;
+
+        PendingCallback(ITokenBucketCallback callback, long tokenCount) {
+            this.callback = callback;
+            this.tokenCount = tokenCount;
+        }
+
+        public void run() {
+            if (callbacks.remove(this)) {
+                try {
+                    callback.available(TokenBucket.this, tokenCount);
+                } catch (Exception e) {
+                    log.warn("Exception in token bucket callback", e);
+                }
+            }
+        }
+
+    }
+
+}
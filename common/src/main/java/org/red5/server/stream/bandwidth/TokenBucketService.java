@@ -0,0 +1,264 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.bandwidth;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.red5.server.api.IConnection;
+import org.red5.server.api.persistence.IPersistable;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.stream.ITokenBucket;
+import org.red5.server.stream.ITokenBucketService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+
+/**
+ * Hierarchical token bucket service for egress: a global bucket, one per scope drawing on it and one per connection drawing on its
+ * scope's. Connection buckets are {@link AdaptiveTokenBucket adaptive}, following the round trip time, write queue depth and throughput
+ * of their connection, so a congested subscriber is slowed down and has frames dropped before its write queue grows. Rates are in bytes
+ * per second, zero for unlimited; with every rate unlimited only the adaptation limits a connection.
+ * <p>
+ * Scope and connection buckets are kept as transient attributes of their scope and connection, so they go away with them.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class TokenBucketService implements ITokenBucketService, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenBucketService.class);
+
+    private static final String BUCKET_ATTRIBUTE = IPersistable.TRANSIENT_PREFIX + "_tokenBucket";
+
+    private long globalRate;
+
+    private long scopeRate;
+
+    private long connectionRate;
+
+    private long minConnectionRate = 16384L;
+
+    private long burstMillis = 1000L;
+
+    private boolean adaptive = true;
+
+    private long adaptInterval = 1000L;
+
+    private long maxPendingMessages = 32L;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "TokenBucketService");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile TokenBucket globalBucket;
+
+    private static double speed(long bytesPerSecond) {
+        return bytesPerSecond / 1000d;
+    }
+
+    private long capacity(long bytesPerSecond) {
+        // unlimited buckets still need a capacity for best effort acquisition
+        return bytesPerSecond > 0L ? Math.max(1L, bytesPerSecond * burstMillis / 1000L) : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the server wide bucket.
+     *
+     * @return global bucket
+     */
+    public TokenBucket getGlobalBucket() {
+        TokenBucket bucket = globalBucket;
+        if (bucket == null) {
+            synchronized (this) {
+                if ((bucket = globalBucket) == null) {
+                    globalBucket = bucket = new TokenBucket(capacity(globalRate), speed(globalRate), null, scheduler);
+                }
+            }
+        }
+        return bucket;
+    }
+
+    /**
+     * Returns the bucket of a scope, creating it on first use.
+     *
+     * @param scope
+     *            scope
+     * @return scope bucket, or the global bucket if the scope is null
+     */
+    public TokenBucket getScopeBucket(IScope scope) {
+        if (scope == null) {
+            return getGlobalBucket();
+        }
+        Object bucket = scope.getAttribute(BUCKET_ATTRIBUTE);
+        if (bucket == null) {
+            TokenBucket created = new TokenBucket(capacity(scopeRate), speed(scopeRate), getGlobalBucket(), scheduler);
+            Object existing = scope.setAttributeIfAbsent(BUCKET_ATTRIBUTE, created);
+            bucket = existing != null ? existing : created;
+        }
+        return (TokenBucket) bucket;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public AdaptiveTokenBucket getConnectionBucket(IConnection conn) {
+        Object bucket = conn.getAttribute(BUCKET_ATTRIBUTE);
+        if (bucket == null) {
+            AdaptiveTokenBucket created = new AdaptiveTokenBucket(capacity(connectionRate), burstMillis, speed(connectionRate), speed(minConnectionRate), adaptInterval, maxPendingMessages, getScopeBucket(conn.getScope()), scheduler);
+            Object existing = conn.setAttributeIfAbsent(BUCKET_ATTRIBUTE, created);
+            bucket = existing != null ? existing : created;
+            if (log.isDebugEnabled()) {
+                log.debug("Token bucket for {} capacity: {} rate: {}", conn.getSessionId(), created.getCapacity(), connectionRate);
+            }
+        }
+        return (AdaptiveTokenBucket) bucket;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean adapt(IConnection conn) {
+        if (adaptive) {
+            AdaptiveTokenBucket bucket = getConnectionBucket(conn);
+            bucket.adapt(System.currentTimeMillis(), conn.getLastPingTime(), conn.getPendingMessages(), conn.getWrittenBytes());
+            return bucket.isCongested();
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ITokenBucket createTokenBucket(long capacity, long bytesPerSecond) {
+        return new TokenBucket(capacity, speed(bytesPerSecond), getGlobalBucket(), scheduler);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeTokenBucket(ITokenBucket bucket) {
+        bucket.reset();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Sets the server wide egress limit.
+     *
+     * @param globalRate
+     *            bytes per second, zero for unlimited
+     */
+    public void setGlobalRate(long globalRate) {
+        this.globalRate = globalRate;
+    }
+
+    public long getGlobalRate() {
+        return globalRate;
+    }
+
+    /**
+     * Sets the egress limit of each scope.
+     *
+     * @param scopeRate
+     *            bytes per second, zero for unlimited
+     */
+    public void setScopeRate(long scopeRate) {
+        this.scopeRate = scopeRate;
+    }
+
+    public long getScopeRate() {
+        return scopeRate;
+    }
+
+    /**
+     * Sets the egress limit of each connection, the ceiling adaptation climbs back to.
+     *
+     * @param connectionRate
+     *            bytes per second, zero for unlimited
+     */
+    public void setConnectionRate(long connectionRate) {
+        this.connectionRate = connectionRate;
+    }
+
+    public long getConnectionRate() {
+        return connectionRate;
+    }
+
+    /**
+     * Sets the lowest rate congestion may reduce a connection to.
+     *
+     * @param minConnectionRate
+     *            bytes per second
+     */
+    public void setMinConnectionRate(long minConnectionRate) {
+        this.minConnectionRate = minConnectionRate;
+    }
+
+    public long getMinConnectionRate() {
+        return minConnectionRate;
+    }
+
+    /**
+     * Sets how many milliseconds of traffic at the full rate a bucket holds.
+     *
+     * @param burstMillis
+     *            milliseconds
+     */
+    public void setBurstMillis(long burstMillis) {
+        this.burstMillis = burstMillis;
+    }
+
+    public long getBurstMillis() {
+        return burstMillis;
+    }
+
+    /**
+     * Sets whether connection rates adapt to the state of the link.
+     *
+     * @param adaptive
+     *            true to adapt
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Sets the milliseconds between adaptations of a connection's rate.
+     *
+     * @param adaptInterval
+     *            milliseconds
+     */
+    public void setAdaptInterval(long adaptInterval) {
+        this.adaptInterval = adaptInterval;
+    }
+
+    public long getAdaptInterval() {
+        return adaptInterval;
+    }
+
+    /**
+     * Sets the write queue depth above which a connection is considered congested.
+     *
+     * @param maxPendingMessages
+     *            messages
+     */
+    public void setMaxPendingMessages(long maxPendingMessages) {
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    public long getMaxPendingMessages() {
+        return maxPendingMessages;
+    }
+
+}
@@ -0,0 +1,279 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.VideoCodec;
+import org.red5.codec.VideoFrameType;
+import org.red5.codec.VideoPacketType;
+import org.red5.io.ITag;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.messaging.IMessage;
+import org.red5.server.messaging.IPipe;
+import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.message.RTMPMessage;
+import org.red5.server.stream.message.ResetMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Base of the consumers which write each tag on the pushing thread, without a queue of their own. Pushed media is rebased to start at
+ * zero, video is held back until a key frame when asked to, and everything from opening to closing the output happens under one lock, so
+ * a timestamp reset or an uninit never lands in the middle of a write.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public abstract class AbstractRecordingConsumer extends FileConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(AbstractRecordingConsumer.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    protected String mode = "none";
+
+    private int startTimestamp = -1;
+
+    private boolean initialized;
+
+    private boolean waitForVideoKeyframe = true;
+
+    private boolean gotKeyFrame;
+
+    // decoder configuration of the stream from before the recording started
+    protected ITag videoConfigurationTag, audioConfigurationTag;
+
+    /**
+     * Default ctor
+     */
+    protected AbstractRecordingConsumer() {
+    }
+
+    /**
+     * Creates the consumer.
+     *
+     * @param scope
+     *            Scope of consumer
+     * @param file
+     *            File
+     */
+    protected AbstractRecordingConsumer(IScope scope, File file) {
+        super(scope, file);
+    }
+
+    /**
+     * Opens the output on the first pushed tag, according to the mode.
+     *
+     * @param file
+     *            file recorded to, or null if the consumer is uninitialized
+     * @throws IOException
+     *             if the output cannot be opened
+     */
+    protected abstract void open(File file) throws IOException;
+
+    /**
+     * Returns whether there is an output to write to.
+     *
+     * @return true once opened for recording
+     */
+    protected abstract boolean isOpen();
+
+    /**
+     * Writes a tag to the output.
+     *
+     * @param dataType
+     *            tag type
+     * @param timestamp
+     *            time since the recording started
+     * @param data
+     *            tag body, not to be changed
+     * @throws IOException
+     *             if the tag cannot be written
+     */
+    protected abstract void write(byte dataType, int timestamp, IoBuffer data) throws IOException;
+
+    /**
+     * Closes the output, if it was opened.
+     */
+    protected abstract void close();
+
+    /**
+     * Returns whether tags of a type are recorded.
+     *
+     * @param dataType
+     *            tag type
+     * @return true if recorded
+     */
+    protected boolean accepts(byte dataType) {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Push message through pipe
+     */
+    @Override
+    public void pushMessage(IPipe pipe, IMessage message) throws IOException {
+        if (message instanceof RTMPMessage) {
+            IRTMPEvent msg = ((RTMPMessage) message).getBody();
+            if (msg instanceof IStreamData && accepts(msg.getDataType())) {
+                lock.lock();
+                try {
+                    if (!initialized) {
+                        initialized = true;
+                        log.debug("Init: {}", mode);
+                        open(getFile());
+                        // configuration written ahead of the media lets the first frame decode
+                        gotKeyFrame = isOpen() && videoConfigurationTag != null;
+                        log.debug("Init - complete");
+                    }
+                    if (!isOpen()) {
+                        return;
+                    }
+                    int timestamp = msg.getTimestamp();
+                    // if the last message was a reset or we just started, use the header timer
+                    if (startTimestamp == -1) {
+                        startTimestamp = timestamp;
+                        timestamp = 0;
+                    } else {
+                        timestamp -= startTimestamp;
+                    }
+                    if (timestamp < 0) {
+                        log.warn("Skipping message with negative timestamp");
+                        return;
+                    }
+                    if (msg instanceof VideoData && !accept((VideoData) msg)) {
+                        return;
+                    }
+                    IoBuffer data = ((IStreamData<?>) msg).getData();
+                    if (data != null) {
+                        write(msg.getDataType(), timestamp, data);
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } else if (message instanceof ResetMessage) {
+            // under the same lock as the writes, so a frame never sees half a reset
+            lock.lock();
+            try {
+                startTimestamp = -1;
+            } finally {
+                lock.unlock();
+            }
+        } else if (log.isDebugEnabled()) {
+            log.debug("Ignoring pushed message: {}", message);
+        }
+    }
+
+    /**
+     * Ensures the first video frame recorded is a key frame, or the AVC configuration.
+     */
+    private boolean accept(VideoData video) {
+        if (!waitForVideoKeyframe || gotKeyFrame) {
+            return true;
+        }
+        if (video.getCodecId() == VideoCodec.AVC.getId()) {
+            // the config flag is only set for events built from arrays, so check the packet type as well
+            gotKeyFrame = video.isConfig() || video.getVideoPacketType() == VideoPacketType.SequenceStart;
+        } else {
+            gotKeyFrame = video.getFrameType() == VideoFrameType.KEYFRAME;
+        }
+        return gotKeyFrame;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Pipe connection event handler
+     */
+    @SuppressWarnings("incomplete-switch")
+    @Override
+    public void onPipeConnectionEvent(PipeConnectionEvent event) {
+        switch (event.getType()) {
+            case CONSUMER_CONNECT_PUSH:
+                if (event.getConsumer() == this) {
+                    Map<String, Object> paramMap = event.getParamMap();
+                    if (paramMap != null) {
+                        mode = (String) paramMap.get("mode");
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reset or uninitialize
+     */
+    @Override
+    public void uninit() {
+        lock.lock();
+        try {
+            if (initialized) {
+                log.debug("Uninit");
+                close();
+                initialized = false;
+            }
+            startTimestamp = -1;
+            gotKeyFrame = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setMode(String mode) {
+        this.mode = mode;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setWaitForVideoKeyframe(boolean waitForVideoKeyframe) {
+        this.waitForVideoKeyframe = waitForVideoKeyframe;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setAudioDecoderConfiguration(IRTMPEvent audioConfig) {
+        audioConfigurationTag = createConfigurationTag(audioConfig);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setVideoDecoderConfiguration(IRTMPEvent videoConfig) {
+        videoConfigurationTag = createConfigurationTag(videoConfig);
+    }
+
+    private static ITag createConfigurationTag(IRTMPEvent config) {
+        if (config instanceof IStreamData) {
+            IoBuffer data = ((IStreamData<?>) config).getData();
+            if (data != null) {
+                // the event is released once set, so keep a copy
+                return ImmutableTag.build(config.getDataType(), 0, data);
+            }
+        }
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        uninit();
+        super.destroy();
+    }
+
+}
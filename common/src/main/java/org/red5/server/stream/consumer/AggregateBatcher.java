@@ -0,0 +1,258 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.utils.IOUtils;
+import org.red5.metrics.Metrics;
+import org.red5.server.net.rtmp.Channel;
+import org.red5.server.net.rtmp.event.Aggregate;
+import org.red5.server.net.rtmp.event.BaseEvent;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.stream.IStreamData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+
+/**
+ * Packs consecutive audio and video frames for one subscriber into aggregate messages, so that small frames, such as 20 ms Opus or AAC
+ * audio, share a message header and a write. A batch is sent once it spans the window in stream time, would grow past the size limit, or
+ * has been held for the latency limit. The consumer sends the batch ahead of any other kind of message, so nothing is reordered, and a
+ * batch holding a single frame is sent as that frame.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class AggregateBatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(AggregateBatcher.class);
+
+    /**
+     * Flash versions of players known to read aggregate messages: Flash Player and FFmpeg or librtmp based players.
+     */
+    private static final String[] PLAYER_PLATFORMS = { "WIN ", "MAC ", "LNX " };
+
+    // type, size, timestamp and stream id ahead of each part and the back pointer after it
+    private static final int PART_OVERHEAD = 15;
+
+    private final Channel channel;
+
+    private final TaskScheduler scheduler;
+
+    private final int window;
+
+    private final long maxLatencyNanos;
+
+    private final int maxBytes;
+
+    // first frame of the batch, sent as is if no other joins it
+    private IRTMPEvent first;
+
+    private Channel firstChannel;
+
+    private IoBuffer buffer;
+
+    private int parts;
+
+    private int bytes;
+
+    private int firstTimestamp;
+
+    private int lastTimestamp;
+
+    private long startNanos;
+
+    // incremented per batch, so a deadline only flushes the batch it was set for
+    private long generation;
+
+    private volatile long aggregatesSent;
+
+    private volatile long framesAggregated;
+
+    /**
+     * Creates a batcher.
+     *
+     * @param channel
+     *            channel the aggregates are written to
+     * @param scheduler
+     *            scheduler for the latency deadline, or null to only check it as frames arrive
+     * @param window
+     *            stream time a batch may span, in milliseconds
+     * @param maxLatency
+     *            longest a frame is held, in milliseconds
+     * @param maxBytes
+     *            largest aggregate, in bytes
+     */
+    public AggregateBatcher(Channel channel, TaskScheduler scheduler, int window, int maxLatency, int maxBytes) {
+        this.channel = channel;
+        this.scheduler = scheduler;
+        this.window = window;
+        this.maxLatencyNanos = TimeUnit.MILLISECONDS.toNanos(maxLatency);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Whether a client can play aggregate messages, going by its connect parameters. A client may say so with an
+     * <code>aggregateMessages</code> parameter; otherwise players identifying with a platform flash version, such as "LNX 9,0,124,2", are
+     * taken to.
+     *
+     * @param params
+     *            connect parameters
+     * @return true if aggregates may be sent
+     */
+    public static boolean isSupported(Map<String, Object> params) {
+        if (params == null) {
+            return false;
+        }
+        Object aggregateMessages = params.get("aggregateMessages");
+        if (aggregateMessages instanceof Boolean) {
+            return (Boolean) aggregateMessages;
+        }
+        Object flashVer = params.get("flashVer");
+        if (flashVer instanceof String) {
+            for (String platform : PLAYER_PLATFORMS) {
+                if (((String) flashVer).startsWith(platform)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Adds an audio or video frame to the batch.
+     *
+     * @param event
+     *            frame, ready to be written
+     * @param target
+     *            channel the frame would be written to on its own
+     * @return true if batched and false if the frame should be written on its own, the batch having been sent ahead of it
+     */
+    public synchronized boolean add(IRTMPEvent event, Channel target) {
+        IoBuffer data = ((IStreamData<?>) event).getData();
+        int size = data.remaining();
+        int timestamp = event.getTimestamp();
+        if (parts > 0 && (timestamp < lastTimestamp || timestamp - firstTimestamp >= window || bytes + size + PART_OVERHEAD > maxBytes)) {
+            flush();
+        }
+        if (size + PART_OVERHEAD > maxBytes) {
+            return false;
+        }
+        if (parts == 0) {
+            first = event;
+            firstChannel = target;
+            firstTimestamp = timestamp;
+            startNanos = System.nanoTime();
+            if (scheduler != null) {
+                final long batch = generation;
+                scheduler.schedule(() -> expire(batch), Instant.now().plusNanos(maxLatencyNanos));
+            }
+        } else {
+            if (parts == 1) {
+                buffer = IoBuffer.allocate(Math.min(maxBytes, 2 * (bytes + size))).setAutoExpand(true);
+                append(first);
+            }
+            append(event);
+            if (event instanceof BaseEvent && ((BaseEvent) event).getTraceSample() != null && ((BaseEvent) first).getTraceSample() == null) {
+                ((BaseEvent) first).setTraceSample(((BaseEvent) event).getTraceSample());
+            }
+        }
+        parts++;
+        bytes += size + PART_OVERHEAD;
+        lastTimestamp = timestamp;
+        if (System.nanoTime() - startNanos >= maxLatencyNanos) {
+            flush();
+        }
+        return true;
+    }
+
+    private void append(IRTMPEvent event) {
+        IoBuffer data = ((IStreamData<?>) event).getData();
+        int size = data.remaining();
+        buffer.put(event.getDataType());
+        IOUtils.writeMediumInt(buffer, size);
+        IOUtils.writeExtendedMediumInt(buffer, event.getTimestamp());
+        // stream id, always 0
+        IOUtils.writeMediumInt(buffer, 0);
+        buffer.put(data.duplicate());
+        buffer.putInt(size + 11);
+    }
+
+    /**
+     * Sends the batch, if there is one.
+     */
+    public synchronized void flush() {
+        if (parts == 1) {
+            firstChannel.write(first);
+        } else if (parts > 1) {
+            Aggregate aggregate = new Aggregate(buffer.flip());
+            // parts carry their own times, which players take relative to the first
+            aggregate.setTimestamp(firstTimestamp);
+            aggregate.setSourceType(((BaseEvent) first).getSourceType());
+            aggregate.setTraceSample(((BaseEvent) first).getTraceSample());
+            channel.write(aggregate);
+            aggregatesSent++;
+            framesAggregated += parts;
+            if (Metrics.ENABLED) {
+                Metrics.RTMP_EGRESS_AGGREGATES.increment();
+                Metrics.RTMP_EGRESS_AGGREGATED_FRAMES.add(parts);
+            }
+            if (log.isTraceEnabled()) {
+                log.trace("Sent aggregate - ts: {} parts: {} bytes: {}", firstTimestamp, parts, buffer.limit());
+            }
+        }
+        clear();
+    }
+
+    /**
+     * Drops the batch, if there is one, without sending it. Used once the subscriber has gone, so a pending deadline finds nothing to send.
+     */
+    public synchronized void discard() {
+        if (parts > 0 && log.isDebugEnabled()) {
+            log.debug("Discarding batch - ts: {} parts: {}", firstTimestamp, parts);
+        }
+        clear();
+    }
+
+    private void clear() {
+        first = null;
+        firstChannel = null;
+        buffer = null;
+        parts = 0;
+        bytes = 0;
+        generation++;
+    }
+
+    private synchronized void expire(long batch) {
+        if (batch == generation && parts > 0) {
+            flush();
+        }
+    }
+
+    /**
+     * Returns the number of aggregate messages sent.
+     *
+     * @return aggregates sent
+     */
+    public long getAggregatesSent() {
+        return aggregatesSent;
+    }
+
+    /**
+     * Returns the number of frames sent inside aggregate messages.
+     *
+     * @return frames aggregated
+     */
+    public long getFramesAggregated() {
+        return framesAggregated;
+    }
+
+}
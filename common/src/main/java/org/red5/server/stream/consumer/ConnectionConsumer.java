@@ -34,6 +34,8 @@ import org.red5.server.net.rtmp.message.Header;
 import org.red5.server.stream.message.RTMPMessage;
 import org.red5.server.stream.message.ResetMessage;
 import org.red5.server.stream.message.StatusMessage;
+import org.red5.server.stream.trace.Stage;
+import org.red5.server.stream.trace.TraceSample;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -89,6 +91,11 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
      */
     private AtomicBoolean chunkSizeSent = new AtomicBoolean(false);
 
+    /**
+     * Packs audio and video into aggregate messages, when the subscriber supports them
+     */
+    private AggregateBatcher batcher;
+
     /**
      * Create RTMP connection consumer for given connection and channels.
      *
@@ -125,12 +132,31 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
         this.data = dataChannel;
     }
 
+    /**
+     * Moves the latency trace sample of a traced message over to its copy for this connection, marking the end of the play engine send.
+     *
+     * @param msg
+     *            message pushed to this consumer
+     * @param copy
+     *            copy written to the channel
+     */
+    private static void traceSend(BaseEvent msg, BaseEvent copy) {
+        TraceSample trace = msg.getTraceSample();
+        if (trace != null) {
+            trace.mark(Stage.PLAY_ENGINE_SEND);
+            copy.setTraceSample(trace);
+        }
+    }
+
     /** {@inheritDoc} */
     public void pushMessage(IPipe pipe, IMessage message) {
         //log.trace("pushMessage - type: {}", message.getMessageType());
         if (message instanceof ResetMessage) {
             //ignore
         } else if (message instanceof StatusMessage) {
+            if (batcher != null) {
+                batcher.flush();
+            }
             if (data != null) {
                 StatusMessage statusMsg = (StatusMessage) message;
                 data.sendStatus(statusMsg.getBody());
@@ -157,6 +183,10 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
             if (isTrace) {
                 log.trace("Data type: {} source type: {}", dataType, ((BaseEvent) msg).getSourceType());
             }
+            // anything other than audio and video goes out after the frames batched before it
+            if (batcher != null && dataType != Constants.TYPE_AUDIO_DATA && dataType != Constants.TYPE_VIDEO_DATA) {
+                batcher.flush();
+            }
             // create a new header for the consumer if the message.body doesnt already have one
             final Header header = Optional.ofNullable(msg.getHeader()).orElse(new Header());
             // resets the header times
@@ -180,7 +210,10 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                         audioData.setHeader(header);
                         audioData.setTimestamp(header.getTimer());
                         audioData.setSourceType(((AudioData) msg).getSourceType());
-                        audio.write(audioData);
+                        traceSend((AudioData) msg, audioData);
+                        if (batcher == null || !batcher.add(audioData, audio)) {
+                            audio.write(audioData);
+                        }
                     } else {
                         log.warn("Audio data was not found");
                     }
@@ -193,7 +226,10 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
                         videoData.setHeader(header);
                         videoData.setTimestamp(header.getTimer());
                         videoData.setSourceType(((VideoData) msg).getSourceType());
-                        video.write(videoData);
+                        traceSend((VideoData) msg, videoData);
+                        if (batcher == null || !batcher.add(videoData, video)) {
+                            video.write(videoData);
+                        }
                     } else {
                         log.warn("Video data was not found");
                     }
@@ -263,7 +299,16 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
     public void onPipeConnectionEvent(PipeConnectionEvent event) {
         if (event.getType().equals(PipeConnectionEvent.EventType.PROVIDER_DISCONNECT)) {
             log.debug("Provider disconnected");
+            if (batcher != null) {
+                batcher.flush();
+            }
             closeChannels();
+        } else if (event.getType().equals(PipeConnectionEvent.EventType.CONSUMER_DISCONNECT) && event.getConsumer() == this) {
+            log.debug("Consumer disconnected");
+            // the subscriber has stopped, so frames held for a batch are not sent
+            if (batcher != null) {
+                batcher.discard();
+            }
         }
     }
 
@@ -309,6 +354,16 @@ public class ConnectionConsumer implements IPushableConsumer, IPipeConnectionLis
         }
     }
 
+    /**
+     * Sets the batcher packing audio and video into aggregate messages, or null to send each frame on its own.
+     *
+     * @param batcher
+     *            aggregate batcher
+     */
+    public void setAggregateBatcher(AggregateBatcher batcher) {
+        this.batcher = batcher;
+    }
+
     /**
      * Send the chunk size
      */
@@ -0,0 +1,124 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITag;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IClientStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumer that records to a shared {@link RecordingJournal} instead of a file of its own. Tags are appended on the pushing thread, the
+ * recording listener queue already keeping that off the ingest thread, and the journal writes the FLV or WebM file once the recording
+ * ends. Appending to an existing recording is not supported; the recording listener uses a {@link FileConsumer} for that.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class JournalFileConsumer extends AbstractRecordingConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(JournalFileConsumer.class);
+
+    private RecordingJournal journal;
+
+    private int streamId = -1;
+
+    /**
+     * Default ctor
+     */
+    public JournalFileConsumer() {
+    }
+
+    /**
+     * Creates journal file consumer
+     *
+     * @param scope
+     *            Scope of consumer
+     * @param file
+     *            File
+     * @param journal
+     *            journal to record to
+     */
+    public JournalFileConsumer(IScope scope, File file, RecordingJournal journal) {
+        super(scope, file);
+        this.journal = journal;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void open(File file) throws IOException {
+        if (file == null || journal == null) {
+            log.warn("Consumer is uninitialized");
+            return;
+        }
+        if (IClientStream.MODE_APPEND.equals(mode)) {
+            throw new IOException("Appending is not supported for journal recordings");
+        } else if (IClientStream.MODE_RECORD.equals(mode)) {
+            // delete existing file, the recording is written in its place when it ends
+            if (Files.deleteIfExists(file.toPath())) {
+                log.debug("File deleted");
+            }
+            streamId = journal.open(file.toPath());
+            // configuration sent before the recording started
+            for (ITag config : new ITag[] { videoConfigurationTag, audioConfigurationTag }) {
+                if (config != null) {
+                    journal.append(streamId, config.getDataType(), 0, config.getBody());
+                }
+            }
+        } else {
+            // delete existing file since we're not recording nor appending
+            if (Files.deleteIfExists(file.toPath())) {
+                log.debug("File deleted");
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean isOpen() {
+        return streamId != -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void write(byte dataType, int timestamp, IoBuffer data) throws IOException {
+        // only allow blank tags if they are of audio type
+        if (data.remaining() > 0 || dataType == TYPE_AUDIO_DATA) {
+            journal.append(streamId, dataType, timestamp, data);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void close() {
+        if (streamId != -1) {
+            try {
+                journal.close(streamId);
+            } catch (IOException e) {
+                log.warn("Exception closing journal stream on uninit", e);
+            }
+            streamId = -1;
+        }
+    }
+
+    /**
+     * Sets the journal recorded to.
+     *
+     * @param journal
+     *            journal
+     */
+    public void setJournal(RecordingJournal journal) {
+        this.journal = journal;
+    }
+
+}
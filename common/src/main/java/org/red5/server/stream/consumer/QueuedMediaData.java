@@ -1,5 +1,6 @@
 package org.red5.server.stream.consumer;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.VideoFrameType;
 import org.red5.server.net.rtmp.event.AudioData;
 import org.red5.server.net.rtmp.event.VideoData;
@@ -12,8 +13,15 @@ import org.red5.server.stream.IStreamData;
  */
 public class QueuedMediaData {
 
+    final int timestamp;
+
+    final byte dataType;
+
     ImmutableTag tag;
 
+    // data held by reference instead of copied into the tag
+    IoBuffer body;
+
     boolean video;
 
     boolean audio;
@@ -31,10 +39,11 @@ public class QueuedMediaData {
      * @param dataType a byte
      */
     public QueuedMediaData(int timestamp, byte dataType) {
+        this.timestamp = timestamp;
+        this.dataType = dataType;
         this.tag = ImmutableTag.build(dataType, timestamp);
     }
 
-    @SuppressWarnings("rawtypes")
     /**
      * <p>Constructor for QueuedMediaData.</p>
      *
@@ -42,8 +51,28 @@ public class QueuedMediaData {
      * @param dataType a byte
      * @param streamData a {@link org.red5.server.stream.IStreamData} object
      */
+    @SuppressWarnings("rawtypes")
     public QueuedMediaData(int timestamp, byte dataType, IStreamData streamData) {
-        this.tag = ImmutableTag.build(dataType, timestamp, streamData.getData());
+        this(timestamp, dataType, streamData, true);
+    }
+
+    /**
+     * <p>Constructor for QueuedMediaData.</p>
+     *
+     * @param timestamp a int
+     * @param dataType a byte
+     * @param streamData a {@link org.red5.server.stream.IStreamData} object
+     * @param copy false to hold a read-only view of the data instead of a copy, for data which is not modified once pushed
+     */
+    @SuppressWarnings("rawtypes")
+    public QueuedMediaData(int timestamp, byte dataType, IStreamData streamData, boolean copy) {
+        this.timestamp = timestamp;
+        this.dataType = dataType;
+        if (copy || streamData.getData() == null) {
+            this.tag = ImmutableTag.build(dataType, timestamp, streamData.getData());
+        } else {
+            this.body = streamData.getData().asReadOnlyBuffer();
+        }
         if (streamData instanceof VideoData) {
             video = true;
             config = ((VideoData) streamData).isConfig();
@@ -61,7 +90,7 @@ public class QueuedMediaData {
      * @return a int
      */
     public int getTimestamp() {
-        return tag.getTimestamp();
+        return timestamp;
     }
 
     /**
@@ -70,7 +99,7 @@ public class QueuedMediaData {
      * @return a byte
      */
     public byte getDataType() {
-        return tag.getDataType();
+        return dataType;
     }
 
     /**
@@ -79,9 +108,24 @@ public class QueuedMediaData {
      * @return a {@link org.red5.server.stream.consumer.ImmutableTag} object
      */
     public ImmutableTag getData() {
+        if (tag == null && body != null) {
+            tag = ImmutableTag.build(dataType, timestamp, body);
+        }
         return tag;
     }
 
+    /**
+     * Returns the data without copying it when it is held by reference.
+     *
+     * @return data or null if there is none
+     */
+    public IoBuffer getBody() {
+        if (body != null) {
+            return body.duplicate();
+        }
+        return tag != null ? tag.getBody() : null;
+    }
+
     /**
      * <p>isVideo.</p>
      *
@@ -115,7 +159,7 @@ public class QueuedMediaData {
      * @return a boolean
      */
     public boolean hasData() {
-        return tag != null;
+        return tag != null || body != null;
     }
 
     /** {@inheritDoc} */
@@ -123,8 +167,8 @@ public class QueuedMediaData {
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + tag.getDataType();
-        result = prime * result + tag.getTimestamp();
+        result = prime * result + dataType;
+        result = prime * result + timestamp;
         return result;
     }
 
@@ -138,10 +182,10 @@ public class QueuedMediaData {
             return false;
         }
         QueuedMediaData other = (QueuedMediaData) obj;
-        if (tag.getDataType() != other.getDataType()) {
+        if (dataType != other.dataType) {
             return false;
         }
-        if (tag.getTimestamp() != other.getTimestamp()) {
+        if (timestamp != other.timestamp) {
             return false;
         }
         return true;
@@ -152,6 +196,7 @@ public class QueuedMediaData {
      */
     public void dispose() {
         tag = null;
+        body = null;
     }
 
 }
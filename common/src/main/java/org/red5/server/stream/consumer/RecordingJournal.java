@@ -0,0 +1,914 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITagWriter;
+import org.red5.io.flv.impl.FLVWriter;
+import org.red5.io.flv.impl.Tag;
+import org.red5.io.webm.WebmTagWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+/**
+ * Shared recording journal. Every stream recorded on the node appends its tags to one log of segment files, and a single writer thread
+ * commits whatever accumulated since the last commit with one write and one sync, so the disk sees a single sequential stream however
+ * many recordings are running. The FLV or WebM file of a recording is written from the journal after it ends, or on its first playback
+ * when {@link #setDemuxOnClose(boolean) demuxOnClose} is off.
+ * <p>
+ * Each record carries a checksum and the position of the previous record of its stream, so a recording is read back by following its
+ * chain instead of scanning the segments. On start the segments left by an earlier run are scanned and recordings which were never
+ * written out are recovered. A segment is deleted once every recording in it has been written out. A recording holds its own records
+ * until it is written out, so a recording which never ends, such as a round the clock stream, keeps the journal growing; record those with
+ * a {@link FileConsumer}.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class RecordingJournal implements InitializingBean, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingJournal.class);
+
+    // record length, crc, stream id, kind, data type, reserved, timestamp and the position of the previous record of the stream
+    private static final int HEADER = 28;
+
+    private static final byte KIND_OPEN = 1, KIND_TAG = 2, KIND_CLOSE = 3, KIND_DEMUXED = 4;
+
+    private static final String SUFFIX = ".journal";
+
+    // journals of the node, for the playback lookup
+    private static final Set<RecordingJournal> journals = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // batch has data or the journal is stopping
+    private final Condition writeRequested = lock.newCondition();
+
+    // a batch was swapped out, so the active one has room again
+    private final Condition spaceAvailable = lock.newCondition();
+
+    private final Condition committed = lock.newCondition();
+
+    private final CRC32C crc = new CRC32C();
+
+    private final Map<Integer, JournalStream> streams = new HashMap<>();
+
+    private final Map<Path, JournalStream> pending = new ConcurrentHashMap<>();
+
+    // live recordings per segment, and the markers of written recordings held in them
+    private final Map<Integer, Integer> segmentRefs = new HashMap<>();
+
+    // segments holding the marker of a written recording, by the segment the recording started in; recovery would take the recording for
+    // an unwritten one if its open record outlived the marker
+    private final Map<Integer, List<Integer>> markerHolds = new HashMap<>();
+
+    private String directory;
+
+    private Path journalDir;
+
+    private long segmentSize = 256L * 1024 * 1024;
+
+    private int bufferSize = 16 * 1024 * 1024;
+
+    private long commitInterval = 10;
+
+    private boolean sync = true;
+
+    private boolean demuxOnClose = true;
+
+    private int demuxThreads = 2;
+
+    private Batch active, standby;
+
+    private Thread writerThread;
+
+    private ExecutorService demuxExecutor;
+
+    private volatile boolean running;
+
+    private IOException failure;
+
+    private int nextStreamId = 1;
+
+    // position the next record is appended at
+    private int appendSegment;
+
+    private long appendOffset;
+
+    // bytes appended and bytes committed since start
+    private long appended, committedBytes;
+
+    // segment the writer thread writes to
+    private FileChannel segmentChannel;
+
+    private int writerSegment = -1;
+
+    private long commits, records;
+
+    /** {@inheritDoc} */
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        start();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() throws Exception {
+        stop();
+    }
+
+    /**
+     * Recovers the segments of an earlier run and starts the writer thread.
+     *
+     * @throws IOException
+     *             if the journal directory cannot be used
+     */
+    public void start() throws IOException {
+        if (running) {
+            return;
+        }
+        journalDir = directory != null ? Paths.get(directory) : Paths.get(System.getProperty("red5.root", "."), "journal");
+        Files.createDirectories(journalDir);
+        active = new Batch(bufferSize);
+        standby = new Batch(bufferSize);
+        demuxExecutor = Executors.newFixedThreadPool(demuxThreads, r -> {
+            Thread thread = new Thread(r, "RecordingJournalDemux");
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<JournalStream> recovered = recover();
+        running = true;
+        writerThread = new Thread(this::commitLoop, "RecordingJournal-" + journalDir.getFileName());
+        writerThread.setDaemon(true);
+        writerThread.start();
+        journals.add(this);
+        for (JournalStream stream : recovered) {
+            log.info("Recovering recording {} from the journal", stream.target);
+            pending.put(stream.target, stream);
+            if (demuxOnClose) {
+                demuxExecutor.execute(() -> demux(stream));
+            }
+        }
+    }
+
+    /**
+     * Commits what is buffered and stops. Recordings still open are recovered on the next start.
+     */
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        journals.remove(this);
+        lock.lock();
+        try {
+            running = false;
+            writeRequested.signalAll();
+            spaceAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join(10000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        demuxExecutor.shutdown();
+        try {
+            demuxExecutor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Starts a recording.
+     *
+     * @param target
+     *            file the recording is written to; .webm and .mkv are written as WebM, anything else as FLV
+     * @return stream id for {@link #append(int, byte, int, IoBuffer)}
+     * @throws IOException
+     *             if the journal is not running
+     */
+    public int open(Path target) throws IOException {
+        byte[] name = target.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+        lock.lock();
+        try {
+            JournalStream stream = new JournalStream(nextStreamId++, target.toAbsolutePath());
+            streams.put(stream.id, stream);
+            append(stream, KIND_OPEN, (byte) 0, 0, ByteBuffer.wrap(name), 0, name.length);
+            return stream.id;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends a tag. The data between position and limit is copied into the commit buffer and the buffer is left unchanged; the call
+     * waits only if the commit buffer is full.
+     *
+     * @param streamId
+     *            stream id from {@link #open(Path)}
+     * @param dataType
+     *            tag type
+     * @param timestamp
+     *            timestamp
+     * @param data
+     *            tag body
+     * @throws IOException
+     *             if the journal failed or is not running
+     */
+    public void append(int streamId, byte dataType, int timestamp, IoBuffer data) throws IOException {
+        lock.lock();
+        try {
+            JournalStream stream = streams.get(streamId);
+            if (stream == null || stream.closed) {
+                throw new IOException("Stream " + streamId + " is not open");
+            }
+            append(stream, KIND_TAG, dataType, timestamp, data.buf(), data.position(), data.remaining());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Ends a recording. Its file is written right away, or on first playback when demuxOnClose is off.
+     *
+     * @param streamId
+     *            stream id from {@link #open(Path)}
+     * @return future completed with the file once written
+     * @throws IOException
+     *             if the journal failed or is not running
+     */
+    public CompletableFuture<Path> close(int streamId) throws IOException {
+        JournalStream stream;
+        lock.lock();
+        try {
+            stream = streams.get(streamId);
+            if (stream == null || stream.closed) {
+                throw new IOException("Stream " + streamId + " is not open");
+            }
+            append(stream, KIND_CLOSE, (byte) 0, 0, null, 0, 0);
+            stream.closed = true;
+            stream.closedAt = appended;
+            writeRequested.signal();
+        } finally {
+            lock.unlock();
+        }
+        pending.put(stream.target, stream);
+        if (demuxOnClose) {
+            demuxExecutor.execute(() -> demux(stream));
+        }
+        return stream.future;
+    }
+
+    /**
+     * Writes the file of an ended recording if it is still only in the journal, waiting for it if it is being written.
+     *
+     * @param file
+     *            recording file
+     * @return true if the file was in the journal
+     */
+    public boolean materialize(File file) {
+        JournalStream stream = pending.get(file.toPath().toAbsolutePath());
+        if (stream == null) {
+            return false;
+        }
+        demux(stream);
+        try {
+            stream.future.join();
+        } catch (Exception e) {
+            log.warn("Recording {} could not be written from the journal", file, e);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the file of an ended recording held by any journal of the node; called before a file is played.
+     *
+     * @param file
+     *            recording file, may be null
+     * @return true if the file was in a journal
+     */
+    public static boolean materializePending(File file) {
+        if (file == null) {
+            return false;
+        }
+        for (RecordingJournal journal : journals) {
+            if (journal.materialize(file)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void append(JournalStream stream, byte kind, byte dataType, int timestamp, ByteBuffer src, int offset, int length) throws IOException {
+        int size = HEADER + length;
+        if (size > bufferSize) {
+            throw new IOException("Tag of " + length + " bytes exceeds the journal buffer");
+        }
+        boolean roll = appendOffset > 0 && appendOffset + size > segmentSize;
+        while (failure == null && running && (active.buffer.remaining() < size || (roll && active.rollAt >= 0))) {
+            writeRequested.signal();
+            spaceAvailable.awaitUninterruptibly();
+            // another appender may have rolled the segment while the lock was released
+            roll = appendOffset > 0 && appendOffset + size > segmentSize;
+        }
+        if (failure != null) {
+            throw new IOException("Journal failed", failure);
+        }
+        if (!running) {
+            throw new IOException("Journal is not running");
+        }
+        if (roll) {
+            appendSegment++;
+            appendOffset = 0;
+            active.rollAt = active.buffer.position();
+        }
+        ByteBuffer buffer = active.buffer;
+        int start = buffer.position();
+        buffer.putInt(length).putInt(0).putInt(stream.id).put(kind).put(dataType).putShort((short) 0).putInt(timestamp).putLong(stream.last);
+        if (length > 0) {
+            buffer.put(buffer.position(), src, offset, length);
+        }
+        int end = start + size;
+        buffer.limit(end).position(start + 8);
+        crc.reset();
+        crc.update(buffer);
+        buffer.limit(buffer.capacity()).position(end);
+        buffer.putInt(start + 4, (int) crc.getValue());
+        stream.last = pointer(appendSegment, appendOffset);
+        if (stream.lastSegment != appendSegment) {
+            stream.lastSegment = appendSegment;
+            stream.segments.add(appendSegment);
+            segmentRefs.merge(appendSegment, 1, Integer::sum);
+        }
+        appendOffset += size;
+        appended += size;
+        records++;
+        if (buffer.position() >= bufferSize / 2) {
+            writeRequested.signal();
+        }
+    }
+
+    private void commitLoop() {
+        long intervalNanos = TimeUnit.MILLISECONDS.toNanos(commitInterval);
+        while (true) {
+            Batch batch;
+            long batchEnd;
+            int firstSegment;
+            lock.lock();
+            try {
+                while (running && active.buffer.position() == 0) {
+                    writeRequested.awaitUninterruptibly();
+                }
+                if (active.buffer.position() == 0) {
+                    break;
+                }
+                if (running && active.buffer.position() < bufferSize / 2) {
+                    // let other streams join the commit
+                    writeRequested.awaitNanos(intervalNanos);
+                }
+                batch = active;
+                active = standby;
+                standby = batch;
+                batchEnd = appended;
+                firstSegment = batch.rollAt >= 0 ? appendSegment - 1 : appendSegment;
+                spaceAvailable.signalAll();
+            } catch (InterruptedException e) {
+                continue;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                write(batch, firstSegment);
+                lock.lock();
+                try {
+                    committedBytes = batchEnd;
+                    commits++;
+                    committed.signalAll();
+                    spaceAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            } catch (IOException e) {
+                log.error("Journal write failed, recordings on it are stopped", e);
+                lock.lock();
+                try {
+                    failure = e;
+                    committed.signalAll();
+                    spaceAvailable.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                break;
+            }
+        }
+        closeSegment();
+    }
+
+    private void write(Batch batch, int firstSegment) throws IOException {
+        ByteBuffer buffer = batch.buffer;
+        buffer.flip();
+        if (writerSegment != firstSegment) {
+            openSegment(firstSegment);
+        }
+        if (batch.rollAt >= 0) {
+            int end = buffer.limit();
+            buffer.limit(batch.rollAt);
+            writeFully(buffer);
+            buffer.limit(end);
+            openSegment(firstSegment + 1);
+        }
+        writeFully(buffer);
+        if (sync) {
+            segmentChannel.force(false);
+        }
+        buffer.clear();
+        batch.rollAt = -1;
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            segmentChannel.write(buffer);
+        }
+    }
+
+    private void openSegment(int segment) throws IOException {
+        closeSegment();
+        segmentChannel = FileChannel.open(segmentPath(segment), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writerSegment = segment;
+        lock.lock();
+        try {
+            deleteUnusedSegments(Math.min(appendSegment, writerSegment));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeSegment() {
+        if (segmentChannel != null) {
+            try {
+                if (sync) {
+                    segmentChannel.force(false);
+                }
+                segmentChannel.close();
+            } catch (IOException e) {
+                log.warn("Failed to close journal segment", e);
+            }
+            segmentChannel = null;
+        }
+    }
+
+    /**
+     * Waits until the journal holds everything appended up to a position.
+     */
+    private void awaitCommit(long position) throws IOException {
+        lock.lock();
+        try {
+            while (committedBytes < position && failure == null && writerThread.isAlive()) {
+                writeRequested.signal();
+                committed.await(100, TimeUnit.MILLISECONDS);
+            }
+            if (committedBytes < position) {
+                throw new IOException("Journal did not commit", failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for the journal", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Writes a recording to its file by following its chain of records.
+     */
+    private void demux(JournalStream stream) {
+        synchronized (stream) {
+            if (stream.future.isDone()) {
+                return;
+            }
+            Map<Integer, FileChannel> channels = new HashMap<>();
+            ITagWriter writer = null;
+            try {
+                awaitCommit(stream.closedAt);
+                // collect the chain, newest first
+                long[] chain = new long[1024];
+                int count = 0;
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                for (long position = stream.last; position != -1;) {
+                    header.clear();
+                    read(channels, position, header);
+                    if (header.get(12) == KIND_TAG) {
+                        if (count == chain.length) {
+                            chain = Arrays.copyOf(chain, count * 2);
+                        }
+                        chain[count++] = position;
+                    }
+                    position = header.getLong(20);
+                }
+                Files.deleteIfExists(stream.target);
+                Files.createDirectories(stream.target.getParent());
+                writer = WebmFileConsumer.handles(stream.target.getFileName().toString()) ? new WebmTagWriter(stream.target) : new FLVWriter(stream.target, false);
+                ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+                CRC32C check = new CRC32C();
+                for (int i = count - 1; i >= 0; i--) {
+                    header.clear();
+                    read(channels, chain[i], header);
+                    int length = header.getInt(0);
+                    if (record.capacity() < HEADER + length) {
+                        record = ByteBuffer.allocate(HEADER + length);
+                    }
+                    record.clear().limit(HEADER + length);
+                    read(channels, chain[i], record);
+                    if (!checksumValid(check, record)) {
+                        log.warn("Skipping damaged record of {} at {}", stream.target, chain[i]);
+                        continue;
+                    }
+                    IoBuffer body = IoBuffer.wrap(record.array(), HEADER, length);
+                    writer.writeTag(new Tag(record.get(13), record.getInt(16), length, body, 0));
+                }
+                writer.close();
+                writer = null;
+                finish(stream);
+                log.debug("Recording {} written from the journal, {} tags", stream.target, count);
+                stream.future.complete(stream.target);
+            } catch (Throwable e) {
+                log.warn("Failed to write {} from the journal", stream.target, e);
+                stream.future.completeExceptionally(e);
+            } finally {
+                if (writer != null) {
+                    try {
+                        writer.close();
+                    } catch (Exception e) {
+                        log.debug("Failed to close writer", e);
+                    }
+                }
+                for (FileChannel channel : channels.values()) {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        log.debug("Failed to close segment", e);
+                    }
+                }
+                pending.remove(stream.target, stream);
+            }
+        }
+    }
+
+    private static boolean checksumValid(CRC32C check, ByteBuffer record) {
+        check.reset();
+        check.update(record.array(), 8, record.limit() - 8);
+        return (int) check.getValue() == record.getInt(4);
+    }
+
+    private void read(Map<Integer, FileChannel> channels, long position, ByteBuffer dst) throws IOException {
+        int segment = (int) (position >>> 40);
+        FileChannel channel = channels.get(segment);
+        if (channel == null) {
+            channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ);
+            channels.put(segment, channel);
+        }
+        long offset = position & 0xffffffffffL;
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, offset + dst.position()) < 0) {
+                throw new IOException("Journal segment " + segment + " is truncated");
+            }
+        }
+    }
+
+    /**
+     * Records that a recording was written out and releases its segments.
+     */
+    private void finish(JournalStream stream) throws IOException {
+        lock.lock();
+        try {
+            streams.remove(stream.id);
+            int release = stream.segments.size();
+            if (running) {
+                // lets recovery skip the recording
+                append(stream, KIND_DEMUXED, (byte) 0, 0, null, 0, 0);
+                if (release > 1) {
+                    // the segment of the marker is held until the one with the open record goes
+                    markerHolds.computeIfAbsent(stream.segments.get(0), first -> new ArrayList<>(1)).add(stream.segments.get(release - 1));
+                    release--;
+                }
+            }
+            for (int i = 0; i < release; i++) {
+                segmentRefs.merge(stream.segments.get(i), -1, Integer::sum);
+            }
+            stream.segments.clear();
+            deleteUnusedSegments(Math.min(appendSegment, writerSegment));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments before the given one which no recording needs, along with the markers they held.
+     */
+    private void deleteUnusedSegments(int limit) {
+        List<Integer> released = new ArrayList<>();
+        do {
+            for (int segment : released) {
+                segmentRefs.merge(segment, -1, Integer::sum);
+            }
+            released.clear();
+            Iterator<Map.Entry<Integer, Integer>> entries = segmentRefs.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Integer, Integer> entry = entries.next();
+                int segment = entry.getKey();
+                if (entry.getValue() <= 0 && segment < limit) {
+                    try {
+                        Files.deleteIfExists(segmentPath(segment));
+                    } catch (IOException e) {
+                        log.warn("Failed to delete journal segment {}", segment, e);
+                    }
+                    entries.remove();
+                    List<Integer> held = markerHolds.remove(segment);
+                    if (held != null) {
+                        released.addAll(held);
+                    }
+                }
+            }
+        } while (!released.isEmpty());
+    }
+
+    /**
+     * Scans the segments of an earlier run and returns the recordings which were never written out.
+     */
+    private List<JournalStream> recover() throws IOException {
+        List<Integer> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(journalDir)) {
+            files.map(path -> path.getFileName().toString()).filter(name -> name.endsWith(SUFFIX)).forEach(name -> {
+                try {
+                    segments.add(Integer.parseInt(name.substring(0, name.length() - SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    log.debug("Ignoring {}", name);
+                }
+            });
+        }
+        segments.sort(null);
+        segmentRefs.clear();
+        markerHolds.clear();
+        Map<Integer, JournalStream> found = new HashMap<>();
+        ByteBuffer record = ByteBuffer.allocate(64 * 1024);
+        CRC32C check = new CRC32C();
+        for (int segment : segments) {
+            try (FileChannel channel = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                long size = channel.size();
+                long offset = 0;
+                while (offset + HEADER <= size) {
+                    record.clear().limit(HEADER);
+                    channel.read(record, offset);
+                    int length = record.getInt(0);
+                    if (length < 0 || offset + HEADER + length > size) {
+                        break;
+                    }
+                    if (record.capacity() < HEADER + length) {
+                        ByteBuffer larger = ByteBuffer.allocate(HEADER + length);
+                        larger.put(record.flip());
+                        record = larger;
+                    }
+                    record.limit(HEADER + length).position(HEADER);
+                    while (record.hasRemaining() && channel.read(record, offset + record.position()) > 0) {
+                    }
+                    if (record.hasRemaining() || !checksumValid(check, record)) {
+                        // torn write at the end of the segment
+                        break;
+                    }
+                    int id = record.getInt(8);
+                    byte kind = record.get(12);
+                    // ids keep increasing across runs while their segments are around
+                    nextStreamId = Math.max(nextStreamId, id + 1);
+                    long position = pointer(segment, offset);
+                    if (kind == KIND_OPEN) {
+                        JournalStream stream = new JournalStream(id, Paths.get(new String(record.array(), HEADER, length, StandardCharsets.UTF_8)));
+                        found.put(id, stream);
+                        stream.last = position;
+                    } else {
+                        JournalStream stream = found.get(id);
+                        if (stream != null) {
+                            if (kind == KIND_DEMUXED) {
+                                found.remove(id);
+                                int first = stream.segments.get(0);
+                                if (first != segment) {
+                                    markerHolds.computeIfAbsent(first, key -> new ArrayList<>(1)).add(segment);
+                                    segmentRefs.merge(segment, 1, Integer::sum);
+                                }
+                            } else {
+                                stream.last = position;
+                            }
+                        }
+                    }
+                    JournalStream stream = found.get(id);
+                    if (stream != null && stream.lastSegment != segment) {
+                        stream.lastSegment = segment;
+                        stream.segments.add(segment);
+                    }
+                    offset += HEADER + length;
+                }
+            }
+        }
+        // only the marker says a recording was written, its file may be partly written or left from an earlier recording; of two
+        // recordings to one file the later one counts
+        Map<Path, JournalStream> latest = new HashMap<>();
+        for (JournalStream stream : found.values()) {
+            JournalStream other = latest.get(stream.target);
+            if (other == null || other.id < stream.id) {
+                latest.put(stream.target, stream);
+            }
+        }
+        found.values().removeIf(stream -> latest.get(stream.target) != stream);
+        for (JournalStream stream : found.values()) {
+            stream.closed = true;
+            for (int segment : stream.segments) {
+                segmentRefs.merge(segment, 1, Integer::sum);
+            }
+        }
+        for (int segment : segments) {
+            segmentRefs.putIfAbsent(segment, 0);
+        }
+        // continue in a new segment, after any torn tail
+        appendSegment = segments.isEmpty() ? 0 : segments.get(segments.size() - 1) + 1;
+        appendOffset = 0;
+        deleteUnusedSegments(appendSegment);
+        for (JournalStream stream : found.values()) {
+            // the chain ends with the last record found, even if it was torn away from a later segment
+            stream.lastSegment = -1;
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    private Path segmentPath(int segment) {
+        return journalDir.resolve(String.format("%08d%s", segment, SUFFIX));
+    }
+
+    private static long pointer(int segment, long offset) {
+        return ((long) segment << 40) | offset;
+    }
+
+    /**
+     * Sets the journal directory; defaults to journal in the red5 root.
+     *
+     * @param directory
+     *            directory
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Sets the size at which a new segment file is started.
+     *
+     * @param segmentSize
+     *            bytes
+     */
+    public void setSegmentSize(long segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Sets the size of each of the two commit buffers, which also bounds the size of a tag.
+     *
+     * @param bufferSize
+     *            bytes
+     */
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    /**
+     * Sets how long a commit waits for more appends unless its buffer is half full.
+     *
+     * @param commitInterval
+     *            milliseconds
+     */
+    public void setCommitInterval(long commitInterval) {
+        this.commitInterval = commitInterval;
+    }
+
+    /**
+     * Sets whether each commit is synced to the disk.
+     *
+     * @param sync
+     *            true to sync
+     */
+    public void setSync(boolean sync) {
+        this.sync = sync;
+    }
+
+    /**
+     * Sets whether recordings are written to their files when they end, rather than on first playback.
+     *
+     * @param demuxOnClose
+     *            true to write when a recording ends
+     */
+    public void setDemuxOnClose(boolean demuxOnClose) {
+        this.demuxOnClose = demuxOnClose;
+    }
+
+    public void setDemuxThreads(int demuxThreads) {
+        this.demuxThreads = demuxThreads;
+    }
+
+    /**
+     * Returns the number of commits, each one write and one sync.
+     *
+     * @return commits
+     */
+    public long getCommits() {
+        return commits;
+    }
+
+    public long getRecords() {
+        return records;
+    }
+
+    public long getBytesCommitted() {
+        return committedBytes;
+    }
+
+    /**
+     * Returns the number of ended recordings not yet written to their files.
+     *
+     * @return recordings
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Two of these alternate: appenders fill one while the writer thread commits the other.
+     */
+    private static final class Batch {
+
+        final ByteBuffer buffer;
+
+        // buffer position where the next segment starts, -1 if none
+        int rollAt = -1;
+
+        Batch(int size) {
+            buffer = ByteBuffer.allocateDirect(size);
+        }
+
+    }
+
+    private static final class JournalStream {
+
+        final int id;
+
+        final Path target;
+
+        final List<Integer> segments = new ArrayList<>(2);
+
+        final CompletableFuture<Path> future = new CompletableFuture<>();
+
+        long last = -1;
+
+        int lastSegment = -1;
+
+        boolean closed;
+
+        long closedAt;
+
+        JournalStream(int id, Path target) {
+            this.id = id;
+            this.target = target;
+        }
+
+    }
+
+}
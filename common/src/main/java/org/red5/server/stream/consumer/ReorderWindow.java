@@ -0,0 +1,227 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.red5.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Puts queued media back in timestamp order within a bounded window. Media is placed in a ring of buckets, each covering a fixed span of
+ * time, and a bucket is released once the newest timestamp is a full window ahead of it. Media arriving for a bucket which was already
+ * released is late and dropped.
+ *
+ * The ring has a single writer and is not locked: only one thread may offer media at a time. Released media is passed to the sink on that
+ * thread, as slices in timestamp order, by reference.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class ReorderWindow {
+
+    private static final Logger log = LoggerFactory.getLogger(ReorderWindow.class);
+
+    private final Consumer<QueuedMediaData[]> sink;
+
+    private final int bucketMillis;
+
+    // buckets media may trail the newest by before it is released
+    private final int windowBuckets;
+
+    private final int mask;
+
+    private final QueuedMediaData[][] buckets;
+
+    private final int[] counts;
+
+    // absolute index of the oldest bucket not yet released
+    private long head;
+
+    // absolute index of the newest bucket, unset until media is offered
+    private long newest = Long.MIN_VALUE;
+
+    private int newestTimestamp;
+
+    private int size;
+
+    // written only by the offering thread
+    private volatile long lateDrops;
+
+    private volatile long reordered;
+
+    private volatile int maxReorderDepth;
+
+    /**
+     * Creates a reordering window.
+     *
+     * @param windowMillis
+     *            how long media is held for late arrivals, in milliseconds
+     * @param bucketMillis
+     *            span of time covered by each bucket, in milliseconds
+     * @param sink
+     *            receives released slices
+     */
+    public ReorderWindow(int windowMillis, int bucketMillis, Consumer<QueuedMediaData[]> sink) {
+        if (bucketMillis <= 0 || windowMillis < bucketMillis) {
+            throw new IllegalArgumentException("Window must span at least one bucket");
+        }
+        this.sink = sink;
+        this.bucketMillis = bucketMillis;
+        windowBuckets = windowMillis / bucketMillis;
+        // more slots than the window spans, so a new bucket never lands on one still held
+        int capacity = Integer.highestOneBit(windowBuckets) << 1;
+        mask = capacity - 1;
+        buckets = new QueuedMediaData[capacity][];
+        counts = new int[capacity];
+    }
+
+    /**
+     * Adds media to the window, releasing any buckets the window has moved past.
+     *
+     * @param queued
+     *            media
+     * @return true if added and false if it arrived too late
+     */
+    public boolean offer(QueuedMediaData queued) {
+        int timestamp = queued.getTimestamp();
+        long bucket = Math.floorDiv((long) timestamp, (long) bucketMillis);
+        if (newest == Long.MIN_VALUE) {
+            // the first media may itself be out of order, so the window starts a full span back
+            newest = bucket;
+            newestTimestamp = timestamp;
+            head = bucket - windowBuckets;
+        } else if (bucket > newest) {
+            newest = bucket;
+            release(bucket - windowBuckets);
+        } else if (bucket < head) {
+            lateDrops++;
+            if (Metrics.ENABLED) {
+                Metrics.RECORDING_LATE_DROPS.increment();
+            }
+            log.debug("Dropping late media - timestamp: {} newest: {}", timestamp, newestTimestamp);
+            return false;
+        }
+        if (timestamp < newestTimestamp) {
+            int depth = newestTimestamp - timestamp;
+            reordered++;
+            if (depth > maxReorderDepth) {
+                maxReorderDepth = depth;
+            }
+            if (Metrics.ENABLED) {
+                Metrics.RECORDING_REORDER_DEPTH.record(TimeUnit.MILLISECONDS.toNanos(depth));
+            }
+        } else {
+            newestTimestamp = timestamp;
+        }
+        insert(bucket, queued);
+        return true;
+    }
+
+    /**
+     * Releases everything held. The next media offered starts a new window, as after a timestamp reset.
+     */
+    public void flush() {
+        if (newest != Long.MIN_VALUE) {
+            release(newest);
+            newest = Long.MIN_VALUE;
+        }
+    }
+
+    private void insert(long bucket, QueuedMediaData queued) {
+        int slot = (int) (bucket & mask);
+        QueuedMediaData[] entries = buckets[slot];
+        int count = counts[slot];
+        if (entries == null) {
+            entries = buckets[slot] = new QueuedMediaData[4];
+        } else if (count == entries.length) {
+            entries = buckets[slot] = Arrays.copyOf(entries, count * 2);
+        }
+        // buckets are small, so insertion keeps them sorted; equal timestamps stay in arrival order
+        int timestamp = queued.getTimestamp();
+        int i = count;
+        while (i > 0 && entries[i - 1].getTimestamp() > timestamp) {
+            entries[i] = entries[i - 1];
+            i--;
+        }
+        entries[i] = queued;
+        counts[slot] = count + 1;
+        size++;
+    }
+
+    /**
+     * Releases the buckets up to and including the given one.
+     */
+    private void release(long limit) {
+        if (limit < head) {
+            return;
+        }
+        // only the slots of the ring can hold media, however far the window jumps
+        long end = Math.min(limit, head + mask);
+        int pending = 0;
+        for (long b = head; b <= end; b++) {
+            pending += counts[(int) (b & mask)];
+        }
+        if (pending > 0) {
+            QueuedMediaData[] slice = new QueuedMediaData[pending];
+            int n = 0;
+            for (long b = head; b <= end; b++) {
+                int slot = (int) (b & mask);
+                int count = counts[slot];
+                if (count > 0) {
+                    System.arraycopy(buckets[slot], 0, slice, n, count);
+                    Arrays.fill(buckets[slot], 0, count, null);
+                    counts[slot] = 0;
+                    n += count;
+                }
+            }
+            size -= pending;
+            sink.accept(slice);
+        }
+        head = limit + 1;
+    }
+
+    /**
+     * Returns the number of media held.
+     *
+     * @return media held
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of media dropped for arriving behind the window.
+     *
+     * @return late drops
+     */
+    public long getLateDrops() {
+        return lateDrops;
+    }
+
+    /**
+     * Returns the number of media which arrived behind the newest timestamp and were put back in order.
+     *
+     * @return reordered media
+     */
+    public long getReordered() {
+        return reordered;
+    }
+
+    /**
+     * Returns the furthest behind the newest timestamp any media arrived, in milliseconds.
+     *
+     * @return largest reorder depth
+     */
+    public int getMaxReorderDepth() {
+        return maxReorderDepth;
+    }
+
+}
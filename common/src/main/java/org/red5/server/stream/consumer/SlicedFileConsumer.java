@@ -13,24 +13,21 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.codec.VideoFrameType;
 import org.red5.io.ITag;
 import org.red5.io.ITagWriter;
 import org.red5.io.flv.impl.FLVWriter;
+import org.red5.io.flv.impl.Tag;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IClientStream;
 import org.red5.server.api.stream.IStreamFilenameGenerator;
@@ -57,7 +54,9 @@ import org.springframework.beans.factory.DisposableBean;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
- * Consumer that pushes messages to file. Used when recording live streams.
+ * Consumer that pushes messages to file. Used when recording live streams. Media is put back in timestamp order by a {@link ReorderWindow}
+ * on the pushing thread, and the slices it releases are written by a scheduled writer. The window is only shared with the final flush, so
+ * its lock is uncontended while recording.
  *
  * @author The Red5 Project
  * @author Paul Gregoire (mondain@gmail.com)
@@ -81,24 +80,36 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
     private int schedulerThreadSize = 1;
 
     /**
-     * Queue to hold data for delayed writing
+     * Marks a timestamp reset among the released slices
      */
-    private PriorityQueue<QueuedMediaData> queue;
+    private static final QueuedMediaData[] RESET = new QueuedMediaData[0];
 
     /**
-     * Reentrant lock
+     * Window putting the pushed data back in timestamp order
      */
-    private ReentrantReadWriteLock reentrantLock = new ReentrantReadWriteLock();
+    private volatile ReorderWindow window;
 
     /**
-     * Write lock
+     * Keeps the final flush from running while data is offered to the window
      */
-    private volatile Lock writeLock = reentrantLock.writeLock();
+    private final ReentrantLock windowLock = new ReentrantLock();
 
     /**
-     * Read lock
+     * Reordering statistics of the window, kept once it is gone
      */
-    private volatile Lock readLock = reentrantLock.readLock();
+    private long lateDrops;
+
+    private int maxReorderDepth;
+
+    /**
+     * Slices released by the window, waiting for the writer
+     */
+    private final ConcurrentLinkedQueue<QueuedMediaData[]> ready = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Keeps the scheduled writer and a final write from running at once
+     */
+    private final ReentrantLock writerLock = new ReentrantLock();
 
     /**
      * Scope
@@ -136,14 +147,24 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
     private ITag audioConfigurationTag;
 
     /**
-     * Number of queued items needed before writes are initiated
+     * Number of queued items needed before writes are initiated; no longer used
      */
     private int queueThreshold = -1;
 
     /**
-     * Percentage of the queue which is sliced for writing
+     * How long data is held for late arrivals, in milliseconds
      */
-    private int percentage = 25;
+    private int reorderWindow = 500;
+
+    /**
+     * Span of time covered by each bucket of the window, in milliseconds
+     */
+    private int bucketSize = 10;
+
+    /**
+     * Interval at which released data is written, in milliseconds
+     */
+    private int writeInterval = 100;
 
     /**
      * Tracks the last timestamp written to prevent backwards time stamped data.
@@ -151,9 +172,9 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
     private volatile int lastWrittenTs = -1;
 
     /**
-     * Keeps track of the last spawned write worker.
+     * Scheduled writer job.
      */
-    private volatile Future<?> writerFuture;
+    private volatile ScheduledFuture<?> writerFuture;
 
     /**
      * Whether or not to wait until a video keyframe arrives before writing video.
@@ -213,11 +234,6 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
             // get the timestamp
             int timestamp = msg.getTimestamp();
             log.trace("Data type: {} timestamp: {}", dataType, timestamp);
-            // if writes are delayed, queue the data and sort it by time
-            if (queue == null) {
-                // if we plan to use a queue, create one
-                queue = new PriorityQueue<QueuedMediaData>(queueThreshold <= 0 ? 11 : queueThreshold);
-            }
             QueuedMediaData queued = null;
             if (msg instanceof IStreamData) {
                 if (log.isTraceEnabled()) {
@@ -239,7 +255,8 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
                         }
                     }
                 }
-                queued = new QueuedMediaData(timestamp, dataType, (IStreamData) msg);
+                // the recording listener hands each consumer its own view of the data, so it is held rather than copied
+                queued = new QueuedMediaData(timestamp, dataType, (IStreamData) msg, false);
             } else {
                 // XXX what type of message are we saving that has no body data??
                 if (log.isTraceEnabled()) {
@@ -247,135 +264,39 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
                 }
                 queued = new QueuedMediaData(timestamp, dataType);
             }
-            if (queued != null) {
-                writeLock.lock();
-                try {
-                    // add to the queue
-                    queue.add(queued);
-                } finally {
-                    writeLock.unlock();
-                }
-            }
-            int queueSize = 0;
-            readLock.lock();
+            windowLock.lock();
             try {
-                queueSize = queue.size();
-            } finally {
-                readLock.unlock();
-            }
-            // initialize a writer
-            if (writer == null) {
-                init();
-                if (msg instanceof VideoData) {
-                    writeQueuedDataSlice(createTimestampLimitedSlice(msg.getTimestamp()));
-                } else if (queueThreshold >= 0 && queueSize >= queueThreshold) {
-                    writeQueuedDataSlice(createFixedLengthSlice(queueThreshold / (100 / percentage)));
+                // data is sorted by time before it is written
+                if (window == null) {
+                    if (initialized.get()) {
+                        // uninitialized, nothing more is written
+                        queued.dispose();
+                        return;
+                    }
+                    window = new ReorderWindow(reorderWindow, bucketSize, ready::offer);
                 }
+                // initialize a writer
+                if (writer == null) {
+                    init();
+                }
+                window.offer(queued);
+            } finally {
+                windowLock.unlock();
             }
         } else if (message instanceof ResetMessage) {
-            startTimestamp = -1;
-        } else if (log.isDebugEnabled()) {
-            log.debug("Ignoring pushed message: {}", message);
-        }
-    }
-
-    private void writeQueuedDataSlice(final QueuedMediaData[] slice) {
-        if (acquireWriteFuture(slice.length)) {
-            // spawn a writer
-            writerFuture = scheduledExecutorService.submit(new Runnable() {
-                public void run() {
-                    log.trace("Spawning queue writer thread");
-                    doWrites(slice);
-                }
-            });
-        } else {
-            // since we failed to write, put the sliced data back into the queue
-            writeLock.lock();
+            // write what came before the reset, then start the timestamps over
+            windowLock.lock();
             try {
-                List<QueuedMediaData> unwritten = Arrays.asList(slice);
-                for (QueuedMediaData queued : unwritten) {
-                    if (queued.hasData()) {
-                        queue.add(queued);
-                    }
+                if (window != null) {
+                    window.flush();
                 }
+                ready.offer(RESET);
             } finally {
-                writeLock.unlock();
-            }
-        }
-    }
-
-    private QueuedMediaData[] createFixedLengthSlice(int sliceLength) {
-        log.debug("Creating data slice to write of length {}.", sliceLength);
-        // get the slice
-        final QueuedMediaData[] slice = new QueuedMediaData[sliceLength];
-        log.trace("Slice length: {}", slice.length);
-        writeLock.lock();
-        try {
-            // sort the queue
-            if (log.isTraceEnabled()) {
-                log.trace("Queue length: {}", queue.size());
-            }
-            for (int q = 0; q < sliceLength; q++) {
-                slice[q] = queue.remove();
-            }
-            if (log.isTraceEnabled()) {
-                log.trace("Queue length (after removal): {}", queue.size());
-            }
-        } finally {
-            writeLock.unlock();
-        }
-        return slice;
-    }
-
-    private QueuedMediaData[] createTimestampLimitedSlice(int timestamp) {
-        log.debug("Creating data slice up until timestamp {}", timestamp);
-        // get the slice
-        final ArrayList<QueuedMediaData> slice = new ArrayList<QueuedMediaData>();
-        writeLock.lock();
-        try {
-            // sort the queue
-            if (log.isTraceEnabled()) {
-                log.trace("Queue length: {}", queue.size());
-            }
-            if (!queue.isEmpty()) {
-                while (!queue.isEmpty() && queue.peek().getTimestamp() <= timestamp) {
-                    slice.add(queue.remove());
-                }
-                if (log.isTraceEnabled()) {
-                    log.trace("Queue length (after removal): {}", queue.size());
-                }
-            }
-        } finally {
-            writeLock.unlock();
-        }
-        return slice.toArray(new QueuedMediaData[slice.size()]);
-    }
-
-    /**
-     * Get the WriteFuture with a timeout based on the length of the slice to write.
-     *
-     * @param sliceLength
-     * @return true if successful and false otherwise
-     */
-    private boolean acquireWriteFuture(int sliceLength) {
-        if (sliceLength > 0) {
-            Object writeResult = null;
-            // determine a good timeout value based on the slice length to write
-            int timeout = sliceLength * 500;
-            // check for existing future
-            if (writerFuture != null) {
-                try {
-                    // wait for a result from the last writer
-                    writeResult = writerFuture.get(timeout, TimeUnit.MILLISECONDS);
-                } catch (Exception e) {
-                    log.warn("Exception waiting for write result. Timeout: {}ms", timeout, e);
-                    return false;
-                }
+                windowLock.unlock();
             }
-            log.debug("Write future result (expect null): {}", writeResult);
-            return true;
+        } else if (log.isDebugEnabled()) {
+            log.debug("Ignoring pushed message: {}", message);
         }
-        return false;
     }
 
     /**
@@ -416,6 +337,13 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
             log.debug("Init: {}", mode);
             // instance an executor for queue handling
             scheduledExecutorService = Executors.newScheduledThreadPool(schedulerThreadSize, new CustomizableThreadFactory("FileConsumerExecutor-"));
+            writerFuture = scheduledExecutorService.scheduleWithFixedDelay(() -> {
+                try {
+                    doWrites();
+                } catch (Exception e) {
+                    log.warn("Exception writing queued data", e);
+                }
+            }, writeInterval, writeInterval, TimeUnit.MILLISECONDS);
             // if the path is null, the consumer has been uninitialized
             if (path != null) {
                 if (log.isDebugEnabled()) {
@@ -477,23 +405,28 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
     public void uninit() {
         if (initialized.get()) {
             log.debug("Uninit");
-            if (writer != null) {
-                if (writerFuture != null) {
-                    try {
-                        writerFuture.get();
-                    } catch (Exception e) {
-                        log.warn("Exception waiting for write result on uninit", e);
-                    }
-                    if (writerFuture.cancel(false)) {
-                        log.debug("Future completed");
-                    }
+            if (writerFuture != null) {
+                if (writerFuture.cancel(false)) {
+                    log.debug("Writer cancelled");
                 }
                 writerFuture = null;
-                // write all the queued items
-                doWrites();
-                // clear the queue
-                queue.clear();
-                queue = null;
+            }
+            // release the data held for late arrivals, after whatever is being offered from the pushing thread
+            windowLock.lock();
+            try {
+                if (window != null) {
+                    window.flush();
+                    log.debug("Reordered: {} late drops: {} max reorder depth: {}ms", window.getReordered(), window.getLateDrops(), window.getMaxReorderDepth());
+                    lateDrops = window.getLateDrops();
+                    maxReorderDepth = window.getMaxReorderDepth();
+                    window = null;
+                }
+            } finally {
+                windowLock.unlock();
+            }
+            // write everything, or let it go if there is no writer
+            doWrites();
+            if (writer != null) {
                 // close the writer
                 try {
                     writer.close();
@@ -508,23 +441,27 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
     }
 
     /**
-     * Write all the queued items to the writer.
+     * Write all the slices released by the reordering window to the writer.
      */
     public final void doWrites() {
-        QueuedMediaData[] slice = null;
-        writeLock.lock();
+        writerLock.lock();
         try {
-            slice = queue.toArray(new QueuedMediaData[0]);
-            if (queue.removeAll(Arrays.asList(slice))) {
-                log.debug("Queued writes transfered, count: {}", slice.length);
+            QueuedMediaData[] slice;
+            while ((slice = ready.poll()) != null) {
+                if (slice == RESET) {
+                    startTimestamp = -1;
+                    lastWrittenTs = -1;
+                } else if (writer != null) {
+                    doWrites(slice);
+                } else {
+                    for (QueuedMediaData queued : slice) {
+                        queued.dispose();
+                    }
+                }
             }
         } finally {
-            writeLock.unlock();
+            writerLock.unlock();
         }
-        // sort
-        Arrays.sort(slice);
-        // write
-        doWrites(slice);
     }
 
     /**
@@ -616,42 +553,40 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
         // get timestamp
         int timestamp = queued.getTimestamp();
         log.debug("Write - timestamp: {} type: {}", timestamp, dataType);
-        // get queued
-        ITag tag = queued.getData();
-        if (tag != null) {
-            // only allow blank tags if they are of audio type
-            if (tag.getBodySize() > 0 || dataType == ITag.TYPE_AUDIO) {
-                // if the last message was a reset or we just started, use the header timer
-                if (startTimestamp == -1) {
-                    startTimestamp = timestamp;
-                    timestamp = 0;
+        // get the data, as held by the queue
+        IoBuffer body = queued.getBody();
+        int bodySize = body != null ? body.remaining() : 0;
+        // only allow blank tags if they are of audio type
+        if (bodySize > 0 || dataType == ITag.TYPE_AUDIO) {
+            // if the last message was a reset or we just started, use the header timer
+            if (startTimestamp == -1) {
+                startTimestamp = timestamp;
+                timestamp = 0;
+            } else {
+                timestamp -= startTimestamp;
+            }
+            ITag tag = new Tag(dataType, timestamp, bodySize, body, 0);
+            try {
+                if (timestamp >= 0) {
+                    if (!writer.writeTag(tag)) {
+                        log.warn("Tag was not written");
+                    }
                 } else {
-                    timestamp -= startTimestamp;
+                    log.warn("Skipping message with negative timestamp");
                 }
-                // update the timestamp
-                tag.setTimestamp(timestamp);
-                try {
-                    if (timestamp >= 0) {
-                        if (!writer.writeTag(tag)) {
-                            log.warn("Tag was not written");
-                        }
-                    } else {
-                        log.warn("Skipping message with negative timestamp");
-                    }
-                } catch (ClosedChannelException cce) {
-                    // the channel we tried to write to is closed, we should not try
-                    // again on that writer
+            } catch (ClosedChannelException cce) {
+                // the channel we tried to write to is closed, we should not try
+                // again on that writer
+                log.error("The writer is no longer able to write to the file: {} writable: {}", path.getFileName(), path.toFile().canWrite());
+            } catch (IOException e) {
+                log.warn("Error writing tag", e);
+                if (e.getCause() instanceof ClosedChannelException) {
+                    // the channel we tried to write to is closed, we should not
+                    // try again on that writer
                     log.error("The writer is no longer able to write to the file: {} writable: {}", path.getFileName(), path.toFile().canWrite());
-                } catch (IOException e) {
-                    log.warn("Error writing tag", e);
-                    if (e.getCause() instanceof ClosedChannelException) {
-                        // the channel we tried to write to is closed, we should not
-                        // try again on that writer
-                        log.error("The writer is no longer able to write to the file: {} writable: {}", path.getFileName(), path.toFile().canWrite());
-                    }
-                } finally {
-                    queued.dispose();
                 }
+            } finally {
+                queued.dispose();
             }
         }
     }
@@ -736,11 +671,12 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
     }
 
     /**
-     * Sets the threshold for the queue. When the threshold is met a worker is spawned to empty the sorted queue to the writer.
+     * Sets the threshold for the queue. No longer used; data is written once it leaves the reordering window.
      *
      * @param queueThreshold
      *            number of items to queue before spawning worker
      */
+    @Deprecated
     public void setQueueThreshold(int queueThreshold) {
         this.queueThreshold = queueThreshold;
     }
@@ -750,10 +686,61 @@ public class SlicedFileConsumer implements Constants, IPushableConsumer, IPipeCo
      *
      * @return queue length
      */
+    @Deprecated
     public int getQueueThreshold() {
         return queueThreshold;
     }
 
+    /**
+     * Sets how long data is held for late arrivals before it is written; data arriving later than this behind the newest is dropped.
+     *
+     * @param reorderWindow
+     *            window in milliseconds
+     */
+    public void setReorderWindow(int reorderWindow) {
+        this.reorderWindow = reorderWindow;
+    }
+
+    /**
+     * Sets the span of time covered by each bucket of the reordering window.
+     *
+     * @param bucketSize
+     *            bucket size in milliseconds
+     */
+    public void setBucketSize(int bucketSize) {
+        this.bucketSize = bucketSize;
+    }
+
+    /**
+     * Sets the interval at which data released by the reordering window is written.
+     *
+     * @param writeInterval
+     *            interval in milliseconds
+     */
+    public void setWriteInterval(int writeInterval) {
+        this.writeInterval = writeInterval;
+    }
+
+    /**
+     * Returns the number of data dropped for arriving behind the reordering window.
+     *
+     * @return late drops
+     */
+    public long getLateDrops() {
+        ReorderWindow current = window;
+        return current != null ? current.getLateDrops() : lateDrops;
+    }
+
+    /**
+     * Returns the furthest behind the newest timestamp any data arrived, in milliseconds.
+     *
+     * @return largest reorder depth
+     */
+    public int getMaxReorderDepth() {
+        ReorderWindow current = window;
+        return current != null ? current.getMaxReorderDepth() : maxReorderDepth;
+    }
+
     /**
      * Whether or not the queue should be utilized.
      *
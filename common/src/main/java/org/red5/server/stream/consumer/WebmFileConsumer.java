@@ -0,0 +1,150 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.Tag;
+import org.red5.io.webm.WebmTagWriter;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IClientStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumer that records enhanced RTMP streams, VP8, VP9 or AV1 video with Opus audio, to a WebM / Matroska file. Frames are handed to a
+ * {@link WebmTagWriter} on the pushing thread as they arrive; the writer gathers them per cluster, so there is one file write per cluster
+ * and no per frame queueing or copying. Audio and video are recorded in arrival order, which Matroska allows within a cluster.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class WebmFileConsumer extends AbstractRecordingConsumer {
+
+    private static final Logger log = LoggerFactory.getLogger(WebmFileConsumer.class);
+
+    private WebmTagWriter writer;
+
+    private int probeDuration = 2000;
+
+    private int clusterDuration = 5000;
+
+    /**
+     * Default ctor
+     */
+    public WebmFileConsumer() {
+    }
+
+    /**
+     * Creates webm file consumer
+     *
+     * @param scope
+     *            Scope of consumer
+     * @param file
+     *            File
+     */
+    public WebmFileConsumer(IScope scope, File file) {
+        super(scope, file);
+    }
+
+    /**
+     * Returns whether a file name is recorded by this consumer.
+     *
+     * @param name
+     *            file or stream name
+     * @return true for names ending in .webm or .mkv
+     */
+    public static boolean handles(String name) {
+        String lower = name.toLowerCase();
+        return lower.endsWith(".webm") || lower.endsWith(".mkv");
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean accepts(byte dataType) {
+        return dataType == TYPE_AUDIO_DATA || dataType == TYPE_VIDEO_DATA;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void open(File file) throws IOException {
+        if (file == null) {
+            log.warn("Consumer is uninitialized");
+            return;
+        }
+        Path path = file.toPath();
+        if (IClientStream.MODE_APPEND.equals(mode)) {
+            throw new IOException("Appending is not supported for WebM recordings");
+        } else if (IClientStream.MODE_RECORD.equals(mode)) {
+            Files.createDirectories(path.getParent());
+            writer = new WebmTagWriter(path);
+            writer.setProbeDuration(probeDuration);
+            writer.setClusterDuration(clusterDuration);
+            // configuration sent before the recording started, so the tracks can be described
+            for (ITag config : new ITag[] { videoConfigurationTag, audioConfigurationTag }) {
+                if (config != null) {
+                    writer.writeTag(config);
+                }
+            }
+        } else {
+            // delete existing file since we're not recording nor appending
+            if (Files.deleteIfExists(path)) {
+                log.debug("File deleted");
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected boolean isOpen() {
+        return writer != null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void write(byte dataType, int timestamp, IoBuffer data) throws IOException {
+        if (data.remaining() > 0) {
+            IoBuffer body = data.duplicate();
+            writer.writeTag(new Tag(dataType, timestamp, body.remaining(), body, 0));
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void close() {
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+    }
+
+    /**
+     * Sets how long to wait for the second media type before writing the tracks.
+     *
+     * @param probeDuration
+     *            milliseconds
+     */
+    public void setProbeDuration(int probeDuration) {
+        this.probeDuration = probeDuration;
+    }
+
+    /**
+     * Sets the cluster length of audio only recordings.
+     *
+     * @param clusterDuration
+     *            milliseconds
+     */
+    public void setClusterDuration(int clusterDuration) {
+        this.clusterDuration = clusterDuration;
+    }
+
+}
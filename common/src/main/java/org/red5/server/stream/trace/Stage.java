@@ -0,0 +1,41 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.trace;
+
+/**
+ * Stages a traced live packet passes through on its way from a publisher to a subscriber, in order. Each stage ends where the next begins.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public enum Stage {
+
+    /** From the bytes completing the message reaching the decoder until the message is decoded. */
+    DECODE,
+    /** From decoding, through the connection's receive queue and handler, until the broadcast stream pushes it to its live pipe. */
+    DISPATCH,
+    /** From the live pipe push until the subscriber's play engine receives the message. */
+    PIPE_PUSH,
+    /** From the play engine receiving the message until it is handed to the subscriber's channel. */
+    PLAY_ENGINE_SEND,
+    /** From the channel write until the message is encoded. */
+    ENCODE,
+    /** From encoding until the transport reports the message sent. */
+    SOCKET_WRITE;
+
+    static final Stage[] STAGES = values();
+
+    /**
+     * Returns the key used for this stage in JMX results.
+     *
+     * @return key
+     */
+    public String key() {
+        return name().toLowerCase();
+    }
+
+}
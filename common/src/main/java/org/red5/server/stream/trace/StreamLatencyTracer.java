@@ -0,0 +1,300 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.trace;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.red5.metrics.LatencyHistogram;
+import org.red5.server.api.stream.IStreamCapableConnection;
+import org.red5.server.jmx.mxbeans.StreamLatencyMXBean;
+import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.stream.ClientBroadcastStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Opt in, per stream tracing of live packet latency from the publisher's decoder to each subscriber's socket write, exported through the
+ * <code>org.red5.server:type=StreamLatency</code> MXBean.
+ * <p>
+ * Streams are traced by published name, either from the comma separated <code>red5.latency.streams</code> system property ("*" traces
+ * every stream) or at runtime through JMX. Only connections publishing a traced stream pay for tracing: their decoder stamps one in
+ * <code>red5.latency.sampleRate</code> audio and video packets (100 by default) with a {@link TraceSample}, which each stage marks as the
+ * packet passes and each subscriber copy records when it is sent. At most <code>red5.latency.maxSubscribers</code> subscribers per stream
+ * (256 by default) are tracked individually, each until its stream closes. The MXBean is registered when the tracer is first used.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class StreamLatencyTracer implements StreamLatencyMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamLatencyTracer.class);
+
+    /**
+     * Name which traces every stream.
+     */
+    public static final String ALL = "*";
+
+    private static final StreamLatencyTracer instance = new StreamLatencyTracer();
+
+    private static final AtomicBoolean registered = new AtomicBoolean();
+
+    private static volatile int sampleRate = Math.max(1, Integer.getInteger("red5.latency.sampleRate", 100));
+
+    private final int maxSubscribers = Integer.getInteger("red5.latency.maxSubscribers", 256);
+
+    private final Set<String> traced = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentMap<String, StreamTrace> traces = new ConcurrentHashMap<>();
+
+    private final Set<ClientBroadcastStream> publishers = ConcurrentHashMap.newKeySet();
+
+    private StreamLatencyTracer() {
+        String streams = System.getProperty("red5.latency.streams");
+        if (streams != null) {
+            for (String name : streams.split(",")) {
+                if (!name.isBlank()) {
+                    traced.add(name.trim());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return tracer
+     */
+    public static StreamLatencyTracer getInstance() {
+        if (!registered.get() && registered.compareAndSet(false, true)) {
+            instance.registerJMX();
+        }
+        return instance;
+    }
+
+    private void registerJMX() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oName = new ObjectName("org.red5.server:type=StreamLatency");
+            if (!mbs.isRegistered(oName)) {
+                mbs.registerMBean(new StandardMBean(this, StreamLatencyMXBean.class, true), oName);
+            }
+        } catch (Exception e) {
+            log.debug("Error on jmx registration", e);
+        }
+    }
+
+    /**
+     * Decides whether to sample a packet received on a traced connection.
+     *
+     * @param ingestNanos
+     *            {@link System#nanoTime()} when the bytes completing the packet reached the decoder
+     * @return a new sample, or null if the packet is not sampled
+     */
+    public static TraceSample sample(long ingestNanos) {
+        int rate = sampleRate;
+        if (rate > 1 && ThreadLocalRandom.current().nextInt(rate) != 0) {
+            return null;
+        }
+        return new TraceSample(ingestNanos);
+    }
+
+    /**
+     * Returns whether the stream with the given published name is traced.
+     *
+     * @param name
+     *            published name
+     * @return true if traced
+     */
+    public boolean isTraced(String name) {
+        return name != null && !traced.isEmpty() && (traced.contains(ALL) || traced.contains(name));
+    }
+
+    /**
+     * Registers a stream which started publishing and enables tracing on its connection if the stream is traced.
+     *
+     * @param stream
+     *            broadcast stream
+     */
+    public void publishing(ClientBroadcastStream stream) {
+        publishers.add(stream);
+        if (isTraced(stream.getPublishedName())) {
+            updateConnections();
+        }
+    }
+
+    /**
+     * Deregisters a closed stream and disables tracing on its connection unless it publishes another traced stream.
+     *
+     * @param stream
+     *            broadcast stream
+     */
+    public void unpublished(ClientBroadcastStream stream) {
+        if (publishers.remove(stream) && stream.getConnection() instanceof RTMPConnection conn && conn.isLatencyTraced()) {
+            conn.setLatencyTraced(false);
+            updateConnections();
+        }
+    }
+
+    /**
+     * Marks the end of the dispatch stage of a sample about to be pushed to the live pipe of the given stream, and records its publisher
+     * side stages. Samples of streams which are not traced are left without a stream trace, so they are not followed any further.
+     *
+     * @param name
+     *            published name
+     * @param sample
+     *            sample
+     */
+    public void dispatched(String name, TraceSample sample) {
+        if (isTraced(name)) {
+            StreamTrace trace = traces.computeIfAbsent(name, n -> new StreamTrace(n, maxSubscribers));
+            sample.mark(Stage.DISPATCH);
+            sample.setStream(trace);
+            trace.recordPublisher(sample.getMarks());
+        }
+    }
+
+    /**
+     * Forgets a subscriber whose stream closed, so that its results no longer take a place under the subscriber limit.
+     *
+     * @param name
+     *            published name of the stream it subscribed to, or null to look in every traced stream
+     * @param subscriberId
+     *            subscriber id
+     */
+    public void unsubscribed(String name, String subscriberId) {
+        if (subscriberId != null && !traces.isEmpty()) {
+            if (name != null) {
+                StreamTrace trace = traces.get(name);
+                if (trace != null) {
+                    trace.removeSubscriber(subscriberId);
+                }
+            } else {
+                traces.values().forEach(trace -> trace.removeSubscriber(subscriberId));
+            }
+        }
+    }
+
+    /**
+     * Sets the tracing flag of every publishing connection: on if it publishes at least one traced stream.
+     */
+    private synchronized void updateConnections() {
+        Map<RTMPConnection, Boolean> flags = new HashMap<>();
+        for (ClientBroadcastStream stream : publishers) {
+            IStreamCapableConnection conn = stream.getConnection();
+            if (conn instanceof RTMPConnection) {
+                flags.merge((RTMPConnection) conn, isTraced(stream.getPublishedName()), Boolean::logicalOr);
+            }
+        }
+        flags.forEach(RTMPConnection::setLatencyTraced);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<String> getTracedStreams() {
+        List<String> names = new ArrayList<>(traced);
+        Collections.sort(names);
+        return names;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void traceStream(String name) {
+        if (name != null && traced.add(name.trim())) {
+            log.info("Tracing latency of stream: {}", name);
+            updateConnections();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void untraceStream(String name) {
+        if (name != null) {
+            if (ALL.equals(name)) {
+                traced.clear();
+                traces.clear();
+            } else {
+                traced.remove(name);
+                traces.remove(name);
+            }
+            log.info("Stopped tracing latency of stream: {}", name);
+            updateConnections();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void setSampleRate(int rate) {
+        sampleRate = Math.max(1, rate);
+    }
+
+    /**
+     * Returns the results of a stream.
+     *
+     * @param name
+     *            published name
+     * @return stream trace or null if the stream has no results
+     */
+    public StreamTrace getTrace(String name) {
+        return traces.get(name);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getStreamLatency(String name) {
+        StreamTrace trace = traces.get(name);
+        return trace != null ? trace.snapshot() : Collections.emptyMap();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public List<String> getSubscribers(String name) {
+        StreamTrace trace = traces.get(name);
+        return trace != null ? trace.getSubscribers() : Collections.emptyList();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getSubscriberTotals(String name) {
+        StreamTrace trace = traces.get(name);
+        return trace != null ? trace.snapshotTotals() : Collections.emptyMap();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getSubscriberLatency(String name, String subscriberId) {
+        StreamTrace trace = traces.get(name);
+        Map<String, LatencyHistogram.Snapshot> snapshots = trace != null ? trace.snapshot(subscriberId) : null;
+        return snapshots != null ? snapshots : Collections.emptyMap();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetStatistics() {
+        traces.values().forEach(StreamTrace::reset);
+    }
+
+}
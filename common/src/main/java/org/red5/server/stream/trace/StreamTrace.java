@@ -0,0 +1,187 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.trace;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.red5.metrics.LatencyHistogram;
+
+/**
+ * Latency aggregated over the sampled packets of one traced stream: a histogram per {@link Stage} plus the end to end total, for the stream
+ * as a whole and for each subscriber. Publisher side stages are recorded once per sample, subscriber side stages and the total once per
+ * subscriber copy. Subscribers are tracked individually until their stream closes, and their number is bounded; beyond it subscribers
+ * only count towards the stream.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class StreamTrace {
+
+    /**
+     * Key of the end to end latency in JMX results.
+     */
+    public static final String TOTAL = "total";
+
+    private static final int TOTAL_INDEX = Stage.STAGES.length;
+
+    private final String name;
+
+    private final int maxSubscribers;
+
+    private final LatencyHistogram[] histograms;
+
+    private final ConcurrentMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+    StreamTrace(String name, int maxSubscribers) {
+        this.name = name;
+        this.maxSubscribers = maxSubscribers;
+        this.histograms = newHistograms(name, Integer.MAX_VALUE);
+    }
+
+    private static LatencyHistogram[] newHistograms(String name, int stripes) {
+        LatencyHistogram[] histograms = new LatencyHistogram[TOTAL_INDEX + 1];
+        for (Stage stage : Stage.STAGES) {
+            histograms[stage.ordinal()] = new LatencyHistogram(name + '.' + stage.key(), stage.key(), stripes);
+        }
+        histograms[TOTAL_INDEX] = new LatencyHistogram(name + '.' + TOTAL, TOTAL, stripes);
+        return histograms;
+    }
+
+    /**
+     * Returns the histograms for the given subscriber, creating them while under the subscriber limit.
+     */
+    Subscriber getSubscriber(String subscriberId) {
+        Subscriber subscriber = subscribers.get(subscriberId);
+        if (subscriber == null && subscribers.size() < maxSubscribers) {
+            // sampled subscribers rarely record concurrently, so one stripe each keeps them small
+            subscriber = subscribers.computeIfAbsent(subscriberId, id -> new Subscriber(newHistograms(name + '.' + id, 1)));
+        }
+        return subscriber;
+    }
+
+    /**
+     * Forgets a subscriber, freeing its place under the subscriber limit.
+     */
+    void removeSubscriber(String subscriberId) {
+        subscribers.remove(subscriberId);
+    }
+
+    /**
+     * Records the publisher side stages of a dispatched sample.
+     */
+    void recordPublisher(long[] marks) {
+        for (int i = 0; i < Stage.PIPE_PUSH.ordinal(); i++) {
+            record(histograms, i, marks);
+        }
+    }
+
+    /**
+     * Records the subscriber side stages and total of a completed sample, and all of its stages for the subscriber.
+     */
+    void recordSubscriber(long[] marks, Subscriber subscriber) {
+        for (int i = Stage.PIPE_PUSH.ordinal(); i < TOTAL_INDEX; i++) {
+            record(histograms, i, marks);
+        }
+        histograms[TOTAL_INDEX].record(marks[TOTAL_INDEX] - marks[0]);
+        if (subscriber != null) {
+            for (int i = 0; i < TOTAL_INDEX; i++) {
+                record(subscriber.histograms, i, marks);
+            }
+            subscriber.histograms[TOTAL_INDEX].record(marks[TOTAL_INDEX] - marks[0]);
+        }
+    }
+
+    private static void record(LatencyHistogram[] histograms, int stage, long[] marks) {
+        // a stage is only measured when both its start and its end were marked
+        if (marks[stage] != 0L && marks[stage + 1] != 0L) {
+            histograms[stage].record(marks[stage + 1] - marks[stage]);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns snapshots of the stream's stage and total latency.
+     *
+     * @return snapshots by stage key
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshot() {
+        return snapshot(histograms);
+    }
+
+    /**
+     * Returns snapshots of a subscriber's stage and total latency.
+     *
+     * @param subscriberId
+     *            subscriber id
+     * @return snapshots by stage key, or null if the subscriber is not tracked
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshot(String subscriberId) {
+        Subscriber subscriber = subscribers.get(subscriberId);
+        return subscriber != null ? snapshot(subscriber.histograms) : null;
+    }
+
+    /**
+     * Returns snapshots of every tracked subscriber's total latency.
+     *
+     * @return snapshots by subscriber id
+     */
+    public Map<String, LatencyHistogram.Snapshot> snapshotTotals() {
+        Map<String, LatencyHistogram.Snapshot> totals = new LinkedHashMap<>();
+        subscribers.forEach((id, subscriber) -> totals.put(id, subscriber.histograms[TOTAL_INDEX].snapshot()));
+        return totals;
+    }
+
+    private static Map<String, LatencyHistogram.Snapshot> snapshot(LatencyHistogram[] histograms) {
+        Map<String, LatencyHistogram.Snapshot> snapshots = new LinkedHashMap<>();
+        for (Stage stage : Stage.STAGES) {
+            snapshots.put(stage.key(), histograms[stage.ordinal()].snapshot());
+        }
+        snapshots.put(TOTAL, histograms[TOTAL_INDEX].snapshot());
+        return snapshots;
+    }
+
+    /**
+     * Returns the ids of the tracked subscribers.
+     *
+     * @return subscriber ids
+     */
+    public List<String> getSubscribers() {
+        return new ArrayList<>(subscribers.keySet());
+    }
+
+    /**
+     * Clears the recorded latency and forgets the subscribers.
+     */
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * Histograms of one subscriber.
+     */
+    static final class Subscriber {
+
+        final LatencyHistogram[] histograms;
+
+        Subscriber(LatencyHistogram[] histograms) {
+            this.histograms = histograms;
+        }
+
+    }
+
+}
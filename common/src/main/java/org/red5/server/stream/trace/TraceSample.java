@@ -0,0 +1,113 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.stream.trace;
+
+/**
+ * Monotonic timestamps of one sampled live packet as it passes through the {@link Stage stages}. The decoder creates a sample for the
+ * publisher's message; each subscriber's play engine {@link #fork(String) forks} it, so every subscriber copy completes on its own.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class TraceSample {
+
+    // marks[0] is the ingest time, marks[n + 1] the end of stage n
+    private final long[] marks = new long[Stage.STAGES.length + 1];
+
+    private StreamTrace stream;
+
+    private StreamTrace.Subscriber subscriber;
+
+    /**
+     * Creates a sample for a packet whose bytes reached the decoder at the given time.
+     *
+     * @param ingestNanos
+     *            {@link System#nanoTime()} at ingest
+     */
+    public TraceSample(long ingestNanos) {
+        marks[0] = ingestNanos;
+    }
+
+    /**
+     * Marks the end of a stage now.
+     *
+     * @param stage
+     *            stage
+     */
+    public void mark(Stage stage) {
+        marks[stage.ordinal() + 1] = System.nanoTime();
+    }
+
+    /**
+     * Returns the ingest time.
+     *
+     * @return {@link System#nanoTime()} at ingest
+     */
+    public long getIngestNanos() {
+        return marks[0];
+    }
+
+    /**
+     * Returns when the given stage ended.
+     *
+     * @param stage
+     *            stage
+     * @return {@link System#nanoTime()} at the end of the stage, or zero if it has not ended
+     */
+    public long getMark(Stage stage) {
+        return marks[stage.ordinal() + 1];
+    }
+
+    /**
+     * Returns the stream trace this sample is recorded into, null until dispatched on a traced stream.
+     *
+     * @return stream trace
+     */
+    public StreamTrace getStream() {
+        return stream;
+    }
+
+    void setStream(StreamTrace stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Creates the copy of this sample which follows the packet to one subscriber, marking the end of the pipe push.
+     *
+     * @param subscriberId
+     *            subscriber id
+     * @return subscriber sample, or null if this sample was not dispatched on a traced stream
+     */
+    public TraceSample fork(String subscriberId) {
+        StreamTrace trace = stream;
+        if (trace == null) {
+            return null;
+        }
+        TraceSample copy = new TraceSample(marks[0]);
+        System.arraycopy(marks, 1, copy.marks, 1, Stage.PIPE_PUSH.ordinal());
+        copy.stream = trace;
+        copy.subscriber = trace.getSubscriber(subscriberId);
+        copy.mark(Stage.PIPE_PUSH);
+        return copy;
+    }
+
+    /**
+     * Marks the end of the socket write and records the subscriber stages and total latency of this sample.
+     */
+    public void complete() {
+        mark(Stage.SOCKET_WRITE);
+        StreamTrace trace = stream;
+        if (trace != null) {
+            trace.recordSubscriber(marks, subscriber);
+        }
+    }
+
+    long[] getMarks() {
+        return marks;
+    }
+
+}
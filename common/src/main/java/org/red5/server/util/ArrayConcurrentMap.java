@@ -0,0 +1,297 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.util;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Small copy-on-write {@link ConcurrentMap} backed by a single array of alternating keys and values. Intended for per-connection
+ * collections which normally hold one to a handful of entries, such as RTMP channels and streams, where a {@link java.util.concurrent.ConcurrentHashMap}
+ * costs several hundred bytes even when empty. Reads are lock-free linear scans over an immutable snapshot; writes are serialized and
+ * replace the snapshot, so this map should not be used for large or write heavy content. Iterators are weakly consistent and never throw
+ * {@link java.util.ConcurrentModificationException}. Null keys and values are not permitted.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class ArrayConcurrentMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    private static final Object[] EMPTY = new Object[0];
+
+    // keys at even indexes, values at odd indexes
+    private volatile Object[] table = EMPTY;
+
+    private transient Set<Map.Entry<K, V>> entrySet;
+
+    public ArrayConcurrentMap() {
+    }
+
+    public ArrayConcurrentMap(Map<? extends K, ? extends V> values) {
+        putAll(values);
+    }
+
+    private static int indexOf(Object[] tab, Object key) {
+        for (int i = 0; i < tab.length; i += 2) {
+            Object k = tab[i];
+            if (k == key || k.equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int size() {
+        return table.length >> 1;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEmpty() {
+        return table.length == 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsKey(Object key) {
+        return key != null && indexOf(table, key) >= 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean containsValue(Object value) {
+        if (value != null) {
+            Object[] tab = table;
+            for (int i = 1; i < tab.length; i += 2) {
+                if (value.equals(tab[i])) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            return null;
+        }
+        Object[] tab = table;
+        int i = indexOf(tab, key);
+        return i >= 0 ? (V) tab[i + 1] : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V put(K key, V value) {
+        return put(key, value, false);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return put(key, value, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized V put(K key, V value, boolean onlyIfAbsent) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        Object[] tab = table;
+        int i = indexOf(tab, key);
+        if (i >= 0) {
+            V old = (V) tab[i + 1];
+            if (!onlyIfAbsent) {
+                Object[] copy = tab.clone();
+                copy[i + 1] = value;
+                table = copy;
+            }
+            return old;
+        }
+        Object[] copy = Arrays.copyOf(tab, tab.length + 2);
+        copy[tab.length] = key;
+        copy[tab.length + 1] = value;
+        table = copy;
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public V remove(Object key) {
+        return key != null ? removeEntry(key, null) : null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean remove(Object key, Object value) {
+        return key != null && value != null && removeEntry(key, value) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private synchronized V removeEntry(Object key, Object expected) {
+        Object[] tab = table;
+        int i = indexOf(tab, key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) tab[i + 1];
+        if (expected != null && !expected.equals(old)) {
+            return null;
+        }
+        if (tab.length == 2) {
+            table = EMPTY;
+        } else {
+            Object[] copy = new Object[tab.length - 2];
+            System.arraycopy(tab, 0, copy, 0, i);
+            System.arraycopy(tab, i + 2, copy, i, tab.length - i - 2);
+            table = copy;
+        }
+        return old;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        Object[] tab = table;
+        int i = indexOf(tab, key);
+        if (i < 0 || !oldValue.equals(tab[i + 1])) {
+            return false;
+        }
+        Object[] copy = tab.clone();
+        copy[i + 1] = newValue;
+        table = copy;
+        return true;
+    }
+
+    /** {@inheritDoc} */
+    @SuppressWarnings("unchecked")
+    @Override
+    public synchronized V replace(K key, V value) {
+        Objects.requireNonNull(value);
+        Object[] tab = table;
+        int i = indexOf(tab, key);
+        if (i < 0) {
+            return null;
+        }
+        V old = (V) tab[i + 1];
+        Object[] copy = tab.clone();
+        copy[i + 1] = value;
+        table = copy;
+        return old;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public synchronized void clear() {
+        table = EMPTY;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        Set<Map.Entry<K, V>> es = entrySet;
+        if (es == null) {
+            entrySet = es = new EntrySet();
+        }
+        return es;
+    }
+
+    private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(table);
+        }
+
+        @Override
+        public int size() {
+            return ArrayConcurrentMap.this.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (o instanceof Map.Entry<?, ?> e) {
+                Object value = get(e.getKey());
+                return value != null && value.equals(e.getValue());
+            }
+            return false;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return o instanceof Map.Entry<?, ?> e && ArrayConcurrentMap.this.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public void clear() {
+            ArrayConcurrentMap.this.clear();
+        }
+
+    }
+
+    private final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final Object[] snapshot;
+
+        private int next;
+
+        private int last = -1;
+
+        EntryIterator(Object[] snapshot) {
+            this.snapshot = snapshot;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next < snapshot.length;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public Map.Entry<K, V> next() {
+            if (next >= snapshot.length) {
+                throw new NoSuchElementException();
+            }
+            last = next;
+            next += 2;
+            return new AbstractMap.SimpleImmutableEntry<>((K) snapshot[last], (V) snapshot[last + 1]);
+        }
+
+        @Override
+        public void remove() {
+            if (last < 0) {
+                throw new IllegalStateException();
+            }
+            removeEntry(snapshot[last], snapshot[last + 1]);
+            last = -1;
+        }
+
+    }
+
+}
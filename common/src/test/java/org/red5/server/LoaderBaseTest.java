@@ -0,0 +1,33 @@
+package org.red5.server;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+
+/**
+ * Tests for the per application start-up gate.
+ */
+public class LoaderBaseTest {
+
+    @Test
+    public void testAwaitApplication() throws Exception {
+        // applications the loader does not know about are never held
+        assertTrue(LoaderBase.isApplicationReady("unknown"));
+        assertTrue(LoaderBase.awaitApplication("unknown", 0));
+        CompletableFuture<Boolean> live = LoaderBase.applicationStarting("live");
+        CompletableFuture<Boolean> vod = LoaderBase.applicationStarting("vod");
+        assertFalse(LoaderBase.isApplicationReady("live"));
+        assertFalse(LoaderBase.awaitApplication("live", 10));
+        // one application finishing does not release the other
+        Thread.ofVirtual().start(() -> live.complete(Boolean.TRUE));
+        assertTrue(LoaderBase.awaitApplication("live", 5000));
+        assertFalse(LoaderBase.isApplicationReady("vod"));
+        vod.complete(Boolean.FALSE);
+        assertTrue(LoaderBase.isApplicationReady("vod"));
+        assertFalse(LoaderBase.awaitApplication("vod", 10));
+    }
+
+}
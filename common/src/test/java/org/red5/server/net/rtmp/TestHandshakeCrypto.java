@@ -0,0 +1,80 @@
+package org.red5.server.net.rtmp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.util.Arrays;
+
+import javax.crypto.Mac;
+import javax.crypto.interfaces.DHPublicKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.Test;
+
+/**
+ * Tests for the pooled handshake crypto primitives.
+ */
+public class TestHandshakeCrypto {
+
+    @Test
+    public void testKeyPairsAreNotReused() throws Exception {
+        HandshakeCrypto crypto = HandshakeCrypto.getInstance();
+        KeyPair first = crypto.takeKeyPair();
+        KeyPair second = crypto.takeKeyPair();
+        assertNotSame(first, second);
+        assertTrue(!first.getPublic().equals(second.getPublic()));
+    }
+
+    @Test
+    public void testSharedSecretAgreement() throws Exception {
+        HandshakeCrypto crypto = HandshakeCrypto.getInstance();
+        KeyPair server = crypto.takeKeyPair();
+        KeyPair client = crypto.takeKeyPair();
+        byte[] serverPublic = BigIntegers.asUnsignedByteArray(((DHPublicKey) server.getPublic()).getY());
+        byte[] clientPublic = BigIntegers.asUnsignedByteArray(((DHPublicKey) client.getPublic()).getY());
+        byte[] serverSecret = HandshakeCrypto.sharedSecret(server.getPrivate(), clientPublic);
+        byte[] clientSecret = HandshakeCrypto.sharedSecret(client.getPrivate(), serverPublic);
+        assertArrayEquals(serverSecret, clientSecret);
+    }
+
+    @Test
+    public void testHmacMatchesCopyingImplementation() throws Exception {
+        RTMPHandshake handshake = new RTMPHandshake() {
+            @Override
+            protected void createHandshakeBytes() {
+            }
+
+            @Override
+            public boolean validate(byte[] handshake) {
+                return false;
+            }
+
+            @Override
+            public IoBuffer doHandshake(IoBuffer input) {
+                return null;
+            }
+        };
+        byte[] message = new byte[256];
+        RTMPHandshake.fillRandomBytes(message, 0, message.length);
+        byte[] digest = new byte[RTMPHandshake.DIGEST_LENGTH + 4];
+        handshake.calculateHMAC_SHA256(message, 16, 200, RTMPHandshake.GENUINE_FMS_KEY, 36, digest, 4);
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(Arrays.copyOf(RTMPHandshake.GENUINE_FMS_KEY, 36), "HmacSHA256"));
+        byte[] expected = mac.doFinal(Arrays.copyOfRange(message, 16, 216));
+        assertArrayEquals(expected, Arrays.copyOfRange(digest, 4, 4 + RTMPHandshake.DIGEST_LENGTH));
+    }
+
+    @Test
+    public void testRecordHandshake() {
+        HandshakeCrypto crypto = HandshakeCrypto.getInstance();
+        long before = crypto.getCompletedHandshakes();
+        crypto.record(System.nanoTime(), true, true);
+        assertEquals(before + 1, crypto.getCompletedHandshakes());
+    }
+
+}
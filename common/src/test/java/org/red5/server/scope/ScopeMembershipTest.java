@@ -0,0 +1,100 @@
+package org.red5.server.scope;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.red5.server.Client;
+import org.red5.server.api.IConnection;
+import org.red5.server.api.scope.IScopeHandler;
+import org.red5.server.api.scope.ScopeType;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+
+/**
+ * Tests for the hash indexed client and connection membership of a scope.
+ */
+public class ScopeMembershipTest {
+
+    /**
+     * Connection bound to a scope without a network session.
+     */
+    static class TestConnection extends RTMPMinaConnection {
+
+        TestConnection(Scope scope) {
+            this.scope = scope;
+            initialize(new Client(null, null));
+        }
+
+        @Override
+        public boolean isConnected() {
+            return scope != null;
+        }
+
+    }
+
+    @Test
+    public void testJoinLookupLeave() {
+        Scope scope = new Scope(null, ScopeType.APPLICATION, "membership", false);
+        List<TestConnection> conns = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TestConnection conn = new TestConnection(scope);
+            assertTrue(scope.connect(conn));
+            conns.add(conn);
+        }
+        assertEquals(100, scope.getActiveClients());
+        assertEquals(100, scope.getClientConnections().size());
+        TestConnection conn = conns.get(42);
+        assertSame(conn, scope.lookupConnection(conn.getSessionId()));
+        assertSame(conn, scope.lookupConnection(conn.getClient()));
+        assertSame(conn.getClient(), scope.lookupClient(conn.getClient().getId()));
+        assertTrue(scope.getClients().contains(conn.getClient()));
+        assertTrue(conn.getClient().getConnections(scope).contains(conn));
+        // leave
+        scope.disconnect(conn);
+        assertNull(scope.lookupConnection(conn.getSessionId()));
+        assertNull(scope.lookupConnection(conn.getClient()));
+        assertFalse(scope.getClients().contains(conn.getClient()));
+        assertFalse(scope.getClientConnections().contains(conn));
+        assertEquals(99, scope.getActiveClients());
+        assertNull(scope.lookupConnection((String) null));
+    }
+
+    @Test
+    public void testDisconnectWhileIterating() {
+        Scope scope = new Scope(null, ScopeType.APPLICATION, "iterating", false);
+        for (int i = 0; i < 10; i++) {
+            scope.connect(new TestConnection(scope));
+        }
+        // the view is weakly consistent, leaving during a broadcast must not throw
+        for (IConnection conn : scope.getClientConnections()) {
+            scope.disconnect(conn);
+        }
+        assertTrue(scope.getClientConnections().isEmpty());
+        assertEquals(0, scope.getActiveClients());
+    }
+
+    @Test
+    public void testRejectedJoin() {
+        Scope scope = new Scope(null, ScopeType.APPLICATION, "rejecting", false);
+        // accepts connections, but rejects every client joining
+        scope.setHandler((IScopeHandler) Proxy.newProxyInstance(IScopeHandler.class.getClassLoader(), new Class<?>[] { IScopeHandler.class }, (proxy, method, args) -> {
+            if (method.getReturnType() == boolean.class) {
+                return !"join".equals(method.getName());
+            }
+            return null;
+        }));
+        TestConnection conn = new TestConnection(scope);
+        assertFalse(scope.connect(conn));
+        assertFalse(scope.getClientConnections().contains(conn));
+        assertTrue(scope.getClientConnections().isEmpty());
+        assertNull(scope.lookupConnection(conn.getSessionId()));
+    }
+
+}
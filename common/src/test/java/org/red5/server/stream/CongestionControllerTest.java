@@ -0,0 +1,89 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.red5.codec.VideoFrameType;
+import org.red5.server.stream.CongestionController.Level;
+
+/**
+ * Tests for live video frame dropping driven by the connection's write queue.
+ */
+public class CongestionControllerTest {
+
+    // the connection drains 100 bytes per millisecond throughout
+    private static boolean send(CongestionController controller, VideoFrameType type, long queued, long now) {
+        return controller.canSend(type, false, 1000, queued, now * 100L, now);
+    }
+
+    @Test
+    public void testEscalationAndHysteresis() {
+        CongestionController controller = new CongestionController(100, 1024 * 1024);
+        assertTrue(send(controller, VideoFrameType.KEYFRAME, 0, 0));
+        assertTrue(send(controller, VideoFrameType.DISPOSABLE, 0, 100));
+        assertEquals(100d, controller.getDrainRate(), 0.001d);
+        // 150ms to drain drops disposable frames only
+        assertFalse(send(controller, VideoFrameType.DISPOSABLE, 15000, 200));
+        assertTrue(send(controller, VideoFrameType.INTERFRAME, 15000, 200));
+        assertEquals(Level.DISPOSABLE, controller.getLevel());
+        assertEquals(150, controller.getQueueDelay());
+        // 250ms sends keyframes only
+        assertFalse(send(controller, VideoFrameType.INTERFRAME, 25000, 300));
+        assertTrue(controller.isWaitingForKeyframe());
+        assertTrue(send(controller, VideoFrameType.KEYFRAME, 25000, 300));
+        assertEquals(Level.INTERFRAMES, controller.getLevel());
+        // 500ms skips whole groups of pictures
+        assertFalse(send(controller, VideoFrameType.KEYFRAME, 50000, 400));
+        assertEquals(Level.GOP, controller.getLevel());
+        // the level is held until the delay is well below its threshold
+        assertFalse(send(controller, VideoFrameType.INTERFRAME, 30000, 500));
+        assertEquals(Level.GOP, controller.getLevel());
+        assertFalse(send(controller, VideoFrameType.INTERFRAME, 15000, 600));
+        assertEquals(Level.INTERFRAMES, controller.getLevel());
+        // resumes at the next keyframe
+        assertTrue(send(controller, VideoFrameType.KEYFRAME, 15000, 600));
+        assertFalse(controller.isWaitingForKeyframe());
+        assertTrue(send(controller, VideoFrameType.INTERFRAME, 5000, 700));
+        assertEquals(Level.DISPOSABLE, controller.getLevel());
+        assertTrue(send(controller, VideoFrameType.DISPOSABLE, 0, 800));
+        assertEquals(Level.NONE, controller.getLevel());
+        // statistics
+        assertEquals(1, controller.getDroppedDisposable());
+        assertEquals(3, controller.getDroppedInterframes());
+        assertEquals(1, controller.getDroppedKeyframes());
+        assertEquals(5000, controller.getDroppedBytes());
+        assertEquals(50000, controller.getMaxQueuedBytes());
+        assertEquals(6, controller.getLevelChanges());
+    }
+
+    @Test
+    public void testByteLimit() {
+        CongestionController controller = new CongestionController(100, 10000);
+        // no drain rate is known yet, the byte limit still applies
+        assertFalse(send(controller, VideoFrameType.KEYFRAME, 20000, 0));
+        assertEquals(Level.GOP, controller.getLevel());
+        // decoder configuration always goes through
+        assertTrue(controller.canSend(VideoFrameType.KEYFRAME, true, 40, 20000, 0, 0));
+        assertFalse(send(controller, VideoFrameType.INTERFRAME, 20000, 10));
+        controller.reset();
+        assertEquals(Level.NONE, controller.getLevel());
+        assertTrue(send(controller, VideoFrameType.INTERFRAME, 0, 20));
+    }
+
+    @Test
+    public void testNoSignal() {
+        CongestionController controller = new CongestionController(100, 1024 * 1024);
+        assertTrue(send(controller, VideoFrameType.KEYFRAME, 0, 0));
+        assertFalse(send(controller, VideoFrameType.DISPOSABLE, 50000, 100));
+        assertEquals(Level.GOP, controller.getLevel());
+        // a transport which cannot tell its queue neither sheds nor clears the level
+        assertTrue(send(controller, VideoFrameType.INTERFRAME, -1, 200));
+        assertEquals(Level.GOP, controller.getLevel());
+        assertEquals(50000, controller.getQueuedBytes());
+        assertEquals(1, controller.getDroppedDisposable());
+        assertEquals(0, controller.getDroppedInterframes());
+    }
+
+}
@@ -0,0 +1,87 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the stream file resolution cache.
+ */
+public class StreamFileCacheTest {
+
+    private Path dir;
+
+    private StreamFileCache cache;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("streams");
+        cache = new StreamFileCache();
+        cache.setNegativeTtl(200L);
+        cache.afterPropertiesSet();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        cache.destroy();
+        for (File file : dir.toFile().listFiles()) {
+            file.delete();
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testResolutions() throws Exception {
+        File vod = Files.createFile(dir.resolve("vod.flv")).toFile();
+        assertNull(cache.get("/live/vod.flv"));
+        cache.put("/live/vod.flv", vod, vod);
+        cache.put("/live/stream1", null, new File(dir.toFile(), "stream1.flv"));
+        StreamFileCache.Resolution resolution = cache.get("/live/vod.flv");
+        assertNotNull(resolution);
+        assertTrue(resolution.isFound());
+        assertEquals(vod, resolution.getFile());
+        resolution = cache.get("/live/stream1");
+        assertNotNull(resolution);
+        assertFalse(resolution.isFound());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getNegativeHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getWatchedDirectories());
+        // misses are only trusted briefly
+        Thread.sleep(300L);
+        assertNull(cache.get("/live/stream1"));
+        assertNotNull(cache.get("/live/vod.flv"));
+    }
+
+    @Test
+    public void testInvalidation() throws Exception {
+        cache.destroy();
+        cache.setNegativeTtl(60000L);
+        cache.afterPropertiesSet();
+        cache.put("/live/stream1", null, new File(dir.toFile(), "stream1.flv"));
+        cache.put("/live/stream2", null, new File(dir.toFile(), "stream2.flv"));
+        // only the resolution of the changed file is dropped
+        cache.invalidate(dir.toAbsolutePath(), "stream2.flv");
+        assertNotNull(cache.get("/live/stream1"));
+        assertNull(cache.get("/live/stream2"));
+        // a recording appearing under a cached miss is picked up without waiting for expiry
+        Files.createFile(dir.resolve("stream1.flv"));
+        long deadline = System.currentTimeMillis() + 10000L;
+        while (cache.get("/live/stream1") != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+        assertNull(cache.get("/live/stream1"));
+        assertEquals(2, cache.getInvalidations());
+    }
+
+}
@@ -0,0 +1,120 @@
+package org.red5.server.stream.bandwidth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.red5.server.stream.ITokenBucket;
+
+/**
+ * Tests for the lock free hierarchical token bucket and its adaptive connection variant.
+ */
+public class TokenBucketTest {
+
+    @Test
+    public void testLimit() {
+        // 1000 bytes refilling at 1 byte per millisecond
+        TokenBucket bucket = new TokenBucket(1000, 1d, null, null);
+        assertTrue(bucket.tryAcquire(1000));
+        assertFalse(bucket.tryAcquire(500));
+        assertTrue(bucket.getAvailable() < 500);
+        assertTrue(bucket.getDelayNanos(500) > TimeUnit.MILLISECONDS.toNanos(400));
+        // best effort takes whatever has refilled
+        assertTrue(bucket.acquireTokenBestEffort(500) < 500);
+    }
+
+    @Test
+    public void testOversize() {
+        TokenBucket bucket = new TokenBucket(100, 1d, null, null);
+        // larger than the capacity is granted on a full bucket, leaving it in debt
+        assertTrue(bucket.tryAcquire(250));
+        assertFalse(bucket.tryAcquire(1));
+        assertEquals(0, bucket.getAvailable());
+    }
+
+    @Test
+    public void testHierarchy() {
+        TokenBucket parent = new TokenBucket(1000, 1d, null, null);
+        TokenBucket first = new TokenBucket(600, 1d, parent, null);
+        TokenBucket second = new TokenBucket(600, 1d, parent, null);
+        TokenBucket unlimited = new TokenBucket(1, 0d, parent, null);
+        assertTrue(first.tryAcquire(600));
+        // the parent runs out before the child, which gets its tokens back
+        assertFalse(second.tryAcquire(500));
+        assertTrue(second.tryAcquire(390));
+        assertFalse(unlimited.tryAcquire(100));
+        parent.reset();
+        assertTrue(unlimited.tryAcquire(100));
+    }
+
+    @Test
+    public void testWait() throws Exception {
+        // 10 bytes per millisecond
+        TokenBucket bucket = new TokenBucket(100, 10d, null, null);
+        assertTrue(bucket.tryAcquire(100));
+        long start = System.nanoTime();
+        assertTrue(bucket.acquireToken(50, 1000));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(3));
+        // a reset fails a waiting acquisition
+        TokenBucket slow = new TokenBucket(100, 0.001d, null, null);
+        assertTrue(slow.tryAcquire(100));
+        CompletableFuture<Boolean> waiter = CompletableFuture.supplyAsync(() -> slow.acquireToken(100, -1));
+        Thread.sleep(50L);
+        slow.reset();
+        assertFalse(waiter.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConsume() {
+        TokenBucket parent = new TokenBucket(1000, 1d, null, null);
+        TokenBucket bucket = new TokenBucket(1000, 1d, parent, null);
+        // taken even though there are not enough tokens, and the debt is paid before anything else goes
+        bucket.consume(1500);
+        assertFalse(bucket.tryAcquire(1));
+        assertFalse(parent.tryAcquire(1));
+        assertEquals(0, parent.getAvailable());
+    }
+
+    @Test
+    public void testCreatedBucketRate() throws Exception {
+        TokenBucketService service = new TokenBucketService();
+        try {
+            ITokenBucket bucket = service.createTokenBucket(4096, 8000);
+            // rates are given per second and kept per millisecond
+            assertEquals(8d, bucket.getSpeed(), 0d);
+            assertEquals(4096, bucket.getCapacity());
+        } finally {
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void testAdaptation() {
+        // unlimited until the link is found congested, no less than 1 byte per millisecond
+        AdaptiveTokenBucket bucket = new AdaptiveTokenBucket(Integer.MAX_VALUE, 1000, 0d, 1d, 1000, 32, null, null);
+        bucket.adapt(1000, 50, 0, 0);
+        assertEquals(0d, bucket.getSpeed(), 0d);
+        // 2000 bytes went out in a second while the write queue grew
+        bucket.adapt(2000, 50, 100, 2000);
+        assertTrue(bucket.isCongested());
+        assertEquals(1.7d, bucket.getSpeed(), 0.001d);
+        assertEquals(1700, bucket.getCapacity());
+        // a rising round trip time is congestion too
+        bucket.adapt(3000, 200, 0, 3700);
+        assertTrue(bucket.isCongested());
+        assertEquals(1.445d, bucket.getSpeed(), 0.001d);
+        // recovery climbs while the limit is in use
+        bucket.adapt(4000, 50, 0, 5145);
+        assertFalse(bucket.isCongested());
+        assertTrue(bucket.getSpeed() > 1.445d);
+        // and stops limiting once the traffic is far below it
+        bucket.adapt(5000, 50, 0, 5145);
+        assertEquals(0d, bucket.getSpeed(), 0d);
+        assertEquals(50, bucket.getMinRtt());
+    }
+
+}
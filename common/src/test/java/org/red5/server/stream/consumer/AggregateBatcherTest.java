@@ -0,0 +1,184 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.messaging.InMemoryPushPushPipe;
+import org.red5.server.net.rtmp.Channel;
+import org.red5.server.net.rtmp.RTMPMinaConnection;
+import org.red5.server.net.rtmp.event.Aggregate;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.Notify;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.net.rtmp.message.Constants;
+import org.red5.server.net.rtmp.message.Header;
+import org.red5.server.stream.message.RTMPMessage;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Tests for packing subscriber audio and video into aggregate messages.
+ */
+public class AggregateBatcherTest {
+
+    private final List<IRTMPEvent> written = new CopyOnWriteArrayList<>();
+
+    private RTMPMinaConnection connection;
+
+    private Channel channel;
+
+    @Before
+    public void setUp() {
+        connection = new RTMPMinaConnection() {
+
+            @Override
+            public Channel getChannel(int channelId) {
+                return new Channel(this, channelId) {
+
+                    @Override
+                    public void write(IRTMPEvent event) {
+                        written.add(event);
+                    }
+
+                };
+            }
+
+        };
+        channel = connection.getChannel(4);
+    }
+
+    private static AudioData audio(int timestamp, int size) {
+        IoBuffer body = IoBuffer.allocate(size);
+        body.put((byte) 0x9f).fill((byte) timestamp, size - 1).flip();
+        AudioData audio = new AudioData(body);
+        audio.setTimestamp(timestamp);
+        return audio;
+    }
+
+    private static List<IRTMPEvent> parts(IRTMPEvent event) {
+        Aggregate aggregate = (Aggregate) event;
+        aggregate.setHeader(new Header());
+        return new ArrayList<>(aggregate.getParts());
+    }
+
+    @Test
+    public void testBatching() {
+        AggregateBatcher batcher = new AggregateBatcher(channel, null, 40, 1000, 4096);
+        for (int t = 0; t <= 100; t += 20) {
+            assertTrue(batcher.add(audio(t, 80), channel));
+        }
+        batcher.flush();
+        assertEquals(3, written.size());
+        int t = 0;
+        for (IRTMPEvent event : written) {
+            assertEquals(Constants.TYPE_AGGREGATE, event.getDataType());
+            assertEquals(t, event.getTimestamp());
+            List<IRTMPEvent> parts = parts(event);
+            assertEquals(2, parts.size());
+            for (IRTMPEvent part : parts) {
+                assertEquals(Constants.TYPE_AUDIO_DATA, part.getDataType());
+                assertEquals(t, part.getTimestamp());
+                IoBuffer data = ((AudioData) part).getData();
+                assertEquals(80, data.remaining());
+                assertEquals((byte) t, data.get(79));
+                t += 20;
+            }
+        }
+        assertEquals(3, batcher.getAggregatesSent());
+        assertEquals(6, batcher.getFramesAggregated());
+    }
+
+    @Test
+    public void testSingleAndOversizedFrames() {
+        AggregateBatcher batcher = new AggregateBatcher(channel, null, 40, 1000, 1024);
+        AudioData single = audio(0, 100);
+        assertTrue(batcher.add(single, channel));
+        // too large to batch, so the pending frame goes out first and this one on its own
+        assertFalse(batcher.add(audio(20, 2000), channel));
+        assertEquals(1, written.size());
+        assertSame(single, written.get(0));
+        assertEquals(0, batcher.getAggregatesSent());
+    }
+
+    @Test
+    public void testLatencyDeadline() throws Exception {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        try {
+            AggregateBatcher batcher = new AggregateBatcher(channel, scheduler, 1000, 200, 4096);
+            batcher.add(audio(0, 80), channel);
+            batcher.add(audio(20, 80), channel);
+            long deadline = System.currentTimeMillis() + 2000;
+            while (written.isEmpty() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(1, written.size());
+            assertEquals(2, parts(written.get(0)).size());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testOrderWithOtherMessages() {
+        ConnectionConsumer consumer = new ConnectionConsumer(connection, channel, channel, channel);
+        consumer.setAggregateBatcher(new AggregateBatcher(channel, null, 100, 1000, 4096));
+        consumer.pushMessage(null, RTMPMessage.build(audio(20, 80)));
+        VideoData video = new VideoData(IoBuffer.wrap(new byte[] { 0x27, 0x01, 0, 0, 0, 1, 2, 3 }));
+        video.setTimestamp(33);
+        consumer.pushMessage(null, RTMPMessage.build(video));
+        // only the chunk size went out
+        assertEquals(1, written.size());
+        written.clear();
+        Notify notify = new Notify(IoBuffer.allocate(4).putInt(0).flip());
+        notify.setTimestamp(40);
+        consumer.pushMessage(null, RTMPMessage.build(notify));
+        assertEquals(2, written.size());
+        List<IRTMPEvent> parts = parts(written.get(0));
+        assertEquals(2, parts.size());
+        assertEquals(Constants.TYPE_VIDEO_DATA, parts.get(1).getDataType());
+        assertSame(notify, written.get(1));
+    }
+
+    @Test
+    public void testDiscardOnConsumerDisconnect() throws Exception {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.initialize();
+        try {
+            ConnectionConsumer consumer = new ConnectionConsumer(connection, channel, channel, channel);
+            consumer.setAggregateBatcher(new AggregateBatcher(channel, scheduler, 1000, 100, 4096));
+            InMemoryPushPushPipe pipe = new InMemoryPushPushPipe();
+            pipe.subscribe(consumer, null);
+            consumer.pushMessage(pipe, RTMPMessage.build(audio(0, 80)));
+            consumer.pushMessage(pipe, RTMPMessage.build(audio(20, 80)));
+            written.clear();
+            // the subscriber stops before the deadline
+            pipe.unsubscribe(consumer);
+            Thread.sleep(300);
+            assertTrue(written.isEmpty());
+        } finally {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void testSupported() {
+        assertTrue(AggregateBatcher.isSupported(Map.of("flashVer", "LNX 9,0,124,2")));
+        assertTrue(AggregateBatcher.isSupported(Map.of("flashVer", "WIN 32,0,0,465")));
+        assertFalse(AggregateBatcher.isSupported(Map.of("flashVer", "FMLE/3.0 (compatible; FMSc/1.0)")));
+        assertFalse(AggregateBatcher.isSupported(Map.of("flashVer", "LNX 9,0,124,2", "aggregateMessages", false)));
+        assertTrue(AggregateBatcher.isSupported(Map.of("aggregateMessages", true)));
+        assertFalse(AggregateBatcher.isSupported(Map.of()));
+    }
+
+}
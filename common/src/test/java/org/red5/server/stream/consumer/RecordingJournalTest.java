@@ -0,0 +1,243 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Tests for recording many streams through the shared journal.
+ */
+public class RecordingJournalTest {
+
+    private Path dir;
+
+    private RecordingJournal journal;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("journal");
+        journal = newJournal(true);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.stop();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private RecordingJournal newJournal(boolean demuxOnClose) throws IOException {
+        RecordingJournal journal = new RecordingJournal();
+        journal.setDirectory(dir.resolve("journal").toString());
+        // small segments so recordings span several
+        journal.setSegmentSize(64 * 1024);
+        journal.setBufferSize(256 * 1024);
+        journal.setSync(false);
+        journal.setDemuxOnClose(demuxOnClose);
+        journal.start();
+        return journal;
+    }
+
+    private JournalFileConsumer consumer(String name) {
+        JournalFileConsumer consumer = new JournalFileConsumer(null, dir.resolve(name).toFile(), journal);
+        consumer.setMode("record");
+        return consumer;
+    }
+
+    private static void push(JournalFileConsumer consumer, IRTMPEvent event, int timestamp) throws Exception {
+        event.setTimestamp(timestamp);
+        consumer.pushMessage(null, RTMPMessage.build(event));
+    }
+
+    private static IoBuffer body(int stream, int frame, int size, int... header) {
+        IoBuffer body = IoBuffer.allocate(header.length + size);
+        for (int b : header) {
+            body.put((byte) b);
+        }
+        for (int i = 0; i < size; i++) {
+            body.put((byte) (stream + frame + i));
+        }
+        return body.flip();
+    }
+
+    /**
+     * Pushes a second of AVC and AAC, starting at a stream timestamp of 5000.
+     */
+    private static void record(JournalFileConsumer consumer, int stream, int from, int to) throws Exception {
+        if (from == 0) {
+            push(consumer, new VideoData(body(stream, 0, 32, 0x17, 0x00, 0, 0, 0)), 5000);
+            push(consumer, new AudioData(body(stream, 0, 2, 0xaf, 0x00)), 5000);
+        }
+        for (int t = from; t < to; t += 20) {
+            int frame = t / 20;
+            push(consumer, new AudioData(body(stream, frame, 200, 0xaf, 0x01)), 5000 + t);
+            if (t % 40 == 0) {
+                push(consumer, new VideoData(body(stream, frame, 2000, t % 1000 == 0 ? 0x17 : 0x27, 0x01, 0, 0, 0)), 5000 + t);
+            }
+        }
+    }
+
+    private static List<ITag> read(File file) throws IOException {
+        List<ITag> tags = new ArrayList<>();
+        FLVReader reader = new FLVReader(file);
+        try {
+            while (reader.hasMoreTags()) {
+                ITag tag = reader.readTag();
+                if (tag.getDataType() == ITag.TYPE_AUDIO || tag.getDataType() == ITag.TYPE_VIDEO) {
+                    tags.add(tag);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return tags;
+    }
+
+    private static void assertRecording(File file, int stream, int duration) throws IOException {
+        List<ITag> tags = read(file);
+        // configurations, audio every 20 ms and video every 40 ms
+        assertEquals(2 + duration / 20 + duration / 40, tags.size());
+        assertEquals(0, tags.get(0).getTimestamp());
+        int last = -1;
+        for (ITag tag : tags) {
+            assertTrue(tag.getTimestamp() >= last);
+            last = tag.getTimestamp();
+        }
+        ITag audio = tags.get(2);
+        assertEquals(ITag.TYPE_AUDIO, audio.getDataType());
+        assertEquals(202, audio.getBodySize());
+        IoBuffer body = audio.getBody();
+        assertEquals((byte) stream, body.get(2));
+    }
+
+    private void awaitRecovered() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (journal.getPendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testInterleavedRecordings() throws Exception {
+        int streams = 8;
+        List<JournalFileConsumer> consumers = new ArrayList<>();
+        for (int s = 0; s < streams; s++) {
+            consumers.add(consumer("stream" + s + ".flv"));
+        }
+        // the streams take turns, as they would on a busy node
+        for (int t = 0; t < 2000; t += 100) {
+            for (int s = 0; s < streams; s++) {
+                record(consumers.get(s), s, t, t + 100);
+            }
+        }
+        for (JournalFileConsumer consumer : consumers) {
+            consumer.uninit();
+        }
+        for (int s = 0; s < streams; s++) {
+            File file = dir.resolve("stream" + s + ".flv").toFile();
+            journal.materialize(file);
+            assertRecording(file, s, 2000);
+        }
+        // many streams share each commit
+        assertTrue(journal.getCommits() < journal.getRecords() / 10);
+        assertEquals(0, journal.getPendingCount());
+        // written recordings no longer hold their segments
+        try (Stream<Path> segments = Files.list(dir.resolve("journal"))) {
+            assertTrue(segments.count() <= 2);
+        }
+    }
+
+    @Test
+    public void testLazyWriteAndRecovery() throws Exception {
+        journal.stop();
+        journal = newJournal(false);
+        JournalFileConsumer finished = consumer("finished.flv");
+        JournalFileConsumer interrupted = consumer("interrupted.flv");
+        record(finished, 1, 0, 1000);
+        record(interrupted, 2, 0, 1000);
+        finished.uninit();
+        File finishedFile = dir.resolve("finished.flv").toFile();
+        // only written once played
+        assertFalse(finishedFile.exists());
+        assertEquals(1, journal.getPendingCount());
+        assertTrue(RecordingJournal.materializePending(finishedFile));
+        assertRecording(finishedFile, 1, 1000);
+        // the node goes down while recording
+        journal.stop();
+        journal = newJournal(true);
+        File interruptedFile = dir.resolve("interrupted.flv").toFile();
+        awaitRecovered();
+        assertRecording(interruptedFile, 2, 1000);
+        // the finished recording is not written again
+        assertFalse(journal.materialize(finishedFile));
+    }
+
+    @Test
+    public void testRecoveryOverExistingFile() throws Exception {
+        File file = dir.resolve("same.flv").toFile();
+        JournalFileConsumer first = consumer("same.flv");
+        record(first, 1, 0, 1000);
+        first.uninit();
+        journal.materialize(file);
+        assertTrue(file.exists());
+        JournalFileConsumer second = consumer("same.flv");
+        record(second, 2, 0, 1000);
+        // the earlier recording makes way for this one
+        assertFalse(file.exists());
+        // the node goes down, leaving a partly written file behind
+        journal.stop();
+        Files.write(file.toPath(), new byte[100]);
+        journal = newJournal(true);
+        awaitRecovered();
+        assertRecording(file, 2, 1000);
+    }
+
+    @Test
+    public void testWrittenRecordingNotRecovered() throws Exception {
+        JournalFileConsumer idle = consumer("idle.flv");
+        record(idle, 1, 0, 1000);
+        // recordings which start and end while the first one is still open, in segments of their own
+        for (String name : new String[] { "done.flv", "later.flv" }) {
+            JournalFileConsumer consumer = consumer(name);
+            record(consumer, 2, 0, 2000);
+            consumer.uninit();
+            journal.materialize(dir.resolve(name).toFile());
+        }
+        File doneFile = dir.resolve("done.flv").toFile();
+        assertRecording(doneFile, 2, 2000);
+        // the open recording keeps its first segment, and the markers of the recordings which started there, but not the rest
+        try (Stream<Path> segments = Files.list(dir.resolve("journal"))) {
+            assertEquals(3, segments.count());
+        }
+        // moved away once written
+        assertTrue(doneFile.delete());
+        journal.stop();
+        journal = newJournal(true);
+        awaitRecovered();
+        assertRecording(dir.resolve("idle.flv").toFile(), 1, 1000);
+        assertFalse(doneFile.exists());
+    }
+
+}
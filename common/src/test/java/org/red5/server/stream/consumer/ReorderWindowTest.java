@@ -0,0 +1,100 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.ITag;
+
+/**
+ * Tests for the timestamp bucketed reordering window.
+ */
+public class ReorderWindowTest {
+
+    private final List<QueuedMediaData[]> slices = new ArrayList<>();
+
+    private ReorderWindow window;
+
+    @Before
+    public void setUp() {
+        window = new ReorderWindow(100, 10, slices::add);
+    }
+
+    private boolean offer(int timestamp) {
+        return window.offer(new QueuedMediaData(timestamp, ITag.TYPE_AUDIO));
+    }
+
+    private List<Integer> released() {
+        List<Integer> timestamps = new ArrayList<>();
+        for (QueuedMediaData[] slice : slices) {
+            for (QueuedMediaData queued : slice) {
+                timestamps.add(queued.getTimestamp());
+            }
+        }
+        return timestamps;
+    }
+
+    @Test
+    public void testReorder() {
+        // packets arrive in reversed groups of three
+        List<Integer> expected = new ArrayList<>();
+        for (int t = 0; t < 2000; t += 10) {
+            expected.add(t);
+        }
+        for (int i = 0; i < expected.size(); i += 3) {
+            int end = Math.min(i + 3, expected.size());
+            for (int j = end - 1; j >= i; j--) {
+                assertTrue(offer(expected.get(j)));
+            }
+        }
+        // nothing newer than the window has been released yet
+        List<Integer> early = released();
+        assertTrue(early.get(early.size() - 1) < 2000 - 100);
+        assertTrue(window.size() > 0);
+        window.flush();
+        assertEquals(expected, released());
+        assertEquals(0, window.size());
+        assertTrue(window.getReordered() > 0);
+        assertEquals(20, window.getMaxReorderDepth());
+        assertEquals(0, window.getLateDrops());
+    }
+
+    @Test
+    public void testLateDrop() {
+        for (int t = 0; t <= 1000; t += 20) {
+            assertTrue(offer(t));
+        }
+        // within the window
+        assertTrue(offer(950));
+        // behind it
+        assertFalse(offer(510));
+        assertEquals(1, window.getLateDrops());
+        window.flush();
+        List<Integer> timestamps = released();
+        assertEquals(52, timestamps.size());
+        assertFalse(timestamps.contains(510));
+    }
+
+    @Test
+    public void testJumpAndRestart() {
+        assertTrue(offer(1000));
+        // arrivals up to a window before the first are kept
+        assertTrue(offer(950));
+        // a jump far beyond the ring releases everything held
+        assertTrue(offer(1000000));
+        assertEquals(List.of(950, 1000), released());
+        window.flush();
+        // after a reset the timestamps start over
+        assertTrue(offer(0));
+        assertTrue(offer(10));
+        window.flush();
+        assertEquals(List.of(950, 1000, 1000000, 0, 10), released());
+        assertEquals(0, window.getLateDrops());
+    }
+
+}
@@ -0,0 +1,113 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Tests for recording out of order media with the sliced file consumer.
+ */
+public class SlicedFileConsumerTest {
+
+    private static void push(SlicedFileConsumer consumer, int timestamp) throws Exception {
+        IoBuffer body = IoBuffer.allocate(100);
+        // mp3, 44 kHz stereo
+        body.put((byte) 0x2f).fill((byte) timestamp, 99).flip();
+        AudioData audio = new AudioData(body);
+        audio.setTimestamp(timestamp);
+        consumer.pushMessage(null, RTMPMessage.build(audio));
+    }
+
+    private static List<Integer> readTimestamps(File file) throws Exception {
+        List<Integer> timestamps = new ArrayList<>();
+        FLVReader reader = new FLVReader(file);
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            if (tag.getDataType() == ITag.TYPE_AUDIO) {
+                timestamps.add(tag.getTimestamp());
+            }
+        }
+        reader.close();
+        return timestamps;
+    }
+
+    @Test
+    public void testOutOfOrderRecording() throws Exception {
+        Path dir = Files.createTempDirectory("sliced");
+        File file = dir.resolve("test.flv").toFile();
+        SlicedFileConsumer consumer = new SlicedFileConsumer(null, file);
+        consumer.setMode("record");
+        consumer.setReorderWindow(200);
+        consumer.setWriteInterval(10);
+        // pairs swapped, and one packet well behind the window
+        for (int t = 1000; t < 3000; t += 40) {
+            push(consumer, t + 20);
+            push(consumer, t);
+            if (t == 2000) {
+                push(consumer, 1500);
+            }
+        }
+        Thread.sleep(100);
+        consumer.uninit();
+        consumer.destroy();
+        assertEquals(1, consumer.getLateDrops());
+        assertEquals(20, consumer.getMaxReorderDepth());
+        List<Integer> timestamps = readTimestamps(file);
+        assertEquals(100, timestamps.size());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(i * 20, timestamps.get(i).intValue());
+        }
+        file.delete();
+        dir.toFile().delete();
+    }
+
+    @Test
+    public void testUninitWhilePushing() throws Exception {
+        Path dir = Files.createTempDirectory("sliced");
+        File file = dir.resolve("test.flv").toFile();
+        SlicedFileConsumer consumer = new SlicedFileConsumer(null, file);
+        consumer.setMode("record");
+        consumer.setReorderWindow(200);
+        consumer.setWriteInterval(10);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread pusher = new Thread(() -> {
+            try {
+                for (int t = 0; t < 200000; t += 20) {
+                    push(consumer, t);
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        pusher.start();
+        Thread.sleep(50);
+        // the recording stops while the stream is still pushing
+        consumer.uninit();
+        pusher.join();
+        consumer.destroy();
+        assertNull(failure.get());
+        // everything offered before the stop is written, in order, and nothing after it
+        List<Integer> timestamps = readTimestamps(file);
+        assertFalse(timestamps.isEmpty());
+        for (int i = 0; i < timestamps.size(); i++) {
+            assertEquals(i * 20, timestamps.get(i).intValue());
+        }
+        file.delete();
+        dir.toFile().delete();
+    }
+
+}
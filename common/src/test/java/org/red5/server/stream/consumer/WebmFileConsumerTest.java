@@ -0,0 +1,82 @@
+package org.red5.server.stream.consumer;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.VideoCodec;
+import org.red5.io.IoConstants;
+import org.red5.io.webm.WebmTagReader;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.net.rtmp.event.IRTMPEvent;
+import org.red5.server.net.rtmp.event.VideoData;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Tests for recording a live stream to WebM.
+ */
+public class WebmFileConsumerTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("live", ".webm");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static IoBuffer body(int header, int fourcc, byte... data) {
+        IoBuffer body = IoBuffer.allocate(5 + data.length);
+        body.put((byte) header).putInt(fourcc).put(data).flip();
+        return body;
+    }
+
+    private static void push(WebmFileConsumer consumer, IRTMPEvent event, int timestamp) throws Exception {
+        event.setTimestamp(timestamp);
+        consumer.pushMessage(null, RTMPMessage.build(event));
+    }
+
+    @Test
+    public void testRecord() throws Exception {
+        WebmFileConsumer consumer = new WebmFileConsumer(null, file);
+        consumer.setMode("record");
+        // configuration known before the recording started
+        consumer.setAudioDecoderConfiguration(new AudioData(body(0x90, AudioCodec.OPUS.getFourcc(), "OpusHead".getBytes())));
+        // stream timestamps are rebased to the first message
+        for (int t = 0; t < 4000; t += 20) {
+            if (t % 100 == 0) {
+                boolean keyframe = t % 1000 == 0;
+                push(consumer, new VideoData(body(keyframe ? 0x91 : 0xa1, VideoCodec.VP9.getFourcc(), (byte) t)), 10000 + t);
+            }
+            push(consumer, new AudioData(body(0x91, AudioCodec.OPUS.getFourcc(), (byte) 0xfc)), 10000 + t);
+        }
+        consumer.uninit();
+        WebmTagReader reader = new WebmTagReader(file);
+        assertArrayEquals(new int[] { 0, 1000, 2000, 3000 }, reader.analyzeKeyFrames().timestamps);
+        int video = 0, audio = 0;
+        while (reader.hasMoreTags()) {
+            byte dataType = reader.readTag().getDataType();
+            if (dataType == IoConstants.TYPE_VIDEO) {
+                video++;
+            } else if (dataType == IoConstants.TYPE_AUDIO) {
+                audio++;
+            }
+        }
+        reader.close();
+        assertEquals(40, video);
+        // the opus head and the frames
+        assertEquals(1 + 200, audio);
+        consumer.destroy();
+    }
+
+}
@@ -0,0 +1,104 @@
+package org.red5.server.stream.trace;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.metrics.LatencyHistogram;
+
+/**
+ * Tests for per stream latency tracing of sampled packets through to their subscribers.
+ */
+public class StreamLatencyTracerTest {
+
+    private final StreamLatencyTracer tracer = StreamLatencyTracer.getInstance();
+
+    private int sampleRate;
+
+    @Before
+    public void setUp() {
+        sampleRate = tracer.getSampleRate();
+        tracer.setSampleRate(1);
+        tracer.traceStream("traced");
+    }
+
+    @After
+    public void tearDown() {
+        tracer.untraceStream("traced");
+        tracer.setSampleRate(sampleRate);
+    }
+
+    private static TraceSample ingest() {
+        TraceSample sample = StreamLatencyTracer.sample(System.nanoTime());
+        assertNotNull(sample);
+        sample.mark(Stage.DECODE);
+        return sample;
+    }
+
+    @Test
+    public void testTracedStream() {
+        TraceSample sample = ingest();
+        tracer.dispatched("traced", sample);
+        for (String subscriber : new String[] { "a", "b" }) {
+            TraceSample copy = sample.fork(subscriber);
+            assertNotNull(copy);
+            copy.mark(Stage.PLAY_ENGINE_SEND);
+            copy.mark(Stage.ENCODE);
+            copy.complete();
+            assertTrue(copy.getMark(Stage.SOCKET_WRITE) >= copy.getIngestNanos());
+        }
+        Map<String, LatencyHistogram.Snapshot> stream = tracer.getStreamLatency("traced");
+        assertEquals(Stage.values().length + 1, stream.size());
+        // publisher stages once per sample, subscriber stages once per subscriber
+        assertEquals(1, stream.get("decode").getCount());
+        assertEquals(1, stream.get("dispatch").getCount());
+        assertEquals(2, stream.get("pipe_push").getCount());
+        assertEquals(2, stream.get("socket_write").getCount());
+        assertEquals(2, stream.get(StreamTrace.TOTAL).getCount());
+        assertEquals(2, tracer.getSubscribers("traced").size());
+        assertEquals(1, tracer.getSubscriberTotals("traced").get("a").getCount());
+        assertEquals(1, tracer.getSubscriberLatency("traced", "b").get("decode").getCount());
+        tracer.resetStatistics();
+        assertEquals(0, tracer.getStreamLatency("traced").get(StreamTrace.TOTAL).getCount());
+        assertTrue(tracer.getSubscribers("traced").isEmpty());
+    }
+
+    @Test
+    public void testUntracedStream() {
+        TraceSample sample = ingest();
+        tracer.dispatched("other", sample);
+        assertNull(sample.getStream());
+        assertNull(sample.fork("a"));
+        assertTrue(tracer.getStreamLatency("other").isEmpty());
+    }
+
+    @Test
+    public void testSubscriberClosed() {
+        StreamTrace trace = new StreamTrace("limited", 2);
+        assertNotNull(trace.getSubscriber("a"));
+        assertNotNull(trace.getSubscriber("b"));
+        // over the limit
+        assertNull(trace.getSubscriber("c"));
+        trace.removeSubscriber("a");
+        assertNotNull(trace.getSubscriber("c"));
+        assertEquals(2, trace.getSubscribers().size());
+        // closing a subscriber of the traced stream drops its results
+        TraceSample sample = ingest();
+        tracer.dispatched("traced", sample);
+        sample.fork("a").complete();
+        assertEquals(1, tracer.getSubscribers("traced").size());
+        tracer.unsubscribed("traced", "a");
+        assertTrue(tracer.getSubscribers("traced").isEmpty());
+        assertEquals(1, tracer.getStreamLatency("traced").get(StreamTrace.TOTAL).getCount());
+        sample.fork("b").complete();
+        tracer.unsubscribed(null, "b");
+        assertTrue(tracer.getSubscribers("traced").isEmpty());
+    }
+
+}
@@ -0,0 +1,61 @@
+package org.red5.server.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests for the small copy-on-write concurrent map.
+ */
+public class ArrayConcurrentMapTest {
+
+    @Test
+    public void testConcurrentMapContract() {
+        ArrayConcurrentMap<Number, String> map = new ArrayConcurrentMap<>();
+        assertTrue(map.isEmpty());
+        assertNull(map.putIfAbsent(1d, "one"));
+        assertEquals("one", map.putIfAbsent(1d, "uno"));
+        assertNull(map.put(2d, "two"));
+        assertEquals("two", map.put(2d, "dos"));
+        assertEquals(2, map.size());
+        assertEquals("dos", map.get(2d));
+        // keys are matched by equals, as with the hash map this replaces
+        assertNull(map.get(2));
+        assertFalse(map.replace(1d, "uno", "eins"));
+        assertTrue(map.replace(1d, "one", "eins"));
+        assertFalse(map.remove(1d, "one"));
+        assertTrue(map.remove(1d, "eins"));
+        assertEquals("dos", map.remove(2d));
+        assertTrue(map.isEmpty());
+        assertEquals(Integer.valueOf(7), new ArrayConcurrentMap<String, Integer>().computeIfAbsent("k", k -> 7));
+    }
+
+    @Test
+    public void testIteratorIsSnapshot() {
+        ArrayConcurrentMap<Integer, String> map = new ArrayConcurrentMap<>();
+        for (int i = 0; i < 4; i++) {
+            map.put(i, "v" + i);
+        }
+        Iterator<Map.Entry<Integer, String>> it = map.entrySet().iterator();
+        map.put(9, "v9");
+        int seen = 0;
+        while (it.hasNext()) {
+            if (it.next().getKey() % 2 == 0) {
+                it.remove();
+            }
+            seen++;
+        }
+        assertEquals(4, seen);
+        assertEquals(3, map.size());
+        assertFalse(map.containsKey(0));
+        assertTrue(map.containsKey(9));
+        assertTrue(map.containsValue("v3"));
+    }
+
+}
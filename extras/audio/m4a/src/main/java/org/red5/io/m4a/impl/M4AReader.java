@@ -11,8 +11,6 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SeekableByteChannel;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
 import java.util.ArrayList;
@@ -54,6 +52,7 @@ import org.mp4parser.boxes.iso14496.part12.TrackHeaderBox;
 import org.mp4parser.boxes.iso14496.part14.ESDescriptorBox;
 import org.mp4parser.boxes.sampleentry.AudioSampleEntry;
 import org.mp4parser.boxes.sampleentry.SampleEntry;
+import org.red5.cache.impl.BlockCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -157,8 +156,8 @@ public class M4AReader implements IoConstants, ITagReader {
         }
         String fileName = f.getName().toLowerCase();
         if (fileName.endsWith("m4a") || fileName.endsWith("mp4") || fileName.endsWith("f4a")) {
-            // create a datasource / channel
-            dataSource = Files.newByteChannel(Paths.get(f.toURI()));
+            // create a datasource / channel, reading through the block cache when enabled
+            dataSource = BlockCache.open(f);
             // instance an iso file from mp4parser
             isoFile = new IsoFile(dataSource);
             //decode all the info that we want from the atoms
@@ -13,6 +13,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -25,6 +26,7 @@ import org.apache.tika.metadata.Metadata;
 import org.apache.tika.parser.mp3.AudioFrame;
 import org.apache.tika.parser.mp3.Mp3Parser;
 import org.apache.tika.sax.BodyContentHandler;
+import org.red5.cache.impl.BlockCache;
 import org.red5.io.IKeyFrameMetaCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
@@ -104,7 +106,7 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
 
     private final Semaphore lock = new Semaphore(1, true);
 
-    private FileChannel fileChannel;
+    private SeekableByteChannel fileChannel;
 
     private LinkedList<AudioFrame> frameList;
 
@@ -191,8 +193,8 @@ public class MP3Reader implements ITagReader, IKeyFrameDataAnalyzer {
         // create file metadata object
         firstTags.addFirst(createFileMeta());
         log.trace("File input stream - open: {} position: {}", fis.getChannel().isOpen(), fis.getChannel().position());
-        // create a channel for reading
-        fileChannel = fis.getChannel();
+        // create a channel for reading frames, through the block cache when enabled
+        fileChannel = BlockCache.open(file);
     }
 
     /**
@@ -0,0 +1,129 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.codec;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures the per-packet cost of {@link IVideoStreamCodec#addData(IoBuffer, int)} for AVC, HEVC and AV1 ingest. Run with
+ * <code>-prof gc</code> to see allocation per operation.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VideoIngestBenchmark {
+
+    @Param({ "1400", "65536" })
+    public int frameSize;
+
+    private AVCVideo avc;
+
+    private HEVCVideo hevc;
+
+    private AV1Video av1;
+
+    private IoBuffer avcKey, avcInter, avcLegacyKey, hevcKey, hevcInter, av1Key, av1Inter;
+
+    private int timestamp;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        avc = new AVCVideo();
+        hevc = new HEVCVideo();
+        av1 = new AV1Video();
+        // load configurations so the codecs are in their steady state
+        avc.addData(enhanced(0x90, VideoCodec.AVC, new byte[] { 1, 0x64, 0, 0x1f, (byte) 0xff }), 0);
+        hevc.addData(enhanced(0x90, VideoCodec.HEVC, new byte[23]), 0);
+        av1.addData(enhanced(0x90, VideoCodec.AV1, new byte[] { (byte) 0x81, 0x08, 0x0c, 0 }), 0);
+        // coded frames with a composition time offset for the NAL based codecs
+        avcKey = enhanced(0x91, VideoCodec.AVC, payload(frameSize));
+        avcInter = enhanced(0xa1, VideoCodec.AVC, payload(frameSize));
+        hevcKey = enhanced(0x91, VideoCodec.HEVC, payload(frameSize));
+        hevcInter = enhanced(0xa1, VideoCodec.HEVC, payload(frameSize));
+        av1Key = enhanced(0x91, VideoCodec.AV1, payload(frameSize));
+        av1Inter = enhanced(0xa1, VideoCodec.AV1, payload(frameSize));
+        avcLegacyKey = IoBuffer.allocate(frameSize + 5);
+        avcLegacyKey.put((byte) 0x17).put((byte) 1).put(new byte[3]).put(payload(frameSize)).flip();
+    }
+
+    private static IoBuffer enhanced(int flags, VideoCodec codec, byte[] body) {
+        IoBuffer buf = IoBuffer.allocate(body.length + 5);
+        buf.put((byte) flags).putInt(codec.getFourcc()).put(body).flip();
+        return buf;
+    }
+
+    private static byte[] payload(int size) {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        return bytes;
+    }
+
+    @Benchmark
+    public boolean avcKeyframe() {
+        return avc.addData(avcKey, ++timestamp);
+    }
+
+    @Benchmark
+    public boolean avcInterframe() {
+        return avc.addData(avcInter, ++timestamp);
+    }
+
+    @Benchmark
+    public boolean avcLegacyKeyframe() {
+        return avc.addData(avcLegacyKey, ++timestamp);
+    }
+
+    @Benchmark
+    public boolean hevcKeyframe() {
+        return hevc.addData(hevcKey, ++timestamp);
+    }
+
+    @Benchmark
+    public boolean hevcInterframe() {
+        return hevc.addData(hevcInter, ++timestamp);
+    }
+
+    @Benchmark
+    public boolean av1Keyframe() {
+        return av1.addData(av1Key, ++timestamp);
+    }
+
+    @Benchmark
+    public boolean av1Interframe() {
+        return av1.addData(av1Inter, ++timestamp);
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder().include(VideoIngestBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
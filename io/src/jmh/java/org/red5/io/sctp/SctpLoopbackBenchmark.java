@@ -0,0 +1,102 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Measures message throughput of {@link SctpTransport} over loopback, sender and receiver sharing one loop thread. Each invocation sends a
+ * batch and waits until the last message is delivered. Run with <code>-prof gc</code> to see allocation per message.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SctpLoopbackBenchmark {
+
+    private static final int BATCH = 1000;
+
+    @Param({ "100", "1100", "16384" })
+    public int messageSize;
+
+    private SctpTransport transport;
+
+    private SctpAssociation association;
+
+    private ByteBuffer message;
+
+    private final AtomicLong delivered = new AtomicLong();
+
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        transport = new SctpTransport("sctp-bench");
+        transport.start();
+        InetSocketAddress loopback = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        SctpEndpoint server = transport.bind(loopback, (association, streamId, ppid, message) -> delivered.incrementAndGet());
+        SctpEndpoint client = transport.bind(loopback, (association, streamId, ppid, message) -> {
+        });
+        association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        message = ByteBuffer.allocateDirect(messageSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        transport.stop();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long sendBatch() {
+        for (int i = 0; i < BATCH; i++) {
+            while (!association.send(i & 7, 53, message, false)) {
+                // send queue full, let the loop drain it
+                LockSupport.parkNanos(10_000);
+            }
+        }
+        expected += BATCH;
+        while (delivered.get() < expected) {
+            Thread.onSpinWait();
+        }
+        return association.getRetransmissions();
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder().include(SctpLoopbackBenchmark.class.getSimpleName()).build();
+        new Runner(opt).run();
+    }
+
+}
@@ -0,0 +1,541 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.cache.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Off-heap cache of fixed size file blocks, shared by the VOD file readers. Blocks are keyed by canonical path, modification time and block
+ * index, so files of the same name in different applications never collide and a modified file is never served stale.
+ * <p>
+ * Readers go through {@link #open(File)}, which returns a {@link BlockCacheChannel} when the cache is enabled and a plain file channel
+ * otherwise. Block memory is allocated direct, up to the memory budget, and reused once a block is evicted and no reader is copying from it.
+ * Eviction is least recently used, but a block missing from a full cache is only admitted when it has been accessed more often than the block
+ * it would evict, so a single pass over a large file cannot flush blocks many viewers are reading; blocks which are not admitted are read
+ * straight from disk.
+ * <p>
+ * The shared instance is configured with the system properties <code>red5.blockcache.size</code>, the memory budget in bytes, zero to disable
+ * (the default), and <code>red5.blockcache.blockSize</code>, 1 MiB by default.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class BlockCache implements BlockCacheMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(BlockCache.class);
+
+    /**
+     * Most blocks evicted to free a buffer for one miss; past that the read goes to disk rather than emptying the cache
+     */
+    private static final int MAX_EVICTIONS = 4;
+
+    private static final BlockCache instance = new BlockCache(Long.getLong("red5.blockcache.size", 0L), Integer.getInteger("red5.blockcache.blockSize", 1024 * 1024));
+
+    static {
+        if (instance.isEnabled()) {
+            try {
+                MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+                ObjectName oName = new ObjectName("org.red5.server:type=BlockCache");
+                if (!mbs.isRegistered(oName)) {
+                    mbs.registerMBean(new StandardMBean(instance, BlockCacheMXBean.class, true), oName);
+                }
+            } catch (Exception e) {
+                log.debug("Error on jmx registration", e);
+            }
+        }
+    }
+
+    private final int blockSize;
+
+    private final int maxBlocks;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Cached blocks in access order, eldest first
+     */
+    private final LinkedHashMap<BlockKey, Block> blocks = new LinkedHashMap<>(64, 0.75f, true);
+
+    /**
+     * Block buffers which are allocated but unused
+     */
+    private final ArrayDeque<ByteBuffer> free = new ArrayDeque<>();
+
+    private final FrequencySketch sketch;
+
+    private int allocated;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder rejections = new LongAdder();
+
+    private final LongAdder bytesServed = new LongAdder();
+
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Creates a cache.
+     *
+     * @param maxMemory
+     *            memory budget in bytes, zero or less to disable
+     * @param blockSize
+     *            block size in bytes
+     */
+    public BlockCache(long maxMemory, int blockSize) {
+        this.blockSize = Math.max(4096, blockSize);
+        this.maxBlocks = (int) Math.min(Integer.MAX_VALUE, Math.max(0L, maxMemory / this.blockSize));
+        this.sketch = new FrequencySketch(maxBlocks);
+        if (maxBlocks > 0) {
+            log.info("Block cache of {} blocks of {} bytes", maxBlocks, this.blockSize);
+        }
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return block cache
+     */
+    public static BlockCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Opens a file for reading through the shared cache.
+     *
+     * @param file
+     *            file
+     * @return channel reading through the cache, or a plain file channel if the cache is disabled
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public static SeekableByteChannel open(File file) throws IOException {
+        return instance.openChannel(file);
+    }
+
+    /**
+     * Opens a file for reading through this cache.
+     *
+     * @param file
+     *            file
+     * @return channel reading through the cache, or a plain file channel if the cache is disabled
+     * @throws IOException
+     *             if the file cannot be opened
+     */
+    public SeekableByteChannel openChannel(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        if (!isEnabled()) {
+            return channel;
+        }
+        return new BlockCacheChannel(this, file.getCanonicalPath(), file.lastModified(), channel);
+    }
+
+    /**
+     * Reads from a file through the cache.
+     *
+     * @param path
+     *            canonical path of the file
+     * @param modified
+     *            modification time of the file
+     * @param channel
+     *            channel of the file, for blocks which are not cached
+     * @param size
+     *            size of the file
+     * @param dst
+     *            buffer to read into
+     * @param position
+     *            file position to read from
+     * @return bytes read, -1 at the end of the file
+     * @throws IOException
+     *             on read error
+     */
+    int read(String path, long modified, FileChannel channel, long size, ByteBuffer dst, long position) throws IOException {
+        if (position >= size) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        int total = 0;
+        while (dst.hasRemaining() && position < size) {
+            long index = position / blockSize;
+            int offset = (int) (position - index * blockSize);
+            Block block = acquire(new BlockKey(path, modified, index), channel, size);
+            int count;
+            if (block != null) {
+                try {
+                    ByteBuffer data = block.data.duplicate();
+                    if (offset >= data.limit()) {
+                        break;
+                    }
+                    count = Math.min(dst.remaining(), data.limit() - offset);
+                    data.position(offset).limit(offset + count);
+                    dst.put(data);
+                    bytesServed.add(count);
+                } finally {
+                    block.release();
+                }
+            } else {
+                // not admitted, read what was asked for from disk up to the end of the block
+                int limit = dst.limit();
+                dst.limit(dst.position() + (int) Math.min(dst.remaining(), blockSize - offset));
+                try {
+                    count = channel.read(dst, position);
+                } finally {
+                    dst.limit(limit);
+                }
+                if (count <= 0) {
+                    break;
+                }
+                bytesRead.add(count);
+            }
+            total += count;
+            position += count;
+        }
+        return total > 0 ? total : -1;
+    }
+
+    /**
+     * Returns a cached block, loading it if it should be admitted.
+     *
+     * @return retained block which must be released, or null if the block is not cached
+     */
+    private Block acquire(BlockKey key, FileChannel channel, long size) throws IOException {
+        ByteBuffer buffer;
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Block block = blocks.get(key);
+            if (block != null && block.retain()) {
+                hits.increment();
+                return block;
+            }
+            misses.increment();
+            if (blocks.size() >= maxBlocks) {
+                Map.Entry<BlockKey, Block> eldest = blocks.entrySet().iterator().next();
+                if (sketch.frequency(key) <= sketch.frequency(eldest.getKey())) {
+                    rejections.increment();
+                    return null;
+                }
+            }
+            buffer = allocate();
+            if (buffer == null) {
+                rejections.increment();
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+        // load outside the lock
+        Block loaded;
+        try {
+            buffer.clear();
+            long start = key.index * blockSize;
+            buffer.limit((int) Math.min(blockSize, size - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            bytesRead.add(buffer.limit());
+            loaded = new Block(key, buffer);
+        } catch (IOException e) {
+            recycle(buffer);
+            throw e;
+        }
+        lock.lock();
+        try {
+            Block existing = blocks.get(key);
+            if (existing != null && existing.retain()) {
+                // loaded concurrently
+                loaded.release();
+                return existing;
+            }
+            while (blocks.size() >= maxBlocks) {
+                evictEldest();
+            }
+            blocks.put(key, loaded);
+            // one reference for the cache, one for the caller
+            loaded.retain();
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a free buffer, allocating one within the budget or evicting to free one. Called with the lock held.
+     *
+     * @return buffer or null if none is available within a few evictions
+     */
+    private ByteBuffer allocate() {
+        ByteBuffer buffer = free.poll();
+        if (buffer == null) {
+            if (allocated < maxBlocks) {
+                allocated++;
+                return ByteBuffer.allocateDirect(blockSize);
+            }
+            // evicted blocks still being copied from come back later, so with every reader busy the eviction is bounded
+            for (int i = 0; buffer == null && i < MAX_EVICTIONS && !blocks.isEmpty(); i++) {
+                evictEldest();
+                buffer = free.poll();
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Evicts the least recently used block. Called with the lock held.
+     */
+    private void evictEldest() {
+        Iterator<Block> it = blocks.values().iterator();
+        Block eldest = it.next();
+        it.remove();
+        evictions.increment();
+        eldest.release();
+    }
+
+    private void recycle(ByteBuffer buffer) {
+        lock.lock();
+        try {
+            free.push(buffer);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEnabled() {
+        return maxBlocks > 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxMemory() {
+        return (long) maxBlocks * blockSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAllocatedMemory() {
+        lock.lock();
+        try {
+            return (long) allocated * blockSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getBlockCount() {
+        lock.lock();
+        try {
+            return blocks.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getHitRatio() {
+        long hit = hits.sum(), total = hit + misses.sum();
+        return total > 0L ? (double) hit / total : 0d;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getRejections() {
+        return rejections.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int invalidate(String path) {
+        int count = 0;
+        lock.lock();
+        try {
+            Iterator<Map.Entry<BlockKey, Block>> it = blocks.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<BlockKey, Block> entry = it.next();
+                if (entry.getKey().path.equals(path)) {
+                    it.remove();
+                    entry.getValue().release();
+                    count++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void clear() {
+        lock.lock();
+        try {
+            for (Block block : blocks.values()) {
+                block.release();
+            }
+            blocks.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        rejections.reset();
+        bytesServed.reset();
+        bytesRead.reset();
+    }
+
+    /**
+     * Identity of a block: file, version of the file and index within it.
+     */
+    private static final class BlockKey {
+
+        final String path;
+
+        final long modified;
+
+        final long index;
+
+        final int hash;
+
+        BlockKey(String path, long modified, long index) {
+            this.path = path;
+            this.modified = modified;
+            this.index = index;
+            this.hash = (path.hashCode() * 31 + Long.hashCode(modified)) * 31 + Long.hashCode(index);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof BlockKey)) {
+                return false;
+            }
+            BlockKey other = (BlockKey) obj;
+            return index == other.index && modified == other.modified && path.equals(other.path);
+        }
+
+    }
+
+    /**
+     * A cached block; its buffer goes back to the free list once it is evicted and every reader has released it.
+     */
+    private final class Block {
+
+        final BlockKey key;
+
+        final ByteBuffer data;
+
+        final AtomicInteger refs = new AtomicInteger(1);
+
+        Block(BlockKey key, ByteBuffer data) {
+            this.key = key;
+            this.data = data;
+        }
+
+        boolean retain() {
+            int count;
+            do {
+                count = refs.get();
+                if (count <= 0) {
+                    return false;
+                }
+            } while (!refs.compareAndSet(count, count + 1));
+            return true;
+        }
+
+        void release() {
+            if (refs.decrementAndGet() == 0) {
+                if (log.isTraceEnabled()) {
+                    log.trace("Block released: {} #{}", key.path, key.index);
+                }
+                recycle(data);
+            }
+        }
+
+    }
+
+}
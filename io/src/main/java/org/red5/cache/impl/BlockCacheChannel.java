@@ -0,0 +1,123 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.cache.impl;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Read only channel over a file which reads through a {@link BlockCache}. Besides the usual sequential reads it offers positional reads,
+ * which leave the channel position alone. The size is that of the file when the channel was opened.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class BlockCacheChannel implements SeekableByteChannel {
+
+    private final BlockCache cache;
+
+    private final String path;
+
+    private final long modified;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private long position;
+
+    BlockCacheChannel(BlockCache cache, String path, long modified, FileChannel channel) throws IOException {
+        this.cache = cache;
+        this.path = path;
+        this.modified = modified;
+        this.channel = channel;
+        this.size = channel.size();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    /**
+     * Reads from the given file position without changing the channel position.
+     *
+     * @param dst
+     *            buffer to read into
+     * @param position
+     *            file position
+     * @return bytes read, -1 at the end of the file
+     * @throws IOException
+     *             on read error
+     */
+    public int read(ByteBuffer dst, long position) throws IOException {
+        if (!channel.isOpen()) {
+            throw new ClosedChannelException();
+        }
+        return cache.read(path, modified, channel, size, dst, position);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long position() throws IOException {
+        return position;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SeekableByteChannel position(long newPosition) throws IOException {
+        if (newPosition < 0L) {
+            throw new IllegalArgumentException("Negative position");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long size() throws IOException {
+        return size;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public SeekableByteChannel truncate(long size) throws IOException {
+        throw new NonWritableChannelException();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+}
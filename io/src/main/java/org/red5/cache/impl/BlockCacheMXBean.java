@@ -0,0 +1,85 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.cache.impl;
+
+import javax.management.MXBean;
+
+/**
+ * Off-heap block cache shared by the VOD file readers.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface BlockCacheMXBean {
+
+    public boolean isEnabled();
+
+    public int getBlockSize();
+
+    public long getMaxMemory();
+
+    /**
+     * Returns the off-heap memory allocated for blocks, cached or free.
+     *
+     * @return bytes
+     */
+    public long getAllocatedMemory();
+
+    public int getBlockCount();
+
+    public long getHits();
+
+    public long getMisses();
+
+    /**
+     * Returns the share of block reads served from the cache.
+     *
+     * @return ratio between 0 and 1
+     */
+    public double getHitRatio();
+
+    public long getEvictions();
+
+    /**
+     * Returns the number of blocks not admitted because they were accessed less often than the block they would have evicted.
+     *
+     * @return rejected blocks
+     */
+    public long getRejections();
+
+    /**
+     * Returns the bytes served to readers from cached blocks.
+     *
+     * @return bytes
+     */
+    public long getBytesServed();
+
+    /**
+     * Returns the bytes read from disk, to fill blocks or for reads which were not cached.
+     *
+     * @return bytes
+     */
+    public long getBytesRead();
+
+    /**
+     * Drops every cached block of a file.
+     *
+     * @param path
+     *            canonical path of the file
+     * @return number of blocks dropped
+     */
+    public int invalidate(String path);
+
+    /**
+     * Drops every cached block.
+     */
+    public void clear();
+
+    public void resetStatistics();
+
+}
@@ -0,0 +1,99 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.cache.impl;
+
+/**
+ * Approximate access frequency of keys: a count-min sketch of four bit counters which are halved once enough accesses have been recorded,
+ * so old popularity fades. Used to only admit a block to the cache when it is accessed more often than the block it would evict. Not thread
+ * safe, callers hold a lock.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+
+    private static final int MAX_COUNT = 15;
+
+    private final byte[] table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private int size;
+
+    /**
+     * Creates a sketch.
+     *
+     * @param capacity
+     *            number of entries whose frequency matters, usually the maximum number of cached entries
+     */
+    FrequencySketch(int capacity) {
+        int width = Integer.highestOneBit(Math.max(64, Math.min(capacity, 1 << 24)) * 8 - 1) << 1;
+        table = new byte[width];
+        mask = width - 1;
+        sampleSize = width * 10;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (int) h & mask;
+    }
+
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+    /**
+     * Records an access.
+     *
+     * @param key
+     *            key
+     */
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int row = 0; row < SEEDS.length; row++) {
+            int index = indexOf(hash, row);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize) {
+            age();
+        }
+    }
+
+    /**
+     * Returns the estimated number of accesses.
+     *
+     * @param key
+     *            key
+     * @return frequency, at most 15
+     */
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < SEEDS.length; row++) {
+            frequency = Math.min(frequency, table[indexOf(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void age() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] >>>= 1;
+        }
+        size >>>= 1;
+    }
+
+}
@@ -61,6 +61,11 @@ public class AV1Video extends AbstractVideo implements IEnhancedRTMPVideoCodec {
      */
     private FrameData mpeg2tsDescriptor;
 
+    // sequence header fields from the last configuration record
+    private int seqProfile, seqLevelIdx, seqTier, bitDepth = 8;
+
+    private boolean monochrome;
+
     {
         codec = VideoCodec.AV1;
     }
@@ -94,11 +99,22 @@ public class AV1Video extends AbstractVideo implements IEnhancedRTMPVideoCodec {
                     if (isDebug) {
                         log.debug("Decoder configuration");
                     }
+                    // pull the sequence header fields out of the fixed part of the record
+                    if (!multitrack && data.limit() >= bodyOffset + 4) {
+                        byte b1 = data.get(bodyOffset + 1);
+                        byte b2 = data.get(bodyOffset + 2);
+                        seqProfile = (b1 >> 5) & 0x07;
+                        seqLevelIdx = b1 & 0x1f;
+                        seqTier = (b2 >> 7) & 0x01;
+                        // high_bitdepth and twelve_bit
+                        bitDepth = (b2 & 0x40) == 0 ? 8 : ((b2 & 0x20) == 0 ? 10 : 12);
+                        monochrome = (b2 & 0x10) != 0;
+                    }
                     // Store AV1CodecConfigurationRecord data
                     if (decoderConfiguration == null) {
-                        decoderConfiguration = new FrameData(data);
+                        decoderConfiguration = FrameData.share(data);
                     } else {
-                        decoderConfiguration.setData(data);
+                        decoderConfiguration.shareData(data);
                     }
                     // new sequence, clear keyframe and interframe collections
                     softReset();
@@ -110,9 +126,9 @@ public class AV1Video extends AbstractVideo implements IEnhancedRTMPVideoCodec {
                     log.debug("MPEG-2 TS sequence start (AV1VideoDescriptor)");
                 }
                 if (mpeg2tsDescriptor == null) {
-                    mpeg2tsDescriptor = new FrameData(data);
+                    mpeg2tsDescriptor = FrameData.share(data);
                 } else {
-                    mpeg2tsDescriptor.setData(data);
+                    mpeg2tsDescriptor.shareData(data);
                 }
                 softReset();
                 break;
@@ -131,7 +147,7 @@ public class AV1Video extends AbstractVideo implements IEnhancedRTMPVideoCodec {
                             keyframeTimestamp = timestamp;
                             softReset();
                         }
-                        keyframes.add(new FrameData(data));
+                        keyframes.add(FrameData.share(data));
                         break;
                     case INTERFRAME:
                         if (bufferInterframes) {
@@ -144,9 +160,9 @@ public class AV1Video extends AbstractVideo implements IEnhancedRTMPVideoCodec {
                             try {
                                 int lastInterframe = numInterframes.getAndIncrement();
                                 if (lastInterframe < interframes.size()) {
-                                    interframes.get(lastInterframe).setData(data);
+                                    interframes.get(lastInterframe).shareData(data);
                                 } else {
-                                    interframes.add(new FrameData(data));
+                                    interframes.add(FrameData.share(data));
                                 }
                             } catch (Throwable e) {
                                 log.warn("Failed to buffer interframe", e);
@@ -166,4 +182,50 @@ public class AV1Video extends AbstractVideo implements IEnhancedRTMPVideoCodec {
     public IoBuffer getDecoderConfiguration() {
         return decoderConfiguration != null ? decoderConfiguration.getFrame() : null;
     }
+
+    /**
+     * Returns the seq_profile from the last configuration record.
+     *
+     * @return profile
+     */
+    public int getSeqProfile() {
+        return seqProfile;
+    }
+
+    /**
+     * Returns the seq_level_idx_0 from the last configuration record.
+     *
+     * @return level index
+     */
+    public int getSeqLevelIdx() {
+        return seqLevelIdx;
+    }
+
+    /**
+     * Returns the seq_tier_0 from the last configuration record.
+     *
+     * @return tier
+     */
+    public int getSeqTier() {
+        return seqTier;
+    }
+
+    /**
+     * Returns the bit depth signalled by the last configuration record.
+     *
+     * @return 8, 10 or 12
+     */
+    public int getBitDepth() {
+        return bitDepth;
+    }
+
+    /**
+     * Returns whether the last configuration record signalled monochrome.
+     *
+     * @return true if monochrome
+     */
+    public boolean isMonochrome() {
+        return monochrome;
+    }
+
 }
@@ -27,6 +27,9 @@ public class AVCVideo extends AbstractVideo {
      */
     private FrameData decoderConfiguration;
 
+    // decoder configuration fields, kept as primitives so inspecting them never touches the stored record
+    private int profile, profileCompatibility, level, nalLengthSize = 4;
+
     {
         codec = VideoCodec.AVC;
     }
@@ -43,224 +46,95 @@ public class AVCVideo extends AbstractVideo {
         softReset();
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * Only the tag header is read on the hot path, using absolute gets so the buffer position is not disturbed; the payload is touched
+     * only to retain sequence headers, keyframes and (when enabled) buffered interframes, and those share the incoming buffer.
+     */
     @SuppressWarnings("incomplete-switch")
     @Override
     public boolean addData(IoBuffer data, int timestamp) {
-        log.trace("{} addData timestamp: {} remaining: {}", codec.name(), timestamp, data.remaining());
+        if (isTrace) {
+            log.trace("{} addData timestamp: {} remaining: {}", codec.name(), timestamp, data.remaining());
+        }
         boolean result = false;
         // go back to the beginning, this only works in non-multitrack scenarios
         if (data.position() > 0) {
             data.rewind();
         }
+        final int start = data.position();
+        final int length = data.remaining();
         int fourcc = 0;
         // no data, no operation
-        if (data.hasRemaining()) {
-            // mark the position before we get the flags
-            data.mark();
+        if (length > 0) {
             // get the first byte for v1 codec type or enhanced codec bit
-            byte flg = data.get();
+            byte flg = data.get(start);
             // determine if we've got an enhanced codec
-            enhanced = ByteNibbler.isBitSet(flg, 7); // network order so its rtl
+            enhanced = (flg & 0x80) != 0; // network order so its rtl
             // for frame type we need get 3 bits
-            int ft = ((flg & 0b01110000) >> 4);
-            frameType = VideoFrameType.valueOf(ft);
+            frameType = VideoFrameType.valueOf((flg & 0b01110000) >> 4);
             if (enhanced) {
                 // get the packet type
                 packetType = VideoPacketType.valueOf(flg & IoConstants.MASK_VIDEO_CODEC);
-                if (frameType.getValue() < 5 && packetType.getPacketType() < 5) {
+                if (packetType != null && frameType.getValue() < 5 && packetType.getPacketType() < 5) {
                     // get the fourcc
-                    if (data.remaining() < 4) {
+                    if (length < 5) {
                         return false;
                     }
-                    fourcc = data.getInt();
+                    fourcc = data.getInt(start + 1);
                     result = (codec.getFourcc() == fourcc);
                     if (!result) {
-                        data.reset();
                         return result;
                     }
                 }
-                // reset back to the beginning after we got the fourcc
-                data.reset();
                 if (isDebug) {
                     log.debug("{} - frame type: {} packet type: {}", VideoCodec.valueOfByFourCc(fourcc), frameType, packetType);
                 }
-                switch (packetType) {
-                    case SequenceStart:
-                        if (frameType == VideoFrameType.KEYFRAME) {
-                            if (isDebug) {
-                                log.debug("Decoder configuration");
+                // flags + fourcc
+                bodyOffset = start + 5;
+                if (packetType != null) {
+                    switch (packetType) {
+                        case SequenceStart:
+                            if (frameType == VideoFrameType.KEYFRAME) {
+                                storeDecoderConfiguration(data, bodyOffset);
                             }
-                            // Store AVCDecoderConfigurationRecord data
-                            if (decoderConfiguration == null) {
-                                decoderConfiguration = new FrameData(data);
-                            } else {
-                                decoderConfiguration.setData(data);
+                            break;
+                        case CodedFramesX: // pass coded data without comp time offset
+                            storeFrame(data, timestamp, 0);
+                            break;
+                        case CodedFrames: // pass coded data with SI24 composition time offset
+                            if (length < 8) {
+                                return false;
                             }
-                            // new sequence, clear keyframe and interframe collections
-                            softReset();
-                        }
-                        break;
-                    case CodedFramesX: // pass coded data without comp time offset
-                        switch (frameType) {
-                            case KEYFRAME: // keyframe
-                                if (isDebug) {
-                                    log.debug("Keyframe - keyframeTimestamp: {}", keyframeTimestamp);
-                                }
-                                // get the time stamp and compare with the current value
-                                if (timestamp != keyframeTimestamp) {
-                                    //log.trace("New keyframe");
-                                    // new keyframe
-                                    keyframeTimestamp = timestamp;
-                                    // if its a new keyframe, clear keyframe and interframe collections
-                                    softReset();
-                                }
-                                // store keyframe
-                                keyframes.add(new FrameData(data));
-                                break;
-                            case INTERFRAME:
-                                if (bufferInterframes) {
-                                    if (isDebug) {
-                                        log.debug("Interframe - timestamp: {}", timestamp);
-                                    }
-                                    if (interframes == null) {
-                                        interframes = new CopyOnWriteArrayList<>();
-                                    }
-                                    try {
-                                        int lastInterframe = numInterframes.getAndIncrement();
-                                        //log.trace("Buffering interframe #{}", lastInterframe);
-                                        if (lastInterframe < interframes.size()) {
-                                            interframes.get(lastInterframe).setData(data);
-                                        } else {
-                                            interframes.add(new FrameData(data));
-                                        }
-                                    } catch (Throwable e) {
-                                        log.warn("Failed to buffer interframe", e);
-                                    }
-                                    //log.trace("Interframes: {}", interframes.size());
-                                }
-                                break;
-                        }
-                        break;
-                    case CodedFrames: // pass coded data
-                        if (data.remaining() < 3) {
-                            return false;
-                        }
-                        int compTimeOffset = (data.get() << 16 | data.get() << 8 | data.get());
-                        data.reset();
-                        switch (frameType) {
-                            case KEYFRAME: // keyframe
-                                if (isDebug) {
-                                    log.debug("Keyframe - keyframeTimestamp: {} compTimeOffset: {}", keyframeTimestamp, compTimeOffset);
-                                }
-                                // get the time stamp and compare with the current value
-                                if (timestamp != keyframeTimestamp) {
-                                    //log.trace("New keyframe");
-                                    // new keyframe
-                                    keyframeTimestamp = timestamp;
-                                    // if its a new keyframe, clear keyframe and interframe collections
-                                    softReset();
-                                }
-                                keyframes.add(new FrameData(data, compTimeOffset));
-                                break;
-                            case INTERFRAME:
-                                if (bufferInterframes) {
-                                    if (isDebug) {
-                                        log.debug("Interframe - timestamp: {}", timestamp);
-                                    }
-                                    if (interframes == null) {
-                                        interframes = new CopyOnWriteArrayList<>();
-                                    }
-                                    try {
-                                        int lastInterframe = numInterframes.getAndIncrement();
-                                        //log.trace("Buffering interframe #{}", lastInterframe);
-                                        if (lastInterframe < interframes.size()) {
-                                            interframes.get(lastInterframe).setData(data);
-                                        } else {
-                                            interframes.add(new FrameData(data));
-                                        }
-                                    } catch (Throwable e) {
-                                        log.warn("Failed to buffer interframe", e);
-                                    }
-                                    //log.trace("Interframes: {}", interframes.size());
-                                }
-                                break;
-                        }
-                    default:
-                        // not handled
-                        break;
+                            storeFrame(data, timestamp, readSI24(data, bodyOffset));
+                            break;
+                        default:
+                            // not handled
+                            break;
+                    }
                 }
-
-            } else if ((flg & IoConstants.MASK_VIDEO_CODEC) == codec.getId()) {
+            } else if ((flg & IoConstants.MASK_VIDEO_CODEC) == codec.getId() && length > 1) {
                 result = true;
                 // get the codecs frame type
-                byte avcType = data.get();
-                // reset back to the beginning after we got the avc type
-                data.reset();
+                byte avcType = data.get(start + 1);
                 if (isDebug) {
                     log.debug("AVC type: {}", avcType);
                 }
+                // flags + avc type + composition time
+                bodyOffset = start + 5;
                 switch (avcType) {
-                    case 1: // VCL video coding layer,
+                    case 1: // VCL video coding layer
                         frameType = VideoFrameType.valueOf((flg & IoConstants.MASK_VIDEO_FRAMETYPE) >> 4);
-                        switch (frameType) {
-                            case KEYFRAME: // keyframe
-
-                                if (isDebug) {
-                                    log.debug("Keyframe - keyframeTimestamp: {}", keyframeTimestamp);
-                                }
-                                // get the time stamp and compare with the current value
-                                if (timestamp != keyframeTimestamp) {
-                                    //log.trace("New keyframe");
-                                    // new keyframe
-                                    keyframeTimestamp = timestamp;
-                                    // if its a new keyframe, clear keyframe and interframe collections
-                                    softReset();
-                                }
-                                keyframes.add(new FrameData(data));
-                                break;
-                            case INTERFRAME:
-                                if (bufferInterframes) {
-                                    if (isDebug) {
-                                        log.debug("Interframe - AVC type: {}", avcType);
-                                    }
-                                    if (interframes == null) {
-                                        interframes = new CopyOnWriteArrayList<>();
-                                    }
-                                    try {
-                                        int lastInterframe = numInterframes.getAndIncrement();
-                                        //log.trace("Buffering interframe #{}", lastInterframe);
-                                        if (lastInterframe < interframes.size()) {
-                                            interframes.get(lastInterframe).setData(data);
-                                        } else {
-                                            interframes.add(new FrameData(data));
-                                        }
-                                    } catch (Throwable e) {
-                                        log.warn("Failed to buffer interframe", e);
-                                    }
-                                    //log.trace("Interframes: {}", interframes.size());
-                                }
-                                break;
-                        }
+                        storeFrame(data, timestamp, length >= 5 ? readSI24(data, start + 2) : 0);
                         break;
                     case 0: // configuration
-                        if (isDebug) {
-                            log.debug("Decoder configuration");
-                        }
-                        // Store AVCDecoderConfigurationRecord data
-                        if (decoderConfiguration == null) {
-                            decoderConfiguration = new FrameData(data);
-                        } else {
-                            decoderConfiguration.setData(data);
-                        }
-                        // new configuration, clear keyframe and interframe collections
-                        softReset();
+                        storeDecoderConfiguration(data, bodyOffset);
                         break;
                     default:
                         break;
                 }
             }
-            //log.trace("Keyframes: {}", keyframes.size());
         }
         // reset the position
         data.rewind();
@@ -273,6 +147,130 @@ public class AVCVideo extends AbstractVideo {
         return result;
     }
 
+    /**
+     * Retains the AVCDecoderConfigurationRecord and extracts its profile, level and NAL length size.
+     *
+     * @param data tag data positioned at the start of the tag
+     * @param recordOffset absolute offset of the configuration record
+     */
+    private void storeDecoderConfiguration(IoBuffer data, int recordOffset) {
+        if (isDebug) {
+            log.debug("Decoder configuration");
+        }
+        // configurationVersion, AVCProfileIndication, profile_compatibility, AVCLevelIndication, lengthSizeMinusOne
+        if (data.limit() >= recordOffset + 5) {
+            profile = data.get(recordOffset + 1) & 0xff;
+            profileCompatibility = data.get(recordOffset + 2) & 0xff;
+            level = data.get(recordOffset + 3) & 0xff;
+            nalLengthSize = (data.get(recordOffset + 4) & 0x03) + 1;
+        }
+        // Store AVCDecoderConfigurationRecord data
+        if (decoderConfiguration == null) {
+            decoderConfiguration = FrameData.share(data);
+        } else {
+            decoderConfiguration.shareData(data);
+        }
+        // new sequence, clear keyframe and interframe collections
+        softReset();
+    }
+
+    /**
+     * Retains a keyframe, or an interframe when interframe buffering is enabled; other frames are not touched.
+     *
+     * @param data tag data positioned at the start of the tag
+     * @param timestamp tag timestamp
+     * @param compTimeOffset composition time offset
+     */
+    @SuppressWarnings("incomplete-switch")
+    private void storeFrame(IoBuffer data, int timestamp, int compTimeOffset) {
+        if (frameType == null) {
+            return;
+        }
+        switch (frameType) {
+            case KEYFRAME: // keyframe
+                if (isDebug) {
+                    log.debug("Keyframe - keyframeTimestamp: {} compTimeOffset: {}", keyframeTimestamp, compTimeOffset);
+                }
+                // get the time stamp and compare with the current value
+                if (timestamp != keyframeTimestamp) {
+                    // new keyframe
+                    keyframeTimestamp = timestamp;
+                    // if its a new keyframe, clear keyframe and interframe collections
+                    softReset();
+                }
+                // store keyframe
+                keyframes.add(FrameData.share(data, compTimeOffset));
+                break;
+            case INTERFRAME:
+                if (bufferInterframes) {
+                    if (isDebug) {
+                        log.debug("Interframe - timestamp: {}", timestamp);
+                    }
+                    if (interframes == null) {
+                        interframes = new CopyOnWriteArrayList<>();
+                    }
+                    try {
+                        int lastInterframe = numInterframes.getAndIncrement();
+                        if (lastInterframe < interframes.size()) {
+                            interframes.get(lastInterframe).shareData(data);
+                        } else {
+                            interframes.add(FrameData.share(data));
+                        }
+                    } catch (Throwable e) {
+                        log.warn("Failed to buffer interframe", e);
+                    }
+                }
+                break;
+        }
+    }
+
+    /**
+     * Reads a signed 24 bit big-endian value at an absolute offset.
+     *
+     * @param data buffer
+     * @param offset absolute offset
+     * @return value
+     */
+    static int readSI24(IoBuffer data, int offset) {
+        return (data.get(offset) << 16) | ((data.get(offset + 1) & 0xff) << 8) | (data.get(offset + 2) & 0xff);
+    }
+
+    /**
+     * Returns the AVCProfileIndication from the last decoder configuration.
+     *
+     * @return profile or 0 if no configuration has been received
+     */
+    public int getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the profile_compatibility byte from the last decoder configuration.
+     *
+     * @return profile compatibility flags
+     */
+    public int getProfileCompatibility() {
+        return profileCompatibility;
+    }
+
+    /**
+     * Returns the AVCLevelIndication from the last decoder configuration.
+     *
+     * @return level or 0 if no configuration has been received
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the size in bytes of the NAL unit length prefix from the last decoder configuration.
+     *
+     * @return NAL length size, 4 if no configuration has been received
+     */
+    public int getNalLengthSize() {
+        return nalLengthSize;
+    }
+
     /** {@inheritDoc} */
     @Override
     public IoBuffer getDecoderConfiguration() {
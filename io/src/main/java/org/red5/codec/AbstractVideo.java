@@ -79,6 +79,15 @@ public class AbstractVideo implements IVideoStreamCodec {
     // track length in bytes
     protected int trackSize = 0;
 
+    // fourcc of the cached trackCodec, lets single codec streams skip the track map lookup
+    private int trackFourcc;
+
+    /**
+     * Offset of the codec body (e.g. the decoder configuration record) within the last tag passed to addData, past the flags, fourcc
+     * and any ModEx data. Subclasses read configuration at this offset with absolute gets so the position is left untouched.
+     */
+    protected int bodyOffset;
+
     // video codec specific attributes
     protected transient ConcurrentMap<String, String> attributes = new ConcurrentHashMap<>();
 
@@ -194,7 +203,9 @@ public class AbstractVideo implements IVideoStreamCodec {
             // for frame type we need get 3 bits
             int ft = ((flg & 0b01110000) >> 4);
             frameType = VideoFrameType.valueOf(ft);
-            log.debug("Frame type: {}", frameType);
+            if (isDebug) {
+                log.debug("Frame type: {}", frameType);
+            }
             if (enhanced) {
                 // we are going to process the video body only if we're enhanced
                 processVideoBody = true;
@@ -257,6 +268,7 @@ public class AbstractVideo implements IVideoStreamCodec {
                 }
                 if (isTrace)
                     log.trace("Multitrack: {} multitrackType: {} packetType: {}", multitrack, multitrackType, packetType);
+                bodyOffset = data.position();
                 // read all the data
                 while (processVideoBody && data.hasRemaining()) {
                     // handle multiple tracks
@@ -378,14 +390,20 @@ public class AbstractVideo implements IVideoStreamCodec {
      * @return Video codec
      */
     protected IVideoStreamCodec getTrackCodec(IoBuffer data) {
-        Integer fourcc = data.getInt();
+        int fourcc = data.getInt();
         if (isTrace) {
             log.trace("Fourcc: {} pos: {}", fourcc, data.position());
         }
+        // same codec as the previous tag, which is every tag on a single track stream
+        if (trackCodec != null && fourcc == trackFourcc) {
+            return trackCodec;
+        }
+        trackFourcc = fourcc;
         if (!tracks.containsKey(fourcc)) {
             VideoCodec trakCodec = VideoCodec.valueOfByFourCc(fourcc);
             if (trakCodec == null) {
                 log.warn("Unknown video fourcc: {}", fourcc);
+                trackFourcc = 0;
                 return null;
             }
             // create a new codec instance
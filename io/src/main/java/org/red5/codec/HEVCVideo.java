@@ -24,6 +24,9 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
      */
     private FrameData decoderConfiguration;
 
+    // decoder configuration fields, kept as primitives so inspecting them never touches the stored record
+    private int profile, tier, level, nalLengthSize = 4;
+
     {
         codec = VideoCodec.HEVC;
     }
@@ -40,13 +43,40 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
         softReset();
     }
 
+    /**
+     * Retains the HEVCDecoderConfigurationRecord and extracts its profile, tier, level and NAL length size.
+     *
+     * @param data tag data positioned at the start of the tag
+     * @param recordOffset absolute offset of the configuration record, or -1 if unknown
+     */
+    private void storeDecoderConfiguration(IoBuffer data, int recordOffset) {
+        if (isDebug) {
+            log.debug("Decoder configuration");
+        }
+        // configurationVersion, general_profile_space/tier_flag/profile_idc, 4 bytes compatibility flags, 6 bytes constraint flags,
+        // general_level_idc, ... lengthSizeMinusOne in the low bits of byte 21
+        if (recordOffset >= 0 && data.limit() >= recordOffset + 22) {
+            byte ptl = data.get(recordOffset + 1);
+            profile = ptl & 0x1f;
+            tier = (ptl >> 5) & 0x01;
+            level = data.get(recordOffset + 12) & 0xff;
+            nalLengthSize = (data.get(recordOffset + 21) & 0x03) + 1;
+        }
+        // Store HEVCDecoderConfigurationRecord data
+        if (decoderConfiguration == null) {
+            decoderConfiguration = FrameData.share(data);
+        } else {
+            decoderConfiguration.shareData(data);
+        }
+        // new sequence, clear keyframe and interframe collections
+        softReset();
+    }
+
     /** {@inheritDoc} */
     public void handleNonEnhanced(VideoFrameType type, IoBuffer data, int timestamp) {
         // get the codecs frame type
         data.rewind();
-        byte hvcType = data.get();
-        // reset back to the beginning after we got the hvc type
-        data.rewind();
+        byte hvcType = data.get(data.position());
 
         //only called from super if codecs matched.
         //if((hvcType & 0x0f) != VideoCodec.HEVC.getId()) {
@@ -67,20 +97,11 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
                     softReset();
                 }
                 // store keyframe
-                keyframes.add(new FrameData(data));
+                keyframes.add(FrameData.share(data));
                 break;
             case 0: // configuration
-                if (isDebug) {
-                    log.debug("Decoder configuration");
-                }
-                // Store HEVCDecoderConfigurationRecord data
-                if (decoderConfiguration == null) {
-                    decoderConfiguration = new FrameData(data);
-                } else {
-                    decoderConfiguration.setData(data);
-                }
-                // new configuration, clear keyframe and interframe collections
-                softReset();
+                // flags + hevc type + composition time
+                storeDecoderConfiguration(data, 5);
                 break;
             default:
                 if (bufferInterframes) {
@@ -94,9 +115,9 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
                         int lastInterframe = numInterframes.getAndIncrement();
                         //log.trace("Buffering interframe #{}", lastInterframe);
                         if (lastInterframe < interframes.size()) {
-                            interframes.get(lastInterframe).setData(data);
+                            interframes.get(lastInterframe).shareData(data);
                         } else {
-                            interframes.add(new FrameData(data));
+                            interframes.add(FrameData.share(data));
                         }
                     } catch (Throwable e) {
                         log.warn("Failed to buffer interframe", e);
@@ -113,17 +134,7 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
         switch (packetType) {
             case SequenceStart:
                 if (frameType == VideoFrameType.KEYFRAME) {
-                    if (isDebug) {
-                        log.debug("Decoder configuration");
-                    }
-                    // Store HEVCDecoderConfigurationRecord data
-                    if (decoderConfiguration == null) {
-                        decoderConfiguration = new FrameData(data);
-                    } else {
-                        decoderConfiguration.setData(data);
-                    }
-                    // new sequence, clear keyframe and interframe collections
-                    softReset();
+                    storeDecoderConfiguration(data, multitrack ? -1 : bodyOffset);
                 }
                 break;
             case CodedFramesX: // pass coded data without comp time offset
@@ -141,7 +152,7 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
                             softReset();
                         }
                         // store keyframe
-                        keyframes.add(new FrameData(data));
+                        keyframes.add(FrameData.share(data));
                         break;
                     case INTERFRAME:
                         if (bufferInterframes) {
@@ -155,9 +166,9 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
                                 int lastInterframe = numInterframes.getAndIncrement();
                                 //log.trace("Buffering interframe #{}", lastInterframe);
                                 if (lastInterframe < interframes.size()) {
-                                    interframes.get(lastInterframe).setData(data);
+                                    interframes.get(lastInterframe).shareData(data);
                                 } else {
-                                    interframes.add(new FrameData(data));
+                                    interframes.add(FrameData.share(data));
                                 }
                             } catch (Throwable e) {
                                 log.warn("Failed to buffer interframe", e);
@@ -168,16 +179,17 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
                 }
                 break;
             case CodedFrames: // pass coded data with SI24 composition time offset
-                if (data.remaining() < 3) {
+                if (data.limit() < bodyOffset + 3) {
                     return;
                 }
-                int compTimeOffset = (data.get() << 16 | data.get() << 8 | data.get());
+                // read the SI24 offset in place, the stored frame keeps the whole tag
+                int compTimeOffset = multitrack ? 0 : AVCVideo.readSI24(data, bodyOffset);
                 switch (frameType) {
                     case KEYFRAME: // keyframe
                         if (isDebug) {
                             log.debug("Keyframe - keyframeTimestamp: {} compTimeOffset: {}", keyframeTimestamp, compTimeOffset);
                         }
-                        keyframes.add(new FrameData(data, compTimeOffset));
+                        keyframes.add(FrameData.share(data, compTimeOffset));
                         break;
                     case INTERFRAME:
                         if (bufferInterframes) {
@@ -190,9 +202,9 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
                             try {
                                 int lastInterframe = numInterframes.getAndIncrement();
                                 if (lastInterframe < interframes.size()) {
-                                    interframes.get(lastInterframe).setData(data);
+                                    interframes.get(lastInterframe).shareData(data);
                                 } else {
-                                    interframes.add(new FrameData(data));
+                                    interframes.add(FrameData.share(data));
                                 }
                             } catch (Throwable e) {
                                 log.warn("Failed to buffer interframe", e);
@@ -393,6 +405,42 @@ public class HEVCVideo extends AbstractVideo implements IEnhancedRTMPVideoCodec
     //        return result;
     //    }
 
+    /**
+     * Returns the general_profile_idc from the last decoder configuration.
+     *
+     * @return profile or 0 if no configuration has been received
+     */
+    public int getProfile() {
+        return profile;
+    }
+
+    /**
+     * Returns the general_tier_flag from the last decoder configuration.
+     *
+     * @return 0 for main tier, 1 for high tier
+     */
+    public int getTier() {
+        return tier;
+    }
+
+    /**
+     * Returns the general_level_idc from the last decoder configuration.
+     *
+     * @return level or 0 if no configuration has been received
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the size in bytes of the NAL unit length prefix from the last decoder configuration.
+     *
+     * @return NAL length size, 4 if no configuration has been received
+     */
+    public int getNalLengthSize() {
+        return nalLengthSize;
+    }
+
     /** {@inheritDoc} */
     @Override
     public IoBuffer getDecoderConfiguration() {
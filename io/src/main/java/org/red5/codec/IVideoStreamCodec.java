@@ -8,6 +8,7 @@
 package org.red5.codec;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.buffer.SimpleBufferAllocator;
 
 /**
  * Represents a Video codec and its associated decoder configuration.
@@ -129,8 +130,17 @@ public interface IVideoStreamCodec {
      */
     public final static class FrameData {
 
+        /**
+         * Whether frame payloads may be retained by reference rather than copied; set the <code>red5.codec.shareFrameData</code>
+         * system property to false to always copy.
+         */
+        private static final boolean SHARE_FRAME_DATA = Boolean.parseBoolean(System.getProperty("red5.codec.shareFrameData", "true"));
+
         private byte[] frame;
 
+        // payload retained by reference, read-only
+        private IoBuffer shared;
+
         private int compTimeOffset;
 
         public FrameData() {
@@ -145,6 +155,34 @@ public interface IVideoStreamCodec {
             this.compTimeOffset = compTimeOffset;
         }
 
+        /**
+         * Creates frame data that shares the incoming payload where possible, see {@link #shareData(IoBuffer)}.
+         *
+         * @param data
+         *            data
+         * @return frame data
+         */
+        public static FrameData share(IoBuffer data) {
+            FrameData frameData = new FrameData();
+            frameData.shareData(data);
+            return frameData;
+        }
+
+        /**
+         * Creates frame data that shares the incoming payload where possible, see {@link #shareData(IoBuffer)}.
+         *
+         * @param data
+         *            data
+         * @param compTimeOffset
+         *            composition time offset
+         * @return frame data
+         */
+        public static FrameData share(IoBuffer data, int compTimeOffset) {
+            FrameData frameData = share(data);
+            frameData.compTimeOffset = compTimeOffset;
+            return frameData;
+        }
+
         /**
          * Makes a copy of the incoming bytes and places them in an IoBuffer. No flip or rewind is performed on the
          * source data. Ensure that the data is at the correct position before calling this method.
@@ -153,6 +191,7 @@ public interface IVideoStreamCodec {
          *            data
          */
         public void setData(IoBuffer data) {
+            shared = null;
             if (frame != null) {
                 frame = null;
             }
@@ -160,11 +199,37 @@ public interface IVideoStreamCodec {
             data.get(frame);
         }
 
+        /**
+         * Keeps a read-only view of the incoming bytes instead of copying them. Buffers from a pooling allocator may be recycled once
+         * the event is released, so they are copied as with {@link #setData(IoBuffer)}. The source position is advanced to its limit.
+         *
+         * @param data
+         *            data
+         */
+        public void shareData(IoBuffer data) {
+            if (SHARE_FRAME_DATA && IoBuffer.getAllocator() instanceof SimpleBufferAllocator) {
+                frame = null;
+                shared = data.slice().asReadOnlyBuffer();
+                data.position(data.limit());
+            } else {
+                setData(data);
+            }
+        }
+
         public IoBuffer getFrame() {
+            if (shared != null) {
+                return shared.duplicate();
+            }
             return frame == null ? null : IoBuffer.wrap(frame).asReadOnlyBuffer();
         }
 
         public byte[] getFrameBytes() {
+            if (shared != null) {
+                IoBuffer view = shared.duplicate();
+                byte[] bytes = new byte[view.remaining()];
+                view.get(bytes);
+                return bytes;
+            }
             return frame;
         }
 
@@ -189,6 +189,9 @@ public enum VideoCodec {
 
     private final static Map<Byte, VideoCodec> map = new HashMap<>();
 
+    // cached copy of values() for per-packet fourcc lookups
+    private final static VideoCodec[] VALUES = values();
+
     private byte id;
 
     private int fourcc;
@@ -260,7 +263,7 @@ public enum VideoCodec {
      * @return the codec
      */
     public static VideoCodec valueOfByFourCc(int fourcc) {
-        for (VideoCodec codec : VideoCodec.values()) {
+        for (VideoCodec codec : VALUES) {
             if (codec.getFourcc() == fourcc) {
                 return codec;
             }
@@ -25,6 +25,15 @@ public enum VideoFrameType {
     COMMAND_FRAME((byte) 0x05), // Command or informational frame
     DELTA((byte) 0x0f); // Delta frame (only used internally for AV1 handling)
 
+    // lookup by the 4 bit frame type value, avoids a values() copy per packet
+    private static final VideoFrameType[] BY_VALUE = new VideoFrameType[16];
+
+    static {
+        for (VideoFrameType type : values()) {
+            BY_VALUE[type.value] = type;
+        }
+    }
+
     private final byte value;
 
     VideoFrameType(byte value) {
@@ -47,12 +56,7 @@ public enum VideoFrameType {
      * @return a {@link org.red5.codec.VideoFrameType} object
      */
     public static VideoFrameType valueOf(int value) {
-        for (VideoFrameType type : values()) {
-            if (type.value == value) {
-                return type;
-            }
-        }
-        return null;
+        return (value >= 0 && value < BY_VALUE.length) ? BY_VALUE[value] : null;
     }
 
 }
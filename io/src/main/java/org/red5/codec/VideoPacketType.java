@@ -26,6 +26,15 @@ public enum VideoPacketType {
     // The unwrap loop peels off ModEx layers until a non-ModEx packet type is reached.
     ModEx((byte) 0x07);
 
+    // lookup by the 4 bit packet type value, avoids a values() copy per packet
+    private static final VideoPacketType[] BY_VALUE = new VideoPacketType[16];
+
+    static {
+        for (VideoPacketType vpt : values()) {
+            BY_VALUE[vpt.packetType] = vpt;
+        }
+    }
+
     private final byte packetType;
 
     VideoPacketType(byte packetType) {
@@ -48,12 +57,7 @@ public enum VideoPacketType {
      * @return a {@link org.red5.codec.VideoPacketType} object
      */
     public static VideoPacketType valueOf(int packetType) {
-        for (VideoPacketType vpt : values()) {
-            if (vpt.getPacketType() == packetType) {
-                return vpt;
-            }
-        }
-        return null;
+        return (packetType >= 0 && packetType < BY_VALUE.length) ? BY_VALUE[packetType] : null;
     }
 
 }
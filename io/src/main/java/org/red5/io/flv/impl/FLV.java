@@ -18,6 +18,7 @@ import java.util.Set;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.cache.ICacheStore;
 import org.red5.cache.ICacheable;
+import org.red5.cache.impl.BlockCache;
 import org.red5.cache.impl.NoCacheImpl;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -26,6 +27,7 @@ import org.red5.io.IoConstants;
 import org.red5.io.flv.IFLV;
 import org.red5.io.flv.meta.IMetaData;
 import org.red5.io.flv.meta.IMetaService;
+import org.red5.io.flv.meta.MetaCueFile;
 import org.red5.io.flv.meta.MetaData;
 import org.red5.io.flv.meta.MetaService;
 import org.red5.media.processor.IPostProcessor;
@@ -248,7 +250,12 @@ public class FLV implements IFLV {
     public ITagReader getReader() throws IOException {
         FLVReader reader = null;
         IoBuffer fileData;
-        String fileName = file.getName();
+        // blocks of the file are cached as it is read, rather than the whole file
+        if (BlockCache.getInstance().isEnabled() && file.exists()) {
+            return new FLVReader(file, generateMetadata);
+        }
+        // key by path and version so files of the same name in other scopes, or a replaced file, are not served
+        String fileName = file.getCanonicalPath() + '@' + file.lastModified();
         // if no cache is set an NPE will be thrown
         if (cache == null) {
             log.info("FLV cache is null, forcing NoCacheImpl instance");
@@ -275,6 +282,7 @@ public class FLV implements IFLV {
         } else {
             fileData = IoBuffer.wrap(ic.getBytes());
             reader = new FLVReader(fileData, generateMetadata);
+            reader.setMetaCues(MetaCueFile.read(file));
         }
         return reader;
     }
@@ -8,11 +8,11 @@
 package org.red5.io.flv.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -21,6 +21,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.cache.impl.BlockCache;
 import org.red5.codec.AudioCodec;
 import org.red5.codec.VideoCodec;
 import org.red5.codec.VideoFrameType;
@@ -34,6 +35,8 @@ import org.red5.io.amf.Input;
 import org.red5.io.amf.Output;
 import org.red5.io.flv.FLVHeader;
 import org.red5.io.flv.IKeyFrameDataAnalyzer;
+import org.red5.io.flv.meta.IMetaCue;
+import org.red5.io.flv.meta.MetaCueFile;
 import org.red5.io.object.Deserializer;
 import org.red5.io.utils.IOUtils;
 import org.slf4j.Logger;
@@ -58,14 +61,9 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     private File file;
 
     /**
-     * File input stream
+     * File channel, reading through the block cache when enabled
      */
-    private FileInputStream fis;
-
-    /**
-     * File channel
-     */
-    private FileChannel channel;
+    private SeekableByteChannel channel;
 
     private long channelSize;
 
@@ -124,6 +122,21 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
 
     private final ReentrantLock lock = new ReentrantLock();
 
+    /**
+     * Cue points from the sidecar file, merged into the tags read
+     */
+    private IMetaCue[] cues;
+
+    /**
+     * Index of the next cue point to return
+     */
+    private int cueIndex;
+
+    /**
+     * Whether the next cue point has to be found again after a seek
+     */
+    private boolean cueResync;
+
     /** Constructs a new FLVReader. */
     FLVReader() {
     }
@@ -156,11 +169,11 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             log.debug("{}", org.apache.commons.lang3.builder.ToStringBuilder.reflectionToString(this));
         }
         this.file = f;
-        this.fis = new FileInputStream(f);
         this.generateMetadata = generateMetadata;
-        channel = fis.getChannel();
+        channel = BlockCache.open(f);
         channelSize = channel.size();
         in = null;
+        cues = MetaCueFile.read(f);
         fillBuffer();
         postInitialize();
     }
@@ -208,6 +221,17 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         postInitialize();
     }
 
+    /**
+     * Sets the cue points to merge into the tags read, for readers not created from a file.
+     *
+     * @param cues
+     *            cue points sorted by time or null for none
+     */
+    public void setMetaCues(IMetaCue[] cues) {
+        this.cues = cues;
+        cueIndex = 0;
+    }
+
     /**
      * <p>setKeyFrameCache.</p>
      *
@@ -635,6 +659,21 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
                         return createFileMeta();
                     }
                 }
+                // cue points from the sidecar go ahead of the first media tag at or past their time
+                if (cues != null && !isMetaData) {
+                    int timestamp = tag.getTimestamp();
+                    if (cueResync) {
+                        cueResync = false;
+                        cueIndex = 0;
+                        while (cueIndex < cues.length && MetaCueFile.getTimestamp(cues[cueIndex]) < timestamp) {
+                            cueIndex++;
+                        }
+                    }
+                    if (cueIndex < cues.length && MetaCueFile.getTimestamp(cues[cueIndex]) <= timestamp) {
+                        setCurrentPosition(oldPos);
+                        return MetaCueFile.createTag(cues[cueIndex++]);
+                    }
+                }
                 int bodySize = tag.getBodySize();
                 IoBuffer body = IoBuffer.allocate(bodySize, false);
                 // XXX Paul: this assists in 'properly' handling damaged FLV files
@@ -738,9 +777,6 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             if (channel != null) {
                 try {
                     channel.close();
-                    if (fis != null) {
-                        fis.close();
-                    }
                 } catch (IOException e) {
                     log.error("FLVReader close", e);
                 }
@@ -899,6 +935,7 @@ public class FLVReader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
     @Override
     public void position(long pos) {
         setCurrentPosition(pos);
+        cueResync = true;
     }
 
     /**
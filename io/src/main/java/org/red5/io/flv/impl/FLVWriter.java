@@ -41,9 +41,11 @@ import org.red5.io.amf.Input;
 import org.red5.io.amf.Output;
 import org.red5.io.flv.FLVHeader;
 import org.red5.io.flv.IFLV;
+import org.red5.io.flv.meta.MetaService;
 import org.red5.io.object.Deserializer;
 import org.red5.io.utils.IOUtils;
 import org.red5.media.processor.IPostProcessor;
+import org.red5.metrics.Metrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -85,6 +87,11 @@ public class FLVWriter implements ITagWriter {
      */
     private static IFLV flv;
 
+    /**
+     * Bytes reserved in the metadata tag, so it can be updated later without rewriting the file
+     */
+    private static int metadataPadding;
+
     /**
      * Number of bytes written
      */
@@ -365,6 +372,8 @@ public class FLVWriter implements ITagWriter {
     public boolean writeTag(ITag tag) throws IOException {
         // a/v config written flags
         boolean onWrittenSetVideoFlag = false, onWrittenSetAudioFlag = false;
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        final long startBytes = bytesWritten;
         try {
             lock.acquire();
             /*
@@ -586,6 +595,10 @@ public class FLVWriter implements ITagWriter {
             }
             // release lock
             lock.release();
+            if (Metrics.ENABLED) {
+                Metrics.FLV_WRITE.recordSince(start);
+                Metrics.FLV_WRITTEN_BYTES.add(bytesWritten - startBytes);
+            }
         }
         return false;
     }
@@ -596,6 +609,8 @@ public class FLVWriter implements ITagWriter {
         if (timeOffset == 0) {
             timeOffset = (int) System.currentTimeMillis();
         }
+        final long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+        final long startBytes = bytesWritten;
         try {
             lock.acquire();
             /*
@@ -671,6 +686,10 @@ public class FLVWriter implements ITagWriter {
             updateInfoFile();
             // release lock
             lock.release();
+            if (Metrics.ENABLED) {
+                Metrics.FLV_WRITE.recordSince(start);
+                Metrics.FLV_WRITTEN_BYTES.add(bytesWritten - startBytes);
+            }
         }
         return false;
     }
@@ -788,6 +807,10 @@ public class FLVWriter implements ITagWriter {
         }
         // this is actual only supposed to be true if the last video frame is a keyframe
         params.put("canSeekToEnd", true);
+        params.remove(MetaService.PADDING);
+        if (metadataPadding > 0) {
+            params.put(MetaService.PADDING, " ".repeat(metadataPadding));
+        }
         out.writeMap(params);
         buf.flip();
         int bodySize = buf.limit();
@@ -1104,6 +1127,27 @@ public class FLVWriter implements ITagWriter {
         FLVWriter.flv = flv;
     }
 
+    /**
+     * Getter for metadata padding.
+     *
+     * @return Value for property 'metadataPadding'
+     */
+    public static int getMetadataPadding() {
+        return metadataPadding;
+    }
+
+    /**
+     * Setter for the space reserved in the metadata tag of new files. Metadata and cue point edits which fit in it are made in place
+     * instead of by rewriting the file.
+     *
+     * @param metadataPadding
+     *            bytes, 0 for none
+     */
+    public static void setMetadataPadding(int metadataPadding) {
+        // a padding string can not be longer than this
+        FLVWriter.metadataPadding = Math.max(0, Math.min(metadataPadding, 0xffff));
+    }
+
     /** {@inheritDoc} */
     @Override
     public int getOffset() {
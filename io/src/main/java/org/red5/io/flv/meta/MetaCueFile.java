@@ -0,0 +1,181 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.flv.meta;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.flv.impl.Tag;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cue points of a media file kept in a sidecar file next to it, so adding cue points does not rewrite the media. The sidecar is named after
+ * the media file with a <code>.cues</code> suffix and holds a short header followed by the cue points, sorted by time, as AMF0 maps. Readers
+ * merge the cue points into the tags they return as <code>onCuePoint</code> data tags.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class MetaCueFile {
+
+    private static Logger log = LoggerFactory.getLogger(MetaCueFile.class);
+
+    /**
+     * Suffix of the sidecar file name
+     */
+    public static final String SUFFIX = ".cues";
+
+    // "R5CP"
+    private static final int MAGIC = 0x52354350;
+
+    private static final byte VERSION = 1;
+
+    private MetaCueFile() {
+    }
+
+    /**
+     * Returns the sidecar file of a media file.
+     *
+     * @param file
+     *            media file
+     * @return sidecar file, which may not exist
+     */
+    public static File getFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Reads the cue points of a media file.
+     *
+     * @param file
+     *            media file
+     * @return cue points sorted by time, or null if there are none or the sidecar could not be read
+     */
+    @SuppressWarnings("unchecked")
+    public static IMetaCue[] read(File file) {
+        File cueFile = getFile(file);
+        if (!cueFile.isFile()) {
+            return null;
+        }
+        try {
+            IoBuffer buf = IoBuffer.wrap(Files.readAllBytes(cueFile.toPath()));
+            if (buf.remaining() < 9 || buf.getInt() != MAGIC || buf.get() != VERSION) {
+                log.warn("Ignoring unrecognized cue point file: {}", cueFile);
+                return null;
+            }
+            int count = buf.getInt();
+            Input input = new Input(buf);
+            IMetaCue[] cues = new IMetaCue[count];
+            for (int i = 0; i < count; i++) {
+                MetaCue<String, Object> cue = new MetaCue<>();
+                cue.putAll(Deserializer.deserialize(input, Map.class));
+                cues[i] = cue;
+            }
+            return count > 0 ? cues : null;
+        } catch (Exception e) {
+            log.warn("Exception reading cue point file: {}", cueFile, e);
+        }
+        return null;
+    }
+
+    /**
+     * Adds cue points to those of a media file. A cue point with the name and time of one already stored replaces it.
+     *
+     * @param file
+     *            media file
+     * @param cues
+     *            cue points to add
+     * @throws IOException
+     *             if the sidecar could not be written
+     */
+    public static void write(File file, IMetaCue[] cues) throws IOException {
+        List<IMetaCue> merged = new ArrayList<>();
+        IMetaCue[] existing = read(file);
+        if (existing != null) {
+            merged.addAll(Arrays.asList(existing));
+        }
+        for (IMetaCue cue : cues) {
+            merged.removeIf(old -> old.getTime() == cue.getTime() && String.valueOf(old.getName()).equals(cue.getName()));
+            merged.add(cue);
+        }
+        IMetaCue[] sorted = merged.toArray(new IMetaCue[0]);
+        Arrays.sort(sorted);
+        IoBuffer buf = IoBuffer.allocate(64 + sorted.length * 64);
+        buf.setAutoExpand(true);
+        buf.putInt(MAGIC);
+        buf.put(VERSION);
+        buf.putInt(sorted.length);
+        Output out = new Output(buf);
+        for (IMetaCue cue : sorted) {
+            Serializer.serialize(out, cue);
+        }
+        buf.flip();
+        byte[] bytes = new byte[buf.limit()];
+        buf.get(bytes);
+        // replace the sidecar in one step so readers never see part of it
+        Path target = getFile(file).toPath();
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.write(tmp, bytes);
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        log.debug("Wrote {} cue points to {}", sorted.length, target);
+    }
+
+    /**
+     * Deletes the sidecar of a media file.
+     *
+     * @param file
+     *            media file
+     * @return true if there was a sidecar and it was deleted
+     */
+    public static boolean delete(File file) {
+        return getFile(file).delete();
+    }
+
+    /**
+     * Returns the time of a cue point in milliseconds.
+     *
+     * @param cue
+     *            cue point
+     * @return milliseconds
+     */
+    public static int getTimestamp(IMetaCue cue) {
+        return (int) (cue.getTime() * 1000.00);
+    }
+
+    /**
+     * Creates the <code>onCuePoint</code> data tag of a cue point.
+     *
+     * @param cue
+     *            cue point
+     * @return tag
+     */
+    public static ITag createTag(IMetaCue cue) {
+        IoBuffer buf = IoBuffer.allocate(256);
+        buf.setAutoExpand(true);
+        Output out = new Output(buf);
+        Serializer.serialize(out, "onCuePoint");
+        Serializer.serialize(out, cue);
+        buf.flip();
+        return new Tag(IoConstants.TYPE_METADATA, getTimestamp(cue), buf.limit(), buf, 0);
+    }
+
+}
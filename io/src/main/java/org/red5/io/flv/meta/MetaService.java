@@ -9,6 +9,9 @@ package org.red5.io.flv.meta;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
@@ -40,6 +43,17 @@ public class MetaService implements IMetaService {
     /** Constant <code>log</code> */
     protected static Logger log = LoggerFactory.getLogger(MetaService.class);
 
+    /**
+     * Metadata property holding the space reserved for later metadata updates
+     */
+    public static final String PADDING = "padding";
+
+    // bytes a padding property takes besides its value: key length, key, string marker and value length
+    private static final int PADDING_OVERHEAD = 2 + PADDING.length() + 1 + 2;
+
+    // properties describing the media as recorded, which an update does not replace
+    private static final String[] MEDIA_PROPERTIES = { "duration", "videocodecid", "audiocodecid" };
+
     /**
      * Source file
      */
@@ -62,7 +76,12 @@ public class MetaService implements IMetaService {
         this.file = poFil;
     }
 
-    /** {@inheritDoc} */
+    /**
+     * {@inheritDoc}
+     *
+     * When the file starts with an onMetaData tag which has room for the new metadata, the tag is replaced in place and the cue points are
+     * stored in the {@link MetaCueFile} sidecar. Otherwise the file is rewritten with the metadata and cue points as tags.
+     */
     @SuppressWarnings("null")
     @Override
     public void write(IMetaData<?, ?> meta) throws IOException {
@@ -71,6 +90,15 @@ public class MetaService implements IMetaService {
         if (metaArr == null) {
             metaArr = new IMetaCue[0];
         }
+        if (update(meta)) {
+            if (metaArr.length > 0) {
+                MetaCueFile.write(file, metaArr);
+            }
+            return;
+        }
+        log.debug("Metadata does not fit in place, rewriting {}", file);
+        // the cue points are written into the file, so they must not also come from a sidecar
+        MetaCueFile.delete(file);
         try (FLVReader reader = new FLVReader(file, false); FLVWriter writer = new FLVWriter(file, false)) {
             ITag tag = null;
             // Read first tag
@@ -105,7 +133,7 @@ public class MetaService implements IMetaService {
             int cuePointTimeStamp = 0;
             int counter = 0;
 
-            if (metaArr != null) {
+            if (metaArr.length > 0) {
                 Arrays.sort(metaArr);
                 cuePointTimeStamp = getTimeInMilliseconds(metaArr[0]);
             }
@@ -134,6 +162,92 @@ public class MetaService implements IMetaService {
         }
     }
 
+    /**
+     * Replaces the onMetaData tag at the start of the file with the given metadata, if it fits in the body of the existing tag. Values
+     * describing the media as recorded, such as the duration, are kept from the existing tag. Space left over is filled by a padding
+     * property, so no tag changes size and nothing else in the file is touched.
+     *
+     * @param meta
+     *            metadata
+     * @return true if the metadata was replaced, false if the file has no leading metadata tag or the metadata does not fit
+     * @throws IOException
+     *             on read or write error
+     */
+    @SuppressWarnings("unchecked")
+    public boolean update(IMetaData<?, ?> meta) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(9);
+            if (!readFully(channel, header, 0L) || header.get(0) != 'F' || header.get(1) != 'L' || header.get(2) != 'V') {
+                return false;
+            }
+            long dataOffset = header.getInt(5) & 0xffffffffL;
+            // previous tag size and tag header
+            ByteBuffer tagHeader = ByteBuffer.allocate(15);
+            if (!readFully(channel, tagHeader, dataOffset) || (tagHeader.get(4) & 0x1f) != IoConstants.TYPE_METADATA) {
+                return false;
+            }
+            int bodySize = ((tagHeader.get(5) & 0xff) << 16) | ((tagHeader.get(6) & 0xff) << 8) | (tagHeader.get(7) & 0xff);
+            long bodyPosition = dataOffset + 15;
+            ByteBuffer body = ByteBuffer.allocate(bodySize);
+            if (!readFully(channel, body, bodyPosition)) {
+                return false;
+            }
+            Input input = new Input(IoBuffer.wrap(body.array()));
+            if (!"onMetaData".equals(Deserializer.deserialize(input, String.class))) {
+                return false;
+            }
+            Map<String, Object> existing = Deserializer.deserialize(input, Map.class);
+            Map<String, Object> params = new HashMap<>((Map<String, Object>) meta);
+            if (existing != null) {
+                for (String key : MEDIA_PROPERTIES) {
+                    if (existing.containsKey(key)) {
+                        params.put(key, existing.get(key));
+                    }
+                }
+            }
+            params.remove(PADDING);
+            IoBuffer buf = serializeMetaData(params);
+            int free = bodySize - buf.limit();
+            if (free != 0) {
+                // a padding property makes up the difference exactly, it can not be shorter than its overhead
+                if (free < PADDING_OVERHEAD || free - PADDING_OVERHEAD > 0xffff) {
+                    log.debug("Metadata of {} bytes does not fit in {} bytes", buf.limit(), bodySize);
+                    return false;
+                }
+                params.put(PADDING, " ".repeat(free - PADDING_OVERHEAD));
+                buf = serializeMetaData(params);
+                if (buf.limit() != bodySize) {
+                    return false;
+                }
+            }
+            ByteBuffer src = buf.buf();
+            while (src.hasRemaining()) {
+                channel.write(src, bodyPosition + src.position());
+            }
+            log.debug("Updated metadata in place for {}", file);
+            return true;
+        }
+    }
+
+    private static boolean readFully(FileChannel channel, ByteBuffer dst, long position) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst, position + dst.position()) < 0) {
+                return false;
+            }
+        }
+        dst.flip();
+        return true;
+    }
+
+    private static IoBuffer serializeMetaData(Map<String, Object> params) {
+        IoBuffer buf = IoBuffer.allocate(1024);
+        buf.setAutoExpand(true);
+        Output out = new Output(buf);
+        Serializer.serialize(out, "onMetaData");
+        Serializer.serialize(out, params);
+        return buf.flip();
+    }
+
     /**
      * Merges the two Meta objects
      *
@@ -292,7 +406,7 @@ public class MetaService implements IMetaService {
     /** {@inheritDoc} */
     @Override
     public IMetaCue[] readMetaCue() {
-        return null;
+        return file != null ? MetaCueFile.read(file) : null;
     }
 
 }
@@ -57,6 +57,7 @@ import org.jcodec.containers.mp4.boxes.TrackHeaderBox;
 import org.jcodec.containers.mp4.boxes.TrakBox;
 import org.jcodec.containers.mp4.boxes.VideoSampleEntry;
 import org.jcodec.containers.mp4.boxes.WaveExtension;
+import org.red5.cache.impl.BlockCache;
 import org.red5.io.IStreamableFile;
 import org.red5.io.ITag;
 import org.red5.io.ITagReader;
@@ -226,8 +227,8 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
             log.debug("{}", ToStringBuilder.reflectionToString(this));
         }
         if (f.exists() && f.canRead()) {
-            // create a datasource / channel
-            dataSource = NIOUtils.readableChannel(f);
+            // create a datasource / channel, reading through the block cache when enabled
+            dataSource = BlockCache.getInstance().isEnabled() ? new CachedChannel(BlockCache.open(f)) : NIOUtils.readableChannel(f);
             // parse the movie
             parseMovie(dataSource);
             // analyze the samples/chunks and build the keyframe meta data
@@ -1407,4 +1408,59 @@ public class MP4Reader implements IoConstants, ITagReader, IKeyFrameDataAnalyzer
         return result;
     }
 
+    /**
+     * Presents a channel reading through the block cache as a jcodec channel.
+     */
+    private static final class CachedChannel implements SeekableByteChannel {
+
+        private final java.nio.channels.SeekableByteChannel channel;
+
+        CachedChannel(java.nio.channels.SeekableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        @Override
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        @Override
+        public SeekableByteChannel setPosition(long newPosition) throws IOException {
+            channel.position(newPosition);
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            channel.truncate(size);
+            return this;
+        }
+
+    }
+
 }
@@ -17,7 +17,6 @@ import java.util.Arrays;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-import org.red5.io.utils.HexDump;
 import org.red5.io.utils.LEB128;
 import org.red5.io.utils.LEB128.LEB128Result;
 import org.slf4j.Logger;
@@ -93,7 +92,8 @@ public class OBUParser {
     *     0 on success, -1 on error.
     */
     /**
-     * <p>getNextObu.</p>
+     * Parses the next OBU header in a byte array. The returned info holds a copy of the OBU payload; use
+     * {@link #getNextObu(ByteBuffer)} to avoid the copy.
      *
      * @param buf an array of {@link byte} objects
      * @param offset a int
@@ -109,47 +109,66 @@ public class OBUParser {
         if (buf.length < (offset + 1)) {
             throw new OBUParseException("Buffer is too small for given offset");
         }
-        int pos = offset;
-        int obuType = (buf[pos] & OBU_FRAME_TYPE_MASK) >>> OBU_FRAME_TYPE_BITSHIFT;
+        ByteBuffer slice = ByteBuffer.wrap(buf, offset, Math.max(0, Math.min(bufSize, buf.length) - offset));
+        OBUInfo info = getNextObu(slice);
+        // callers of the array variant expect a backing array holding only the OBU payload
+        byte[] data = new byte[info.data.remaining()];
+        info.data.get(data);
+        info.data = ByteBuffer.wrap(data);
+        return info;
+    }
+
+    /**
+     * Parses the next OBU header at the buffer's position. The returned info's data is a slice of the given buffer holding the OBU
+     * payload (excluding the header and size field), so no bytes are copied; the buffer's position is advanced past the OBU so that
+     * repeated calls walk a temporal unit.
+     *
+     * @param buf buffer positioned at an OBU header
+     * @return a {@link org.red5.io.obu.OBUInfo} object
+     * @throws org.red5.io.obu.OBUParseException if any.
+     */
+    public static OBUInfo getNextObu(ByteBuffer buf) throws OBUParseException {
+        int pos = buf.position();
+        int limit = buf.limit();
+        log.trace("getNextObu - position: {} limit: {}", pos, limit);
+        if (limit - pos < 1) {
+            throw new OBUParseException("Buffer is too small to contain an OBU");
+        }
+        byte header = buf.get(pos);
+        int obuType = (header & OBU_FRAME_TYPE_MASK) >>> OBU_FRAME_TYPE_BITSHIFT;
         if (!isValidObu(obuType)) {
-            log.warn("OBU header contains invalid OBU type: {} data: {}", obuType, HexDump.byteArrayToHexString(buf));
+            log.warn("OBU header contains invalid OBU type: {} header: 0x{}", obuType, Integer.toHexString(header & 0xff));
             throw new OBUParseException("OBU header contains invalid OBU type: " + obuType);
         }
-        OBUInfo info = new OBUInfo(OBUType.fromValue(obuType), ByteBuffer.allocate(1180));
-        boolean obuExtensionFlag = obuHasExtension(buf[pos]);
-        boolean obuHasSizeField = obuHasSize(buf[pos]);
+        OBUInfo info = new OBUInfo(OBUType.fromValue(obuType), 0, 0, 0);
+        boolean obuExtensionFlag = obuHasExtension(header);
+        boolean obuHasSizeField = obuHasSize(header);
         log.trace("OBU type: {} extension? {} size field? {}", info.obuType, obuExtensionFlag, obuHasSizeField);
         pos++; // move past the OBU header
         if (obuExtensionFlag) {
-            if (bufSize < pos + 1) {
+            if (limit < pos + 1) {
                 throw new OBUParseException("Buffer is too small to contain an OBU extension header");
             }
-            info.temporalId = (buf[pos] & 0xE0) >> 5;
-            info.spatialId = (buf[pos] & 0x18) >> 3;
+            byte extension = buf.get(pos);
+            info.temporalId = (extension & 0xE0) >> 5;
+            info.spatialId = (extension & 0x18) >> 3;
             log.trace("Temporal id: {} spatial id: {}", info.temporalId, info.spatialId);
             pos++; // move past the OBU extension header
         }
         if (obuHasSizeField) {
-            // LEB128 size is variable length: keep reading while the high (continuation) bit is set
-            int maxIdx = Math.min(bufSize, buf.length);
-            int lenBytes = 1;
-            while (pos + lenBytes - 1 < maxIdx && (buf[pos + lenBytes - 1] & 0x80) != 0) {
-                lenBytes++;
-            }
-            byte[] lengthBytes = new byte[lenBytes];
-            System.arraycopy(buf, pos, lengthBytes, 0, lenBytes);
-            LEB128Result result = LEB128.decode(lengthBytes);
+            LEB128Result result = LEB128.decode(buf, pos);
             pos += result.bytesRead;
             info.size = result.value;
             log.trace("OBU had size field: {}", info.size);
         } else {
-            info.size = bufSize - pos;
+            info.size = limit - pos;
         }
         log.trace("OBU size: {}", info.size);
-        info.data = ByteBuffer.wrap(Arrays.copyOfRange(buf, pos, (pos + info.size)));
-        if (info.size > bufSize - pos) {
+        if (info.size > limit - pos) {
             throw new OBUParseException("Invalid OBU size: larger than remaining buffer");
         }
+        info.data = buf.slice(pos, info.size);
+        buf.position(pos + info.size);
         return info;
     }
 
@@ -8,10 +8,13 @@ import static org.red5.io.obu.OBPConstants.W_BITSHIFT;
 import static org.red5.io.obu.OBPConstants.Y_MASK;
 import static org.red5.io.obu.OBPConstants.Z_MASK;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
-import org.bouncycastle.util.Arrays;
 import org.red5.io.obu.OBUInfo;
 import org.red5.io.obu.OBUParser;
 import org.red5.io.obu.OBUType;
@@ -97,7 +100,7 @@ public class AV1Packetizer {
     public byte W;
 
     // Collection of OBU Elements; each OBU Element may be a full OBU, or just a fragment of one.
-    private List<byte[]> OBUElements;
+    private LinkedList<OBUElement> OBUElements;
 
     // Aggregation item: Z first packet in frame is fragment
     private boolean firstPacketInFrame;
@@ -120,18 +123,37 @@ public class AV1Packetizer {
     public int depacketize(byte[] payload) throws Exception {
         if (payload == null) {
             throw new Exception("Null packet");
-        } else if (payload.length < 2) {
+        }
+        return depacketize(ByteBuffer.wrap(payload));
+    }
+
+    /**
+     * Depacketizes an AV1 payload between the buffer's position and limit; this contains an aggregation header and one or more OBU
+     * elements. OBU elements are kept as slices of the payload and fragments continued across packets are chained rather than copied,
+     * so the payload must not be modified until the elements have been consumed. The buffer's position is not changed.
+     *
+     * @param payload AV1 payload
+     * @return number of OBU elements
+     * @throws java.lang.Exception on error
+     */
+    public int depacketize(ByteBuffer payload) throws Exception {
+        if (payload == null) {
+            throw new Exception("Null packet");
+        }
+        int start = payload.position(), end = payload.limit();
+        if (end - start < 2) {
             throw new Exception("Short packet");
         }
         // aggregate header byte is used to indicate if the first and/or last OBU element in the payload is a fragment
         // of an OBU
-        firstPacketInFrame = OBUParser.startsWithFragment(payload[0]); // Z first packet in frame is fragment
-        lastPacketInFrame = OBUParser.endsWithFragment(payload[0]); // Y last packet in frame is fragment
-        startSequence = OBUParser.startsNewCodedVideoSequence(payload[0]); // N
+        byte aggregationHeader = payload.get(start);
+        firstPacketInFrame = OBUParser.startsWithFragment(aggregationHeader); // Z first packet in frame is fragment
+        lastPacketInFrame = OBUParser.endsWithFragment(aggregationHeader); // Y last packet in frame is fragment
+        startSequence = OBUParser.startsNewCodedVideoSequence(aggregationHeader); // N
         // obu's in the payload
-        int obuCount = OBUParser.obuCount(payload[0]); // W
+        int obuCount = OBUParser.obuCount(aggregationHeader); // W
         if (isDebug) {
-            String bits = String.format("%8s", Integer.toBinaryString(0xff & payload[0])).replace(' ', '0');
+            String bits = String.format("%8s", Integer.toBinaryString(0xff & aggregationHeader)).replace(' ', '0');
             logger.debug("Depacketize - first packet in frame: {}, last packet in frame: {}, start sequence: {} count: {} bits: {}", firstPacketInFrame, lastPacketInFrame, startSequence, obuCount, bits);
         }
         if (firstPacketInFrame && startSequence) {
@@ -146,26 +168,23 @@ public class AV1Packetizer {
         }
         // example: [ SH MD MD(0,0) FH(0,0) TG(0,0) ] [ MD(0,1) FH(0,1) TG(0,1) ]
         // parse the bodies
-        int currentIndex = 1; // skip the aggregation header
+        int currentIndex = start + 1; // skip the aggregation header
         // first obu is index 1
-        for (int obuIndex = 1; currentIndex < payload.length; obuIndex++) {
+        for (int obuIndex = 1; currentIndex < end; obuIndex++) {
             OBUType obuType = null;
-            int obuFragmentLength = (payload.length - currentIndex);
+            int obuFragmentLength = (end - currentIndex);
             // W is the obu count expected in the packet
             logger.debug("OBU element #{} of {} array index: {}", obuIndex, obuCount, currentIndex);
             if (obuCount == 0 || obuIndex < obuCount) {
-                // read the leb128 length of the OBU fragment; keep reading while the high (continuation) bit is set
-                int lenBytes = 1;
-                while (currentIndex + lenBytes - 1 < payload.length && (payload[currentIndex + lenBytes - 1] & 0x80) != 0) {
-                    lenBytes++;
-                }
-                byte[] fragmentLen = new byte[lenBytes];
-                System.arraycopy(payload, currentIndex, fragmentLen, 0, lenBytes);
-                LEB128Result result = LEB128.decode(fragmentLen);
+                // read the leb128 length of the OBU fragment
+                LEB128Result result = LEB128.decode(payload, currentIndex);
                 obuFragmentLength = result.value;
-                //logger.trace("Index: {} new index: {}", currentIndex, (currentIndex + result[1]));
                 currentIndex += result.bytesRead;
             }
+            if (obuFragmentLength < 0 || obuFragmentLength > end - currentIndex) {
+                throw new Exception("Short packet");
+            }
+            ByteBuffer obuFragment = payload.slice(currentIndex, obuFragmentLength);
             // The Z bit (firstPacketInFrame == startsWithFragment) signals that the FIRST OBU element of this
             // payload is a continuation of the last OBU element of the previous packet: its leading bytes are
             // raw OBU payload data, NOT an OBU header, so they must be appended to the prior element rather
@@ -173,39 +192,32 @@ public class AV1Packetizer {
             // OBUType.fromValue(...) == null, which silently mis-framed (and dropped) continuation fragments
             // whose first data byte happened to encode a valid OBU type.
             if (obuIndex == 1 && firstPacketInFrame && !OBUElements.isEmpty()) {
-                byte[] lastFragment = OBUElements.removeLast();
-                byte[] newLastFragment = new byte[lastFragment.length + obuFragmentLength];
-                System.arraycopy(lastFragment, 0, newLastFragment, 0, lastFragment.length);
-                System.arraycopy(payload, currentIndex, newLastFragment, lastFragment.length, obuFragmentLength);
-                OBUElements.add(newLastFragment);
+                OBUElement lastElement = OBUElements.getLast();
+                lastElement.append(obuFragment);
                 if (isDebug) {
-                    OBUType continued = OBUType.fromValue((newLastFragment[0] & OBU_FRAME_TYPE_MASK) >>> OBU_FRAME_TYPE_BITSHIFT);
-                    logger.debug("Appended {}-byte continuation fragment to OBU type: {}", obuFragmentLength, continued);
+                    logger.debug("Appended {}-byte continuation fragment to OBU type: {}", obuFragmentLength, lastElement.getType());
                 }
-            } else {
-                obuType = OBUType.fromValue((payload[currentIndex] & OBU_FRAME_TYPE_MASK) >>> OBU_FRAME_TYPE_BITSHIFT);
+            } else if (obuFragmentLength > 0) {
+                byte obuHeader = obuFragment.get(0);
+                obuType = OBUType.fromValue((obuHeader & OBU_FRAME_TYPE_MASK) >>> OBU_FRAME_TYPE_BITSHIFT);
                 if (obuType == null) {
                     // not a continuation (per the Z bit) yet the header is unrecognized; skip its bytes to stay
                     // aligned rather than mis-append the data or NPE in the valid-OBU check below
-                    logger.warn("Unrecognized OBU header 0x{} at index {}; skipping {} bytes", Integer.toHexString(payload[currentIndex] & 0xFF), currentIndex, obuFragmentLength);
+                    logger.warn("Unrecognized OBU header 0x{} at index {}; skipping {} bytes", Integer.toHexString(obuHeader & 0xFF), currentIndex, obuFragmentLength);
                 } else {
                     if (isTrace) {
-                        boolean obuExtensionFlag = OBUParser.obuHasExtension(payload[currentIndex]);
-                        boolean obuHasSizeField = OBUParser.obuHasSize(payload[currentIndex]);
+                        boolean obuExtensionFlag = OBUParser.obuHasExtension(obuHeader);
+                        boolean obuHasSizeField = OBUParser.obuHasSize(obuHeader);
                         logger.trace("OBU type: {} extension? {} size field? {}, length: {}", obuType, obuExtensionFlag, obuHasSizeField, obuFragmentLength);
                     }
-                    //if (payload.length < (currentIndex + obuElementLength)) {
-                    //    throw new Exception("Short packet");
-                    //}
-                    byte[] obuFragment = new byte[obuFragmentLength];
-                    System.arraycopy(payload, currentIndex, obuFragment, 0, obuFragmentLength);
                     // if we have a sequence header, store it
                     if (obuType == OBUType.SEQUENCE_HEADER) {
-                        sequenceHeader = Arrays.clone(obuFragment);
+                        sequenceHeader = new byte[obuFragmentLength];
+                        obuFragment.get(0, sequenceHeader);
                     }
                     // we don't store temporal delimiter, tile list, or padding
                     if (OBUParser.isValidObu(obuType)) {
-                        OBUElements.add(obuFragment);
+                        OBUElements.add(new OBUElement(obuFragment));
                     } else {
                         logger.debug("Skip OBU type for RTP: {}", obuType);
                     }
@@ -214,7 +226,7 @@ public class AV1Packetizer {
             currentIndex += obuFragmentLength;
         }
         if (isTrace) {
-            logger.trace("OBU read completely? {}", (currentIndex == payload.length));
+            logger.trace("OBU read completely? {}", (currentIndex == end));
         }
         return OBUElements.size();
     }
@@ -318,6 +330,54 @@ public class AV1Packetizer {
         return payloads;
     }
 
+    /**
+     * Packetizes a list of AV1 OBU elements directly into RTP payload buffers supplied by the caller, for example from a pool. Each
+     * OBU element's data is copied once, straight from its buffer into the payload; no intermediate arrays are created. Supplied buffers
+     * must have at least <code>mtu</code> bytes remaining; each is handed to the consumer flipped, holding exactly one payload.
+     *
+     * @param obuInfos OBU elements to send; the data of each is read from its position to its limit without being consumed
+     * @param mtu maximum RTP payload size
+     * @param bufferSupplier source of empty payload buffers
+     * @param consumer receives each filled payload buffer in order
+     * @return number of payloads produced
+     */
+    public int packetize(List<OBUInfo> obuInfos, int mtu, Supplier<ByteBuffer> bufferSupplier, Consumer<ByteBuffer> consumer) {
+        int aggregationHeaderLength = 1;
+        int maxFragmentSize = mtu - aggregationHeaderLength - 2;
+        if (maxFragmentSize <= 0) {
+            throw new IllegalArgumentException("MTU too small for an AV1 payload: " + mtu);
+        }
+        int payloadCount = 0;
+        for (OBUInfo obuInfo : obuInfos) {
+            ByteBuffer data = obuInfo.data.duplicate();
+            int dataLimit = data.limit();
+            boolean continuation = false;
+            while (data.hasRemaining()) {
+                int currentFragmentSize = Math.min(maxFragmentSize, data.remaining());
+                ByteBuffer out = bufferSupplier.get();
+                int outStart = out.position();
+                byte header = 0;
+                if (continuation) {
+                    header |= Z_MASK;
+                }
+                if (data.remaining() > currentFragmentSize) {
+                    header |= Y_MASK;
+                }
+                out.put(header);
+                LEB128.encode(currentFragmentSize, out);
+                data.limit(data.position() + currentFragmentSize);
+                out.put(data);
+                data.limit(dataLimit);
+                out.limit(out.position());
+                out.position(outStart);
+                consumer.accept(out);
+                payloadCount++;
+                continuation = true;
+            }
+        }
+        return payloadCount;
+    }
+
     /**
      * Resets the packetizer.
      */
@@ -333,12 +393,36 @@ public class AV1Packetizer {
     }
 
     /**
-     * <p>getOBUElements.</p>
+     * Returns the depacketized OBU elements as arrays; each element is copied out of the payloads it was read from.
      *
-     * @return a {@link java.util.List} object
+     * @return a {@link java.util.List} object, or null if nothing has been depacketized
      */
     public List<byte[]> getOBUElements() {
-        return OBUElements;
+        if (OBUElements == null) {
+            return null;
+        }
+        List<byte[]> elements = new ArrayList<>(OBUElements.size());
+        for (OBUElement element : OBUElements) {
+            elements.add(element.toArray());
+        }
+        return elements;
+    }
+
+    /**
+     * Returns the depacketized OBU elements as read-only buffers. Elements contained in a single payload are returned as slices of that
+     * payload; fragmented elements are gathered into one buffer the first time they are requested.
+     *
+     * @return a {@link java.util.List} object, or null if nothing has been depacketized
+     */
+    public List<ByteBuffer> getOBUElementBuffers() {
+        if (OBUElements == null) {
+            return null;
+        }
+        List<ByteBuffer> elements = new ArrayList<>(OBUElements.size());
+        for (OBUElement element : OBUElements) {
+            elements.add(element.asBuffer());
+        }
+        return elements;
     }
 
     /**
@@ -401,4 +485,62 @@ public class AV1Packetizer {
         return "AV1Packetizer [OBUElements=" + OBUElements + "]";
     }
 
+    /**
+     * OBU element assembled from one or more payload slices. Continuation fragments are chained and only gathered into a single buffer
+     * when the element is read, keeping reassembly linear in the element size.
+     */
+    private static final class OBUElement {
+
+        private final List<ByteBuffer> parts = new ArrayList<>(2);
+
+        private int length;
+
+        private ByteBuffer gathered;
+
+        OBUElement(ByteBuffer first) {
+            append(first);
+        }
+
+        void append(ByteBuffer part) {
+            parts.add(part);
+            length += part.remaining();
+            gathered = null;
+        }
+
+        OBUType getType() {
+            return OBUType.fromValue((parts.get(0).get(0) & OBU_FRAME_TYPE_MASK) >>> OBU_FRAME_TYPE_BITSHIFT);
+        }
+
+        ByteBuffer asBuffer() {
+            if (parts.size() == 1) {
+                return parts.get(0).asReadOnlyBuffer();
+            }
+            if (gathered == null) {
+                ByteBuffer buf = ByteBuffer.allocate(length);
+                for (ByteBuffer part : parts) {
+                    buf.put(part.duplicate());
+                }
+                gathered = buf.flip();
+            }
+            return gathered.asReadOnlyBuffer();
+        }
+
+        byte[] toArray() {
+            byte[] out = new byte[length];
+            int offset = 0;
+            for (ByteBuffer part : parts) {
+                int len = part.remaining();
+                part.get(part.position(), out, offset, len);
+                offset += len;
+            }
+            return out;
+        }
+
+        @Override
+        public String toString() {
+            return "OBUElement [type=" + getType() + ", length=" + length + ", parts=" + parts.size() + "]";
+        }
+
+    }
+
 }
@@ -24,7 +24,9 @@ import org.red5.io.sctp.packet.chunks.Init;
  * <p>Association class.</p>
  *
  * @author mondain
+ * @deprecated blocking single association implementation; use {@link SctpTransport}
  */
+@Deprecated
 public class Association implements IAssociationControl {
 
     @SuppressWarnings("unused")
@@ -0,0 +1,81 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of equally sized direct buffers holding chunk payloads, from the sending thread until acknowledged and from arrival until delivered.
+ * Buffers are taken on any thread and returned on the loop thread.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class ByteBufferPool {
+
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger retained = new AtomicInteger();
+
+    private final int bufferSize;
+
+    private final int maxRetained;
+
+    /**
+     * Creates a pool.
+     *
+     * @param bufferSize
+     *            capacity of each buffer
+     * @param maxRetained
+     *            buffers kept for reuse, the rest is left to the collector
+     */
+    ByteBufferPool(int bufferSize, int maxRetained) {
+        this.bufferSize = bufferSize;
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Takes a cleared buffer from the pool.
+     *
+     * @return buffer
+     */
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSize);
+        }
+        retained.decrementAndGet();
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buffer
+     *            buffer from {@link #acquire()}
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() != bufferSize) {
+            // oversized one-off from a peer with a larger path MTU
+            return;
+        }
+        if (retained.incrementAndGet() <= maxRetained) {
+            buffer.clear();
+            buffers.offer(buffer);
+        } else {
+            retained.decrementAndGet();
+        }
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+}
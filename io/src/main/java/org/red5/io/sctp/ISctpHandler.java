@@ -0,0 +1,52 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the events of the associations of an {@link SctpEndpoint}. All methods are called on the loop thread of the transport and must
+ * not block.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public interface ISctpHandler {
+
+    /**
+     * Called when an association is established, for accepted and connected ones alike.
+     *
+     * @param association
+     *            association
+     */
+    default void associationEstablished(SctpAssociation association) {
+    }
+
+    /**
+     * Called for each complete user message, in the order it was sent.
+     *
+     * @param association
+     *            association
+     * @param streamId
+     *            stream identifier
+     * @param ppid
+     *            payload protocol identifier
+     * @param message
+     *            message between position and limit; it is a view of the receive buffer, valid only until this method returns
+     */
+    void messageReceived(SctpAssociation association, int streamId, int ppid, ByteBuffer message);
+
+    /**
+     * Called once when an association is aborted, shut down by the peer or fails.
+     *
+     * @param association
+     *            association
+     */
+    default void associationClosed(SctpAssociation association) {
+    }
+
+}
@@ -0,0 +1,1178 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.io.sctp.IAssociationControl.State;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An SCTP association on an {@link SctpEndpoint}. Apart from {@link #send(int, int, ByteBuffer, boolean)}, {@link #close()} and the
+ * getters, everything runs on the loop thread of the transport.
+ * <p>
+ * DATA and SACK chunks are read where they lie in the receive buffer. Outgoing messages are copied once, on the sending thread, into
+ * pooled buffers sized to fit a packet and stay there until acknowledged; a chunk arriving in order is delivered straight from the receive
+ * buffer and only chunks arriving ahead of a gap, or fragments of a larger message, are copied. Congestion control, fast retransmit and the
+ * retransmission timer follow RFC 4960 sections 6.3 and 7. An association which sends no data for the heartbeat interval probes its peer with
+ * HEARTBEAT chunks, as in section 8.3; heartbeats going unanswered and retransmission timeouts count as path errors, and the association is
+ * aborted once there are more than the path allows, as its only path has failed.
+ * <p>
+ * Messages are delivered in TSN order across all streams, so a lost chunk delays the other streams until it is recovered; unordered
+ * delivery is not taken ahead of earlier chunks either.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class SctpAssociation {
+
+    private static final Logger log = LoggerFactory.getLogger(SctpAssociation.class);
+
+    static final int FLAG_END = 0x01, FLAG_BEGIN = 0x02, FLAG_UNORDERED = 0x04;
+
+    // chunk header, tsn, stream, ssn and ppid
+    static final int DATA_HEADER = 16;
+
+    private static final int RING_SIZE = 4096;
+
+    private static final int RING_MASK = RING_SIZE - 1;
+
+    private static final int MAX_GAP_BLOCKS = 64;
+
+    private static final int MAX_DUPLICATES = 16;
+
+    private static final int MAX_INIT_RETRANSMITS = 8;
+
+    private static final int MAX_RETRANSMITS = 10;
+
+    private static final int MAX_PATH_RETRANSMITS = 5;
+
+    // heartbeat info parameter: type, length, nonce and the send time
+    private static final int HEARTBEAT_INFO = 16;
+
+    // cause code of an ERROR for a DATA chunk on a stream which was not negotiated
+    private static final int INVALID_STREAM = 1;
+
+    // missing reports which trigger a fast retransmit
+    private static final int FAST_RETRANSMIT_THRESHOLD = 3;
+
+    private final SctpEndpoint endpoint;
+
+    private final SctpTransport transport;
+
+    private final ByteBufferPool pool;
+
+    private final InetSocketAddress remote;
+
+    private final int localPort;
+
+    private final int peerPort;
+
+    private final int localTag;
+
+    private final int mtu;
+
+    private final int maxPayload;
+
+    private int peerTag;
+
+    private volatile State state = State.CLOSED;
+
+    private CompletableFuture<SctpAssociation> connectFuture;
+
+    private byte[] cookie;
+
+    private int initRetransmits;
+
+    // streams and limits, set before the state turns established
+    private int outboundStreams;
+
+    private int inboundStreams;
+
+    private int[] nextSsn;
+
+    // sending side: messages from any thread are queued here and numbered on the loop
+    private final Queue<OutChunk[]> outbox = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+
+    private final AtomicLong bufferedAmount = new AtomicLong();
+
+    private final Runnable drainTask = this::drainOutbox;
+
+    private final ArrayDeque<OutChunk> pending = new ArrayDeque<>();
+
+    private final OutChunk[] sent = new OutChunk[RING_SIZE];
+
+    private int nextTsn;
+
+    private int cumulativeAck;
+
+    private int flightSize;
+
+    private int cwnd;
+
+    private int ssthresh;
+
+    private int partialBytesAcked;
+
+    private long peerWindow;
+
+    private int retransmitCount;
+
+    private boolean fastRecovery;
+
+    private int fastRecoveryExit;
+
+    private boolean fastRetransmitPending;
+
+    private double srtt, rttvar;
+
+    private int rto;
+
+    private int errorCount;
+
+    private int pathErrors;
+
+    private boolean heartbeatOutstanding;
+
+    private int heartbeatNonce;
+
+    // when data was last sent, for the heartbeat idle timer
+    private long lastSent;
+
+    // receiving side
+    private final InChunk[] received = new InChunk[RING_SIZE];
+
+    private int cumulativeTsn;
+
+    private int highestTsn;
+
+    private int heldBytes;
+
+    private final int[] duplicates = new int[MAX_DUPLICATES];
+
+    private int duplicateCount;
+
+    private boolean sackNeeded;
+
+    private int packetsSinceSack;
+
+    private ByteBuffer reassembly;
+
+    private boolean reassembling;
+
+    // set by the transport while queued for a flush
+    boolean dirty;
+
+    private final TimerWheel.Timer t3 = new TimerWheel.Timer() {
+        @Override
+        void expire() {
+            onRetransmissionTimeout();
+        }
+    };
+
+    private final TimerWheel.Timer t1 = new TimerWheel.Timer() {
+        @Override
+        void expire() {
+            onInitTimeout();
+        }
+    };
+
+    private final TimerWheel.Timer heartbeatTimer = new TimerWheel.Timer() {
+        @Override
+        void expire() {
+            onHeartbeatTimeout();
+        }
+    };
+
+    private final TimerWheel.Timer sackTimer = new TimerWheel.Timer() {
+        @Override
+        void expire() {
+            sackNeeded = true;
+            transport.markDirty(SctpAssociation.this);
+        }
+    };
+
+    private long messagesSent, messagesReceived, bytesSent, bytesReceived, retransmissions, fastRetransmits, timeouts, heartbeats, invalidStreamChunks;
+
+    SctpAssociation(SctpEndpoint endpoint, InetSocketAddress remote, int peerPort, int localTag) {
+        this.endpoint = endpoint;
+        this.transport = endpoint.getTransport();
+        this.pool = transport.getPool();
+        this.remote = remote;
+        this.localPort = endpoint.getPort();
+        this.peerPort = peerPort;
+        this.localTag = localTag;
+        this.mtu = transport.getMtu();
+        this.maxPayload = mtu - SctpTransport.COMMON_HEADER - DATA_HEADER;
+        this.rto = transport.getRtoInitial();
+    }
+
+    /**
+     * Queues a message. The bytes between position and limit are copied before returning and the buffer is left unchanged.
+     *
+     * @param streamId
+     *            outbound stream
+     * @param ppid
+     *            payload protocol identifier
+     * @param message
+     *            message
+     * @param unordered
+     *            whether the message may be delivered out of stream order
+     * @return false if the association is not established or its send queue is full
+     */
+    public boolean send(int streamId, int ppid, ByteBuffer message, boolean unordered) {
+        if (state != State.ESTABLISHED) {
+            return false;
+        }
+        int length = message.remaining();
+        if (streamId < 0 || streamId >= outboundStreams) {
+            throw new IllegalArgumentException("Invalid stream " + streamId);
+        }
+        if (length == 0 || length > transport.getMaxMessageSize()) {
+            throw new IllegalArgumentException("Invalid message length " + length);
+        }
+        if (bufferedAmount.addAndGet(length) > transport.getMaxBufferedAmount()) {
+            bufferedAmount.addAndGet(-length);
+            return false;
+        }
+        int count = (length + maxPayload - 1) / maxPayload;
+        OutChunk[] chunks = new OutChunk[count];
+        int position = message.position();
+        for (int i = 0; i < count; i++) {
+            int size = Math.min(maxPayload, length - i * maxPayload);
+            ByteBuffer data = pool.acquire();
+            data.put(0, message, position + i * maxPayload, size);
+            int flags = (i == 0 ? FLAG_BEGIN : 0) | (i == count - 1 ? FLAG_END : 0) | (unordered ? FLAG_UNORDERED : 0);
+            chunks[i] = new OutChunk(data, size, streamId, ppid, flags);
+        }
+        outbox.add(chunks);
+        if (drainScheduled.compareAndSet(false, true)) {
+            transport.execute(drainTask);
+        }
+        return true;
+    }
+
+    /**
+     * Aborts the association.
+     */
+    public void close() {
+        transport.execute(() -> abort("Closed"));
+    }
+
+    private void drainOutbox() {
+        drainScheduled.set(false);
+        OutChunk[] chunks;
+        while ((chunks = outbox.poll()) != null) {
+            if (state != State.ESTABLISHED) {
+                for (OutChunk chunk : chunks) {
+                    release(chunk);
+                }
+                continue;
+            }
+            OutChunk first = chunks[0];
+            int ssn = 0;
+            if ((first.flags & FLAG_UNORDERED) == 0) {
+                ssn = nextSsn[first.streamId];
+                nextSsn[first.streamId] = (ssn + 1) & 0xffff;
+            }
+            for (OutChunk chunk : chunks) {
+                chunk.ssn = ssn;
+                pending.add(chunk);
+            }
+            messagesSent++;
+        }
+        transport.markDirty(this);
+    }
+
+    void connect(CompletableFuture<SctpAssociation> future) {
+        connectFuture = future;
+        nextTsn = transport.nextInt();
+        cumulativeAck = nextTsn - 1;
+        state = State.COOKIE_WAIT;
+        sendInit();
+        transport.getWheel().schedule(t1, rto);
+    }
+
+    void accept(int peerTag, int localTsn, int peerTsn, int peerWindow, int peerOutbound, int peerInbound) {
+        nextTsn = localTsn;
+        cumulativeAck = localTsn - 1;
+        setup(peerTag, peerTsn, peerWindow, peerOutbound, peerInbound);
+    }
+
+    private void setup(int peerTag, int peerTsn, int peerWindow, int peerOutbound, int peerInbound) {
+        this.peerTag = peerTag;
+        cumulativeTsn = peerTsn - 1;
+        highestTsn = cumulativeTsn;
+        outboundStreams = Math.min(transport.getStreams(), peerInbound);
+        inboundStreams = Math.min(transport.getStreams(), peerOutbound);
+        nextSsn = new int[outboundStreams];
+        this.peerWindow = peerWindow & 0xffffffffL;
+        cwnd = Math.min(4 * mtu, Math.max(2 * mtu, 4380));
+        ssthresh = (int) Math.min(Integer.MAX_VALUE, this.peerWindow);
+    }
+
+    void established() {
+        transport.getWheel().cancel(t1);
+        cookie = null;
+        rto = transport.getRtoInitial();
+        state = State.ESTABLISHED;
+        lastSent = System.nanoTime();
+        scheduleHeartbeat();
+        log.debug("Association established with {}", remote);
+        if (connectFuture != null) {
+            connectFuture.complete(this);
+        }
+        try {
+            endpoint.getHandler().associationEstablished(this);
+        } catch (Exception e) {
+            log.warn("Exception in handler", e);
+        }
+    }
+
+    private void sendInit() {
+        ByteBuffer packet = transport.beginPacket(localPort, peerPort, 0);
+        packet.put((byte) SctpTransport.INIT).put((byte) 0).putShort((short) 20);
+        packet.putInt(localTag).putInt(transport.getReceiveWindow()).putShort((short) transport.getStreams()).putShort((short) transport.getStreams()).putInt(nextTsn);
+        transport.sendPacket(endpoint, remote);
+    }
+
+    private void sendCookieEcho() {
+        ByteBuffer packet = transport.beginPacket(localPort, peerPort, peerTag);
+        packet.put((byte) SctpTransport.COOKIE_ECHO).put((byte) 0).putShort((short) (4 + cookie.length)).put(cookie);
+        pad(packet);
+        transport.sendPacket(endpoint, remote);
+    }
+
+    private void onInitTimeout() {
+        if (++initRetransmits > MAX_INIT_RETRANSMITS) {
+            abort("Handshake timed out");
+            return;
+        }
+        rto = Math.min(rto * 2, transport.getRtoMax());
+        if (state == State.COOKIE_WAIT) {
+            sendInit();
+        } else if (state == State.COOKIE_ECHOED) {
+            sendCookieEcho();
+        } else {
+            return;
+        }
+        transport.getWheel().schedule(t1, rto);
+    }
+
+    /**
+     * Processes the chunks of a packet in the receive buffer.
+     */
+    void onPacket(ByteBuffer buf, int tag, int length) {
+        int offset = SctpTransport.COMMON_HEADER;
+        int type = buf.get(offset) & 0xff;
+        if (tag != localTag) {
+            // ABORT and SHUTDOWN COMPLETE may carry the tag of the peer with the T bit set
+            boolean reflected = (type == SctpTransport.ABORT || type == SctpTransport.SHUTDOWN_COMPLETE) && (buf.get(offset + 1) & 1) != 0 && tag == peerTag;
+            if (!reflected) {
+                return;
+            }
+        }
+        boolean data = false;
+        while (offset + 4 <= length && state != State.CLOSED) {
+            type = buf.get(offset) & 0xff;
+            int flags = buf.get(offset + 1) & 0xff;
+            int chunkLength = buf.getShort(offset + 2) & 0xffff;
+            if (chunkLength < 4 || offset + chunkLength > length) {
+                break;
+            }
+            if (type == SctpTransport.DATA) {
+                if (state == State.ESTABLISHED) {
+                    onData(buf, offset, chunkLength, flags);
+                    data = true;
+                }
+            } else if (type == SctpTransport.SACK) {
+                if (state == State.ESTABLISHED) {
+                    onSack(buf, offset, chunkLength);
+                }
+            } else if (type == SctpTransport.INIT_ACK) {
+                onInitAck(buf, offset, chunkLength);
+            } else if (type == SctpTransport.COOKIE_ACK) {
+                if (state == State.COOKIE_ECHOED) {
+                    established();
+                }
+            } else if (type == SctpTransport.HEARTBEAT) {
+                onHeartbeat(buf, offset, chunkLength);
+            } else if (type == SctpTransport.HEARTBEAT_ACK) {
+                if (state == State.ESTABLISHED) {
+                    onHeartbeatAck(buf, offset, chunkLength);
+                }
+            } else if (type == SctpTransport.ABORT) {
+                terminate("Aborted by peer");
+            } else if (type == SctpTransport.SHUTDOWN) {
+                sendControl(SctpTransport.SHUTDOWN_ACK, peerTag, 0);
+                terminate("Shut down by peer");
+            } else if (type == SctpTransport.SHUTDOWN_ACK) {
+                sendControl(SctpTransport.SHUTDOWN_COMPLETE, peerTag, 0);
+                terminate("Shut down");
+            } else if (type == SctpTransport.SHUTDOWN_COMPLETE) {
+                terminate("Shut down");
+            } else if (type == SctpTransport.ERROR) {
+                log.debug("Operation error from {}", remote);
+            } else if (type != SctpTransport.COOKIE_ECHO && (type & 0x80) == 0) {
+                // unrecognized chunk types with the high bit clear stop processing of the packet
+                break;
+            }
+            offset += (chunkLength + 3) & ~3;
+        }
+        if (data) {
+            if (++packetsSinceSack >= 2) {
+                sackNeeded = true;
+            }
+            if (sackNeeded) {
+                transport.markDirty(this);
+            } else if (!sackTimer.isScheduled()) {
+                transport.getWheel().schedule(sackTimer, transport.getSackDelay());
+            }
+        }
+    }
+
+    private void onInitAck(ByteBuffer buf, int offset, int chunkLength) {
+        if (state != State.COOKIE_WAIT || chunkLength < 20) {
+            return;
+        }
+        int tag = buf.getInt(offset + 4);
+        int window = buf.getInt(offset + 8);
+        int outbound = buf.getShort(offset + 12) & 0xffff;
+        int inbound = buf.getShort(offset + 14) & 0xffff;
+        int tsn = buf.getInt(offset + 16);
+        int position = offset + 20;
+        int end = offset + chunkLength;
+        while (position + 4 <= end) {
+            int paramType = buf.getShort(position) & 0xffff;
+            int paramLength = buf.getShort(position + 2) & 0xffff;
+            if (paramLength < 4 || position + paramLength > end) {
+                break;
+            }
+            if (paramType == 7) {
+                cookie = new byte[paramLength - 4];
+                buf.get(position + 4, cookie);
+            }
+            position += (paramLength + 3) & ~3;
+        }
+        if (cookie == null || tag == 0 || outbound == 0 || inbound == 0) {
+            abort("Invalid INIT ACK");
+            return;
+        }
+        setup(tag, tsn, window, outbound, inbound);
+        state = State.COOKIE_ECHOED;
+        initRetransmits = 0;
+        sendCookieEcho();
+        transport.getWheel().schedule(t1, rto);
+    }
+
+    private void onHeartbeat(ByteBuffer buf, int offset, int chunkLength) {
+        ByteBuffer packet = transport.beginPacket(localPort, peerPort, peerTag);
+        if (chunkLength > packet.remaining()) {
+            return;
+        }
+        packet.put((byte) SctpTransport.HEARTBEAT_ACK).put((byte) 0).putShort((short) chunkLength);
+        packet.put(packet.position(), buf, offset + 4, chunkLength - 4);
+        packet.position(packet.position() + chunkLength - 4);
+        pad(packet);
+        transport.sendPacket(endpoint, remote);
+    }
+
+    private void scheduleHeartbeat() {
+        int interval = transport.getHeartbeatInterval();
+        if (interval > 0) {
+            // the interval plus the RTO, jittered by half of it either way
+            transport.getWheel().schedule(heartbeatTimer, interval + rto / 2 + ThreadLocalRandom.current().nextInt(rto + 1));
+        }
+    }
+
+    private void onHeartbeatTimeout() {
+        int interval = transport.getHeartbeatInterval();
+        if (state != State.ESTABLISHED || interval <= 0) {
+            return;
+        }
+        if (heartbeatOutstanding) {
+            // the last one went unanswered
+            errorCount++;
+            rto = Math.min(rto * 2, transport.getRtoMax());
+            if (++pathErrors > MAX_PATH_RETRANSMITS || errorCount > MAX_RETRANSMITS) {
+                abort("Peer unreachable");
+                return;
+            }
+        } else if (flightSize > 0) {
+            // the retransmission timer watches the path while data is in flight
+            scheduleHeartbeat();
+            return;
+        } else {
+            long idle = (System.nanoTime() - lastSent) / 1_000_000L;
+            if (idle < interval) {
+                transport.getWheel().schedule(heartbeatTimer, interval - idle);
+                return;
+            }
+        }
+        heartbeatNonce = transport.nextInt();
+        heartbeatOutstanding = true;
+        heartbeats++;
+        ByteBuffer packet = transport.beginPacket(localPort, peerPort, peerTag);
+        packet.put((byte) SctpTransport.HEARTBEAT).put((byte) 0).putShort((short) (4 + HEARTBEAT_INFO));
+        packet.putShort((short) 1).putShort((short) HEARTBEAT_INFO).putInt(heartbeatNonce).putLong(System.nanoTime());
+        transport.sendPacket(endpoint, remote);
+        scheduleHeartbeat();
+    }
+
+    private void onHeartbeatAck(ByteBuffer buf, int offset, int chunkLength) {
+        if (chunkLength < 4 + HEARTBEAT_INFO || !heartbeatOutstanding || buf.getInt(offset + 8) != heartbeatNonce) {
+            return;
+        }
+        heartbeatOutstanding = false;
+        errorCount = 0;
+        pathErrors = 0;
+        updateRto((System.nanoTime() - buf.getLong(offset + 12)) / 1_000_000d);
+    }
+
+    private void sendInvalidStream(int streamId) {
+        ByteBuffer packet = transport.beginPacket(localPort, peerPort, peerTag);
+        packet.put((byte) SctpTransport.ERROR).put((byte) 0).putShort((short) 12);
+        packet.putShort((short) INVALID_STREAM).putShort((short) 8).putShort((short) streamId).putShort((short) 0);
+        transport.sendPacket(endpoint, remote);
+    }
+
+    private void onData(ByteBuffer buf, int offset, int chunkLength, int flags) {
+        int length = chunkLength - DATA_HEADER;
+        if (length <= 0) {
+            return;
+        }
+        int tsn = buf.getInt(offset + 4);
+        int streamId = buf.getShort(offset + 8) & 0xffff;
+        int ppid = buf.getInt(offset + 12);
+        if (tsn - cumulativeTsn <= 0 || isHeld(tsn)) {
+            if (duplicateCount < MAX_DUPLICATES) {
+                duplicates[duplicateCount++] = tsn;
+            }
+            sackNeeded = true;
+            return;
+        }
+        if (tsn - cumulativeTsn >= RING_SIZE) {
+            sackNeeded = true;
+            return;
+        }
+        if (streamId >= inboundStreams) {
+            // acknowledged as usual, but reported and discarded instead of delivered (RFC 4960 section 6.5)
+            invalidStreamChunks++;
+            sendInvalidStream(streamId);
+        }
+        int payload = offset + DATA_HEADER;
+        if (tsn == cumulativeTsn + 1) {
+            bytesReceived += length;
+            cumulativeTsn = tsn;
+            deliver(transport.receiveView(payload, length), streamId, ppid, flags);
+            InChunk chunk;
+            while ((chunk = held(cumulativeTsn + 1)) != null) {
+                cumulativeTsn++;
+                heldBytes -= chunk.length;
+                chunk.data.limit(chunk.length);
+                deliver(chunk.data, chunk.streamId, chunk.ppid, chunk.flags);
+                release(chunk);
+            }
+            if (highestTsn - cumulativeTsn < 0) {
+                highestTsn = cumulativeTsn;
+            } else {
+                // still a gap
+                sackNeeded |= highestTsn != cumulativeTsn;
+            }
+        } else {
+            if (heldBytes + length > transport.getReceiveWindow()) {
+                // no room, the peer retransmits it
+                return;
+            }
+            bytesReceived += length;
+            InChunk chunk = received[tsn & RING_MASK];
+            if (chunk == null) {
+                chunk = received[tsn & RING_MASK] = new InChunk();
+            }
+            chunk.data = length <= pool.getBufferSize() ? pool.acquire() : ByteBuffer.allocateDirect(length);
+            chunk.data.put(0, buf, payload, length);
+            chunk.tsn = tsn;
+            chunk.length = length;
+            chunk.streamId = streamId;
+            chunk.ppid = ppid;
+            chunk.flags = flags;
+            heldBytes += length;
+            if (tsn - highestTsn > 0) {
+                highestTsn = tsn;
+            }
+            sackNeeded = true;
+        }
+    }
+
+    private boolean isHeld(int tsn) {
+        return held(tsn) != null;
+    }
+
+    private InChunk held(int tsn) {
+        InChunk chunk = received[tsn & RING_MASK];
+        return chunk != null && chunk.data != null && chunk.tsn == tsn ? chunk : null;
+    }
+
+    private void deliver(ByteBuffer payload, int streamId, int ppid, int flags) {
+        if (streamId >= inboundStreams) {
+            return;
+        }
+        boolean begin = (flags & FLAG_BEGIN) != 0;
+        boolean end = (flags & FLAG_END) != 0;
+        if (begin && end) {
+            if (reassembling) {
+                log.debug("Dropping incomplete message from {}", remote);
+                heldBytes -= reassembly.position();
+                reassembly.clear();
+                reassembling = false;
+            }
+            messageReceived(streamId, ppid, payload);
+            return;
+        }
+        if (begin) {
+            reassembling = true;
+            heldBytes -= reassembly != null ? reassembly.position() : 0;
+            if (reassembly == null) {
+                reassembly = ByteBuffer.allocateDirect(Math.max(64 * 1024, payload.remaining()));
+            }
+            reassembly.clear();
+        } else if (!reassembling) {
+            return;
+        }
+        int length = payload.remaining();
+        if (reassembly.remaining() < length) {
+            if (reassembly.position() + length > transport.getMaxMessageSize() + maxPayload) {
+                log.debug("Dropping oversized message from {}", remote);
+                heldBytes -= reassembly.position();
+                reassembly.clear();
+                reassembling = false;
+                return;
+            }
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(reassembly.capacity() * 2, reassembly.position() + length));
+            reassembly.flip();
+            larger.put(reassembly);
+            reassembly = larger;
+        }
+        reassembly.put(payload);
+        heldBytes += length;
+        if (end) {
+            reassembly.flip();
+            heldBytes -= reassembly.limit();
+            reassembling = false;
+            messageReceived(streamId, ppid, reassembly);
+            reassembly.clear();
+        }
+    }
+
+    private void messageReceived(int streamId, int ppid, ByteBuffer message) {
+        messagesReceived++;
+        try {
+            endpoint.getHandler().messageReceived(this, streamId, ppid, message);
+        } catch (Exception e) {
+            log.warn("Exception in handler", e);
+        }
+    }
+
+    private void onSack(ByteBuffer buf, int offset, int chunkLength) {
+        if (chunkLength < 16) {
+            return;
+        }
+        int ack = buf.getInt(offset + 4);
+        long window = buf.getInt(offset + 8) & 0xffffffffL;
+        int gapBlocks = Math.min(buf.getShort(offset + 12) & 0xffff, (chunkLength - 16) / 4);
+        if (ack - cumulativeAck < 0 || ack - nextTsn >= 0) {
+            // stale or acknowledging what was never sent
+            return;
+        }
+        long now = System.nanoTime();
+        int flightBefore = flightSize;
+        int bytesAcked = 0;
+        boolean advanced = ack != cumulativeAck;
+        boolean measured = false;
+        for (int tsn = cumulativeAck + 1; tsn - ack <= 0; tsn++) {
+            OutChunk chunk = sent[tsn & RING_MASK];
+            sent[tsn & RING_MASK] = null;
+            if (chunk == null) {
+                continue;
+            }
+            if (!chunk.gapAcked) {
+                bytesAcked += chunk.length;
+            }
+            if (chunk.inFlight) {
+                flightSize -= chunk.length;
+            }
+            if (chunk.retransmit) {
+                retransmitCount--;
+            }
+            // Karn: only chunks sent once give a sample
+            if (!measured && !chunk.retransmitted) {
+                updateRto((now - chunk.sentTime) / 1_000_000d);
+                measured = true;
+            }
+            release(chunk);
+        }
+        cumulativeAck = ack;
+        int highestGapAcked = ack;
+        for (int i = 0; i < gapBlocks; i++) {
+            int start = buf.getShort(offset + 16 + i * 4) & 0xffff;
+            int end = buf.getShort(offset + 18 + i * 4) & 0xffff;
+            for (int tsn = ack + start; tsn - (ack + end) <= 0 && tsn - nextTsn < 0; tsn++) {
+                OutChunk chunk = sent[tsn & RING_MASK];
+                if (chunk != null && chunk.tsn == tsn && !chunk.gapAcked) {
+                    chunk.gapAcked = true;
+                    bytesAcked += chunk.length;
+                    if (chunk.inFlight) {
+                        flightSize -= chunk.length;
+                        chunk.inFlight = false;
+                    }
+                    if (chunk.retransmit) {
+                        chunk.retransmit = false;
+                        retransmitCount--;
+                    }
+                }
+                if (tsn - highestGapAcked > 0) {
+                    highestGapAcked = tsn;
+                }
+            }
+        }
+        int marked = 0;
+        for (int tsn = ack + 1; tsn - highestGapAcked < 0; tsn++) {
+            OutChunk chunk = sent[tsn & RING_MASK];
+            if (chunk != null && !chunk.gapAcked && !chunk.retransmit && !chunk.fastRetransmitted && ++chunk.missingReports >= FAST_RETRANSMIT_THRESHOLD) {
+                chunk.fastRetransmitted = true;
+                markForRetransmit(chunk);
+                marked++;
+            }
+        }
+        if (marked > 0) {
+            if (!fastRecovery) {
+                fastRecovery = true;
+                fastRecoveryExit = nextTsn - 1;
+                ssthresh = Math.max(cwnd / 2, 4 * mtu);
+                cwnd = ssthresh;
+                partialBytesAcked = 0;
+            }
+            fastRetransmitPending = true;
+            fastRetransmits += marked;
+        }
+        if (fastRecovery && ack - fastRecoveryExit >= 0) {
+            fastRecovery = false;
+        }
+        if (advanced) {
+            errorCount = 0;
+            pathErrors = 0;
+            if (!fastRecovery) {
+                // the window only grows while it is being used
+                boolean full = flightBefore + mtu > cwnd;
+                if (cwnd <= ssthresh) {
+                    if (full) {
+                        cwnd += Math.min(bytesAcked, mtu);
+                    }
+                } else {
+                    partialBytesAcked += bytesAcked;
+                    if (partialBytesAcked >= cwnd && full) {
+                        partialBytesAcked -= cwnd;
+                        cwnd += mtu;
+                    }
+                }
+            }
+        }
+        peerWindow = Math.max(0, window - flightSize);
+        TimerWheel wheel = transport.getWheel();
+        if (cumulativeAck == nextTsn - 1) {
+            wheel.cancel(t3);
+        } else if (advanced) {
+            wheel.schedule(t3, rto);
+        }
+        if (retransmitCount > 0 || !pending.isEmpty()) {
+            transport.markDirty(this);
+        }
+    }
+
+    private void markForRetransmit(OutChunk chunk) {
+        chunk.retransmit = true;
+        retransmitCount++;
+        if (chunk.inFlight) {
+            flightSize -= chunk.length;
+            chunk.inFlight = false;
+        }
+    }
+
+    private void updateRto(double sample) {
+        if (srtt == 0) {
+            srtt = sample;
+            rttvar = sample / 2;
+        } else {
+            rttvar = 0.75 * rttvar + 0.25 * Math.abs(srtt - sample);
+            srtt = 0.875 * srtt + 0.125 * sample;
+        }
+        rto = (int) Math.max(transport.getRtoMin(), Math.min(transport.getRtoMax(), srtt + 4 * rttvar));
+    }
+
+    private void onRetransmissionTimeout() {
+        if (state != State.ESTABLISHED) {
+            return;
+        }
+        timeouts++;
+        errorCount++;
+        if (++pathErrors > MAX_PATH_RETRANSMITS || errorCount > MAX_RETRANSMITS) {
+            abort("Too many retransmissions");
+            return;
+        }
+        ssthresh = Math.max(cwnd / 2, 4 * mtu);
+        cwnd = mtu;
+        partialBytesAcked = 0;
+        fastRecovery = false;
+        rto = Math.min(rto * 2, transport.getRtoMax());
+        for (int tsn = cumulativeAck + 1; tsn - nextTsn < 0; tsn++) {
+            OutChunk chunk = sent[tsn & RING_MASK];
+            if (chunk != null && !chunk.gapAcked && !chunk.retransmit) {
+                markForRetransmit(chunk);
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Sends what the windows allow: a pending SACK, chunks marked for retransmission and then new chunks, bundled into as few packets as
+     * possible.
+     */
+    void flush() {
+        dirty = false;
+        if (state != State.ESTABLISHED) {
+            return;
+        }
+        long now = System.nanoTime();
+        ByteBuffer packet = null;
+        if (sackNeeded) {
+            packet = transport.beginPacket(localPort, peerPort, peerTag);
+            appendSack(packet);
+        }
+        if (retransmitCount > 0) {
+            for (int tsn = cumulativeAck + 1; tsn - nextTsn < 0 && retransmitCount > 0; tsn++) {
+                OutChunk chunk = sent[tsn & RING_MASK];
+                if (chunk == null || !chunk.retransmit) {
+                    continue;
+                }
+                // a fast retransmit goes out regardless of the window
+                if (flightSize >= cwnd && !fastRetransmitPending) {
+                    break;
+                }
+                packet = append(packet, chunk);
+                chunk.retransmit = false;
+                chunk.retransmitted = true;
+                retransmitCount--;
+                retransmissions++;
+            }
+        }
+        while (retransmitCount == 0 && !pending.isEmpty() && flightSize < cwnd) {
+            OutChunk chunk = pending.peek();
+            if (flightSize > 0 && chunk.length > peerWindow) {
+                break;
+            }
+            if (nextTsn - cumulativeAck > RING_SIZE - 1) {
+                break;
+            }
+            pending.poll();
+            chunk.tsn = nextTsn++;
+            sent[chunk.tsn & RING_MASK] = chunk;
+            packet = append(packet, chunk);
+            peerWindow = Math.max(0, peerWindow - chunk.length);
+        }
+        if (packet != null) {
+            send();
+        }
+        if (flightSize > 0 && !t3.isScheduled()) {
+            transport.getWheel().schedule(t3, rto);
+        }
+    }
+
+    private ByteBuffer append(ByteBuffer packet, OutChunk chunk) {
+        int size = DATA_HEADER + ((chunk.length + 3) & ~3);
+        if (packet != null && packet.remaining() < size) {
+            send();
+            packet = null;
+        }
+        if (packet == null) {
+            packet = transport.beginPacket(localPort, peerPort, peerTag);
+        }
+        packet.put((byte) SctpTransport.DATA).put((byte) chunk.flags).putShort((short) (DATA_HEADER + chunk.length));
+        packet.putInt(chunk.tsn).putShort((short) chunk.streamId).putShort((short) chunk.ssn).putInt(chunk.ppid);
+        packet.put(packet.position(), chunk.data, 0, chunk.length);
+        packet.position(packet.position() + chunk.length);
+        pad(packet);
+        chunk.inFlight = true;
+        chunk.missingReports = 0;
+        chunk.sentTime = lastSent = System.nanoTime();
+        flightSize += chunk.length;
+        bytesSent += chunk.length;
+        return packet;
+    }
+
+    private void send() {
+        transport.sendPacket(endpoint, remote);
+        fastRetransmitPending = false;
+    }
+
+    private void appendSack(ByteBuffer packet) {
+        int start = packet.position();
+        packet.put((byte) SctpTransport.SACK).put((byte) 0).putShort((short) 0);
+        packet.putInt(cumulativeTsn).putInt(Math.max(0, transport.getReceiveWindow() - heldBytes)).putInt(0);
+        int blocks = 0;
+        int tsn = cumulativeTsn + 1;
+        while (tsn - highestTsn <= 0 && blocks < MAX_GAP_BLOCKS) {
+            while (tsn - highestTsn <= 0 && !isHeld(tsn)) {
+                tsn++;
+            }
+            if (tsn - highestTsn > 0) {
+                break;
+            }
+            int blockStart = tsn;
+            while (tsn - highestTsn <= 0 && isHeld(tsn)) {
+                tsn++;
+            }
+            packet.putShort((short) (blockStart - cumulativeTsn)).putShort((short) (tsn - 1 - cumulativeTsn));
+            blocks++;
+        }
+        for (int i = 0; i < duplicateCount; i++) {
+            packet.putInt(duplicates[i]);
+        }
+        packet.putShort(start + 2, (short) (packet.position() - start));
+        packet.putShort(start + 12, (short) blocks);
+        packet.putShort(start + 14, (short) duplicateCount);
+        duplicateCount = 0;
+        sackNeeded = false;
+        packetsSinceSack = 0;
+        transport.getWheel().cancel(sackTimer);
+    }
+
+    private void sendControl(int type, int tag, int flags) {
+        transport.beginPacket(localPort, peerPort, tag).put((byte) type).put((byte) flags).putShort((short) 4);
+        transport.sendPacket(endpoint, remote);
+    }
+
+    /**
+     * Sends an ABORT, if the peer knows the association, and closes it.
+     *
+     * @param reason
+     *            logged reason
+     */
+    void abort(String reason) {
+        if (state == State.CLOSED && connectFuture == null) {
+            return;
+        }
+        if (state == State.ESTABLISHED || state == State.COOKIE_ECHOED) {
+            sendControl(SctpTransport.ABORT, peerTag, 0);
+        }
+        terminate(reason);
+    }
+
+    private void terminate(String reason) {
+        boolean wasEstablished = state == State.ESTABLISHED;
+        state = State.CLOSED;
+        log.debug("Association with {} closed: {}", remote, reason);
+        TimerWheel wheel = transport.getWheel();
+        wheel.cancel(t1);
+        wheel.cancel(t3);
+        wheel.cancel(sackTimer);
+        wheel.cancel(heartbeatTimer);
+        endpoint.remove(this);
+        OutChunk chunk;
+        while ((chunk = pending.poll()) != null) {
+            release(chunk);
+        }
+        for (int i = 0; i < RING_SIZE; i++) {
+            if (sent[i] != null) {
+                release(sent[i]);
+                sent[i] = null;
+            }
+            if (received[i] != null && received[i].data != null) {
+                release(received[i]);
+            }
+        }
+        drainOutbox();
+        if (connectFuture != null && !connectFuture.isDone()) {
+            connectFuture.completeExceptionally(new SctpException(reason));
+        }
+        connectFuture = null;
+        if (wasEstablished) {
+            try {
+                endpoint.getHandler().associationClosed(this);
+            } catch (Exception e) {
+                log.warn("Exception in handler", e);
+            }
+        }
+    }
+
+    private void release(OutChunk chunk) {
+        bufferedAmount.addAndGet(-chunk.length);
+        if (chunk.data != null) {
+            pool.release(chunk.data);
+            chunk.data = null;
+        }
+    }
+
+    private void release(InChunk chunk) {
+        pool.release(chunk.data);
+        chunk.data = null;
+    }
+
+    static void pad(ByteBuffer packet) {
+        while ((packet.position() & 3) != 0) {
+            packet.put((byte) 0);
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public InetSocketAddress getRemoteAddress() {
+        return remote;
+    }
+
+    public SctpEndpoint getEndpoint() {
+        return endpoint;
+    }
+
+    int getLocalTag() {
+        return localTag;
+    }
+
+    int getPeerTag() {
+        return peerTag;
+    }
+
+    int getPeerPort() {
+        return peerPort;
+    }
+
+    public int getOutboundStreams() {
+        return outboundStreams;
+    }
+
+    public int getInboundStreams() {
+        return inboundStreams;
+    }
+
+    /**
+     * Returns the bytes queued or in flight and not yet acknowledged.
+     *
+     * @return bytes
+     */
+    public long getBufferedAmount() {
+        return bufferedAmount.get();
+    }
+
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    public long getMessagesReceived() {
+        return messagesReceived;
+    }
+
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Returns the chunks sent again, after a timeout or a fast retransmit.
+     *
+     * @return chunks
+     */
+    public long getRetransmissions() {
+        return retransmissions;
+    }
+
+    public long getFastRetransmits() {
+        return fastRetransmits;
+    }
+
+    public long getTimeouts() {
+        return timeouts;
+    }
+
+    public long getHeartbeats() {
+        return heartbeats;
+    }
+
+    /**
+     * Returns the DATA chunks received on streams which were not negotiated; they are acknowledged and discarded.
+     *
+     * @return chunks
+     */
+    public long getInvalidStreamChunks() {
+        return invalidStreamChunks;
+    }
+
+    public int getCongestionWindow() {
+        return cwnd;
+    }
+
+    public int getRto() {
+        return rto;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "SctpAssociation [remote=" + remote + ", state=" + state + ", cwnd=" + cwnd + ", rto=" + rto + "]";
+    }
+
+    /**
+     * An outgoing chunk, kept from the sending thread until acknowledged.
+     */
+    private static final class OutChunk {
+
+        ByteBuffer data;
+
+        final int length, streamId, ppid, flags;
+
+        int ssn, tsn, missingReports;
+
+        long sentTime;
+
+        boolean inFlight, retransmit, retransmitted, fastRetransmitted, gapAcked;
+
+        OutChunk(ByteBuffer data, int length, int streamId, int ppid, int flags) {
+            this.data = data;
+            this.length = length;
+            this.streamId = streamId;
+            this.ppid = ppid;
+            this.flags = flags;
+        }
+
+    }
+
+    /**
+     * A chunk received ahead of a gap; the slots are reused.
+     */
+    private static final class InChunk {
+
+        ByteBuffer data;
+
+        int tsn, length, streamId, ppid, flags;
+
+    }
+
+}
@@ -19,7 +19,9 @@ import java.util.Random;
  * <p>SctpChannel class.</p>
  *
  * @author mondain
+ * @deprecated blocking single association implementation; use {@link SctpTransport}
  */
+@Deprecated
 public class SctpChannel {
 
     private Association association;
@@ -0,0 +1,283 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Predicate;
+
+import javax.crypto.Mac;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A UDP port of an {@link SctpTransport} carrying any number of associations, one per remote address. Incoming associations are accepted
+ * without keeping state until the peer echoes the signed state cookie of the INIT ACK.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class SctpEndpoint {
+
+    private static final Logger log = LoggerFactory.getLogger(SctpEndpoint.class);
+
+    // fixed part of INIT and INIT ACK after the chunk header: tag, a_rwnd, streams and initial tsn
+    private static final int INIT_LENGTH = 16;
+
+    private static final int STATE_COOKIE_PARAM = 7;
+
+    // created, local tag, peer tag, local tsn, peer tsn, peer a_rwnd, peer streams, peer port
+    private static final int COOKIE_BODY = 34;
+
+    private static final int COOKIE_LENGTH = COOKIE_BODY + 32;
+
+    private final SctpTransport transport;
+
+    private final DatagramChannel channel;
+
+    private final ISctpHandler handler;
+
+    private final int port;
+
+    private final Map<InetSocketAddress, SctpAssociation> associations = new HashMap<>();
+
+    private final byte[] cookie = new byte[COOKIE_LENGTH];
+
+    private final byte[] signature = new byte[32];
+
+    private volatile boolean closed;
+
+    // test hook deciding whether an outgoing packet is sent
+    Predicate<ByteBuffer> sendFilter;
+
+    SctpEndpoint(SctpTransport transport, DatagramChannel channel, ISctpHandler handler) throws IOException {
+        this.transport = transport;
+        this.channel = channel;
+        this.handler = handler;
+        this.port = ((InetSocketAddress) channel.getLocalAddress()).getPort();
+    }
+
+    /**
+     * Initiates an association.
+     *
+     * @param remote
+     *            remote UDP address; its port is used as the SCTP port of the peer
+     * @return future completed once the association is established
+     */
+    public CompletableFuture<SctpAssociation> connect(InetSocketAddress remote) {
+        CompletableFuture<SctpAssociation> future = new CompletableFuture<>();
+        transport.execute(() -> {
+            if (closed) {
+                future.completeExceptionally(new SctpException("Endpoint is closed"));
+            } else if (associations.containsKey(remote)) {
+                future.completeExceptionally(new SctpException("Association to " + remote + " already exists"));
+            } else {
+                SctpAssociation association = new SctpAssociation(this, remote, remote.getPort(), transport.nextTag());
+                associations.put(remote, association);
+                association.connect(future);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Aborts the associations and closes the channel.
+     */
+    public void close() {
+        transport.execute(this::closeNow);
+    }
+
+    void closeNow() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (SctpAssociation association : new ArrayList<>(associations.values())) {
+            association.abort("Endpoint closed");
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close channel", e);
+        }
+        transport.removeEndpoint(this);
+    }
+
+    /**
+     * Answers an INIT with an INIT ACK carrying the parameters of the association in a signed cookie.
+     */
+    void onInit(ByteBuffer buf, int offset, int length, InetSocketAddress from, int sourcePort, int tag) {
+        int chunkLength = buf.getShort(offset + 2) & 0xffff;
+        if (tag != 0 || chunkLength < 4 + INIT_LENGTH || offset + chunkLength > length || closed) {
+            return;
+        }
+        int peerTag = buf.getInt(offset + 4);
+        int peerWindow = buf.getInt(offset + 8);
+        int peerOutbound = buf.getShort(offset + 12) & 0xffff;
+        int peerInbound = buf.getShort(offset + 14) & 0xffff;
+        int peerTsn = buf.getInt(offset + 16);
+        if (peerTag == 0 || peerOutbound == 0 || peerInbound == 0) {
+            return;
+        }
+        int localTag = transport.nextTag();
+        int localTsn = transport.nextInt();
+        ByteBuffer body = ByteBuffer.wrap(cookie);
+        body.putLong(System.currentTimeMillis()).putInt(localTag).putInt(peerTag).putInt(localTsn).putInt(peerTsn).putInt(peerWindow);
+        body.putShort((short) peerOutbound).putShort((short) peerInbound).putShort((short) sourcePort);
+        sign(cookie, signature);
+        body.put(signature);
+        ByteBuffer packet = transport.beginPacket(port, sourcePort, peerTag);
+        packet.put((byte) SctpTransport.INIT_ACK).put((byte) 0).putShort((short) (4 + INIT_LENGTH + 4 + COOKIE_LENGTH));
+        packet.putInt(localTag).putInt(transport.getReceiveWindow()).putShort((short) transport.getStreams()).putShort((short) transport.getStreams()).putInt(localTsn);
+        packet.putShort((short) STATE_COOKIE_PARAM).putShort((short) (4 + COOKIE_LENGTH)).put(cookie);
+        SctpAssociation.pad(packet);
+        transport.sendPacket(this, from);
+    }
+
+    /**
+     * Verifies an echoed cookie and returns the association it establishes, or the existing one if it is a retransmission.
+     */
+    SctpAssociation onCookieEcho(ByteBuffer buf, int offset, int length, InetSocketAddress from, int sourcePort) {
+        SctpAssociation association = associations.get(from);
+        int chunkLength = buf.getShort(offset + 2) & 0xffff;
+        if (chunkLength != 4 + COOKIE_LENGTH || offset + chunkLength > length) {
+            // not one of our cookies; an initiating association gets COOKIE ECHO only from a misbehaving peer
+            return association;
+        }
+        buf.get(offset + 4, cookie);
+        sign(cookie, signature);
+        if (!signatureMatches()) {
+            log.debug("Dropping COOKIE ECHO with a bad signature from {}", from);
+            return association;
+        }
+        ByteBuffer body = ByteBuffer.wrap(cookie);
+        long created = body.getLong();
+        int localTag = body.getInt();
+        int peerTag = body.getInt();
+        int localTsn = body.getInt();
+        int peerTsn = body.getInt();
+        int peerWindow = body.getInt();
+        int peerOutbound = body.getShort() & 0xffff;
+        int peerInbound = body.getShort() & 0xffff;
+        int peerPort = body.getShort() & 0xffff;
+        if (buf.getInt(4) != localTag || peerPort != sourcePort) {
+            return association;
+        }
+        if (System.currentTimeMillis() - created > IAssociationControl.VALID_COOKIE_TIME * 1000L) {
+            log.debug("Dropping stale cookie from {}", from);
+            return association;
+        }
+        if (closed) {
+            return null;
+        }
+        if (association != null) {
+            if (association.getLocalTag() == localTag && association.getPeerTag() == peerTag) {
+                // our COOKIE ACK was lost
+                sendCookieAck(association);
+                return association;
+            }
+            if (association.getLocalTag() == localTag || association.getPeerTag() == peerTag) {
+                // only a restarted peer (RFC 4960 section 5.2.4, case A) replaces a live association
+                log.debug("Dropping COOKIE ECHO matching one tag of the association with {}", from);
+                return association;
+            }
+            association.abort("Peer restarted");
+        }
+        association = new SctpAssociation(this, from, peerPort, localTag);
+        associations.put(from, association);
+        association.accept(peerTag, localTsn, peerTsn, peerWindow, peerOutbound, peerInbound);
+        sendCookieAck(association);
+        association.established();
+        return association;
+    }
+
+    private boolean signatureMatches() {
+        int diff = 0;
+        for (int i = 0; i < signature.length; i++) {
+            diff |= signature[i] ^ cookie[COOKIE_BODY + i];
+        }
+        return diff == 0;
+    }
+
+    private void sendCookieAck(SctpAssociation association) {
+        ByteBuffer packet = transport.beginPacket(port, association.getPeerPort(), association.getPeerTag());
+        packet.put((byte) SctpTransport.COOKIE_ACK).put((byte) 0).putShort((short) 4);
+        transport.sendPacket(this, association.getRemoteAddress());
+    }
+
+    private void sign(byte[] data, byte[] output) {
+        Mac mac = transport.getMac();
+        mac.update(data, 0, COOKIE_BODY);
+        try {
+            mac.doFinal(output, 0);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    boolean accept(ByteBuffer packet) {
+        return sendFilter == null || sendFilter.test(packet);
+    }
+
+    void remove(SctpAssociation association) {
+        associations.remove(association.getRemoteAddress(), association);
+    }
+
+    SctpAssociation getAssociation(InetSocketAddress remote) {
+        return associations.get(remote);
+    }
+
+    SctpTransport getTransport() {
+        return transport;
+    }
+
+    DatagramChannel getChannel() {
+        return channel;
+    }
+
+    ISctpHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Returns the SCTP port, the same as the local UDP port.
+     *
+     * @return port
+     */
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Returns the local address.
+     *
+     * @return address
+     * @throws IOException
+     *             if the channel is closed
+     */
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        return "SctpEndpoint [port=" + port + "]";
+    }
+
+}
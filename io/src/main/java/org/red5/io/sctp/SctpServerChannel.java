@@ -21,7 +21,9 @@ import java.util.Set;
  * <p>Abstract SctpServerChannel class.</p>
  *
  * @author mondain
+ * @deprecated blocking single association implementation; use {@link SctpTransport}
  */
+@Deprecated
 public abstract class SctpServerChannel extends AbstractSelectableChannel {
 
     /**
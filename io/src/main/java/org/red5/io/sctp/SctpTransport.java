@@ -0,0 +1,578 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.zip.CRC32C;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.red5.io.sctp.packet.chunks.ChunkType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SCTP over UDP (RFC 6951) for many associations on a single thread. One selector loop serves the non-blocking {@link DatagramChannel}s of
+ * its endpoints; packets are parsed in place in one direct receive buffer and assembled in one direct send buffer, chunk payloads waiting
+ * for acknowledgement or delivery are kept in pooled direct buffers, and the retransmission, delayed acknowledgement and handshake timers of
+ * every association are driven by a {@link TimerWheel}. Run several transports to use more cores.
+ *
+ * <pre>
+ * SctpTransport transport = new SctpTransport("sctp-0");
+ * transport.start();
+ * SctpEndpoint endpoint = transport.bind(new InetSocketAddress(5000), handler);
+ * SctpAssociation association = endpoint.connect(remote).get();
+ * association.send(0, 51, ByteBuffer.wrap(message), false);
+ * </pre>
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class SctpTransport implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(SctpTransport.class);
+
+    static final int DATA = ChunkType.DATA.getValue();
+
+    static final int INIT = ChunkType.INIT.getValue();
+
+    static final int INIT_ACK = ChunkType.INIT_ACK.getValue();
+
+    static final int SACK = ChunkType.SACK.getValue();
+
+    static final int HEARTBEAT = ChunkType.HEARTBEAT.getValue();
+
+    static final int HEARTBEAT_ACK = ChunkType.HEARTBEAT_ACK.getValue();
+
+    static final int ABORT = ChunkType.ABORT.getValue();
+
+    static final int SHUTDOWN = ChunkType.SHUTDOWN.getValue();
+
+    static final int SHUTDOWN_ACK = ChunkType.SHUTDOWN_ACK.getValue();
+
+    static final int ERROR = ChunkType.ERROR.getValue();
+
+    static final int COOKIE_ECHO = ChunkType.COOKIE_ECHO.getValue();
+
+    static final int COOKIE_ACK = ChunkType.COOKIE_ACK.getValue();
+
+    static final int SHUTDOWN_COMPLETE = ChunkType.SHUTDOWN_COMPLETE.getValue();
+
+    // source port, destination port, verification tag and checksum
+    static final int COMMON_HEADER = 12;
+
+    private static final int MAX_DATAGRAM = 65536;
+
+    // datagrams read from one channel before the others get a turn
+    private static final int READ_BATCH = 64;
+
+    private final String name;
+
+    private final Selector selector;
+
+    private final TimerWheel wheel = new TimerWheel(10, 512);
+
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+
+    // reused view handed to the handler for messages delivered straight from the receive buffer
+    private final ByteBuffer receiveView = receiveBuffer.duplicate();
+
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM);
+
+    private final CRC32C crc = new CRC32C();
+
+    private final Mac mac;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private final ArrayDeque<SctpAssociation> dirty = new ArrayDeque<>();
+
+    private final List<SctpEndpoint> endpoints = new ArrayList<>();
+
+    private final Consumer<SelectionKey> selectAction = this::onSelected;
+
+    private ByteBufferPool pool;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    private int mtu = 1200;
+
+    private int receiveWindow = 1024 * 1024;
+
+    private int streams = 1024;
+
+    private int maxMessageSize = 256 * 1024;
+
+    private long maxBufferedAmount = 4L * 1024 * 1024;
+
+    private int rtoInitial = 1000;
+
+    private int rtoMin = 200;
+
+    private int rtoMax = 60000;
+
+    private int sackDelay = 200;
+
+    private int heartbeatInterval = 30000;
+
+    private int socketBufferSize = 4 * 1024 * 1024;
+
+    private long sendDrops;
+
+    /**
+     * Creates a transport named sctp.
+     *
+     * @throws IOException
+     *             if the selector cannot be opened
+     */
+    public SctpTransport() throws IOException {
+        this("sctp");
+    }
+
+    /**
+     * Creates a transport.
+     *
+     * @param name
+     *            name of the loop thread
+     * @throws IOException
+     *             if the selector cannot be opened
+     */
+    public SctpTransport(String name) throws IOException {
+        this.name = name;
+        selector = Selector.open();
+        try {
+            byte[] key = new byte[32];
+            random.nextBytes(key);
+            mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(key, "HmacSHA256"));
+        } catch (GeneralSecurityException e) {
+            throw new IOException("State cookie signing is not available", e);
+        }
+    }
+
+    /**
+     * Starts the loop thread.
+     */
+    public void start() {
+        if (running) {
+            return;
+        }
+        pool = new ByteBufferPool(mtu, 16384);
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Aborts all associations, closes the endpoints and stops the loop thread.
+     */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        if (thread != null && thread != Thread.currentThread()) {
+            try {
+                thread.join(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Binds an endpoint which accepts associations and can initiate them.
+     *
+     * @param local
+     *            local UDP address
+     * @param handler
+     *            handler for the associations of the endpoint
+     * @return endpoint
+     * @throws IOException
+     *             if the channel cannot be bound
+     */
+    public SctpEndpoint bind(InetSocketAddress local, ISctpHandler handler) throws IOException {
+        if (!running) {
+            throw new IllegalStateException("Transport is not started");
+        }
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, socketBufferSize);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, socketBufferSize);
+            channel.bind(local);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        SctpEndpoint endpoint = new SctpEndpoint(this, channel, handler);
+        execute(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, endpoint);
+                endpoints.add(endpoint);
+            } catch (IOException e) {
+                log.warn("Failed to register {}", endpoint, e);
+            }
+        });
+        return endpoint;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void run() {
+        log.debug("SCTP transport {} started", name);
+        while (running) {
+            try {
+                selector.select(selectAction, wheel.sleepMillis());
+                wakeupPending.set(false);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                wheel.advance(System.nanoTime());
+                SctpAssociation association;
+                while ((association = dirty.poll()) != null) {
+                    association.flush();
+                }
+            } catch (Throwable t) {
+                log.warn("Exception in SCTP transport {}", name, t);
+            }
+        }
+        for (SctpEndpoint endpoint : new ArrayList<>(endpoints)) {
+            endpoint.closeNow();
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Failed to close selector", e);
+        }
+        log.debug("SCTP transport {} stopped", name);
+    }
+
+    private void onSelected(SelectionKey key) {
+        if (key.isValid() && key.isReadable()) {
+            SctpEndpoint endpoint = (SctpEndpoint) key.attachment();
+            DatagramChannel channel = endpoint.getChannel();
+            try {
+                for (int i = 0; i < READ_BATCH; i++) {
+                    receiveBuffer.clear();
+                    SocketAddress from = channel.receive(receiveBuffer);
+                    if (from == null) {
+                        break;
+                    }
+                    receiveBuffer.flip();
+                    onPacket(endpoint, (InetSocketAddress) from);
+                }
+            } catch (IOException e) {
+                log.debug("Receive failed on {}", endpoint, e);
+            }
+        }
+    }
+
+    private void onPacket(SctpEndpoint endpoint, InetSocketAddress from) {
+        ByteBuffer buf = receiveBuffer;
+        int length = buf.limit();
+        if (length < COMMON_HEADER + 4) {
+            return;
+        }
+        int checksum = Integer.reverseBytes(buf.getInt(8));
+        buf.putInt(8, 0);
+        crc.reset();
+        crc.update(buf);
+        buf.position(0);
+        if ((int) crc.getValue() != checksum) {
+            log.debug("Dropping packet with a bad checksum from {}", from);
+            return;
+        }
+        int sourcePort = buf.getShort(0) & 0xffff;
+        int tag = buf.getInt(4);
+        int type = buf.get(COMMON_HEADER) & 0xff;
+        SctpAssociation association;
+        if (type == INIT) {
+            endpoint.onInit(buf, COMMON_HEADER, length, from, sourcePort, tag);
+            return;
+        } else if (type == COOKIE_ECHO) {
+            association = endpoint.onCookieEcho(buf, COMMON_HEADER, length, from, sourcePort);
+        } else {
+            association = endpoint.getAssociation(from);
+        }
+        if (association != null) {
+            association.onPacket(buf, tag, length);
+        } else if (log.isTraceEnabled()) {
+            log.trace("Out of the blue packet from {} type {}", from, type);
+        }
+    }
+
+    /**
+     * Runs a task on the loop thread.
+     *
+     * @param task
+     *            task
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread && wakeupPending.compareAndSet(false, true)) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Queues an association to send on this loop pass.
+     *
+     * @param association
+     *            association with something to send
+     */
+    void markDirty(SctpAssociation association) {
+        if (!association.dirty) {
+            association.dirty = true;
+            dirty.add(association);
+        }
+    }
+
+    /**
+     * Starts a packet in the send buffer.
+     *
+     * @param sourcePort
+     *            local SCTP port
+     * @param destinationPort
+     *            remote SCTP port
+     * @param tag
+     *            verification tag
+     * @return send buffer positioned after the common header and limited to the MTU
+     */
+    ByteBuffer beginPacket(int sourcePort, int destinationPort, int tag) {
+        sendBuffer.clear().limit(mtu);
+        sendBuffer.putShort((short) sourcePort).putShort((short) destinationPort).putInt(tag).putInt(0);
+        return sendBuffer;
+    }
+
+    /**
+     * Checksums and sends the packet in the send buffer.
+     *
+     * @param endpoint
+     *            endpoint to send from
+     * @param remote
+     *            remote address
+     */
+    void sendPacket(SctpEndpoint endpoint, InetSocketAddress remote) {
+        ByteBuffer packet = sendBuffer;
+        packet.flip();
+        crc.reset();
+        crc.update(packet);
+        packet.position(0);
+        // the crc is stored least significant byte first
+        packet.putInt(8, Integer.reverseBytes((int) crc.getValue()));
+        if (!endpoint.accept(packet)) {
+            return;
+        }
+        try {
+            if (endpoint.getChannel().send(packet, remote) == 0) {
+                // socket buffer full, the packet counts as lost and is recovered like any other loss
+                sendDrops++;
+            }
+        } catch (IOException e) {
+            log.debug("Send to {} failed", remote, e);
+        }
+    }
+
+    /**
+     * Returns the view of the receive buffer for a payload in it.
+     *
+     * @param offset
+     *            payload offset
+     * @param length
+     *            payload length
+     * @return view positioned on the payload
+     */
+    ByteBuffer receiveView(int offset, int length) {
+        receiveView.clear().position(offset).limit(offset + length);
+        return receiveView;
+    }
+
+    void removeEndpoint(SctpEndpoint endpoint) {
+        endpoints.remove(endpoint);
+    }
+
+    int nextTag() {
+        int tag;
+        while ((tag = random.nextInt()) == 0) {
+        }
+        return tag;
+    }
+
+    int nextInt() {
+        return random.nextInt();
+    }
+
+    TimerWheel getWheel() {
+        return wheel;
+    }
+
+    ByteBufferPool getPool() {
+        return pool;
+    }
+
+    Mac getMac() {
+        return mac;
+    }
+
+    /**
+     * Returns the number of packets dropped because the socket send buffer was full.
+     *
+     * @return packets
+     */
+    public long getSendDrops() {
+        return sendDrops;
+    }
+
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * Sets the largest SCTP packet sent, before UDP and IP headers; applies to transports not started yet.
+     *
+     * @param mtu
+     *            bytes
+     */
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
+    public int getReceiveWindow() {
+        return receiveWindow;
+    }
+
+    /**
+     * Sets the bytes an association holds for out of order and partial messages; the advertised receiver window.
+     *
+     * @param receiveWindow
+     *            bytes
+     */
+    public void setReceiveWindow(int receiveWindow) {
+        this.receiveWindow = receiveWindow;
+    }
+
+    public int getStreams() {
+        return streams;
+    }
+
+    /**
+     * Sets the number of inbound and outbound streams requested.
+     *
+     * @param streams
+     *            streams
+     */
+    public void setStreams(int streams) {
+        this.streams = streams;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    public void setMaxMessageSize(int maxMessageSize) {
+        this.maxMessageSize = maxMessageSize;
+    }
+
+    public long getMaxBufferedAmount() {
+        return maxBufferedAmount;
+    }
+
+    /**
+     * Sets the bytes an association queues before sends are refused.
+     *
+     * @param maxBufferedAmount
+     *            bytes
+     */
+    public void setMaxBufferedAmount(long maxBufferedAmount) {
+        this.maxBufferedAmount = maxBufferedAmount;
+    }
+
+    public int getRtoInitial() {
+        return rtoInitial;
+    }
+
+    public void setRtoInitial(int rtoInitial) {
+        this.rtoInitial = rtoInitial;
+    }
+
+    public int getRtoMin() {
+        return rtoMin;
+    }
+
+    public void setRtoMin(int rtoMin) {
+        this.rtoMin = rtoMin;
+    }
+
+    public int getRtoMax() {
+        return rtoMax;
+    }
+
+    public void setRtoMax(int rtoMax) {
+        this.rtoMax = rtoMax;
+    }
+
+    public int getSackDelay() {
+        return sackDelay;
+    }
+
+    /**
+     * Sets how long an acknowledgement may be delayed.
+     *
+     * @param sackDelay
+     *            milliseconds
+     */
+    public void setSackDelay(int sackDelay) {
+        this.sackDelay = sackDelay;
+    }
+
+    public int getHeartbeatInterval() {
+        return heartbeatInterval;
+    }
+
+    /**
+     * Sets how long an association may go without sending data before its peer is probed with a HEARTBEAT; zero disables them.
+     *
+     * @param heartbeatInterval
+     *            milliseconds
+     */
+    public void setHeartbeatInterval(int heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
+
+    public void setSocketBufferSize(int socketBufferSize) {
+        this.socketBufferSize = socketBufferSize;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+}
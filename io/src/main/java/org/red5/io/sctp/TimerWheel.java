@@ -0,0 +1,190 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.sctp;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashed timer wheel for the retransmission, acknowledgement and handshake timers of the associations on one {@link SctpTransport} loop.
+ * Timers are intrusive list nodes owned by their association and rescheduled in place, so arming a timer per packet allocates nothing.
+ * Not thread safe; only the loop thread uses it.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class TimerWheel {
+
+    private static final int IDLE = 0, SCHEDULED = 1, EXPIRING = 2;
+
+    private final long tickNanos;
+
+    private final long start = System.nanoTime();
+
+    private final Timer[] slots;
+
+    private final int mask;
+
+    private final ArrayDeque<Timer> expired = new ArrayDeque<>();
+
+    private long currentTick;
+
+    private int count;
+
+    /**
+     * Creates a wheel.
+     *
+     * @param tickMillis
+     *            resolution in milliseconds
+     * @param slotCount
+     *            number of slots, rounded up to a power of two
+     */
+    TimerWheel(long tickMillis, int slotCount) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        int size = Integer.highestOneBit(Math.max(2, slotCount - 1)) << 1;
+        slots = new Timer[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Schedules a timer, replacing its previous deadline if it was pending.
+     *
+     * @param timer
+     *            timer
+     * @param delayMillis
+     *            delay in milliseconds
+     */
+    void schedule(Timer timer, long delayMillis) {
+        cancel(timer);
+        long deadline = (System.nanoTime() - start + TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos;
+        timer.deadlineTick = Math.max(deadline, currentTick + 1);
+        int slot = (int) (timer.deadlineTick & mask);
+        timer.slot = slot;
+        timer.prev = null;
+        timer.next = slots[slot];
+        if (timer.next != null) {
+            timer.next.prev = timer;
+        }
+        slots[slot] = timer;
+        timer.state = SCHEDULED;
+        count++;
+    }
+
+    /**
+     * Cancels a timer; does nothing if it is not pending.
+     *
+     * @param timer
+     *            timer
+     */
+    void cancel(Timer timer) {
+        if (timer.state == SCHEDULED) {
+            unlink(timer);
+        }
+        timer.state = IDLE;
+    }
+
+    private void unlink(Timer timer) {
+        if (timer.prev != null) {
+            timer.prev.next = timer.next;
+        } else {
+            slots[timer.slot] = timer.next;
+        }
+        if (timer.next != null) {
+            timer.next.prev = timer.prev;
+        }
+        timer.prev = timer.next = null;
+        count--;
+    }
+
+    /**
+     * Runs the timers which are due.
+     *
+     * @param now
+     *            current {@link System#nanoTime()}
+     */
+    void advance(long now) {
+        long target = (now - start) / tickNanos;
+        if (target <= currentTick) {
+            return;
+        }
+        long from = currentTick;
+        // timers armed while expiring others are due after this pass
+        currentTick = target;
+        long steps = Math.min(target - from, slots.length);
+        for (long i = 1; i <= steps; i++) {
+            Timer timer = slots[(int) ((from + i) & mask)];
+            while (timer != null) {
+                Timer next = timer.next;
+                if (timer.deadlineTick <= target) {
+                    unlink(timer);
+                    timer.state = EXPIRING;
+                    expired.add(timer);
+                }
+                timer = next;
+            }
+        }
+        Timer timer;
+        while ((timer = expired.poll()) != null) {
+            // skip the ones cancelled or rescheduled by an earlier expiry
+            if (timer.state == EXPIRING) {
+                timer.state = IDLE;
+                timer.expire();
+            }
+        }
+    }
+
+    /**
+     * Returns how long the loop may sleep before the next tick which can expire a timer.
+     *
+     * @return milliseconds, 0 when no timer is pending
+     */
+    long sleepMillis() {
+        if (count == 0) {
+            return 0;
+        }
+        return Math.max(1, TimeUnit.NANOSECONDS.toMillis(tickNanos));
+    }
+
+    /**
+     * Returns the number of pending timers.
+     *
+     * @return pending timers
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * A timer; subclasses are kept by their owner and rescheduled as needed.
+     */
+    abstract static class Timer {
+
+        private Timer prev, next;
+
+        private long deadlineTick;
+
+        private int slot;
+
+        private int state = IDLE;
+
+        /**
+         * Returns whether the timer is pending.
+         *
+         * @return true if scheduled
+         */
+        boolean isScheduled() {
+            return state == SCHEDULED;
+        }
+
+        /**
+         * Called on the loop thread once the deadline passed.
+         */
+        abstract void expire();
+
+    }
+
+}
@@ -14,6 +14,7 @@ import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManagerFactory;
 
 import org.slf4j.Logger;
@@ -232,6 +233,29 @@ public class TLSFactory {
         return sslCtx;
     }
 
+    /**
+     * Tunes the server side session cache of the given context so reconnecting clients can resume instead of performing a full
+     * handshake. Whether stateless session tickets are issued is governed by the <code>jdk.tls.server.enableSessionTicketExtension</code>
+     * system property, which must be set before the first context is created.
+     *
+     * @param sslCtx
+     *            context to configure
+     * @param sessionCacheSize
+     *            maximum cached sessions, 0 for unlimited
+     * @param sessionTimeout
+     *            lifetime of a cached session in seconds, 0 for unlimited
+     * @return the given context
+     */
+    public static SSLContext configureSessionCache(SSLContext sslCtx, int sessionCacheSize, int sessionTimeout) {
+        SSLSessionContext sessionContext = sslCtx.getServerSessionContext();
+        if (sessionContext != null) {
+            sessionContext.setSessionCacheSize(sessionCacheSize);
+            sessionContext.setSessionTimeout(sessionTimeout);
+            log.debug("Server session cache - size: {} timeout: {}s", sessionCacheSize, sessionTimeout);
+        }
+        return sslCtx;
+    }
+
     /**
      * <p>createSSLEngine.</p>
      *
@@ -7,6 +7,8 @@
 
 package org.red5.io.utils;
 
+import java.nio.ByteBuffer;
+
 import org.apache.mina.core.buffer.IoBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -85,6 +87,69 @@ public final class LEB128 {
         return byteCount;
     }
 
+    /**
+     * Encodes an int into LEB128 and puts it into a buffer at its current position.
+     *
+     * @param value integer to encode
+     * @param buffer buffer to write to
+     * @return number of bytes written
+     */
+    public static int encode(int value, ByteBuffer buffer) {
+        int byteCount = 0;
+        do {
+            byte b = (byte) (value & SEVEN_LSB_BITMASK);
+            value >>= 7;
+            if (value != 0) {
+                b |= MSB_BITMASK;
+            }
+            buffer.put(b);
+            byteCount++;
+        } while (value != 0);
+        return byteCount;
+    }
+
+    /**
+     * Returns the number of bytes needed to LEB128 encode the given value.
+     *
+     * @param value integer to encode
+     * @return encoded length in bytes
+     */
+    public static int encodedLength(int value) {
+        int byteCount = 1;
+        while ((value >>>= 7) != 0) {
+            byteCount++;
+        }
+        return byteCount;
+    }
+
+    /**
+     * Decodes an LEB128 unsigned integer from a buffer starting at the given absolute index, without changing its position. Reading
+     * stops at the buffer limit.
+     *
+     * @param buffer buffer to read from
+     * @param index absolute index of the first encoded byte
+     * @return LEB128Result
+     */
+    public static LEB128Result decode(ByteBuffer buffer, int index) {
+        LEB128Result result = new LEB128Result(0, 0);
+        int shift = 0;
+        int limit = buffer.limit();
+        for (int i = index; i < limit; i++) {
+            byte b = buffer.get(i);
+            result.value |= ((b & SEVEN_LSB_BITMASK) << shift);
+            result.bytesRead++;
+            if ((b & MSB_BITMASK) == 0) {
+                break;
+            }
+            shift += 7;
+            if (shift >= 35) {
+                log.warn("LEB128 value too large or malformed");
+                break;
+            }
+        }
+        return result;
+    }
+
     /**
      * Decodes an LEB128 unsigned integer into a regular int.
      *
@@ -0,0 +1,234 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Element ids of the Matroska / WebM elements handled here, with their length marker bits as they appear in a file, and helpers to write
+ * elements.
+ *
+ * @see <a href="https://www.matroska.org/technical/elements.html">Matroska elements</a>
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class Ebml {
+
+    static final int EBML = 0x1A45DFA3;
+
+    static final int EBML_VERSION = 0x4286;
+
+    static final int EBML_READ_VERSION = 0x42F7;
+
+    static final int EBML_MAX_ID_LENGTH = 0x42F2;
+
+    static final int EBML_MAX_SIZE_LENGTH = 0x42F3;
+
+    static final int DOC_TYPE = 0x4282;
+
+    static final int DOC_TYPE_VERSION = 0x4287;
+
+    static final int DOC_TYPE_READ_VERSION = 0x4285;
+
+    static final int VOID = 0xEC;
+
+    static final int SEGMENT = 0x18538067;
+
+    static final int SEEK_HEAD = 0x114D9B74;
+
+    static final int SEEK = 0x4DBB;
+
+    static final int SEEK_ID = 0x53AB;
+
+    static final int SEEK_POSITION = 0x53AC;
+
+    static final int INFO = 0x1549A966;
+
+    static final int TIMECODE_SCALE = 0x2AD7B1;
+
+    static final int DURATION = 0x4489;
+
+    static final int MUXING_APP = 0x4D80;
+
+    static final int WRITING_APP = 0x5741;
+
+    static final int TRACKS = 0x1654AE6B;
+
+    static final int TRACK_ENTRY = 0xAE;
+
+    static final int TRACK_NUMBER = 0xD7;
+
+    static final int TRACK_UID = 0x73C5;
+
+    static final int TRACK_TYPE = 0x83;
+
+    static final int CODEC_ID = 0x86;
+
+    static final int CODEC_PRIVATE = 0x63A2;
+
+    static final int VIDEO = 0xE0;
+
+    static final int PIXEL_WIDTH = 0xB0;
+
+    static final int PIXEL_HEIGHT = 0xBA;
+
+    static final int AUDIO = 0xE1;
+
+    static final int SAMPLING_FREQUENCY = 0xB5;
+
+    static final int CHANNELS = 0x9F;
+
+    static final int CLUSTER = 0x1F43B675;
+
+    static final int TIMECODE = 0xE7;
+
+    static final int SIMPLE_BLOCK = 0xA3;
+
+    static final int BLOCK_GROUP = 0xA0;
+
+    static final int BLOCK = 0xA1;
+
+    static final int REFERENCE_BLOCK = 0xFB;
+
+    static final int CUES = 0x1C53BB6B;
+
+    static final int CUE_POINT = 0xBB;
+
+    static final int CUE_TIME = 0xB3;
+
+    static final int CUE_TRACK_POSITIONS = 0xB7;
+
+    static final int CUE_TRACK = 0xF7;
+
+    static final int CUE_CLUSTER_POSITION = 0xF1;
+
+    static final int TAGS = 0x1254C367;
+
+    static final int CHAPTERS = 0x1043A770;
+
+    static final int ATTACHMENTS = 0x1941A469;
+
+    static final int CODEC_DELAY = 0x56AA;
+
+    static final int SEEK_PRE_ROLL = 0x56BB;
+
+    static final int TRACK_TYPE_VIDEO = 1;
+
+    static final int TRACK_TYPE_AUDIO = 2;
+
+    /**
+     * Size field of an element whose size is not known yet, in eight bytes
+     */
+    static final long UNKNOWN_SIZE = 0x01FFFFFFFFFFFFFFL;
+
+    private Ebml() {
+    }
+
+    /**
+     * Returns whether an element is a child of the segment. Such an element ends a cluster of unknown size.
+     *
+     * @param id
+     *            element id
+     * @return true for top level elements
+     */
+    static boolean isTopLevel(int id) {
+        switch (id) {
+            case SEEK_HEAD:
+            case INFO:
+            case TRACKS:
+            case CLUSTER:
+            case CUES:
+            case TAGS:
+            case CHAPTERS:
+            case ATTACHMENTS:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static void putId(ByteBuffer buf, int id) {
+        for (int shift = (3 - Integer.numberOfLeadingZeros(id) / 8) * 8; shift >= 0; shift -= 8) {
+            buf.put((byte) (id >> shift));
+        }
+    }
+
+    /**
+     * Writes an element size in as few bytes as possible.
+     */
+    static void putSize(ByteBuffer buf, long size) {
+        int length = 1;
+        while (length < 8 && size >= (1L << (7 * length)) - 1) {
+            length++;
+        }
+        putSize(buf, size, length);
+    }
+
+    /**
+     * Writes an element size in the given number of bytes, so it can be patched later.
+     */
+    static void putSize(ByteBuffer buf, long size, int length) {
+        long value = size | (1L << (7 * length));
+        for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+            buf.put((byte) (value >> shift));
+        }
+    }
+
+    static void putUnsigned(ByteBuffer buf, int id, long value) {
+        int length = Math.max(1, 8 - Long.numberOfLeadingZeros(value) / 8);
+        putId(buf, id);
+        putSize(buf, length);
+        for (int shift = (length - 1) * 8; shift >= 0; shift -= 8) {
+            buf.put((byte) (value >> shift));
+        }
+    }
+
+    static void putFloat(ByteBuffer buf, int id, double value) {
+        putId(buf, id);
+        putSize(buf, 8);
+        buf.putDouble(value);
+    }
+
+    static void putString(ByteBuffer buf, int id, String value) {
+        putBytes(buf, id, value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    static void putBytes(ByteBuffer buf, int id, byte[] value) {
+        putId(buf, id);
+        putSize(buf, value.length);
+        buf.put(value);
+    }
+
+    /**
+     * Starts a master element with an eight byte size to be filled in by {@link #endMaster(ByteBuffer, int)}.
+     *
+     * @return position of the element data
+     */
+    static int startMaster(ByteBuffer buf, int id) {
+        putId(buf, id);
+        buf.putLong(UNKNOWN_SIZE);
+        return buf.position();
+    }
+
+    static void endMaster(ByteBuffer buf, int start) {
+        int end = buf.position();
+        buf.position(start - 8);
+        putSize(buf, end - start, 8);
+        buf.position(end);
+    }
+
+    /**
+     * Writes a void element filling the given number of bytes, at least nine.
+     */
+    static void putVoid(ByteBuffer buf, int length) {
+        putId(buf, VOID);
+        putSize(buf, length - 9, 8);
+        buf.put(new byte[length - 9]);
+    }
+
+}
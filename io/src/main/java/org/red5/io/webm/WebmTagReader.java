@@ -0,0 +1,997 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.cache.impl.BlockCache;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.AudioPacketType;
+import org.red5.codec.VideoCodec;
+import org.red5.codec.VideoFrameType;
+import org.red5.codec.VideoPacketType;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITag;
+import org.red5.io.ITagReader;
+import org.red5.io.IoConstants;
+import org.red5.io.amf.Output;
+import org.red5.io.flv.IKeyFrameDataAnalyzer;
+import org.red5.io.flv.impl.Tag;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads WebM / Matroska files as tags for VOD playback. The file is parsed as it is played through a small window, so memory use does
+ * not depend on the file size. VP8, VP9 and AV1 video and Opus audio are returned as enhanced RTMP tags; other tracks are skipped. Seek
+ * points come from the Cues element when the file has one, otherwise from a scan of the cluster headers made on first use, and are the
+ * positions of the clusters holding the key frames.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class WebmTagReader implements ITagReader, IKeyFrameDataAnalyzer {
+
+    private static Logger log = LoggerFactory.getLogger(WebmTagReader.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+
+    private SeekableByteChannel channel;
+
+    private long channelSize;
+
+    // read window and the file position of its first byte
+    private ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+
+    private long bufferPosition;
+
+    // file positions of the segment data and the first cluster
+    private long segmentStart, segmentEnd, firstCluster;
+
+    // position of the cues from the seek head, or -1
+    private long cuesPosition = -1;
+
+    private long timecodeScale = 1000000L;
+
+    // duration in milliseconds
+    private long duration;
+
+    private Track videoTrack, audioTrack;
+
+    // end of the cluster being read, Long.MAX_VALUE for unknown size, -1 outside a cluster
+    private long clusterEnd = -1;
+
+    private long clusterTimecode;
+
+    private boolean eof;
+
+    // whether the metadata and sequence start tags were returned
+    private boolean headerSent;
+
+    // whether the sequence start tags have to be returned again after a seek
+    private boolean configResend;
+
+    private int lastTimestamp;
+
+    private final ArrayDeque<ITag> pending = new ArrayDeque<>();
+
+    private KeyFrameMeta keyframeMeta;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a reader for a file.
+     *
+     * @param file
+     *            WebM or Matroska file
+     * @throws IOException
+     *             if the file could not be opened or is not a Matroska file
+     */
+    public WebmTagReader(File file) throws IOException {
+        this.file = file;
+        channel = BlockCache.open(file);
+        channelSize = channel.size();
+        buf.limit(0);
+        try {
+            readHeaders();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void readHeaders() throws IOException {
+        if (readId() != Ebml.EBML) {
+            throw new IOException("Not an EBML file: " + file);
+        }
+        skip(readSize());
+        if (readId() != Ebml.SEGMENT) {
+            throw new IOException("Segment not found: " + file);
+        }
+        long size = readSize();
+        segmentStart = position();
+        segmentEnd = size < 0 ? channelSize : Math.min(segmentStart + size, channelSize);
+        firstCluster = segmentEnd;
+        double infoDuration = 0;
+        while (position() < segmentEnd) {
+            long start = position();
+            int id = readId();
+            size = readSize();
+            if (id == Ebml.CLUSTER) {
+                firstCluster = start;
+                break;
+            }
+            if (size < 0) {
+                log.debug("Element {} of unknown size before the first cluster", Integer.toHexString(id));
+                break;
+            }
+            long end = position() + size;
+            switch (id) {
+                case Ebml.SEEK_HEAD:
+                    readSeekHead(end);
+                    break;
+                case Ebml.INFO:
+                    infoDuration = readInfo(end);
+                    break;
+                case Ebml.TRACKS:
+                    readTracks(end);
+                    break;
+                default:
+            }
+            seek(end);
+        }
+        duration = (long) (infoDuration * timecodeScale / 1000000d);
+        log.debug("Segment: {}-{} first cluster: {} cues: {} duration: {} video: {} audio: {}", segmentStart, segmentEnd, firstCluster, cuesPosition, duration, videoTrack, audioTrack);
+        seek(firstCluster);
+    }
+
+    private void readSeekHead(long end) throws IOException {
+        while (position() < end) {
+            long seekEnd = readElementEnd(Ebml.SEEK);
+            if (seekEnd < 0) {
+                continue;
+            }
+            int seekId = 0;
+            long seekPosition = -1;
+            while (position() < seekEnd) {
+                int id = readId();
+                long size = readSize();
+                if (id == Ebml.SEEK_ID) {
+                    seekId = (int) readUnsigned((int) size);
+                } else if (id == Ebml.SEEK_POSITION) {
+                    seekPosition = readUnsigned((int) size);
+                } else {
+                    skip(size);
+                }
+            }
+            if (seekId == Ebml.CUES && seekPosition >= 0) {
+                cuesPosition = segmentStart + seekPosition;
+            }
+        }
+    }
+
+    private double readInfo(long end) throws IOException {
+        double infoDuration = 0;
+        while (position() < end) {
+            int id = readId();
+            long size = readSize();
+            if (id == Ebml.TIMECODE_SCALE) {
+                timecodeScale = readUnsigned((int) size);
+            } else if (id == Ebml.DURATION) {
+                infoDuration = readFloat((int) size);
+            } else {
+                skip(size);
+            }
+        }
+        return infoDuration;
+    }
+
+    private void readTracks(long end) throws IOException {
+        while (position() < end) {
+            long entryEnd = readElementEnd(Ebml.TRACK_ENTRY);
+            if (entryEnd < 0) {
+                continue;
+            }
+            Track track = new Track();
+            readTrack(track, entryEnd);
+            if (track.type == Ebml.TRACK_TYPE_VIDEO && videoTrack == null) {
+                track.videoCodec = getVideoCodec(track.codecId);
+                if (track.videoCodec != null) {
+                    videoTrack = track;
+                }
+            } else if (track.type == Ebml.TRACK_TYPE_AUDIO && audioTrack == null) {
+                track.audioCodec = "A_OPUS".equals(track.codecId) ? AudioCodec.OPUS : null;
+                if (track.audioCodec != null) {
+                    audioTrack = track;
+                }
+            }
+            if (track.videoCodec == null && track.audioCodec == null) {
+                log.debug("Skipping track {} with codec {}", track.number, track.codecId);
+            }
+        }
+    }
+
+    private void readTrack(Track track, long end) throws IOException {
+        while (position() < end) {
+            int id = readId();
+            long size = readSize();
+            switch (id) {
+                case Ebml.TRACK_NUMBER:
+                    track.number = readUnsigned((int) size);
+                    break;
+                case Ebml.TRACK_TYPE:
+                    track.type = (int) readUnsigned((int) size);
+                    break;
+                case Ebml.CODEC_ID:
+                    track.codecId = readString((int) size);
+                    break;
+                case Ebml.CODEC_PRIVATE:
+                    track.codecPrivate = readBytes((int) size);
+                    break;
+                case Ebml.VIDEO:
+                case Ebml.AUDIO:
+                    // the settings are read as part of the track entry
+                    break;
+                case Ebml.PIXEL_WIDTH:
+                    track.width = (int) readUnsigned((int) size);
+                    break;
+                case Ebml.PIXEL_HEIGHT:
+                    track.height = (int) readUnsigned((int) size);
+                    break;
+                case Ebml.SAMPLING_FREQUENCY:
+                    track.sampleRate = (int) readFloat((int) size);
+                    break;
+                case Ebml.CHANNELS:
+                    track.channels = (int) readUnsigned((int) size);
+                    break;
+                default:
+                    skip(size);
+            }
+        }
+    }
+
+    private static VideoCodec getVideoCodec(String codecId) {
+        if (codecId != null) {
+            switch (codecId) {
+                case "V_VP8":
+                    return VideoCodec.VP8;
+                case "V_VP9":
+                    return VideoCodec.VP9;
+                case "V_AV1":
+                    return VideoCodec.AV1;
+                default:
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reads the header of an element expected at the current position.
+     *
+     * @return end of the element or -1 if it was another element, which is skipped
+     */
+    private long readElementEnd(int expected) throws IOException {
+        int id = readId();
+        long size = readSize();
+        if (id != expected) {
+            skip(size);
+            return -1;
+        }
+        return position() + size;
+    }
+
+    /**
+     * Reads up to the next block of the selected tracks and queues its frames, or just notes its time when scanning.
+     *
+     * @param emit
+     *            whether to queue tags
+     * @return false at the end of the segment
+     */
+    private boolean readNext(boolean emit) throws IOException {
+        while (position() < segmentEnd) {
+            if (clusterEnd >= 0 && position() >= clusterEnd) {
+                clusterEnd = -1;
+            }
+            long start = position();
+            int id = readId();
+            long size = readSize();
+            if (clusterEnd < 0) {
+                if (id == Ebml.CLUSTER) {
+                    clusterEnd = size < 0 ? Long.MAX_VALUE : position() + size;
+                    clusterTimecode = 0;
+                } else if (size < 0) {
+                    log.debug("Element {} of unknown size at {}", Integer.toHexString(id), start);
+                    return false;
+                } else {
+                    skip(size);
+                }
+                continue;
+            }
+            if (clusterEnd == Long.MAX_VALUE && Ebml.isTopLevel(id)) {
+                // a cluster of unknown size ends where the next top level element starts
+                clusterEnd = -1;
+                seek(start);
+                continue;
+            }
+            switch (id) {
+                case Ebml.TIMECODE:
+                    clusterTimecode = readUnsigned((int) size);
+                    break;
+                case Ebml.SIMPLE_BLOCK:
+                    if (readBlock(position() + size, null, emit)) {
+                        return true;
+                    }
+                    break;
+                case Ebml.BLOCK_GROUP:
+                    if (readBlockGroup(position() + size, emit)) {
+                        return true;
+                    }
+                    break;
+                default:
+                    if (size < 0) {
+                        return false;
+                    }
+                    skip(size);
+            }
+        }
+        return false;
+    }
+
+    private boolean readBlockGroup(long end, boolean emit) throws IOException {
+        long blockStart = -1, blockEnd = -1;
+        boolean referenced = false;
+        while (position() < end) {
+            int id = readId();
+            long size = readSize();
+            if (id == Ebml.BLOCK) {
+                blockStart = position();
+                blockEnd = blockStart + size;
+            } else if (id == Ebml.REFERENCE_BLOCK) {
+                referenced = true;
+            }
+            skip(size);
+        }
+        boolean result = false;
+        if (blockStart >= 0) {
+            seek(blockStart);
+            result = readBlock(blockEnd, !referenced, emit);
+        }
+        seek(end);
+        return result;
+    }
+
+    /**
+     * Reads a block.
+     *
+     * @param end
+     *            end of the block
+     * @param keyframe
+     *            whether the block holds a key frame, null to take it from the simple block flags
+     * @param emit
+     *            whether to queue tags
+     * @return true if the block belongs to a selected track
+     */
+    private boolean readBlock(long end, Boolean keyframe, boolean emit) throws IOException {
+        long trackNumber = readVint()[0];
+        ensure(3);
+        int relative = buf.getShort();
+        int flags = buf.get() & 0xff;
+        Track track = videoTrack != null && videoTrack.number == trackNumber ? videoTrack : audioTrack != null && audioTrack.number == trackNumber ? audioTrack : null;
+        if (track == null) {
+            seek(end);
+            return false;
+        }
+        int timestamp = (int) Math.max(0L, (clusterTimecode + relative) * timecodeScale / 1000000L);
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        if (!emit) {
+            seek(end);
+            return true;
+        }
+        if (configResend) {
+            configResend = false;
+            queueConfig(timestamp);
+        }
+        boolean key = keyframe != null ? keyframe : (flags & 0x80) != 0;
+        for (int frameSize : readLacing(flags, end)) {
+            byte[] frame = readBytes(frameSize);
+            pending.add(track.videoCodec != null ? createVideoTag(track, timestamp, key, frame) : createAudioTag(track, timestamp, frame));
+        }
+        seek(end);
+        return true;
+    }
+
+    /**
+     * Returns the sizes of the frames in a block, reading the lacing header if there is one.
+     */
+    private int[] readLacing(int flags, long end) throws IOException {
+        int lacing = (flags >> 1) & 0x03;
+        if (lacing == 0) {
+            return new int[] { (int) (end - position()) };
+        }
+        ensure(1);
+        int count = (buf.get() & 0xff) + 1;
+        int[] sizes = new int[count];
+        int total = 0;
+        switch (lacing) {
+            case 1: // xiph
+                for (int i = 0; i < count - 1; i++) {
+                    int b;
+                    do {
+                        ensure(1);
+                        b = buf.get() & 0xff;
+                        sizes[i] += b;
+                    } while (b == 0xff);
+                    total += sizes[i];
+                }
+                break;
+            case 3: // ebml
+                sizes[0] = (int) readVint()[0];
+                total = sizes[0];
+                for (int i = 1; i < count - 1; i++) {
+                    long[] vint = readVint();
+                    // signed difference from the previous size
+                    sizes[i] = (int) (sizes[i - 1] + vint[0] - ((1L << (7 * vint[1] - 1)) - 1));
+                    total += sizes[i];
+                }
+                break;
+            default: // fixed
+                int frameSize = (int) ((end - position()) / count);
+                for (int i = 0; i < count - 1; i++) {
+                    sizes[i] = frameSize;
+                    total += frameSize;
+                }
+        }
+        sizes[count - 1] = (int) (end - position() - total);
+        return sizes;
+    }
+
+    private ITag createVideoTag(Track track, int timestamp, boolean keyframe, byte[] frame) {
+        VideoFrameType frameType = keyframe ? VideoFrameType.KEYFRAME : VideoFrameType.INTERFRAME;
+        return createVideoTag(track, timestamp, frameType, VideoPacketType.CodedFrames, frame);
+    }
+
+    private static ITag createVideoTag(Track track, int timestamp, VideoFrameType frameType, VideoPacketType packetType, byte[] data) {
+        IoBuffer body = IoBuffer.allocate(5 + data.length);
+        body.put((byte) (0x80 | (frameType.getValue() << 4) | packetType.getPacketType()));
+        body.putInt(track.videoCodec.getFourcc());
+        body.put(data);
+        body.flip();
+        return new Tag(IoConstants.TYPE_VIDEO, timestamp, body.limit(), body, 0);
+    }
+
+    private ITag createAudioTag(Track track, int timestamp, byte[] frame) {
+        return createAudioTag(track, timestamp, AudioPacketType.CodedFrames, frame);
+    }
+
+    private static ITag createAudioTag(Track track, int timestamp, AudioPacketType packetType, byte[] data) {
+        IoBuffer body = IoBuffer.allocate(5 + data.length);
+        body.put((byte) ((AudioCodec.ExHeader.getId() << 4) | packetType.getPacketType()));
+        body.putInt(track.audioCodec.getFourcc());
+        body.put(data);
+        body.flip();
+        return new Tag(IoConstants.TYPE_AUDIO, timestamp, body.limit(), body, 0);
+    }
+
+    /**
+     * Queues the sequence start tags of the tracks with decoder configuration; the av1C record for AV1 and the OpusHead for Opus.
+     */
+    private void queueConfig(int timestamp) {
+        if (videoTrack != null && videoTrack.videoCodec == VideoCodec.AV1 && videoTrack.codecPrivate != null) {
+            pending.add(createVideoTag(videoTrack, timestamp, VideoFrameType.KEYFRAME, VideoPacketType.SequenceStart, videoTrack.codecPrivate));
+        }
+        if (audioTrack != null && audioTrack.codecPrivate != null) {
+            pending.add(createAudioTag(audioTrack, timestamp, AudioPacketType.SequenceStart, audioTrack.codecPrivate));
+        }
+    }
+
+    private ITag createFileMeta() {
+        if (duration == 0) {
+            analyzeKeyFrames();
+        }
+        IoBuffer body = IoBuffer.allocate(256);
+        body.setAutoExpand(true);
+        Output out = new Output(body);
+        out.writeString("onMetaData");
+        Map<Object, Object> props = new HashMap<>();
+        props.put("duration", duration / 1000.0);
+        if (videoTrack != null) {
+            props.put("width", videoTrack.width);
+            props.put("height", videoTrack.height);
+            props.put("videocodecid", fourcc(videoTrack.videoCodec.getFourcc()));
+        }
+        if (audioTrack != null) {
+            props.put("audiocodecid", fourcc(audioTrack.audioCodec.getFourcc()));
+            props.put("audiosamplerate", audioTrack.sampleRate);
+            props.put("audiochannels", audioTrack.channels);
+        }
+        props.put("canSeekToEnd", true);
+        out.writeMap(props);
+        body.flip();
+        return new Tag(IoConstants.TYPE_METADATA, 0, body.limit(), body, 0);
+    }
+
+    private static String fourcc(int value) {
+        return new String(new byte[] { (byte) (value >> 24), (byte) (value >> 16), (byte) (value >> 8), (byte) value }, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Fills the queue of tags to return, unless the end was reached.
+     */
+    private void fill() {
+        if (!pending.isEmpty() || eof) {
+            return;
+        }
+        if (!headerSent) {
+            headerSent = true;
+            pending.add(createFileMeta());
+            queueConfig(0);
+            return;
+        }
+        try {
+            while (pending.isEmpty()) {
+                if (!readNext(true)) {
+                    eof = true;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            // a truncated file, such as one still being written, ends here
+            log.debug("Stopped reading {} at {}", file, position(), e);
+            eof = true;
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasMoreTags() {
+        lock.lock();
+        try {
+            fill();
+            return !pending.isEmpty();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public ITag readTag() {
+        lock.lock();
+        try {
+            fill();
+            return pending.poll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The position should be one of the key frame positions; positions before the first cluster start at the first cluster.
+     */
+    @Override
+    public void position(long pos) {
+        lock.lock();
+        try {
+            pending.clear();
+            clusterEnd = -1;
+            eof = pos >= segmentEnd;
+            seek(Math.max(Math.min(pos, segmentEnd), firstCluster));
+            configResend = headerSent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Seek points are taken from the cues of the video track, or of the audio track for audio only files. Without cues the clusters are
+     * scanned and the first one holding a key frame of the track is used.
+     */
+    @Override
+    public KeyFrameMeta analyzeKeyFrames() {
+        lock.lock();
+        try {
+            if (keyframeMeta != null) {
+                return keyframeMeta;
+            }
+            long savedPosition = position(), savedClusterEnd = clusterEnd, savedTimecode = clusterTimecode;
+            Track track = videoTrack != null ? videoTrack : audioTrack;
+            List<long[]> points = new ArrayList<>();
+            try {
+                if (track != null) {
+                    if (cuesPosition >= 0) {
+                        readCues(track, points);
+                    }
+                    if (points.isEmpty()) {
+                        scanClusters(track, points);
+                    }
+                }
+                if (duration == 0) {
+                    // walk the frames after the last seek point to find the end
+                    clusterEnd = -1;
+                    lastTimestamp = 0;
+                    seek(points.isEmpty() ? firstCluster : points.get(points.size() - 1)[1]);
+                    boolean more;
+                    do {
+                        more = readNext(false);
+                    } while (more);
+                    duration = lastTimestamp;
+                }
+            } catch (IOException e) {
+                log.debug("Stopped indexing {} at {}", file, position(), e);
+                if (duration == 0) {
+                    duration = lastTimestamp;
+                }
+            }
+            clusterEnd = savedClusterEnd;
+            clusterTimecode = savedTimecode;
+            seek(savedPosition);
+            KeyFrameMeta meta = new KeyFrameMeta();
+            meta.videoCodecId = videoTrack != null ? videoTrack.videoCodec.getId() : -1;
+            meta.audioCodecId = audioTrack != null ? audioTrack.audioCodec.getId() : -1;
+            meta.audioOnly = videoTrack == null;
+            meta.duration = duration;
+            meta.timestamps = new int[points.size()];
+            meta.positions = new long[points.size()];
+            for (int i = 0; i < meta.timestamps.length; i++) {
+                meta.timestamps[i] = (int) points.get(i)[0];
+                meta.positions[i] = points.get(i)[1];
+            }
+            log.debug("Key frames: {} from {}", meta.timestamps.length, cuesPosition >= 0 ? "cues" : "clusters");
+            keyframeMeta = meta;
+            return meta;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void readCues(Track track, List<long[]> points) throws IOException {
+        seek(cuesPosition);
+        long end = readElementEnd(Ebml.CUES);
+        if (end < 0) {
+            log.debug("No cues at {}", cuesPosition);
+            return;
+        }
+        long lastCluster = -1;
+        while (position() < end) {
+            long pointEnd = readElementEnd(Ebml.CUE_POINT);
+            if (pointEnd < 0) {
+                continue;
+            }
+            long time = 0, clusterPosition = -1;
+            while (position() < pointEnd) {
+                int id = readId();
+                long size = readSize();
+                if (id == Ebml.CUE_TIME) {
+                    time = readUnsigned((int) size);
+                } else if (id == Ebml.CUE_TRACK_POSITIONS && clusterPosition < 0) {
+                    long positionsEnd = position() + size;
+                    long cueTrack = 0, cluster = -1;
+                    while (position() < positionsEnd) {
+                        int childId = readId();
+                        long childSize = readSize();
+                        if (childId == Ebml.CUE_TRACK) {
+                            cueTrack = readUnsigned((int) childSize);
+                        } else if (childId == Ebml.CUE_CLUSTER_POSITION) {
+                            cluster = readUnsigned((int) childSize);
+                        } else {
+                            skip(childSize);
+                        }
+                    }
+                    if (cueTrack == track.number && cluster >= 0) {
+                        clusterPosition = segmentStart + cluster;
+                    }
+                } else {
+                    skip(size);
+                }
+            }
+            // several cue points in one cluster all seek to its start
+            if (clusterPosition >= 0 && clusterPosition != lastCluster) {
+                points.add(new long[] { time * timecodeScale / 1000000L, clusterPosition });
+                lastCluster = clusterPosition;
+            }
+        }
+    }
+
+    private void scanClusters(Track track, List<long[]> points) throws IOException {
+        seek(firstCluster);
+        while (position() < segmentEnd) {
+            long start = position();
+            int id = readId();
+            long size = readSize();
+            if (id != Ebml.CLUSTER) {
+                if (size < 0) {
+                    return;
+                }
+                skip(size);
+                continue;
+            }
+            long end = size < 0 ? Long.MAX_VALUE : position() + size;
+            long timecode = 0;
+            boolean found = false;
+            while (position() < Math.min(end, segmentEnd)) {
+                long childStart = position();
+                int childId = readId();
+                long childSize = readSize();
+                if (end == Long.MAX_VALUE && Ebml.isTopLevel(childId)) {
+                    seek(childStart);
+                    break;
+                }
+                if (childId == Ebml.TIMECODE) {
+                    timecode = readUnsigned((int) childSize);
+                    continue;
+                }
+                if (!found && (childId == Ebml.SIMPLE_BLOCK || childId == Ebml.BLOCK_GROUP)) {
+                    long childEnd = position() + childSize;
+                    long blockEnd = childEnd;
+                    if (childId == Ebml.BLOCK_GROUP) {
+                        blockEnd = readElementEnd(Ebml.BLOCK);
+                        if (blockEnd < 0) {
+                            seek(childEnd);
+                            continue;
+                        }
+                    }
+                    long trackNumber = readVint()[0];
+                    ensure(3);
+                    int relative = buf.getShort();
+                    int flags = buf.get() & 0xff;
+                    boolean keyframe = (flags & 0x80) != 0;
+                    if (childId == Ebml.BLOCK_GROUP) {
+                        // a group without references is a key frame
+                        keyframe = true;
+                        seek(blockEnd);
+                        while (position() < childEnd) {
+                            int groupId = readId();
+                            long groupSize = readSize();
+                            keyframe &= groupId != Ebml.REFERENCE_BLOCK;
+                            skip(groupSize);
+                        }
+                    }
+                    if (trackNumber == track.number) {
+                        found = true;
+                        if (keyframe) {
+                            points.add(new long[] { Math.max(0L, (timecode + relative) * timecodeScale / 1000000L), start });
+                        }
+                        if (end != Long.MAX_VALUE) {
+                            break;
+                        }
+                    }
+                    seek(childEnd);
+                    continue;
+                }
+                if (childSize < 0) {
+                    return;
+                }
+                skip(childSize);
+            }
+            if (end != Long.MAX_VALUE) {
+                seek(end);
+            }
+        }
+    }
+
+    private long position() {
+        return bufferPosition + buf.position();
+    }
+
+    private void seek(long pos) {
+        if (pos >= bufferPosition && pos <= bufferPosition + buf.limit()) {
+            buf.position((int) (pos - bufferPosition));
+        } else {
+            bufferPosition = pos;
+            buf.clear().limit(0);
+        }
+    }
+
+    private void skip(long length) {
+        seek(position() + length);
+    }
+
+    /**
+     * Makes sure the window holds the given number of bytes from the current position.
+     */
+    private void ensure(int length) throws IOException {
+        if (buf.remaining() >= length) {
+            return;
+        }
+        bufferPosition += buf.position();
+        buf.compact();
+        channel.position(bufferPosition + buf.position());
+        while (buf.position() < length) {
+            if (channel.read(buf) < 0) {
+                buf.flip();
+                throw new EOFException();
+            }
+        }
+        buf.flip();
+    }
+
+    private int readId() throws IOException {
+        ensure(1);
+        int first = buf.get(buf.position()) & 0xff;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length > 4) {
+            throw new IOException("Invalid element id at " + position());
+        }
+        ensure(length);
+        int id = 0;
+        for (int i = 0; i < length; i++) {
+            id = (id << 8) | (buf.get() & 0xff);
+        }
+        return id;
+    }
+
+    /**
+     * Reads a variable length integer.
+     *
+     * @return value and length in bytes
+     */
+    private long[] readVint() throws IOException {
+        ensure(1);
+        int first = buf.get(buf.position()) & 0xff;
+        int length = Integer.numberOfLeadingZeros(first) - 23;
+        if (length > 8) {
+            throw new IOException("Invalid variable length integer at " + position());
+        }
+        ensure(length);
+        long value = buf.get() & (0xff >> length);
+        for (int i = 1; i < length; i++) {
+            value = (value << 8) | (buf.get() & 0xff);
+        }
+        return new long[] { value, length };
+    }
+
+    /**
+     * Reads an element size.
+     *
+     * @return size or -1 if unknown
+     */
+    private long readSize() throws IOException {
+        long[] vint = readVint();
+        return vint[0] == (1L << (7 * vint[1])) - 1 ? -1 : vint[0];
+    }
+
+    private long readUnsigned(int size) throws IOException {
+        ensure(size);
+        long value = 0;
+        for (int i = 0; i < size; i++) {
+            value = (value << 8) | (buf.get() & 0xff);
+        }
+        return value;
+    }
+
+    private double readFloat(int size) throws IOException {
+        ensure(size);
+        if (size == 4) {
+            return buf.getFloat();
+        } else if (size == 8) {
+            return buf.getDouble();
+        }
+        skip(size);
+        return 0;
+    }
+
+    private String readString(int size) throws IOException {
+        String value = new String(readBytes(size), StandardCharsets.US_ASCII);
+        int nul = value.indexOf('\0');
+        return nul >= 0 ? value.substring(0, nul) : value;
+    }
+
+    private byte[] readBytes(int size) throws IOException {
+        byte[] bytes = new byte[size];
+        int offset = 0;
+        while (offset < size) {
+            ensure(1);
+            int count = Math.min(buf.remaining(), size - offset);
+            buf.get(bytes, offset, count);
+            offset += count;
+        }
+        return bytes;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            pending.clear();
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.error("WebmTagReader close", e);
+                }
+                channel = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBytesRead() {
+        return position();
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Duration in milliseconds.
+     */
+    @Override
+    public long getDuration() {
+        return duration;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IStreamableFile getFile() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getTotalBytes() {
+        return channelSize;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean hasVideo() {
+        return videoTrack != null;
+    }
+
+    /**
+     * Track selected for playback.
+     */
+    private static final class Track {
+
+        long number;
+
+        int type;
+
+        String codecId;
+
+        byte[] codecPrivate;
+
+        int width, height, sampleRate, channels;
+
+        VideoCodec videoCodec;
+
+        AudioCodec audioCodec;
+
+        @Override
+        public String toString() {
+            return "Track [number=" + number + ", codecId=" + codecId + "]";
+        }
+
+    }
+
+}
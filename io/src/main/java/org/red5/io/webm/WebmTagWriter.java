@@ -0,0 +1,672 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.io.webm;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.AudioPacketType;
+import org.red5.codec.VideoCodec;
+import org.red5.codec.VideoFrameType;
+import org.red5.codec.VideoPacketType;
+import org.red5.io.IStreamableFile;
+import org.red5.io.ITag;
+import org.red5.io.ITagWriter;
+import org.red5.io.IoConstants;
+import org.red5.io.obu.BitReader;
+import org.red5.io.obu.OBPSequenceHeader;
+import org.red5.io.obu.OBUInfo;
+import org.red5.io.obu.OBUParser;
+import org.red5.io.obu.OBUType;
+import org.red5.media.processor.IPostProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes enhanced RTMP tags to a WebM / Matroska file as they arrive. VP8, VP9 and AV1 video and Opus audio are muxed; other tags are
+ * refused. Blocks are gathered per cluster in a buffer which is kept for the life of the writer, so each cluster costs one write. Clusters
+ * start at video key frames, or every {@link #setClusterDuration(int) cluster duration} without video, and each is added to the cues.
+ * <p>
+ * The track list has to come before the first cluster, so the first frames are held back until both media types were seen, or until the
+ * {@link #setProbeDuration(int) probe duration} has passed; a media type starting later than that is not recorded. The segment is written
+ * with an unknown size so the file is playable while recording; on close the cues are appended and the segment size, duration and seek
+ * head are filled in.
+ * </p>
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class WebmTagWriter implements ITagWriter {
+
+    private static Logger log = LoggerFactory.getLogger(WebmTagWriter.class);
+
+    // length of the seek head with three entries, reserved at the start of the segment
+    private static final int SEEK_HEAD_LENGTH = 12 + 3 * 42;
+
+    private static final int[] SEEK_IDS = { Ebml.INFO, Ebml.TRACKS, Ebml.CUES };
+
+    private final Path path;
+
+    private final String docType;
+
+    private FileChannel channel;
+
+    private LinkedList<IPostProcessor> postProcessors;
+
+    private int probeDuration = 2000;
+
+    private int clusterDuration = 5000;
+
+    private Track video, audio;
+
+    // frames held back until the tracks are known
+    private List<Frame> probe = new ArrayList<>();
+
+    private boolean headerWritten;
+
+    // file positions of the segment size, segment data, info duration and the elements in the seek head
+    private long segmentSizePosition, segmentStart, durationPosition;
+
+    private long[] seekPositions = { -1, -1, -1 };
+
+    // blocks of the open cluster, reused for every cluster
+    private ByteBuffer cluster = ByteBuffer.allocateDirect(1024 * 1024);
+
+    private long clusterTimecode = -1;
+
+    private boolean clusterCued;
+
+    // cue times and cluster positions relative to the segment data
+    private final List<long[]> cues = new ArrayList<>();
+
+    private long lastTimestamp;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a writer, replacing the file if it exists. Files ending in <code>.mkv</code> are written as Matroska, others as WebM.
+     *
+     * @param path
+     *            file to write
+     * @throws IOException
+     *             if the file could not be created
+     */
+    public WebmTagWriter(Path path) throws IOException {
+        this.path = path;
+        docType = String.valueOf(path.getFileName()).toLowerCase().endsWith(".mkv") ? "matroska" : "webm";
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * The header is written once the tracks are known.
+     */
+    @Override
+    public void writeHeader() throws IOException {
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean writeTag(ITag tag) throws IOException {
+        IoBuffer body = tag.getBody();
+        if (body == null || body.remaining() < 5) {
+            return false;
+        }
+        lock.lock();
+        try {
+            if (channel == null) {
+                throw new IOException("Writer is closed");
+            }
+            int start = body.position();
+            int header = body.get(start) & 0xff;
+            int fourcc = body.getInt(start + 1);
+            int timestamp = tag.getTimestamp();
+            switch (tag.getDataType()) {
+                case IoConstants.TYPE_VIDEO:
+                    if ((header & 0x80) == 0) {
+                        return false;
+                    }
+                    VideoCodec videoCodec = VideoCodec.valueOfByFourCc(fourcc);
+                    if (videoCodec != VideoCodec.VP8 && videoCodec != VideoCodec.VP9 && videoCodec != VideoCodec.AV1) {
+                        return false;
+                    }
+                    if (video == null) {
+                        if (headerWritten) {
+                            log.debug("Video started after the tracks were written, it will not be recorded");
+                            return false;
+                        }
+                        video = new Track(1, videoCodec, null);
+                    }
+                    int packetType = header & 0x0f;
+                    if (packetType == VideoPacketType.SequenceStart.getPacketType()) {
+                        video.codecPrivate = copy(body, start + 5);
+                        return true;
+                    }
+                    if (packetType != VideoPacketType.CodedFrames.getPacketType() || video.codec != videoCodec) {
+                        return false;
+                    }
+                    boolean keyframe = ((header >> 4) & 0x07) == VideoFrameType.KEYFRAME.getValue();
+                    addFrame(video, timestamp, keyframe, body, start + 5);
+                    return true;
+                case IoConstants.TYPE_AUDIO:
+                    if ((header >> 4) != AudioCodec.ExHeader.getId() || AudioCodec.valueOfByFourCc(fourcc) != AudioCodec.OPUS) {
+                        return false;
+                    }
+                    if (audio == null) {
+                        if (headerWritten) {
+                            log.debug("Audio started after the tracks were written, it will not be recorded");
+                            return false;
+                        }
+                        audio = new Track(2, null, AudioCodec.OPUS);
+                    }
+                    packetType = header & 0x0f;
+                    if (packetType == AudioPacketType.SequenceStart.getPacketType()) {
+                        audio.codecPrivate = copy(body, start + 5);
+                        return true;
+                    }
+                    if (packetType != AudioPacketType.CodedFrames.getPacketType()) {
+                        return false;
+                    }
+                    addFrame(audio, timestamp, true, body, start + 5);
+                    return true;
+                default:
+                    return false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static byte[] copy(IoBuffer body, int offset) {
+        byte[] data = new byte[body.limit() - offset];
+        IoBuffer source = body.duplicate();
+        source.position(offset);
+        source.get(data);
+        return data;
+    }
+
+    private void addFrame(Track track, int timestamp, boolean keyframe, IoBuffer body, int offset) throws IOException {
+        if (track == video && !video.started) {
+            if (!keyframe) {
+                // nothing decodes before the first key frame
+                return;
+            }
+            video.started = true;
+        }
+        if (track.codec == VideoCodec.AV1) {
+            offset = skipTemporalDelimiter(body, offset);
+        }
+        if (!headerWritten) {
+            if (track == video && video.width == 0) {
+                byte[] frame = copy(body, offset);
+                setDimensions(video, frame);
+                probe.add(new Frame(track, timestamp, keyframe, frame));
+            } else {
+                probe.add(new Frame(track, timestamp, keyframe, copy(body, offset)));
+            }
+            int span = timestamp - probe.get(0).timestamp;
+            if ((video != null && video.started && audio != null) || span >= probeDuration) {
+                writeTracks();
+            }
+            return;
+        }
+        ByteBuffer data = body.buf().duplicate();
+        data.limit(body.limit()).position(offset);
+        addBlock(track, timestamp, keyframe, data);
+    }
+
+    /**
+     * Returns the offset past a temporal delimiter OBU, which the AV1 Matroska mapping leaves out.
+     */
+    private static int skipTemporalDelimiter(IoBuffer body, int offset) {
+        if (body.limit() - offset >= 2) {
+            int obuHeader = body.get(offset) & 0xff;
+            if (OBUParser.obuType((byte) obuHeader) == OBUType.TEMPORAL_DELIMITER.getValue() && OBUParser.obuHasSize((byte) obuHeader) && body.get(offset + 1) == 0) {
+                return offset + 2;
+            }
+        }
+        return offset;
+    }
+
+    private void addBlock(Track track, int timestamp, boolean keyframe, ByteBuffer data) throws IOException {
+        lastTimestamp = Math.max(lastTimestamp, timestamp);
+        boolean videoKey = track == video && keyframe;
+        if (clusterTimecode < 0 || (video != null ? videoKey : timestamp - clusterTimecode >= clusterDuration) || timestamp - clusterTimecode > Short.MAX_VALUE) {
+            flushCluster();
+            clusterTimecode = timestamp;
+            // a cluster is only a seek point if it can be decoded from its start
+            clusterCued = video == null || videoKey;
+            ensureCapacity(32);
+            Ebml.putId(cluster, Ebml.CLUSTER);
+            cluster.putLong(Ebml.UNKNOWN_SIZE);
+            Ebml.putUnsigned(cluster, Ebml.TIMECODE, clusterTimecode);
+        }
+        int relative = (int) Math.max(Short.MIN_VALUE, timestamp - clusterTimecode);
+        int size = 4 + data.remaining();
+        ensureCapacity(size + 16);
+        Ebml.putId(cluster, Ebml.SIMPLE_BLOCK);
+        Ebml.putSize(cluster, size);
+        cluster.put((byte) (0x80 | track.number));
+        cluster.putShort((short) relative);
+        cluster.put((byte) (keyframe ? 0x80 : 0));
+        cluster.put(data);
+    }
+
+    private void ensureCapacity(int length) {
+        if (cluster.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocateDirect(Math.max(cluster.capacity() * 2, cluster.position() + length));
+            cluster.flip();
+            larger.put(cluster);
+            cluster = larger;
+        }
+    }
+
+    private void flushCluster() throws IOException {
+        if (cluster.position() == 0) {
+            return;
+        }
+        long position = channel.position();
+        int end = cluster.position();
+        // the size follows the four byte cluster id
+        cluster.position(4);
+        Ebml.putSize(cluster, end - 12, 8);
+        cluster.position(end);
+        cluster.flip();
+        while (cluster.hasRemaining()) {
+            channel.write(cluster);
+        }
+        cluster.clear();
+        if (clusterCued) {
+            cues.add(new long[] { clusterTimecode, position - segmentStart });
+        }
+    }
+
+    /**
+     * Writes the ebml header, the start of the segment and the tracks, then the frames held back.
+     */
+    private void writeTracks() throws IOException {
+        headerWritten = true;
+        if (audio != null && audio.codecPrivate == null) {
+            audio.codecPrivate = createOpusHead();
+        }
+        int privateLength = (video != null && video.codecPrivate != null ? video.codecPrivate.length : 0) + (audio != null ? audio.codecPrivate.length : 0);
+        ByteBuffer buf = ByteBuffer.allocate(1024 + privateLength);
+        int master = Ebml.startMaster(buf, Ebml.EBML);
+        Ebml.putUnsigned(buf, Ebml.EBML_VERSION, 1);
+        Ebml.putUnsigned(buf, Ebml.EBML_READ_VERSION, 1);
+        Ebml.putUnsigned(buf, Ebml.EBML_MAX_ID_LENGTH, 4);
+        Ebml.putUnsigned(buf, Ebml.EBML_MAX_SIZE_LENGTH, 8);
+        Ebml.putString(buf, Ebml.DOC_TYPE, docType);
+        Ebml.putUnsigned(buf, Ebml.DOC_TYPE_VERSION, 4);
+        Ebml.putUnsigned(buf, Ebml.DOC_TYPE_READ_VERSION, 2);
+        Ebml.endMaster(buf, master);
+        Ebml.putId(buf, Ebml.SEGMENT);
+        segmentSizePosition = buf.position();
+        buf.putLong(Ebml.UNKNOWN_SIZE);
+        segmentStart = buf.position();
+        int seekHead = buf.position();
+        buf.position(seekHead + SEEK_HEAD_LENGTH);
+        seekPositions[0] = buf.position() - segmentStart;
+        master = Ebml.startMaster(buf, Ebml.INFO);
+        Ebml.putUnsigned(buf, Ebml.TIMECODE_SCALE, 1000000L);
+        Ebml.putString(buf, Ebml.MUXING_APP, "Red5");
+        Ebml.putString(buf, Ebml.WRITING_APP, "Red5");
+        durationPosition = buf.position() + 3;
+        Ebml.putFloat(buf, Ebml.DURATION, 0d);
+        Ebml.endMaster(buf, master);
+        seekPositions[1] = buf.position() - segmentStart;
+        master = Ebml.startMaster(buf, Ebml.TRACKS);
+        for (Track track : new Track[] { video, audio }) {
+            if (track != null) {
+                putTrack(buf, track);
+            }
+        }
+        Ebml.endMaster(buf, master);
+        int end = buf.position();
+        buf.position(seekHead);
+        putSeekHead(buf);
+        buf.position(end);
+        buf.flip();
+        channel.position(0);
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+        log.debug("Tracks written for {} video: {} audio: {}", path, video, audio);
+        List<Frame> frames = probe;
+        probe = null;
+        for (Frame frame : frames) {
+            addBlock(frame.track, frame.timestamp, frame.keyframe, ByteBuffer.wrap(frame.data));
+        }
+    }
+
+    private static void putTrack(ByteBuffer buf, Track track) {
+        int entry = Ebml.startMaster(buf, Ebml.TRACK_ENTRY);
+        Ebml.putUnsigned(buf, Ebml.TRACK_NUMBER, track.number);
+        Ebml.putUnsigned(buf, Ebml.TRACK_UID, track.number);
+        if (track.codec != null) {
+            Ebml.putUnsigned(buf, Ebml.TRACK_TYPE, Ebml.TRACK_TYPE_VIDEO);
+            Ebml.putString(buf, Ebml.CODEC_ID, track.codec == VideoCodec.VP8 ? "V_VP8" : track.codec == VideoCodec.VP9 ? "V_VP9" : "V_AV1");
+            if (track.codec == VideoCodec.AV1 && track.codecPrivate != null) {
+                Ebml.putBytes(buf, Ebml.CODEC_PRIVATE, track.codecPrivate);
+            }
+            if (track.width > 0) {
+                int settings = Ebml.startMaster(buf, Ebml.VIDEO);
+                Ebml.putUnsigned(buf, Ebml.PIXEL_WIDTH, track.width);
+                Ebml.putUnsigned(buf, Ebml.PIXEL_HEIGHT, track.height);
+                Ebml.endMaster(buf, settings);
+            }
+        } else {
+            Ebml.putUnsigned(buf, Ebml.TRACK_TYPE, Ebml.TRACK_TYPE_AUDIO);
+            Ebml.putString(buf, Ebml.CODEC_ID, "A_OPUS");
+            Ebml.putBytes(buf, Ebml.CODEC_PRIVATE, track.codecPrivate);
+            // pre-skip samples at 48kHz as nanoseconds, and the 80ms pre-roll recommended for opus
+            int preSkip = track.codecPrivate.length >= 12 ? (track.codecPrivate[10] & 0xff) | (track.codecPrivate[11] & 0xff) << 8 : 0;
+            Ebml.putUnsigned(buf, Ebml.CODEC_DELAY, preSkip * 1000000000L / 48000L);
+            Ebml.putUnsigned(buf, Ebml.SEEK_PRE_ROLL, 80000000L);
+            int settings = Ebml.startMaster(buf, Ebml.AUDIO);
+            Ebml.putFloat(buf, Ebml.SAMPLING_FREQUENCY, 48000d);
+            Ebml.putUnsigned(buf, Ebml.CHANNELS, track.codecPrivate.length >= 10 ? track.codecPrivate[9] & 0xff : 2);
+            Ebml.endMaster(buf, settings);
+        }
+        Ebml.endMaster(buf, entry);
+    }
+
+    /**
+     * Writes the seek head for the elements written so far, padded to its reserved length.
+     */
+    private void putSeekHead(ByteBuffer buf) {
+        int start = buf.position();
+        int master = Ebml.startMaster(buf, Ebml.SEEK_HEAD);
+        for (int i = 0; i < SEEK_IDS.length; i++) {
+            if (seekPositions[i] >= 0) {
+                int seek = Ebml.startMaster(buf, Ebml.SEEK);
+                Ebml.putId(buf, Ebml.SEEK_ID);
+                Ebml.putSize(buf, 4, 8);
+                buf.putInt(SEEK_IDS[i]);
+                Ebml.putId(buf, Ebml.SEEK_POSITION);
+                Ebml.putSize(buf, 8, 8);
+                buf.putLong(seekPositions[i]);
+                Ebml.endMaster(buf, seek);
+            }
+        }
+        Ebml.endMaster(buf, master);
+        int used = buf.position() - start;
+        if (used < SEEK_HEAD_LENGTH) {
+            Ebml.putVoid(buf, SEEK_HEAD_LENGTH - used);
+        }
+    }
+
+    /**
+     * Creates an identification header for opus when the stream did not send one; two channels at 48kHz without pre-skip.
+     */
+    private static byte[] createOpusHead() {
+        return new byte[] { 'O', 'p', 'u', 's', 'H', 'e', 'a', 'd', 1, 2, 0, 0, (byte) 0x80, (byte) 0xbb, 0, 0, 0, 0, 0 };
+    }
+
+    /**
+     * Sets the picture size of a video track from the decoder configuration or a key frame.
+     */
+    static void setDimensions(Track track, byte[] frame) {
+        try {
+            if (track.codec == VideoCodec.VP8) {
+                // key frame start code follows the three byte frame tag
+                if (frame.length >= 10 && (frame[0] & 0x01) == 0 && (frame[3] & 0xff) == 0x9d && frame[4] == 0x01 && frame[5] == 0x2a) {
+                    track.width = ((frame[6] & 0xff) | (frame[7] & 0xff) << 8) & 0x3fff;
+                    track.height = ((frame[8] & 0xff) | (frame[9] & 0xff) << 8) & 0x3fff;
+                }
+            } else if (track.codec == VideoCodec.VP9) {
+                BitReader reader = new BitReader(frame, frame.length);
+                if (reader.readBits(2) != 2) {
+                    return;
+                }
+                int profile = reader.readBits(1) | reader.readBits(1) << 1;
+                if (profile == 3) {
+                    reader.readBits(1);
+                }
+                // show existing frame, then frame type which is zero for key frames
+                if (reader.readBits(1) != 0 || reader.readBits(1) != 0) {
+                    return;
+                }
+                // show frame, error resilient and the sync code
+                reader.readBits(2);
+                if (reader.readBits(8) != 0x49 || reader.readBits(8) != 0x83 || reader.readBits(8) != 0x42) {
+                    return;
+                }
+                if (profile >= 2) {
+                    reader.readBits(1);
+                }
+                if (reader.readBits(3) != 7) {
+                    // color range and, for profiles 1 and 3, subsampling
+                    reader.readBits(profile == 1 || profile == 3 ? 4 : 1);
+                } else if (profile == 1 || profile == 3) {
+                    reader.readBits(1);
+                }
+                track.width = reader.readBits(16) + 1;
+                track.height = reader.readBits(16) + 1;
+            } else if (track.codec == VideoCodec.AV1) {
+                // the sequence header is in the av1C configuration after its four byte header, or at the start of a key frame
+                ByteBuffer obus = track.codecPrivate != null && track.codecPrivate.length > 4 ? ByteBuffer.wrap(track.codecPrivate, 4, track.codecPrivate.length - 4) : ByteBuffer.wrap(frame);
+                while (obus.hasRemaining()) {
+                    OBUInfo obu = OBUParser.getNextObu(obus);
+                    if (obu.obuType == OBUType.SEQUENCE_HEADER) {
+                        byte[] data = new byte[obu.data.remaining()];
+                        obu.data.get(data);
+                        OBPSequenceHeader sequenceHeader = OBUParser.parseSequenceHeader(data, data.length);
+                        track.width = sequenceHeader.maxFrameWidthMinus1 + 1;
+                        track.height = sequenceHeader.maxFrameHeightMinus1 + 1;
+                        break;
+                    }
+                }
+            }
+        } catch (Exception e) {
+            log.debug("Picture size not found for {}", track.codec, e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (channel == null) {
+                return;
+            }
+            if (!headerWritten && !probe.isEmpty()) {
+                writeTracks();
+            }
+            if (headerWritten) {
+                flushCluster();
+                long cuesStart = channel.position();
+                if (!cues.isEmpty()) {
+                    seekPositions[2] = cuesStart - segmentStart;
+                    ByteBuffer buf = ByteBuffer.allocate(64 + cues.size() * 64);
+                    int master = Ebml.startMaster(buf, Ebml.CUES);
+                    for (long[] cue : cues) {
+                        int point = Ebml.startMaster(buf, Ebml.CUE_POINT);
+                        Ebml.putUnsigned(buf, Ebml.CUE_TIME, cue[0]);
+                        int positions = Ebml.startMaster(buf, Ebml.CUE_TRACK_POSITIONS);
+                        Ebml.putUnsigned(buf, Ebml.CUE_TRACK, video != null ? video.number : audio.number);
+                        Ebml.putUnsigned(buf, Ebml.CUE_CLUSTER_POSITION, cue[1]);
+                        Ebml.endMaster(buf, positions);
+                        Ebml.endMaster(buf, point);
+                    }
+                    Ebml.endMaster(buf, master);
+                    buf.flip();
+                    write(buf, cuesStart);
+                }
+                long segmentEnd = channel.size();
+                ByteBuffer patch = ByteBuffer.allocate(8);
+                Ebml.putSize(patch, segmentEnd - segmentStart, 8);
+                write(patch.flip(), segmentSizePosition);
+                write(ByteBuffer.allocate(8).putDouble(lastTimestamp).flip(), durationPosition);
+                ByteBuffer seekHead = ByteBuffer.allocate(SEEK_HEAD_LENGTH);
+                putSeekHead(seekHead);
+                write(seekHead.flip(), segmentStart);
+                log.debug("Closed {} duration: {} cues: {} size: {}", path, lastTimestamp, cues.size(), segmentEnd);
+            }
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Exception closing {}", path, e);
+        } finally {
+            channel = null;
+            cues.clear();
+            lock.unlock();
+        }
+        if (postProcessors != null) {
+            for (IPostProcessor postProcessor : postProcessors) {
+                log.debug("Execute: {}", postProcessor);
+                try {
+                    postProcessor.init(path.toString());
+                    postProcessor.run();
+                } catch (Throwable t) {
+                    log.warn("Exception during post process on: {}", path, t);
+                }
+            }
+            postProcessors.clear();
+        }
+    }
+
+    private void write(ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            position += channel.write(buf, position);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Raw tags are not supported.
+     */
+    @Override
+    public boolean writeTag(byte type, IoBuffer data) throws IOException {
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Raw streams are not supported.
+     */
+    @Override
+    public boolean writeStream(byte[] b) {
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void addPostProcessor(IPostProcessor postProcessor) {
+        if (postProcessors == null) {
+            postProcessors = new LinkedList<>();
+        }
+        postProcessors.add(postProcessor);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getBytesWritten() {
+        lock.lock();
+        try {
+            return channel != null ? channel.position() + cluster.position() : 0L;
+        } catch (IOException e) {
+            return 0L;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public IStreamableFile getFile() {
+        return null;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getOffset() {
+        return 0;
+    }
+
+    /**
+     * Sets how long to wait for the second media type before writing the tracks.
+     *
+     * @param probeDuration
+     *            milliseconds
+     */
+    public void setProbeDuration(int probeDuration) {
+        this.probeDuration = probeDuration;
+    }
+
+    /**
+     * Sets the cluster length of audio only streams; with video a cluster starts at each key frame.
+     *
+     * @param clusterDuration
+     *            milliseconds, at most 32767
+     */
+    public void setClusterDuration(int clusterDuration) {
+        this.clusterDuration = Math.min(clusterDuration, Short.MAX_VALUE);
+    }
+
+    /**
+     * Track being written.
+     */
+    static final class Track {
+
+        final int number;
+
+        final VideoCodec codec;
+
+        final AudioCodec audioCodec;
+
+        byte[] codecPrivate;
+
+        int width, height;
+
+        boolean started;
+
+        Track(int number, VideoCodec codec, AudioCodec audioCodec) {
+            this.number = number;
+            this.codec = codec;
+            this.audioCodec = audioCodec;
+        }
+
+        @Override
+        public String toString() {
+            return "Track [number=" + number + ", codec=" + (codec != null ? codec : audioCodec) + ", width=" + width + ", height=" + height + "]";
+        }
+
+    }
+
+    private static final class Frame {
+
+        final Track track;
+
+        final int timestamp;
+
+        final boolean keyframe;
+
+        final byte[] data;
+
+        Frame(Track track, int timestamp, boolean keyframe, byte[] data) {
+            this.track = track;
+            this.timestamp = timestamp;
+            this.keyframe = keyframe;
+            this.data = data;
+        }
+
+    }
+
+}
@@ -0,0 +1,71 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter backed by a striped {@link LongAdder}, so that threads updating it concurrently do not contend on one cache line.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class Counter {
+
+    private final String name;
+
+    private final String help;
+
+    private final LongAdder value = new LongAdder();
+
+    Counter(String name, String help) {
+        this.name = name;
+        this.help = help;
+    }
+
+    /**
+     * Adds one.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Adds the given amount.
+     *
+     * @param amount
+     *            amount to add
+     */
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Returns the current total.
+     *
+     * @return total
+     */
+    public long get() {
+        return value.sum();
+    }
+
+    /**
+     * Resets the total to zero.
+     */
+    public void reset() {
+        value.reset();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+}
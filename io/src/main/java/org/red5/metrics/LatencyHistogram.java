@@ -0,0 +1,249 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram in the style of HdrHistogram: values in nanoseconds fall into log-linear buckets, 16 per power of two, which keeps the
+ * relative error of any percentile under 7% from 1ns up to about half an hour with under 5KB of buckets per stripe. Recording is a bucket index
+ * computation and one atomic increment on a per-thread stripe of buckets, so concurrent recorders rarely share a cache line; percentiles are
+ * computed when a {@link Snapshot} is taken.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 4;
+
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+
+    // largest power of two tracked exactly, values above it land in the last bucket
+    private static final int MAX_EXPONENT = 40;
+
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 2) * SUB_COUNT;
+
+    private static final int STRIPES = Math.min(8, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+
+    private final String name;
+
+    private final String help;
+
+    private final AtomicLongArray[] stripes;
+
+    private final LongAdder sum = new LongAdder();
+
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyHistogram(String name, String help) {
+        this(name, help, STRIPES);
+    }
+
+    /**
+     * Creates a histogram which is not registered with {@link Metrics}. Fewer stripes save memory where many histograms are kept and each
+     * sees little concurrent recording.
+     *
+     * @param name
+     *            name
+     * @param help
+     *            description
+     * @param stripes
+     *            number of bucket stripes, rounded down to a power of two and capped at the default
+     */
+    public LatencyHistogram(String name, String help, int stripes) {
+        this.name = name;
+        this.help = help;
+        this.stripes = new AtomicLongArray[Integer.highestOneBit(Math.max(1, Math.min(stripes, STRIPES)))];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * Records one value.
+     *
+     * @param nanos
+     *            latency in nanoseconds, negative values are recorded as zero
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        long id = Thread.currentThread().threadId();
+        stripes[(int) (id ^ (id >>> 7)) & (stripes.length - 1)].getAndIncrement(index(value));
+        sum.add(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    /**
+     * Records the time elapsed since the given start.
+     *
+     * @param startNanos
+     *            {@link System#nanoTime()} at the start
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    static int index(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        return (exponent - SUB_BITS + 1) * SUB_COUNT + (int) ((value >>> (exponent - SUB_BITS)) & (SUB_COUNT - 1));
+    }
+
+    /**
+     * Returns the largest value which falls into the given bucket.
+     */
+    static long highestValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lowest = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * Takes a snapshot of the recorded values. Values recorded while the snapshot is taken may or may not be included.
+     *
+     * @return snapshot
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        long count = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = stripe.get(i);
+                counts[i] += c;
+                count += c;
+            }
+        }
+        return new Snapshot(counts, count, sum.sum(), max.get());
+    }
+
+    /**
+     * Clears all recorded values.
+     */
+    public void reset() {
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                stripe.set(i, 0L);
+            }
+        }
+        sum.reset();
+        max.set(0L);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getHelp() {
+        return help;
+    }
+
+    /**
+     * Point in time view of a histogram; times are in microseconds for JMX consoles.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+
+        private final long count;
+
+        private final long sum;
+
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns the value at the given percentile, in nanoseconds.
+         *
+         * @param percentile
+         *            percentile between 0 and 100
+         * @return value, or zero if nothing was recorded
+         */
+        public long valueAt(double percentile) {
+            if (count == 0) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(percentile / 100d * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns the sum of all recorded values, in nanoseconds.
+         *
+         * @return sum
+         */
+        public long getSumNanos() {
+            return sum;
+        }
+
+        public long getMeanMicros() {
+            return count > 0 ? TimeUnit.NANOSECONDS.toMicros(sum / count) : 0L;
+        }
+
+        public long getP50Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(valueAt(50d));
+        }
+
+        public long getP90Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(valueAt(90d));
+        }
+
+        public long getP99Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(valueAt(99d));
+        }
+
+        public long getP999Micros() {
+            return TimeUnit.NANOSECONDS.toMicros(valueAt(99.9d));
+        }
+
+        public long getMaxMicros() {
+            return TimeUnit.NANOSECONDS.toMicros(max);
+        }
+
+        /**
+         * Returns the largest recorded value, in nanoseconds.
+         *
+         * @return max
+         */
+        public long getMaxNanos() {
+            return max;
+        }
+
+    }
+
+}
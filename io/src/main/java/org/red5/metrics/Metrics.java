@@ -0,0 +1,215 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.metrics;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the server wide hot path metrics, exported through the <code>org.red5.server:type=Metrics</code> MXBean and in the
+ * Prometheus text format.
+ * <p>
+ * Recording is switched on with the <code>red5.metrics</code> system property. The flag is a constant, so with metrics off the JIT removes
+ * the guarded recording code entirely; call sites follow this pattern:
+ *
+ * <pre>
+ * long start = Metrics.ENABLED ? System.nanoTime() : 0L;
+ * // work
+ * if (Metrics.ENABLED) {
+ *     Metrics.RTMP_DECODE.recordSince(start);
+ * }
+ * </pre>
+ *
+ * Applications may register their own counters and histograms, which are exported alongside the built in ones.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class Metrics implements MetricsMXBean {
+
+    private static final Logger log = LoggerFactory.getLogger(Metrics.class);
+
+    /**
+     * Whether metrics are recorded, from the <code>red5.metrics</code> system property.
+     */
+    public static final boolean ENABLED = Boolean.getBoolean("red5.metrics");
+
+    private static final ConcurrentSkipListMap<String, Counter> counters = new ConcurrentSkipListMap<>();
+
+    private static final ConcurrentSkipListMap<String, LatencyHistogram> histograms = new ConcurrentSkipListMap<>();
+
+    private static final Metrics instance = new Metrics();
+
+    public static final LatencyHistogram RTMP_DECODE = histogram("red5_rtmp_decode", "Time to decode an RTMP message from its last chunk");
+
+    public static final Counter RTMP_DECODED_MESSAGES = counter("red5_rtmp_decoded_messages", "RTMP messages decoded");
+
+    public static final Counter RTMP_DECODED_BYTES = counter("red5_rtmp_decoded_bytes", "RTMP bytes consumed by the decoder");
+
+    public static final LatencyHistogram RTMP_DISPATCH = histogram("red5_rtmp_dispatch", "Time a received RTMP message waits in its connection's queue");
+
+    public static final LatencyHistogram RTMP_HANDLER = histogram("red5_rtmp_handler", "Time spent handling a received RTMP message");
+
+    public static final LatencyHistogram PIPE_PUSH = histogram("red5_pipe_push", "Time to push a message to every consumer of a pipe");
+
+    public static final Counter PIPE_DELIVERIES = counter("red5_pipe_deliveries", "Messages delivered to pipe consumers");
+
+    public static final LatencyHistogram RTMP_ENCODE = histogram("red5_rtmp_encode", "Time to encode an RTMP message");
+
+    public static final Counter RTMP_ENCODED_MESSAGES = counter("red5_rtmp_encoded_messages", "RTMP messages encoded");
+
+    public static final Counter RTMP_ENCODED_BYTES = counter("red5_rtmp_encoded_bytes", "RTMP bytes produced by the encoder");
+
+    public static final Counter RTMP_EGRESS_AGGREGATES = counter("red5_rtmp_egress_aggregates", "Aggregate messages sent to subscribers");
+
+    public static final Counter RTMP_EGRESS_AGGREGATED_FRAMES = counter("red5_rtmp_egress_aggregated_frames", "Frames sent to subscribers inside aggregate messages");
+
+    public static final LatencyHistogram FLV_WRITE = histogram("red5_flv_write", "Time to write an FLV tag");
+
+    public static final Counter FLV_WRITTEN_BYTES = counter("red5_flv_written_bytes", "Bytes written to FLV files");
+
+    public static final LatencyHistogram RECORDING_REORDER_DEPTH = histogram("red5_recording_reorder_depth", "How far behind the newest timestamp out of order media reached a recording");
+
+    public static final Counter RECORDING_LATE_DROPS = counter("red5_recording_late_drops", "Media dropped by recordings for arriving behind the reordering window");
+
+    static {
+        if (ENABLED) {
+            try {
+                MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+                ObjectName oName = new ObjectName("org.red5.server:type=Metrics");
+                if (!mbs.isRegistered(oName)) {
+                    mbs.registerMBean(new StandardMBean(instance, MetricsMXBean.class, true), oName);
+                }
+            } catch (Exception e) {
+                log.debug("Error on jmx registration", e);
+            }
+        }
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Returns the shared instance.
+     *
+     * @return metrics
+     */
+    public static Metrics getInstance() {
+        return instance;
+    }
+
+    /**
+     * Returns the counter with the given name, creating it if needed. Exported with a <code>_total</code> suffix.
+     *
+     * @param name
+     *            metric name, such as <code>red5_rtmp_decoded_bytes</code>
+     * @param help
+     *            description
+     * @return counter
+     */
+    public static Counter counter(String name, String help) {
+        return counters.computeIfAbsent(name, n -> new Counter(n, help));
+    }
+
+    /**
+     * Returns the latency histogram with the given name, creating it if needed. Exported as a summary in seconds, with a
+     * <code>_seconds</code> suffix.
+     *
+     * @param name
+     *            metric name, such as <code>red5_rtmp_decode</code>
+     * @param help
+     *            description
+     * @return histogram
+     */
+    public static LatencyHistogram histogram(String name, String help) {
+        return histograms.computeIfAbsent(name, n -> new LatencyHistogram(n, help));
+    }
+
+    /**
+     * Writes all metrics in the Prometheus text exposition format, version 0.0.4.
+     *
+     * @param out
+     *            destination
+     * @throws IOException
+     *             if the destination cannot be written
+     */
+    public static void writePrometheus(Appendable out) throws IOException {
+        for (Counter counter : counters.values()) {
+            String name = counter.getName() + "_total";
+            out.append("# HELP ").append(name).append(' ').append(counter.getHelp()).append('\n');
+            out.append("# TYPE ").append(name).append(" counter\n");
+            out.append(name).append(' ').append(Long.toString(counter.get())).append('\n');
+        }
+        for (LatencyHistogram histogram : histograms.values()) {
+            String name = histogram.getName() + "_seconds";
+            LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+            out.append("# HELP ").append(name).append(' ').append(histogram.getHelp()).append('\n');
+            out.append("# TYPE ").append(name).append(" summary\n");
+            for (String quantile : new String[] { "0.5", "0.9", "0.99", "0.999" }) {
+                double seconds = snapshot.valueAt(Double.parseDouble(quantile) * 100d) / 1e9d;
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ").append(Double.toString(seconds)).append('\n');
+            }
+            out.append(name).append("_sum ").append(Double.toString(snapshot.getSumNanos() / 1e9d)).append('\n');
+            out.append(name).append("_count ").append(Long.toString(snapshot.getCount())).append('\n');
+            out.append("# HELP ").append(name).append("_max Largest value of ").append(name).append('\n');
+            out.append("# TYPE ").append(name).append("_max gauge\n");
+            out.append(name).append("_max ").append(Double.toString(snapshot.getMaxNanos() / 1e9d)).append('\n');
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        counters.forEach((name, counter) -> values.put(name, counter.get()));
+        return values;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public Map<String, LatencyHistogram.Snapshot> getHistograms() {
+        Map<String, LatencyHistogram.Snapshot> values = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> values.put(name, histogram.snapshot()));
+        return values;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String scrape() {
+        StringBuilder sb = new StringBuilder(4096);
+        try {
+            writePrometheus(sb);
+        } catch (IOException e) {
+            // not thrown by a StringBuilder
+        }
+        return sb.toString();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetStatistics() {
+        counters.values().forEach(Counter::reset);
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+}
@@ -0,0 +1,55 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.metrics;
+
+import java.util.Map;
+
+import javax.management.MXBean;
+
+/**
+ * Aggregated hot path metrics: counters and latency histograms for the whole server.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+@MXBean
+public interface MetricsMXBean {
+
+    /**
+     * Returns whether metrics are being recorded.
+     *
+     * @return true if enabled
+     */
+    public boolean isEnabled();
+
+    /**
+     * Returns the current value of every counter, by name.
+     *
+     * @return counters
+     */
+    public Map<String, Long> getCounters();
+
+    /**
+     * Returns a snapshot of every latency histogram, by name.
+     *
+     * @return histograms
+     */
+    public Map<String, LatencyHistogram.Snapshot> getHistograms();
+
+    /**
+     * Returns all metrics in the Prometheus text exposition format.
+     *
+     * @return metrics text
+     */
+    public String scrape();
+
+    /**
+     * Resets all counters and histograms.
+     */
+    public void resetStatistics();
+
+}
@@ -0,0 +1,123 @@
+package org.red5.cache.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests for the off-heap block cache used by the VOD file readers.
+ */
+public class BlockCacheTest {
+
+    private static final int BLOCK = 4096;
+
+    private File file;
+
+    private byte[] content;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("blockcache", ".flv");
+        // three and a half blocks
+        content = new byte[BLOCK * 7 / 2];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 + i / BLOCK);
+        }
+        Files.write(file.toPath(), content);
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private void assertRead(BlockCacheChannel channel, long position, int length) throws Exception {
+        ByteBuffer dst = ByteBuffer.allocate(length);
+        int read = channel.read(dst, position);
+        assertEquals(Math.min(length, content.length - position), read);
+        for (int i = 0; i < read; i++) {
+            assertEquals(content[(int) position + i], dst.get(i));
+        }
+    }
+
+    @Test
+    public void testReads() throws Exception {
+        BlockCache cache = new BlockCache(BLOCK * 8, BLOCK);
+        try (SeekableByteChannel channel = cache.openChannel(file)) {
+            assertTrue(channel instanceof BlockCacheChannel);
+            BlockCacheChannel cached = (BlockCacheChannel) channel;
+            assertEquals(content.length, channel.size());
+            // spanning blocks, then the short last block
+            assertRead(cached, 100, BLOCK * 2);
+            assertRead(cached, BLOCK * 3 + 10, BLOCK);
+            assertEquals(-1, cached.read(ByteBuffer.allocate(10), content.length));
+            assertEquals(4, cache.getBlockCount());
+            assertEquals(0, cache.getHits());
+            // sequential reads come from the cache
+            ByteBuffer all = ByteBuffer.allocate(content.length);
+            while (channel.read(all) > 0) {
+            }
+            assertEquals(content.length, channel.position());
+            assertEquals(ByteBuffer.wrap(content), all.flip());
+            assertTrue(cache.getHits() >= 4);
+            assertEquals(content.length, cache.getBytesRead());
+        }
+        // a new version of the file is not served from the old blocks
+        content[0] = 42;
+        Files.write(file.toPath(), content);
+        file.setLastModified(file.lastModified() + 2000L);
+        try (SeekableByteChannel channel = cache.openChannel(file)) {
+            assertRead((BlockCacheChannel) channel, 0, 10);
+        }
+        // both versions are dropped
+        assertEquals(5, cache.invalidate(file.getCanonicalPath()));
+        assertEquals(0, cache.getBlockCount());
+    }
+
+    @Test
+    public void testAdmission() throws Exception {
+        BlockCache cache = new BlockCache(BLOCK * 2, BLOCK);
+        try (SeekableByteChannel channel = cache.openChannel(file)) {
+            BlockCacheChannel cached = (BlockCacheChannel) channel;
+            // two popular blocks
+            for (int i = 0; i < 3; i++) {
+                assertRead(cached, 0, 10);
+                assertRead(cached, BLOCK, 10);
+            }
+            assertEquals(2, cache.getBlockCount());
+            // a single read of another block does not displace them, but is still served
+            assertRead(cached, BLOCK * 2, 10);
+            assertEquals(1, cache.getRejections());
+            assertEquals(0, cache.getEvictions());
+            // once it is read more often than the least recently used block it is admitted
+            for (int i = 0; i < 4; i++) {
+                assertRead(cached, BLOCK * 2, 10);
+            }
+            assertEquals(3, cache.getRejections());
+            assertEquals(1, cache.getEvictions());
+            assertEquals(2, cache.getBlockCount());
+            assertEquals(BLOCK * 2, cache.getAllocatedMemory());
+            assertEquals(5, cache.getHits());
+        }
+        cache.clear();
+        assertEquals(0, cache.getBlockCount());
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        BlockCache cache = new BlockCache(0, BLOCK);
+        try (SeekableByteChannel channel = cache.openChannel(file)) {
+            assertTrue(!(channel instanceof BlockCacheChannel));
+            assertEquals(content.length, channel.size());
+        }
+    }
+
+}
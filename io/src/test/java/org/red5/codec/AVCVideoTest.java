@@ -53,6 +53,38 @@ public class AVCVideoTest {
         log.info("testCanHandleData end\n");
     }
 
+    @Test
+    public void testEnhancedConfigAndCompositionTime() {
+        log.info("testEnhancedConfigAndCompositionTime");
+        AVCVideo video = new AVCVideo();
+        // SequenceStart keyframe with an AVCDecoderConfigurationRecord: high profile, level 3.1, 4 byte NAL lengths
+        IoBuffer config = IoBuffer.allocate(10);
+        config.put((byte) 0x90).putInt(VideoCodec.AVC.getFourcc());
+        config.put(new byte[] { 1, 0x64, 0, 0x1f, (byte) 0xff });
+        config.flip();
+        assertTrue(video.addData(config, 0));
+        assertEquals(0, config.position());
+        assertEquals(100, video.getProfile());
+        assertEquals(31, video.getLevel());
+        assertEquals(4, video.getNalLengthSize());
+        assertEquals(10, video.getDecoderConfiguration().remaining());
+        // CodedFrames keyframe with a negative SI24 composition time offset
+        IoBuffer key = IoBuffer.allocate(16);
+        key.put((byte) 0x91).putInt(VideoCodec.AVC.getFourcc());
+        key.put((byte) 0xff).put((byte) 0xff).put((byte) 0xfe);
+        key.putInt(0x65112233);
+        key.flip();
+        assertTrue(video.addData(key, 40));
+        assertEquals(0, key.position());
+        FrameData[] keyframes = video.getKeyframes();
+        assertEquals(1, keyframes.length);
+        assertEquals(-2, keyframes[0].getCompTimeOffset());
+        IoBuffer frame = keyframes[0].getFrame();
+        assertEquals(key.remaining(), frame.remaining());
+        assertEquals(0x65112233, frame.getInt(8));
+        log.info("testEnhancedConfigAndCompositionTime end\n");
+    }
+
     @Test
     public void testSimpleFlow() {
         log.info("testSimpleFlow");
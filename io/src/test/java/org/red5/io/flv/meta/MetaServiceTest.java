@@ -0,0 +1,170 @@
+package org.red5.io.flv.meta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.amf.Input;
+import org.red5.io.amf.Output;
+import org.red5.io.flv.impl.FLVReader;
+import org.red5.io.object.Deserializer;
+import org.red5.io.object.Serializer;
+
+/**
+ * Tests for in place metadata updates and sidecar cue points.
+ */
+public class MetaServiceTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("meta", ".flv");
+    }
+
+    @After
+    public void tearDown() {
+        MetaCueFile.delete(file);
+        file.delete();
+    }
+
+    /**
+     * Writes an flv with an onMetaData tag and ten video tags 40ms apart.
+     */
+    private void writeFlv(int padding) throws Exception {
+        IoBuffer buf = IoBuffer.allocate(4096);
+        buf.setAutoExpand(true);
+        buf.put(new byte[] { 'F', 'L', 'V', 1, 1 }).putInt(9).putInt(0);
+        Map<String, Object> params = new HashMap<>();
+        params.put("duration", 0.4d);
+        params.put("videocodecid", 2d);
+        if (padding > 0) {
+            params.put(MetaService.PADDING, " ".repeat(padding));
+        }
+        IoBuffer meta = IoBuffer.allocate(256);
+        meta.setAutoExpand(true);
+        Output out = new Output(meta);
+        Serializer.serialize(out, "onMetaData");
+        Serializer.serialize(out, params);
+        meta.flip();
+        putTag(buf, IoConstants.TYPE_METADATA, 0, meta);
+        for (int i = 0; i < 10; i++) {
+            putTag(buf, IoConstants.TYPE_VIDEO, i * 40, IoBuffer.wrap(new byte[] { 0x12, (byte) i, 0, 0 }));
+        }
+        buf.flip();
+        byte[] bytes = new byte[buf.limit()];
+        buf.get(bytes);
+        Files.write(file.toPath(), bytes);
+    }
+
+    private static void putTag(IoBuffer buf, byte type, int timestamp, IoBuffer body) {
+        int size = body.remaining();
+        buf.put(type);
+        buf.put((byte) (size >> 16)).put((byte) (size >> 8)).put((byte) size);
+        buf.put((byte) (timestamp >> 16)).put((byte) (timestamp >> 8)).put((byte) timestamp).put((byte) (timestamp >> 24));
+        buf.put(new byte[3]);
+        buf.put(body);
+        buf.putInt(11 + size);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> readMetaData(ITag tag) {
+        Input input = new Input(tag.getBody());
+        assertEquals("onMetaData", Deserializer.deserialize(input, String.class));
+        return Deserializer.deserialize(input, Map.class);
+    }
+
+    private static MetaData<?, ?> createMeta(double... cueTimes) {
+        MetaData<?, ?> meta = new MetaData<Object, Object>();
+        meta.setWidth(320);
+        meta.setHeight(240);
+        meta.setDuration(99);
+        if (cueTimes.length > 0) {
+            IMetaCue[] cues = new IMetaCue[cueTimes.length];
+            for (int i = 0; i < cues.length; i++) {
+                cues[i] = new MetaCue<Object, Object>();
+                cues[i].setName("cue_" + i);
+                cues[i].setType(ICueType.EVENT);
+                cues[i].setTime(cueTimes[i]);
+            }
+            meta.setMetaCue(cues);
+        }
+        return meta;
+    }
+
+    @Test
+    public void testUpdateInPlace() throws Exception {
+        writeFlv(1024);
+        long length = file.length();
+        MetaService service = new MetaService(file);
+        assertTrue(service.update(createMeta()));
+        assertEquals(length, file.length());
+        FLVReader reader = new FLVReader(file);
+        Map<String, Object> params = readMetaData(reader.readTag());
+        assertEquals(320, ((Number) params.get("width")).intValue());
+        // the recorded duration is kept
+        assertEquals(0.4d, ((Number) params.get("duration")).doubleValue(), 0d);
+        assertTrue(((String) params.get(MetaService.PADDING)).length() < 1024);
+        int count = 0;
+        while (reader.hasMoreTags()) {
+            assertEquals(IoConstants.TYPE_VIDEO, reader.readTag().getDataType());
+            count++;
+        }
+        reader.close();
+        assertEquals(10, count);
+    }
+
+    @Test
+    public void testNoRoom() throws Exception {
+        writeFlv(0);
+        MetaService service = new MetaService(file);
+        assertFalse(service.update(createMeta()));
+    }
+
+    @Test
+    public void testSidecarCues() throws Exception {
+        writeFlv(1024);
+        long length = file.length();
+        MetaService service = new MetaService(file);
+        service.write(createMeta(0.05, 0.2));
+        assertEquals(length, file.length());
+        assertTrue(MetaCueFile.getFile(file).exists());
+        // cues added later are merged, sorted by time
+        MetaCueFile.write(file, createMeta(0.1).getMetaCue());
+        IMetaCue[] cues = service.readMetaCue();
+        assertEquals(3, cues.length);
+        assertEquals(0.1, cues[1].getTime(), 0d);
+        FLVReader reader = new FLVReader(file);
+        List<String> events = new ArrayList<>();
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            if (tag.getDataType() == IoConstants.TYPE_METADATA) {
+                Input input = new Input(tag.getBody());
+                String name = Deserializer.deserialize(input, String.class);
+                if ("onCuePoint".equals(name)) {
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> cue = Deserializer.deserialize(input, Map.class);
+                    events.add(cue.get("name") + "@" + tag.getTimestamp());
+                }
+            } else {
+                events.add(String.valueOf(tag.getTimestamp()));
+            }
+        }
+        reader.close();
+        assertEquals("[0, 40, cue_0@50, 80, cue_0@100, 120, 160, cue_1@200, 200, 240, 280, 320, 360]", events.toString());
+    }
+
+}
@@ -1,14 +1,18 @@
 package org.red5.io.obu;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.red5.io.obu.OBPConstants.OBU_FRAME_TYPE_BITSHIFT;
 import static org.red5.io.obu.OBPConstants.OBU_FRAME_TYPE_MASK;
 
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 import org.red5.io.rtp.AV1Packetizer;
@@ -199,4 +203,56 @@ public class OBUParserTest {
         */
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testGetNextObuSlices() throws Exception {
+        // temporal unit: temporal delimiter followed by a frame, both with size fields
+        byte[] frame = new byte[300];
+        new Random(7).nextBytes(frame);
+        ByteBuffer tu = ByteBuffer.allocate(2 + 3 + frame.length);
+        tu.put((byte) 0x12).put((byte) 0);
+        tu.put((byte) 0x32).put((byte) 0xac).put((byte) 0x02).put(frame);
+        tu.flip();
+        OBUInfo td = OBUParser.getNextObu(tu);
+        assertEquals(OBUType.TEMPORAL_DELIMITER, td.obuType);
+        assertEquals(0, td.size);
+        OBUInfo info = OBUParser.getNextObu(tu);
+        assertEquals(OBUType.FRAME, info.obuType);
+        assertEquals(frame.length, info.size);
+        // the payload is a view of the temporal unit, not a copy
+        assertSame(tu.array(), info.data.array());
+        assertEquals(ByteBuffer.wrap(frame), info.data);
+        assertFalse(tu.hasRemaining());
+    }
+
+    @Test
+    public void testSlicePacketizeRoundTrip() throws Exception {
+        // frame OBU without size field, large enough to fragment
+        byte[] obu = new byte[4000];
+        new Random(11).nextBytes(obu);
+        obu[0] = (byte) (OBUType.FRAME.getValue() << OBU_FRAME_TYPE_BITSHIFT);
+        List<OBUInfo> obuInfos = List.of(new OBUInfo(OBUType.FRAME, ByteBuffer.wrap(obu)));
+        List<ByteBuffer> payloads = new ArrayList<>();
+        AV1Packetizer packetizer = new AV1Packetizer();
+        int count = packetizer.packetize(obuInfos, 1176, () -> ByteBuffer.allocate(1176), payloads::add);
+        assertEquals(4, count);
+        assertEquals(count, payloads.size());
+        for (ByteBuffer payload : payloads) {
+            assertTrue(payload.remaining() <= 1176);
+        }
+        // continuation flags
+        assertFalse(OBUParser.startsWithFragment(payloads.get(0).get(0)));
+        assertTrue(OBUParser.endsWithFragment(payloads.get(0).get(0)));
+        assertTrue(OBUParser.startsWithFragment(payloads.get(3).get(0)));
+        assertFalse(OBUParser.endsWithFragment(payloads.get(3).get(0)));
+        // reassemble
+        AV1Packetizer depacketizer = new AV1Packetizer();
+        for (ByteBuffer payload : payloads) {
+            assertEquals(1, depacketizer.depacketize(payload));
+        }
+        List<ByteBuffer> elements = depacketizer.getOBUElementBuffers();
+        assertEquals(1, elements.size());
+        assertEquals(ByteBuffer.wrap(obu), elements.get(0));
+        assertArrayEquals(obu, depacketizer.getOBUElements().get(0));
+    }
+
+}
@@ -0,0 +1,247 @@
+package org.red5.io.sctp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.sctp.IAssociationControl.State;
+
+/**
+ * Loopback tests for the selector based SCTP transport.
+ */
+public class SctpTransportTest {
+
+    private SctpTransport transport;
+
+    private SctpEndpoint server;
+
+    private SctpEndpoint client;
+
+    private final List<byte[]> messages = new ArrayList<>();
+
+    private final List<Integer> streams = new ArrayList<>();
+
+    private CountDownLatch received;
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        transport = new SctpTransport("sctp-test");
+        transport.setRtoInitial(200);
+        transport.setRtoMin(50);
+        transport.start();
+        InetSocketAddress any = new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+        server = transport.bind(any, new ISctpHandler() {
+
+            @Override
+            public void messageReceived(SctpAssociation association, int streamId, int ppid, ByteBuffer message) {
+                byte[] copy = new byte[message.remaining()];
+                message.get(copy);
+                messages.add(copy);
+                streams.add(streamId);
+                received.countDown();
+            }
+
+            @Override
+            public void associationClosed(SctpAssociation association) {
+                closed.countDown();
+            }
+
+        });
+        client = transport.bind(any, (association, streamId, ppid, message) -> {
+        });
+    }
+
+    @After
+    public void tearDown() {
+        transport.stop();
+    }
+
+    @Test
+    public void testTransfer() throws Exception {
+        SctpAssociation association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        assertEquals(State.ESTABLISHED, association.getState());
+        List<byte[]> expected = send(association, 500);
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        assertMessages(expected);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(i % 4, streams.get(i).intValue());
+        }
+        assertEquals(0, association.getRetransmissions());
+    }
+
+    @Test
+    public void testLossRecovery() throws Exception {
+        SctpAssociation association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        AtomicInteger packets = new AtomicInteger();
+        AtomicInteger dropped = new AtomicInteger();
+        client.sendFilter = packet -> {
+            // drop every fifth packet carrying data, forty in all
+            if (packet.get(SctpTransport.COMMON_HEADER) == SctpTransport.DATA && packets.incrementAndGet() % 5 == 0 && dropped.get() < 40) {
+                dropped.incrementAndGet();
+                return false;
+            }
+            return true;
+        };
+        List<byte[]> expected = send(association, 400);
+        assertTrue(received.await(30, TimeUnit.SECONDS));
+        assertMessages(expected);
+        assertEquals(40, dropped.get());
+        assertTrue(association.getRetransmissions() >= 40);
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        SctpAssociation association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        association.close();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertFalse(association.send(0, 51, ByteBuffer.wrap(new byte[1]), false));
+    }
+
+    @Test
+    public void testHeartbeat() throws Exception {
+        transport.setHeartbeatInterval(50);
+        SctpAssociation association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        // more heartbeats than may go unanswered, so the acknowledgements were taken
+        long deadline = System.currentTimeMillis() + 10000;
+        while (association.getHeartbeats() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(association.getHeartbeats() >= 8);
+        assertEquals(State.ESTABLISHED, association.getState());
+    }
+
+    @Test
+    public void testPeerUnreachable() throws Exception {
+        transport.setHeartbeatInterval(50);
+        transport.setRtoMax(400);
+        SctpAssociation association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        // the path goes silent both ways
+        client.sendFilter = packet -> false;
+        server.sendFilter = packet -> false;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (association.getState() != State.CLOSED && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(State.CLOSED, association.getState());
+        assertTrue(association.getHeartbeats() > 5);
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInvalidStream() throws Exception {
+        SctpAssociation association = client.connect(server.getLocalAddress()).get(5, TimeUnit.SECONDS);
+        AtomicInteger errors = new AtomicInteger();
+        server.sendFilter = packet -> {
+            if (packet.get(SctpTransport.COMMON_HEADER) == SctpTransport.ERROR) {
+                errors.incrementAndGet();
+            }
+            return true;
+        };
+        // chunks for stream 3 are moved to one the server never offered
+        client.sendFilter = packet -> {
+            boolean changed = false;
+            int offset = SctpTransport.COMMON_HEADER;
+            while (offset + 4 <= packet.limit()) {
+                int chunkLength = packet.getShort(offset + 2) & 0xffff;
+                if (packet.get(offset) == SctpTransport.DATA && packet.getShort(offset + 8) == 3) {
+                    packet.putShort(offset + 8, (short) 2000);
+                    changed = true;
+                }
+                offset += (chunkLength + 3) & ~3;
+            }
+            if (changed) {
+                CRC32C crc = new CRC32C();
+                packet.putInt(8, 0);
+                crc.update(packet.duplicate());
+                packet.putInt(8, Integer.reverseBytes((int) crc.getValue()));
+            }
+            return true;
+        };
+        received = new CountDownLatch(30);
+        for (int i = 0; i < 40; i++) {
+            assertTrue(association.send(i % 4, 51, ByteBuffer.wrap(new byte[100]), false));
+        }
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (errors.get() < 10 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, errors.get());
+        assertFalse(streams.contains(3));
+        assertFalse(streams.contains(2000));
+        // acknowledged, so nothing was sent again
+        assertEquals(0, association.getRetransmissions());
+        assertEquals(State.ESTABLISHED, association.getState());
+    }
+
+    @Test
+    public void testTimerWheel() {
+        TimerWheel wheel = new TimerWheel(10, 8);
+        List<String> fired = new ArrayList<>();
+        TimerWheel.Timer a = timer(fired, "a");
+        TimerWheel.Timer b = timer(fired, "b");
+        TimerWheel.Timer c = timer(fired, "c");
+        long start = System.nanoTime();
+        wheel.schedule(a, 20);
+        wheel.schedule(b, 200);
+        wheel.schedule(c, 30);
+        wheel.cancel(c);
+        assertEquals(2, wheel.size());
+        wheel.advance(start + TimeUnit.MILLISECONDS.toNanos(100));
+        assertEquals(List.of("a"), fired);
+        // beyond one revolution of the wheel
+        wheel.advance(start + TimeUnit.MILLISECONDS.toNanos(300));
+        assertEquals(List.of("a", "b"), fired);
+        assertEquals(0, wheel.size());
+        assertEquals(0, wheel.sleepMillis());
+    }
+
+    private static TimerWheel.Timer timer(List<String> fired, String name) {
+        return new TimerWheel.Timer() {
+            @Override
+            void expire() {
+                fired.add(name);
+            }
+        };
+    }
+
+    private List<byte[]> send(SctpAssociation association, int count) {
+        received = new CountDownLatch(count);
+        List<byte[]> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // small, single packet and fragmented messages
+            int size = i % 10 == 0 ? 5000 + i : 1 + (i * 37) % 1100;
+            byte[] message = new byte[size];
+            for (int j = 0; j < size; j++) {
+                message[j] = (byte) (i + j);
+            }
+            expected.add(message);
+            assertTrue(association.send(i % 4, 51, ByteBuffer.wrap(message), false));
+        }
+        return expected;
+    }
+
+    private void assertMessages(List<byte[]> expected) {
+        assertEquals(expected.size(), messages.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals("message " + i, expected.get(i), messages.get(i));
+        }
+    }
+
+}
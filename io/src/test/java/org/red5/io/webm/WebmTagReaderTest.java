@@ -0,0 +1,263 @@
+package org.red5.io.webm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+
+/**
+ * Tests for reading and seeking in WebM files.
+ */
+public class WebmTagReaderTest {
+
+    private static final byte[] OPUS_HEAD = { 'O', 'p', 'u', 's', 'H', 'e', 'a', 'd', 1, 2, 0, 0, (byte) 0x80, (byte) 0xbb, 0, 0, 0, 0, 0 };
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("test", ".webm");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static byte[] element(int id, byte[]... children) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int length = (32 - Integer.numberOfLeadingZeros(id) + 7) / 8;
+        for (int i = length - 1; i >= 0; i--) {
+            out.write(id >> (i * 8));
+        }
+        int size = 0;
+        for (byte[] child : children) {
+            size += child.length;
+        }
+        // sizes are always written in eight bytes, which keeps offsets easy to work out
+        out.write(0x01);
+        for (int i = 6; i >= 0; i--) {
+            out.write((int) ((long) size >> (i * 8)));
+        }
+        for (byte[] child : children) {
+            out.write(child, 0, child.length);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] unknownSize(int id, byte[]... children) {
+        byte[] known = element(id, children);
+        known[4] = 0x01;
+        for (int i = 5; i < 12; i++) {
+            known[i] = (byte) 0xff;
+        }
+        return known;
+    }
+
+    private static byte[] uint(int id, long value) {
+        return element(id, ByteBuffer.allocate(8).putLong(value).array());
+    }
+
+    private static byte[] string(int id, String value) {
+        return element(id, value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static byte[] concat(List<byte[]> parts) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        parts.forEach(part -> out.write(part, 0, part.length));
+        return out.toByteArray();
+    }
+
+    private static byte[] block(int id, int track, int relative, boolean keyframe, byte... frame) {
+        ByteBuffer body = ByteBuffer.allocate(4 + frame.length);
+        body.put((byte) (0x80 | track)).putShort((short) relative).put((byte) (keyframe ? 0x80 : 0)).put(frame);
+        return element(id, body.array());
+    }
+
+    /**
+     * Five clusters a second apart, each with ten video frames, the first a key frame, and ten audio frames.
+     */
+    private static List<byte[]> clusters(boolean unknownSize) {
+        List<byte[]> clusters = new ArrayList<>();
+        for (int c = 0; c < 5; c++) {
+            List<byte[]> children = new ArrayList<>();
+            children.add(uint(Ebml.TIMECODE, c * 1000));
+            for (int f = 0; f < 10; f++) {
+                children.add(block(Ebml.SIMPLE_BLOCK, 1, f * 100, f == 0, (byte) c, (byte) f));
+                children.add(block(Ebml.SIMPLE_BLOCK, 2, f * 100 + 50, true, (byte) 0xfc, (byte) f));
+            }
+            byte[] content = concat(children);
+            clusters.add(unknownSize ? unknownSize(Ebml.CLUSTER, content) : element(Ebml.CLUSTER, content));
+        }
+        return clusters;
+    }
+
+    private static byte[] tracks() {
+        byte[] video = element(Ebml.TRACK_ENTRY, uint(Ebml.TRACK_NUMBER, 1), uint(Ebml.TRACK_TYPE, 1), string(Ebml.CODEC_ID, "V_VP9"), element(Ebml.VIDEO, uint(Ebml.PIXEL_WIDTH, 320), uint(Ebml.PIXEL_HEIGHT, 240)));
+        byte[] audio = element(Ebml.TRACK_ENTRY, uint(Ebml.TRACK_NUMBER, 2), uint(Ebml.TRACK_TYPE, 2), string(Ebml.CODEC_ID, "A_OPUS"), element(Ebml.CODEC_PRIVATE, OPUS_HEAD), element(Ebml.AUDIO, element(Ebml.SAMPLING_FREQUENCY, ByteBuffer.allocate(8).putDouble(48000d).array()), uint(Ebml.CHANNELS, 2)));
+        return element(Ebml.TRACKS, video, audio);
+    }
+
+    private void write(byte[] segment) throws Exception {
+        byte[] header = element(Ebml.EBML, string(Ebml.DOC_TYPE, "webm"));
+        Files.write(file.toPath(), concat(List.of(header, segment)));
+    }
+
+    /**
+     * Writes a file with a seek head, duration and cues, as written by most muxers.
+     */
+    private long[] writeWithCues() throws Exception {
+        byte[] info = element(Ebml.INFO, uint(Ebml.TIMECODE_SCALE, 1000000L), element(Ebml.DURATION, ByteBuffer.allocate(8).putDouble(5000d).array()));
+        byte[] tracks = tracks();
+        // the seek head has a fixed size, so its own length can be used before the cues position is known
+        int seekHeadLength = element(Ebml.SEEK_HEAD, element(Ebml.SEEK, uint(Ebml.SEEK_ID, Ebml.CUES), uint(Ebml.SEEK_POSITION, 0))).length;
+        List<byte[]> clusters = clusters(false);
+        long[] positions = new long[clusters.size()];
+        long offset = seekHeadLength + info.length + tracks.length;
+        List<byte[]> cuePoints = new ArrayList<>();
+        for (int c = 0; c < clusters.size(); c++) {
+            positions[c] = offset;
+            cuePoints.add(element(Ebml.CUE_POINT, uint(Ebml.CUE_TIME, c * 1000), element(Ebml.CUE_TRACK_POSITIONS, uint(Ebml.CUE_TRACK, 1), uint(Ebml.CUE_CLUSTER_POSITION, offset))));
+            offset += clusters.get(c).length;
+        }
+        byte[] seekHead = element(Ebml.SEEK_HEAD, element(Ebml.SEEK, uint(Ebml.SEEK_ID, Ebml.CUES), uint(Ebml.SEEK_POSITION, offset)));
+        List<byte[]> parts = new ArrayList<>(List.of(seekHead, info, tracks));
+        parts.addAll(clusters);
+        parts.add(element(Ebml.CUES, concat(cuePoints)));
+        byte[] header = element(Ebml.EBML, string(Ebml.DOC_TYPE, "webm"));
+        // segment data starts after the ebml header and the segment id and size
+        long segmentStart = header.length + 12;
+        for (int c = 0; c < positions.length; c++) {
+            positions[c] += segmentStart;
+        }
+        write(element(Ebml.SEGMENT, concat(parts)));
+        return positions;
+    }
+
+    private static int header(ITag tag) {
+        return tag.getBody().get(0) & 0xff;
+    }
+
+    private static String fourcc(ITag tag) {
+        IoBuffer body = tag.getBody();
+        byte[] fourcc = new byte[4];
+        body.position(1);
+        body.get(fourcc);
+        body.rewind();
+        return new String(fourcc, StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        writeWithCues();
+        WebmTagReader reader = new WebmTagReader(file);
+        assertTrue(reader.hasVideo());
+        assertEquals(5000L, reader.getDuration());
+        assertEquals(IoConstants.TYPE_METADATA, reader.readTag().getDataType());
+        // opus sequence start carries the OpusHead
+        ITag config = reader.readTag();
+        assertEquals(IoConstants.TYPE_AUDIO, config.getDataType());
+        assertEquals(0x90, header(config));
+        assertEquals("Opus", fourcc(config));
+        assertEquals(5 + OPUS_HEAD.length, config.getBodySize());
+        int video = 0, audio = 0, keyframes = 0, last = 0;
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            assertTrue(tag.getTimestamp() >= last);
+            last = tag.getTimestamp();
+            if (tag.getDataType() == IoConstants.TYPE_VIDEO) {
+                assertEquals("vp09", fourcc(tag));
+                if (header(tag) == 0x91) {
+                    keyframes++;
+                } else {
+                    assertEquals(0xa1, header(tag));
+                }
+                video++;
+            } else {
+                assertEquals(IoConstants.TYPE_AUDIO, tag.getDataType());
+                assertEquals(0x91, header(tag));
+                audio++;
+            }
+        }
+        reader.close();
+        assertEquals(50, video);
+        assertEquals(50, audio);
+        assertEquals(5, keyframes);
+        assertEquals(4950, last);
+    }
+
+    @Test
+    public void testSeekWithCues() throws Exception {
+        long[] positions = writeWithCues();
+        WebmTagReader reader = new WebmTagReader(file);
+        KeyFrameMeta meta = reader.analyzeKeyFrames();
+        assertFalse(meta.audioOnly);
+        assertEquals(5000L, meta.duration);
+        assertArrayEquals(new int[] { 0, 1000, 2000, 3000, 4000 }, meta.timestamps);
+        assertArrayEquals(positions, meta.positions);
+        assertEquals(IoConstants.TYPE_METADATA, reader.readTag().getDataType());
+        reader.readTag();
+        reader.position(meta.positions[2]);
+        // decoder configuration is sent again at the seek point
+        ITag tag = reader.readTag();
+        assertEquals(IoConstants.TYPE_AUDIO, tag.getDataType());
+        assertEquals(0x90, header(tag));
+        assertEquals(2000, tag.getTimestamp());
+        tag = reader.readTag();
+        assertEquals(IoConstants.TYPE_VIDEO, tag.getDataType());
+        assertEquals(0x91, header(tag));
+        assertEquals(2000, tag.getTimestamp());
+        assertEquals(2, tag.getBody().get(5));
+        reader.position(Long.MAX_VALUE);
+        assertFalse(reader.hasMoreTags());
+        reader.close();
+    }
+
+    @Test
+    public void testClusterScan() throws Exception {
+        // live style file: clusters of unknown size, no cues and no duration
+        List<byte[]> parts = new ArrayList<>();
+        parts.add(element(Ebml.INFO, uint(Ebml.TIMECODE_SCALE, 1000000L)));
+        parts.add(tracks());
+        parts.addAll(clusters(true));
+        // a final cluster with three ebml laced audio frames of 3, 5 and 4 bytes
+        byte[] laced = { (byte) 0x82, 0, 0, 0x06, 2, (byte) 0x83, (byte) 0xc1, 1, 1, 1, 2, 2, 2, 2, 2, 3, 3, 3, 3 };
+        parts.add(unknownSize(Ebml.CLUSTER, uint(Ebml.TIMECODE, 5000), element(Ebml.SIMPLE_BLOCK, laced)));
+        write(unknownSize(Ebml.SEGMENT, concat(parts)));
+        WebmTagReader reader = new WebmTagReader(file);
+        assertEquals(0L, reader.getDuration());
+        KeyFrameMeta meta = reader.analyzeKeyFrames();
+        assertArrayEquals(new int[] { 0, 1000, 2000, 3000, 4000 }, meta.timestamps);
+        assertEquals(5000L, meta.duration);
+        assertEquals(5000L, reader.getDuration());
+        reader.position(meta.positions[4]);
+        List<Integer> sizes = new ArrayList<>();
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            assertNotNull(tag.getBody());
+            if (tag.getTimestamp() == 5000) {
+                sizes.add(tag.getBodySize() - 5);
+            }
+        }
+        reader.close();
+        assertEquals(List.of(3, 5, 4), sizes);
+    }
+
+}
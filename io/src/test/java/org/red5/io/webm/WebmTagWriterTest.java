@@ -0,0 +1,140 @@
+package org.red5.io.webm;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.codec.AudioCodec;
+import org.red5.codec.VideoCodec;
+import org.red5.io.ITag;
+import org.red5.io.IoConstants;
+import org.red5.io.flv.IKeyFrameDataAnalyzer.KeyFrameMeta;
+import org.red5.io.flv.impl.Tag;
+
+/**
+ * Tests for recording enhanced RTMP tags to WebM, read back with {@link WebmTagReader}.
+ */
+public class WebmTagWriterTest {
+
+    // vp8 key frame header for 320x240
+    private static final byte[] VP8_KEY = { 0x10, 0x02, 0x00, (byte) 0x9d, 0x01, 0x2a, 0x40, 0x01, (byte) 0xf0, 0x00 };
+
+    private File file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("record", ".webm");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static ITag video(int timestamp, boolean keyframe, int packetType, byte... data) {
+        IoBuffer body = IoBuffer.allocate(5 + data.length);
+        body.put((byte) (0x80 | (keyframe ? 0x10 : 0x20) | packetType)).putInt(VideoCodec.VP8.getFourcc()).put(data).flip();
+        return new Tag(IoConstants.TYPE_VIDEO, timestamp, body.limit(), body, 0);
+    }
+
+    private static ITag audio(int timestamp, int packetType, byte... data) {
+        IoBuffer body = IoBuffer.allocate(5 + data.length);
+        body.put((byte) (0x90 | packetType)).putInt(AudioCodec.OPUS.getFourcc()).put(data).flip();
+        return new Tag(IoConstants.TYPE_AUDIO, timestamp, body.limit(), body, 0);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        WebmTagWriter writer = new WebmTagWriter(file.toPath());
+        byte[] opusHead = { 'O', 'p', 'u', 's', 'H', 'e', 'a', 'd', 1, 1, 0x38, 0x01, (byte) 0x80, (byte) 0xbb, 0, 0, 0, 0, 0 };
+        assertTrue(writer.writeTag(audio(0, 0, opusHead)));
+        // inter frames before the first key frame are dropped
+        assertTrue(writer.writeTag(video(0, false, 1, (byte) 1)));
+        for (int t = 0; t < 6000; t += 20) {
+            if (t % 100 == 0) {
+                boolean keyframe = t % 2000 == 0;
+                assertTrue(writer.writeTag(video(t, keyframe, 1, keyframe ? VP8_KEY : new byte[] { 1, (byte) (t / 100) })));
+            }
+            assertTrue(writer.writeTag(audio(t, 1, (byte) 0xfc, (byte) t)));
+        }
+        // not an enhanced tag
+        assertFalse(writer.writeTag(new Tag(IoConstants.TYPE_VIDEO, 6000, 5, IoBuffer.wrap(new byte[] { 0x17, 0, 0, 0, 0 }), 0)));
+        writer.close();
+
+        WebmTagReader reader = new WebmTagReader(file);
+        assertEquals(5980L, reader.getDuration());
+        KeyFrameMeta meta = reader.analyzeKeyFrames();
+        assertArrayEquals(new int[] { 0, 2000, 4000 }, meta.timestamps);
+        assertEquals(IoConstants.TYPE_METADATA, reader.readTag().getDataType());
+        ITag config = reader.readTag();
+        assertEquals(IoConstants.TYPE_AUDIO, config.getDataType());
+        assertEquals(5 + opusHead.length, config.getBodySize());
+        int video = 0, audio = 0;
+        List<Integer> keyframes = new ArrayList<>();
+        while (reader.hasMoreTags()) {
+            ITag tag = reader.readTag();
+            if (tag.getDataType() == IoConstants.TYPE_VIDEO) {
+                if ((tag.getBody().get(0) & 0x70) == 0x10) {
+                    keyframes.add(tag.getTimestamp());
+                }
+                video++;
+            } else {
+                assertEquals(7, tag.getBodySize());
+                audio++;
+            }
+        }
+        reader.close();
+        assertEquals(60, video);
+        assertEquals(300, audio);
+        assertEquals(List.of(0, 2000, 4000), keyframes);
+    }
+
+    @Test
+    public void testDimensions() throws Exception {
+        WebmTagWriter.Track track = new WebmTagWriter.Track(1, VideoCodec.VP8, null);
+        WebmTagWriter.setDimensions(track, VP8_KEY);
+        assertEquals(320, track.width);
+        assertEquals(240, track.height);
+        // vp9 profile 0 key frame, 8 bit 4:2:0, 640x360
+        track = new WebmTagWriter.Track(1, VideoCodec.VP9, null);
+        WebmTagWriter.setDimensions(track, new byte[] { (byte) 0x82, 0x49, (byte) 0x83, 0x42, 0x00, 0x27, (byte) 0xf0, 0x16, 0x70 });
+        assertEquals(640, track.width);
+        assertEquals(360, track.height);
+    }
+
+    @Test
+    public void testAudioOnlyUnfinished() throws Exception {
+        WebmTagWriter writer = new WebmTagWriter(file.toPath());
+        writer.setClusterDuration(1000);
+        for (int t = 0; t < 3000; t += 20) {
+            writer.writeTag(audio(t, 1, (byte) 0xfc));
+        }
+        // the header is out once the probe duration passed, and the clusters before the open one are on disk
+        assertTrue(file.length() > 0);
+        WebmTagReader reader = new WebmTagReader(file);
+        int count = 0;
+        while (reader.hasMoreTags()) {
+            if (reader.readTag().getDataType() == IoConstants.TYPE_AUDIO) {
+                count++;
+            }
+        }
+        reader.close();
+        // opus head synthesized for the stream, then the frames of the two closed clusters
+        assertEquals(1 + 100, count);
+        writer.close();
+        reader = new WebmTagReader(file);
+        assertArrayEquals(new int[] { 0, 1000, 2000 }, reader.analyzeKeyFrames().timestamps);
+        assertTrue(reader.analyzeKeyFrames().audioOnly);
+        reader.close();
+    }
+
+}
@@ -0,0 +1,63 @@
+package org.red5.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests for the log-linear latency histogram and its Prometheus output.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long highest = LatencyHistogram.highestValue(i);
+            // buckets are contiguous and every value maps back to its own bucket
+            assertEquals(i, LatencyHistogram.index(previous + 1));
+            assertEquals(i, LatencyHistogram.index(highest));
+            previous = highest;
+        }
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram("test", "test");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = Thread.ofPlatform().start(() -> {
+                for (long v = 1; v <= 10000; v++) {
+                    histogram.record(v * 1000L);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(40000, snapshot.getCount());
+        assertEquals(10000000L, snapshot.getMaxNanos());
+        // within the bucket resolution of the exact values
+        assertEquals(5000000d, snapshot.valueAt(50d), 5000000d * 0.07d);
+        assertEquals(9900000d, snapshot.valueAt(99d), 9900000d * 0.07d);
+        assertEquals(5000, snapshot.getMeanMicros(), 1);
+        histogram.reset();
+        assertEquals(0, histogram.snapshot().getCount());
+        assertEquals(0, histogram.snapshot().valueAt(50d));
+    }
+
+    @Test
+    public void testPrometheus() throws Exception {
+        Metrics.counter("red5_test_events", "Test events").add(3);
+        Metrics.histogram("red5_test_latency", "Test latency").record(2000000L);
+        String text = Metrics.getInstance().scrape();
+        assertTrue(text.contains("# TYPE red5_test_events_total counter\nred5_test_events_total 3\n"));
+        assertTrue(text.contains("# TYPE red5_test_latency_seconds summary\n"));
+        assertTrue(text.contains("red5_test_latency_seconds_count 1\n"));
+        assertTrue(text.contains("red5_test_latency_seconds_max 0.002\n"));
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.hls;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.red5.server.api.scope.IBroadcastScope;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IClientBroadcastStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-memory store of the HLS streams being served. A stream is segmented from the first request for it until nobody requested it for the
+ * idle timeout. Each stream keeps a rolling window of segments and all of them share a memory budget; when it is exceeded, the oldest
+ * segments of any stream are dropped first.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class HlsSegmentStore {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsSegmentStore.class);
+
+    private static final HlsSegmentStore INSTANCE = new HlsSegmentStore();
+
+    private final Map<String, HlsStream> streams = new ConcurrentHashMap<>();
+
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    private long memoryBudget = 256L * 1024 * 1024;
+
+    private double targetDuration = 2d;
+
+    private double partTarget = 0.5d;
+
+    private int windowSize = 6;
+
+    private boolean lowLatency = true;
+
+    private long idleTimeout = 60000L;
+
+    public static HlsSegmentStore getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the HLS stream for a broadcast, attaching a segmenter to it on first use. An ended stream is kept, so players can fetch its
+     * last segments, until a new broadcast with the same name is published.
+     *
+     * @param scope
+     *            application scope
+     * @param streamName
+     *            stream name
+     * @return stream or null if there is no such broadcast
+     */
+    public HlsStream getStream(IScope scope, String streamName) {
+        String key = scope.getName() + ':' + streamName;
+        HlsStream stream = streams.compute(key, (k, existing) -> {
+            IBroadcastScope bs = scope.getBroadcastScope(streamName);
+            IClientBroadcastStream current = (bs != null) ? bs.getClientBroadcastStream() : null;
+            if (existing != null) {
+                if (current == null || current == existing.getBroadcastStream()) {
+                    return existing;
+                }
+                log.info("Stream changed for {}, detaching old segmenter", k);
+                memoryUsed.addAndGet(-existing.detach());
+            }
+            if (current == null) {
+                return null;
+            }
+            HlsStream created = new HlsStream(k, this, current);
+            created.attach();
+            return created;
+        });
+        if (stream != null) {
+            stream.touch();
+        }
+        return stream;
+    }
+
+    void allocated(long bytes) {
+        memoryUsed.addAndGet(bytes);
+    }
+
+    void released(long bytes) {
+        memoryUsed.addAndGet(-bytes);
+    }
+
+    /**
+     * Drops idle streams and enforces the memory budget. Called on the publishing thread after a segment was closed.
+     *
+     * @param closedBy
+     *            stream which closed a segment
+     */
+    void onSegmentClosed(HlsStream closedBy) {
+        long now = System.currentTimeMillis();
+        streams.values().forEach(stream -> {
+            if (now - stream.getLastAccess() > idleTimeout && streams.remove(stream.getKey(), stream)) {
+                log.info("Removing idle HLS stream: {}", stream.getKey());
+                memoryUsed.addAndGet(-stream.detach());
+            }
+        });
+        while (memoryUsed.get() > memoryBudget) {
+            HlsStream oldest = null;
+            long oldestCreated = Long.MAX_VALUE;
+            for (HlsStream stream : streams.values()) {
+                long created = stream.getOldestEvictable();
+                if (created < oldestCreated) {
+                    oldestCreated = created;
+                    oldest = stream;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            long released = oldest.evictOldest();
+            if (log.isDebugEnabled()) {
+                log.debug("Evicted {} bytes from {} for the memory budget", released, oldest.getKey());
+            }
+            memoryUsed.addAndGet(-released);
+        }
+    }
+
+    /**
+     * Returns the bytes of media held for all streams.
+     *
+     * @return bytes
+     */
+    public long getMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * Sets the bytes of media held for all streams together, before the oldest segments are dropped.
+     *
+     * @param memoryBudget
+     *            bytes
+     */
+    public void setMemoryBudget(long memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    public double getTargetDuration() {
+        return targetDuration;
+    }
+
+    /**
+     * Sets the segment duration; segments end at the first key frame after it.
+     *
+     * @param targetDuration
+     *            seconds
+     */
+    public void setTargetDuration(double targetDuration) {
+        this.targetDuration = targetDuration;
+    }
+
+    public double getPartTarget() {
+        return partTarget;
+    }
+
+    /**
+     * Sets the partial segment duration of low latency playlists.
+     *
+     * @param partTarget
+     *            seconds
+     */
+    public void setPartTarget(double partTarget) {
+        this.partTarget = partTarget;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * Sets the number of segments kept per stream.
+     *
+     * @param windowSize
+     *            segments
+     */
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    public boolean isLowLatency() {
+        return lowLatency;
+    }
+
+    /**
+     * Sets whether playlists list partial segments and allow blocking reloads.
+     *
+     * @param lowLatency
+     *            true for low latency HLS
+     */
+    public void setLowLatency(boolean lowLatency) {
+        this.lowLatency = lowLatency;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Sets how long a stream is segmented without requests for it.
+     *
+     * @param idleTimeout
+     *            milliseconds
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.hls;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.red5.server.api.IServer;
+import org.red5.server.api.scope.IGlobalScope;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.util.ScopeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * HTTP endpoint for live streams as HLS with CMAF segments, including the partial segments and blocking playlist reloads of low latency HLS.
+ * Usage: /hls/{stream}/index.m3u8
+ *
+ * The segment store is configured with the init parameters targetDuration and partTarget in seconds, windowSize in segments, memoryBudget in
+ * bytes, idleTimeout in milliseconds and lowLatency.
+ *
+ * A request for media which is not there yet is held asynchronously, without a thread, until the stream completes it or the async timeout
+ * of three target durations runs out; the reply is then written on a container thread.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class HlsServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(HlsServlet.class);
+
+    private static final Pattern SEGMENT = Pattern.compile("seg(\\d+)\\.m4s");
+
+    private static final Pattern PART = Pattern.compile("part(\\d+)\\.(\\d+)\\.m4s");
+
+    private transient IServer server;
+
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        HlsSegmentStore store = HlsSegmentStore.getInstance();
+        String value;
+        if ((value = getInitParameter("targetDuration")) != null) {
+            store.setTargetDuration(Double.parseDouble(value));
+        }
+        if ((value = getInitParameter("partTarget")) != null) {
+            store.setPartTarget(Double.parseDouble(value));
+        }
+        if ((value = getInitParameter("windowSize")) != null) {
+            store.setWindowSize(Integer.parseInt(value));
+        }
+        if ((value = getInitParameter("memoryBudget")) != null) {
+            store.setMemoryBudget(Long.parseLong(value));
+        }
+        if ((value = getInitParameter("idleTimeout")) != null) {
+            store.setIdleTimeout(Long.parseLong(value));
+        }
+        if ((value = getInitParameter("lowLatency")) != null) {
+            store.setLowLatency(Boolean.parseBoolean(value));
+        }
+        ServletContext ctx = getServletContext();
+        WebApplicationContext webAppCtx;
+        try {
+            webAppCtx = WebApplicationContextUtils.getRequiredWebApplicationContext(ctx);
+        } catch (IllegalStateException e) {
+            webAppCtx = (WebApplicationContext) ctx.getAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE);
+        }
+        if (webAppCtx != null) {
+            server = (IServer) webAppCtx.getBean("red5.server");
+            log.info("HLS servlet initialized");
+        } else {
+            log.warn("No web application context available");
+        }
+    }
+
+    @Override
+    protected void doOptions(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        handleCORS(req, resp);
+        resp.setStatus(HttpServletResponse.SC_OK);
+    }
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        handleCORS(req, resp);
+        String path = req.getPathInfo();
+        int slash = path != null ? path.lastIndexOf('/') : -1;
+        if (slash < 2) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String streamName = path.substring(1, slash);
+        String resource = path.substring(slash + 1);
+        long msn = -1;
+        int part = -1;
+        boolean skip = false;
+        try {
+            String value;
+            if ((value = req.getParameter("_HLS_msn")) != null) {
+                msn = Long.parseLong(value);
+            }
+            if ((value = req.getParameter("_HLS_part")) != null) {
+                if (msn < 0) {
+                    resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "_HLS_part without _HLS_msn");
+                    return;
+                }
+                part = Integer.parseInt(value);
+            }
+            // there are no date ranges to skip, so v2 is the same as YES
+            value = req.getParameter("_HLS_skip");
+            skip = "YES".equals(value) || "v2".equals(value);
+        } catch (NumberFormatException e) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid blocking reload parameters");
+            return;
+        }
+        IScope scope = getScope(req);
+        if (scope == null) {
+            resp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR, "Scope not available");
+            return;
+        }
+        HlsStream stream = HlsSegmentStore.getInstance().getStream(scope, streamName);
+        if (stream == null) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Stream not found: " + streamName);
+            return;
+        }
+        if (msn > stream.getNextSequence() + 2) {
+            // too far in the future to block for
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "_HLS_msn too far ahead");
+            return;
+        }
+        // the future completed by the stream, and the media it comes to
+        CompletableFuture<?> pending;
+        CompletableFuture<List<byte[]>> media;
+        String contentType;
+        String cacheControl;
+        int unavailable;
+        Matcher matcher;
+        if (resource.endsWith(".m3u8")) {
+            if (msn < 0 && stream.getNextSequence() == 0) {
+                // nothing to list before the first segment is complete
+                msn = 0;
+            }
+            CompletableFuture<String> playlist = stream.awaitPlaylist(msn, part, skip);
+            pending = playlist;
+            media = playlist.thenApply(rendered -> List.of(rendered.getBytes(StandardCharsets.UTF_8)));
+            contentType = "application/vnd.apple.mpegurl";
+            cacheControl = "no-cache";
+            unavailable = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+        } else {
+            if ("init.mp4".equals(resource)) {
+                CompletableFuture<byte[]> initSegment = stream.awaitInitSegment();
+                pending = initSegment;
+                media = initSegment.thenApply(data -> data != null ? List.of(data) : null);
+            } else if ((matcher = SEGMENT.matcher(resource)).matches()) {
+                pending = media = stream.awaitSegment(Long.parseLong(matcher.group(1)));
+            } else if ((matcher = PART.matcher(resource)).matches()) {
+                pending = media = stream.awaitPart(Long.parseLong(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+            } else {
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
+            }
+            contentType = "video/mp4";
+            cacheControl = "max-age=60";
+            unavailable = HttpServletResponse.SC_NOT_FOUND;
+        }
+        AsyncContext asyncContext = req.startAsync();
+        asyncContext.setTimeout(stream.getBlockingTimeout());
+        asyncContext.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                // the stream no longer completes the request once it has been given up on
+                if (pending.cancel(false)) {
+                    try {
+                        ((HttpServletResponse) event.getAsyncContext().getResponse()).sendError(unavailable);
+                    } finally {
+                        event.getAsyncContext().complete();
+                    }
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                pending.cancel(false);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+        });
+        // completed on the publishing thread, so the reply is handed to a container thread
+        media.thenAccept(data -> asyncContext.start(() -> {
+            HttpServletResponse response = (HttpServletResponse) asyncContext.getResponse();
+            try {
+                if (data == null) {
+                    response.sendError(unavailable);
+                } else {
+                    response.setHeader("Cache-Control", cacheControl);
+                    write(response, contentType, data);
+                }
+            } catch (IOException e) {
+                log.debug("HLS request failed: {}", e.getMessage());
+            } finally {
+                try {
+                    asyncContext.complete();
+                } catch (IllegalStateException e) {
+                    log.debug("AsyncContext already completed or in error state", e);
+                }
+            }
+        }));
+    }
+
+    private static void write(HttpServletResponse resp, String contentType, List<byte[]> data) throws IOException {
+        long length = 0;
+        for (byte[] chunk : data) {
+            length += chunk.length;
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setContentType(contentType);
+        resp.setContentLengthLong(length);
+        OutputStream out = resp.getOutputStream();
+        for (byte[] chunk : data) {
+            out.write(chunk);
+        }
+        out.flush();
+    }
+
+    private void handleCORS(HttpServletRequest req, HttpServletResponse resp) {
+        String origin = req.getHeader("Origin");
+        resp.setHeader("Access-Control-Allow-Origin", origin != null ? origin : "*");
+        resp.setHeader("Access-Control-Allow-Methods", "GET, OPTIONS");
+        resp.setHeader("Access-Control-Allow-Headers", "Accept, Content-Type");
+        resp.setHeader("Access-Control-Max-Age", "3600");
+    }
+
+    private IScope getScope(HttpServletRequest req) {
+        if (server == null) {
+            return null;
+        }
+        IGlobalScope globalScope = server.getGlobal("default");
+        if (globalScope == null) {
+            return null;
+        }
+        String path = req.getContextPath();
+        if (path != null && path.length() > 1) {
+            IScope appScope = ScopeUtils.resolveScope(globalScope, path.substring(1));
+            if (appScope != null && ScopeUtils.isApp(appScope)) {
+                return appScope;
+            }
+        }
+        return ScopeUtils.resolveScope(globalScope, "/live");
+    }
+
+}
@@ -0,0 +1,600 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.hls;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import org.red5.io.moq.cmaf.model.CmafFragment;
+import org.red5.server.api.stream.IClientBroadcastStream;
+import org.red5.server.net.mediabunny.Fmp4FragmentSink;
+import org.red5.server.net.mediabunny.MediaBunnyStreamListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rolling HLS presentation of a single live stream. The fMP4 fragments built by a {@link MediaBunnyStreamListener} are grouped into partial
+ * segments of about the part target, and into segments at the first key frame after the target duration. Everything is kept in memory; a
+ * fragment is stored as the array the listener built, so a segment or part is written out without copying it again.
+ *
+ * Requests for a playlist, part or segment which is not there yet are answered with a future, completed on the publishing thread once it is
+ * there, which is the blocking playlist reload of low latency HLS. Nothing waits on a thread; the requester decides how long to wait.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class HlsStream implements Fmp4FragmentSink {
+
+    private static final Logger log = LoggerFactory.getLogger(HlsStream.class);
+
+    // closed segments of which the parts are listed in the playlist, besides the open one
+    private static final int PART_SEGMENTS = 2;
+
+    // target durations from the end of the playlist before which a delta update may skip segments, the least allowed
+    private static final int SKIP_TARGET_DURATIONS = 6;
+
+    private final String key;
+
+    private final HlsSegmentStore store;
+
+    private final IClientBroadcastStream broadcastStream;
+
+    private final double targetDuration;
+
+    private final double partTarget;
+
+    private final int windowSize;
+
+    private final boolean lowLatency;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    // requests for media which is not there yet
+    private final List<Waiter<?>> waiters = new ArrayList<>();
+
+    private MediaBunnyStreamListener listener;
+
+    private byte[] initSegment;
+
+    // closed segments, the oldest first
+    private final List<Segment> segments = new ArrayList<>();
+
+    // media sequence number of the open segment
+    private long nextSequence;
+
+    private Segment current;
+
+    private List<byte[]> partFragments = new ArrayList<>();
+
+    private double partDuration;
+
+    private int partSize;
+
+    private boolean partIndependent;
+
+    private boolean videoSeen;
+
+    private double maxSegmentDuration;
+
+    // bytes held by this stream
+    private long size;
+
+    private boolean ended;
+
+    private boolean detached;
+
+    private volatile long lastAccess = System.currentTimeMillis();
+
+    HlsStream(String key, HlsSegmentStore store, IClientBroadcastStream broadcastStream) {
+        this.key = key;
+        this.store = store;
+        this.broadcastStream = broadcastStream;
+        this.targetDuration = store.getTargetDuration();
+        this.partTarget = store.getPartTarget();
+        this.windowSize = store.getWindowSize();
+        this.lowLatency = store.isLowLatency();
+    }
+
+    /**
+     * Registers the fragment building listener with the broadcast stream.
+     */
+    void attach() {
+        listener = new MediaBunnyStreamListener(key, this);
+        // seed before adding, so the listener is never used by two threads at once
+        listener.seedFromCodecInfo(broadcastStream.getCodecInfo());
+        broadcastStream.addStreamListener(listener);
+        log.info("Attached HLS segmenter to stream: {}", key);
+    }
+
+    /**
+     * Removes the listener and drops the stored media.
+     *
+     * @return number of bytes released
+     */
+    long detach() {
+        lock.lock();
+        try {
+            if (detached) {
+                return 0;
+            }
+            detached = true;
+            segments.clear();
+            current = null;
+            partFragments = new ArrayList<>();
+            long released = size;
+            size = 0;
+            return released;
+        } finally {
+            lock.unlock();
+            notifyWaiters();
+            if (listener != null) {
+                try {
+                    broadcastStream.removeStreamListener(listener);
+                } catch (Exception e) {
+                    log.debug("Failed to remove HLS listener", e);
+                }
+            }
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onInitSegment(String streamKey, byte[] initSegment) {
+        lock.lock();
+        try {
+            this.initSegment = initSegment;
+        } finally {
+            lock.unlock();
+        }
+        notifyWaiters();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onFragment(String streamKey, byte[] fragment, CmafFragment.MediaType mediaType, boolean keyframe, double duration) {
+        boolean segmentClosed = false;
+        lock.lock();
+        try {
+            if (ended || detached) {
+                return;
+            }
+            boolean video = mediaType == CmafFragment.MediaType.VIDEO;
+            if (video && !videoSeen) {
+                // audio which came first ends up in a segment of its own, video segments start at the key frame
+                videoSeen = true;
+                segmentClosed = closeSegment();
+            }
+            // the timeline follows the video track when there is one, every audio frame is a sync sample
+            boolean timed = video || !videoSeen;
+            boolean independent = video ? keyframe : !videoSeen;
+            if (independent && current != null && current.duration + partDuration >= targetDuration) {
+                segmentClosed |= closeSegment();
+            }
+            if (current == null) {
+                current = new Segment(nextSequence);
+            }
+            if (partFragments.isEmpty()) {
+                partIndependent = independent;
+            }
+            partFragments.add(fragment);
+            partSize += fragment.length;
+            size += fragment.length;
+            if (timed) {
+                partDuration += duration;
+                // close the part when another fragment like this one would overrun the part target
+                if (lowLatency && partDuration + duration > partTarget) {
+                    closePart();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        notifyWaiters();
+        store.allocated(fragment.length);
+        if (segmentClosed) {
+            store.onSegmentClosed(this);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void onStreamClosed(String streamKey) {
+        lock.lock();
+        try {
+            closeSegment();
+            ended = true;
+        } finally {
+            lock.unlock();
+        }
+        notifyWaiters();
+        log.info("HLS stream ended: {}", key);
+    }
+
+    private void closePart() {
+        if (partFragments.isEmpty()) {
+            return;
+        }
+        current.parts.add(new Part(partFragments, partDuration, partSize, partIndependent));
+        current.duration += partDuration;
+        current.size += partSize;
+        partFragments = new ArrayList<>();
+        partDuration = 0;
+        partSize = 0;
+    }
+
+    private boolean closeSegment() {
+        if (current == null) {
+            return false;
+        }
+        closePart();
+        if (current.parts.isEmpty()) {
+            return false;
+        }
+        segments.add(current);
+        maxSegmentDuration = Math.max(maxSegmentDuration, current.duration);
+        current = null;
+        nextSequence++;
+        long released = 0;
+        while (segments.size() > windowSize) {
+            released += segments.remove(0).size;
+        }
+        if (released > 0) {
+            size -= released;
+            store.released(released);
+        }
+        return true;
+    }
+
+    /**
+     * Drops the oldest segment for the memory budget, always keeping the newest one.
+     *
+     * @return number of bytes released
+     */
+    long evictOldest() {
+        lock.lock();
+        try {
+            if (segments.size() < 2) {
+                return 0;
+            }
+            long released = segments.remove(0).size;
+            size -= released;
+            return released;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns when the oldest segment which may be evicted was closed.
+     *
+     * @return nano time, or Long.MAX_VALUE when there is nothing to evict
+     */
+    long getOldestEvictable() {
+        lock.lock();
+        try {
+            return segments.size() < 2 ? Long.MAX_VALUE : segments.get(0).created;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the init segment once there is one.
+     *
+     * @return future completed with the init segment, or null if the stream ended without one
+     */
+    public CompletableFuture<byte[]> awaitInitSegment() {
+        return when(() -> initSegment != null, () -> initSegment);
+    }
+
+    /**
+     * Renders the playlist once it holds the given segment, or the given part of it.
+     *
+     * @param msn
+     *            media sequence number, negative to render the playlist as is
+     * @param part
+     *            part index, negative to wait for the whole segment
+     * @param skip
+     *            whether a delta update, leaving out the older segments, may be rendered
+     * @return future completed with the playlist
+     */
+    public CompletableFuture<String> awaitPlaylist(long msn, int part, boolean skip) {
+        return when(() -> msn < nextSequence || (part >= 0 && msn == nextSequence && current != null && current.parts.size() > part), () -> renderPlaylist(skip));
+    }
+
+    /**
+     * Returns a segment once it is complete.
+     *
+     * @param msn
+     *            media sequence number
+     * @return future completed with the fragments of the segment, or null if it is not available
+     */
+    public CompletableFuture<List<byte[]>> awaitSegment(long msn) {
+        return when(() -> msn < nextSequence || msn > nextSequence + 1, () -> {
+            Segment segment = getSegment(msn);
+            if (segment == null) {
+                return null;
+            }
+            List<byte[]> fragments = new ArrayList<>();
+            for (Part p : segment.parts) {
+                fragments.addAll(p.fragments);
+            }
+            return fragments;
+        });
+    }
+
+    /**
+     * Returns a partial segment once it is complete, as requested for a preload hint.
+     *
+     * @param msn
+     *            media sequence number
+     * @param part
+     *            part index
+     * @return future completed with the fragments of the part, or null if it is not available
+     */
+    public CompletableFuture<List<byte[]>> awaitPart(long msn, int part) {
+        return when(() -> msn < nextSequence || msn > nextSequence + 1 || (msn == nextSequence && current != null && current.parts.size() > part), () -> {
+            Segment segment = msn == nextSequence ? current : getSegment(msn);
+            if (segment == null || part >= segment.parts.size()) {
+                // evicted, or the segment ended before the hinted part
+                return null;
+            }
+            return segment.parts.get(part).fragments;
+        });
+    }
+
+    private Segment getSegment(long msn) {
+        if (segments.isEmpty()) {
+            return null;
+        }
+        long index = msn - segments.get(0).sequence;
+        return index >= 0 && index < segments.size() ? segments.get((int) index) : null;
+    }
+
+    /**
+     * Returns a future for a result, completed now if it is ready or the stream is gone, otherwise once it is.
+     */
+    private <T> CompletableFuture<T> when(BooleanSupplier ready, Supplier<T> result) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        T value;
+        lock.lock();
+        try {
+            if (!ended && !detached && !ready.getAsBoolean()) {
+                // requests given up on are dropped as new ones come in
+                waiters.removeIf(waiter -> waiter.future.isDone());
+                waiters.add(new Waiter<>(ready, result, future));
+                return future;
+            }
+            value = result.get();
+        } finally {
+            lock.unlock();
+        }
+        future.complete(value);
+        return future;
+    }
+
+    /**
+     * Completes the futures of waiting requests which are now ready, outside of the lock.
+     */
+    private void notifyWaiters() {
+        List<Runnable> completions = null;
+        lock.lock();
+        try {
+            for (Iterator<Waiter<?>> it = waiters.iterator(); it.hasNext();) {
+                Waiter<?> waiter = it.next();
+                if (waiter.future.isDone()) {
+                    it.remove();
+                } else if (ended || detached || waiter.ready.getAsBoolean()) {
+                    it.remove();
+                    if (completions == null) {
+                        completions = new ArrayList<>();
+                    }
+                    completions.add(waiter.resolve());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (completions != null) {
+            completions.forEach(Runnable::run);
+        }
+    }
+
+    /**
+     * Returns the number of requests waiting for media.
+     *
+     * @return waiting requests
+     */
+    int getWaiting() {
+        lock.lock();
+        try {
+            waiters.removeIf(waiter -> waiter.future.isDone());
+            return waiters.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String renderPlaylist(boolean skip) {
+        StringBuilder sb = new StringBuilder(1024);
+        int target = (int) Math.ceil(Math.max(targetDuration, maxSegmentDuration));
+        double skipUntil = target * SKIP_TARGET_DURATIONS;
+        sb.append("#EXTM3U\n#EXT-X-VERSION:").append(lowLatency ? 9 : 6).append('\n');
+        sb.append("#EXT-X-TARGETDURATION:").append(target).append('\n');
+        if (lowLatency) {
+            sb.append("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,CAN-SKIP-UNTIL=").append(decimal(skipUntil)).append(",PART-HOLD-BACK=").append(decimal(partTarget * 3)).append('\n');
+            sb.append("#EXT-X-PART-INF:PART-TARGET=").append(decimal(partTarget)).append('\n');
+        }
+        sb.append("#EXT-X-MEDIA-SEQUENCE:").append(segments.isEmpty() ? nextSequence : segments.get(0).sequence).append('\n');
+        sb.append("#EXT-X-INDEPENDENT-SEGMENTS\n#EXT-X-MAP:URI=\"init.mp4\"\n");
+        int count = segments.size();
+        int skipped = 0;
+        if (skip && lowLatency) {
+            // segments which end at least the skip boundary before the end of the playlist are left out of a delta update
+            double remaining = current != null ? current.duration : 0d;
+            for (Segment segment : segments) {
+                remaining += segment.duration;
+            }
+            while (skipped < count - PART_SEGMENTS && remaining - segments.get(skipped).duration >= skipUntil) {
+                remaining -= segments.get(skipped).duration;
+                skipped++;
+            }
+            if (skipped > 0) {
+                sb.append("#EXT-X-SKIP:SKIPPED-SEGMENTS=").append(skipped).append('\n');
+            }
+        }
+        for (int i = skipped; i < count; i++) {
+            Segment segment = segments.get(i);
+            if (lowLatency && i >= count - PART_SEGMENTS) {
+                appendParts(sb, segment);
+            }
+            sb.append("#EXTINF:").append(decimal(segment.duration)).append(",\nseg").append(segment.sequence).append(".m4s\n");
+        }
+        if (ended) {
+            sb.append("#EXT-X-ENDLIST\n");
+        } else if (lowLatency) {
+            int next = 0;
+            if (current != null) {
+                appendParts(sb, current);
+                next = current.parts.size();
+            }
+            sb.append("#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part").append(nextSequence).append('.').append(next).append(".m4s\"\n");
+        }
+        return sb.toString();
+    }
+
+    private static void appendParts(StringBuilder sb, Segment segment) {
+        for (int p = 0; p < segment.parts.size(); p++) {
+            Part part = segment.parts.get(p);
+            sb.append("#EXT-X-PART:DURATION=").append(decimal(part.duration)).append(",URI=\"part").append(segment.sequence).append('.').append(p).append(".m4s\"");
+            if (part.independent) {
+                sb.append(",INDEPENDENT=YES");
+            }
+            sb.append('\n');
+        }
+    }
+
+    private static String decimal(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    /**
+     * Returns the media sequence number of the segment being built.
+     *
+     * @return media sequence number
+     */
+    public long getNextSequence() {
+        lock.lock();
+        try {
+            return nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns how long a request waits for media which is not there yet; three target durations, as suggested for blocking reloads.
+     *
+     * @return milliseconds
+     */
+    public long getBlockingTimeout() {
+        return (long) (targetDuration * 3000);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    IClientBroadcastStream getBroadcastStream() {
+        return broadcastStream;
+    }
+
+    boolean isEnded() {
+        lock.lock();
+        try {
+            return ended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void touch() {
+        lastAccess = System.currentTimeMillis();
+    }
+
+    long getLastAccess() {
+        return lastAccess;
+    }
+
+    private static final class Waiter<T> {
+
+        private final BooleanSupplier ready;
+
+        private final Supplier<T> result;
+
+        private final CompletableFuture<T> future;
+
+        Waiter(BooleanSupplier ready, Supplier<T> result, CompletableFuture<T> future) {
+            this.ready = ready;
+            this.result = result;
+            this.future = future;
+        }
+
+        /**
+         * Takes the result, with the lock held, and returns the completion to run once it is released.
+         */
+        Runnable resolve() {
+            T value = result.get();
+            return () -> future.complete(value);
+        }
+
+    }
+
+    private static final class Part {
+
+        private final List<byte[]> fragments;
+
+        private final double duration;
+
+        private final int size;
+
+        private final boolean independent;
+
+        Part(List<byte[]> fragments, double duration, int size, boolean independent) {
+            this.fragments = fragments;
+            this.duration = duration;
+            this.size = size;
+            this.independent = independent;
+        }
+
+    }
+
+    private static final class Segment {
+
+        private final long sequence;
+
+        private final long created = System.nanoTime();
+
+        private final List<Part> parts = new ArrayList<>();
+
+        private double duration;
+
+        private long size;
+
+        Segment(long sequence) {
+            this.sequence = sequence;
+        }
+
+    }
+
+}
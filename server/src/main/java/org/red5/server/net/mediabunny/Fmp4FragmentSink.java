@@ -0,0 +1,45 @@
+package org.red5.server.net.mediabunny;
+
+import org.red5.io.moq.cmaf.model.CmafFragment;
+
+/**
+ * Receives the init segment and fragments built by a {@link MediaBunnyStreamListener}. Callbacks arrive on the publishing thread, so
+ * implementations should hand the data off without blocking.
+ */
+public interface Fmp4FragmentSink {
+
+    /**
+     * Called once the decoder configuration of the expected tracks is known.
+     *
+     * @param streamKey
+     *            stream key
+     * @param initSegment
+     *            ftyp and moov boxes
+     */
+    void onInitSegment(String streamKey, byte[] initSegment);
+
+    /**
+     * Called for each moof and mdat pair; a fragment carries samples of a single track.
+     *
+     * @param streamKey
+     *            stream key
+     * @param fragment
+     *            moof and mdat boxes
+     * @param mediaType
+     *            media type of the track
+     * @param keyframe
+     *            true when a video fragment starts with a key frame
+     * @param duration
+     *            duration of the samples in seconds
+     */
+    void onFragment(String streamKey, byte[] fragment, CmafFragment.MediaType mediaType, boolean keyframe, double duration);
+
+    /**
+     * Called when the stream closes, after the buffered samples were flushed.
+     *
+     * @param streamKey
+     *            stream key
+     */
+    void onStreamClosed(String streamKey);
+
+}
@@ -53,7 +53,7 @@ public class MediaBunnyStreamListener implements IStreamListener {
 
     private final String streamKey;
 
-    private final MediaBunnyStreamRegistry registry;
+    private final Fmp4FragmentSink sink;
 
     private final Fmp4FragmentBuilder fragmentBuilder = new Fmp4FragmentBuilder();
 
@@ -101,10 +101,10 @@ public class MediaBunnyStreamListener implements IStreamListener {
 
     private boolean audioFragmentSent;
 
-    MediaBunnyStreamListener(String streamKey, MediaBunnyStreamRegistry registry) {
+    public MediaBunnyStreamListener(String streamKey, Fmp4FragmentSink sink) {
         log.debug("Creating MediaBunnyStreamListener for stream: {}", streamKey);
         this.streamKey = streamKey;
-        this.registry = registry;
+        this.sink = sink;
     }
 
     public void setExpectedTracks(boolean expectVideo, boolean expectAudio) {
@@ -160,7 +160,7 @@ public class MediaBunnyStreamListener implements IStreamListener {
         log.info("Closing MediaBunnyStreamListener for stream {}", streamKey);
         flushVideoBuffer();
         flushAudioBuffer();
-        registry.onStreamClosed(streamKey);
+        sink.onStreamClosed(streamKey);
     }
 
     private void handleVideo(VideoData video) {
@@ -350,7 +350,7 @@ public class MediaBunnyStreamListener implements IStreamListener {
             }
             log.info("Init segment built for stream {} ({} bytes) prefix={}", streamKey, initSegment.length, hexPrefix(initSegment, 24));
             initSegmentSent = true;
-            registry.onInitSegment(streamKey, initSegment);
+            sink.onInitSegment(streamKey, initSegment);
         } catch (Exception e) {
             log.warn("Failed to build init segment for {}", streamKey, e);
         }
@@ -401,18 +401,19 @@ public class MediaBunnyStreamListener implements IStreamListener {
     }
 
     private void flushVideoBuffer() {
-        flushBuffer(videoBuffer, ++fragmentSequence, 1, 1, CmafFragment.MediaType.VIDEO);
+        flushBuffer(videoBuffer, ++fragmentSequence, 1, 1, CmafFragment.MediaType.VIDEO, VIDEO_TIMESCALE);
     }
 
     private void flushAudioBuffer() {
-        flushBuffer(audioBuffer, ++fragmentSequence, 2, 2, CmafFragment.MediaType.AUDIO);
+        flushBuffer(audioBuffer, ++fragmentSequence, 2, 2, CmafFragment.MediaType.AUDIO, audioSampleRate > 0 ? audioSampleRate : 48000);
     }
 
-    private void flushBuffer(TrackBuffer buffer, long sequence, long trackId, long groupId, CmafFragment.MediaType mediaType) {
+    private void flushBuffer(TrackBuffer buffer, long sequence, long trackId, long groupId, CmafFragment.MediaType mediaType, long timescale) {
         if (buffer.samples.isEmpty()) {
             return;
         }
-        boolean keyframe = buffer.startsWithKeyframe;
+        boolean keyframe = buffer.startsWithKeyframe && mediaType == CmafFragment.MediaType.VIDEO;
+        double duration = buffer.bufferedDuration / (double) timescale;
         Fmp4FragmentBuilder.FragmentConfig config = new Fmp4FragmentBuilder.FragmentConfig().setSequenceNumber(sequence).setTrackId(trackId).setBaseDecodeTime(buffer.fragmentStartDecodeTime).setGroupId(groupId).setMediaType(mediaType).setMediaData(buffer.media.toByteArray()).setSamples(new ArrayList<>(buffer.samples));
         byte[] fragment;
         try {
@@ -422,11 +423,7 @@ public class MediaBunnyStreamListener implements IStreamListener {
             if (log.isDebugEnabled()) {
                 log.debug("Built {} fragment for stream {} ({} bytes, keyframe={})", mediaType, streamKey, fragment.length, keyframe);
             }
-            if (keyframe && mediaType == CmafFragment.MediaType.VIDEO) {
-                registry.onKeyframeFragment(streamKey, fragment);
-            } else {
-                registry.onFragment(streamKey, fragment);
-            }
+            sink.onFragment(streamKey, fragment, mediaType, keyframe, duration);
         } catch (IOException e) {
             log.warn("Failed to build fragment for stream: {}", streamKey, e);
         }
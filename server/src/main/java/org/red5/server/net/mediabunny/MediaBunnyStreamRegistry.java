@@ -11,13 +11,14 @@ import org.red5.server.api.scope.IBroadcastScope;
 import org.red5.server.api.scope.IScope;
 import org.red5.server.api.stream.IClientBroadcastStream;
 import org.red5.codec.IStreamCodecInfo;
+import org.red5.io.moq.cmaf.model.CmafFragment;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Registry for MediaBunny stream subscriptions backed by ClientBroadcastStream listeners.
  */
-public class MediaBunnyStreamRegistry {
+public class MediaBunnyStreamRegistry implements Fmp4FragmentSink {
 
     private static final Logger log = LoggerFactory.getLogger(MediaBunnyStreamRegistry.class);
 
@@ -90,7 +91,9 @@ public class MediaBunnyStreamRegistry {
         }
     }
 
-    void onStreamClosed(String key) {
+    /** {@inheritDoc} */
+    @Override
+    public void onStreamClosed(String key) {
         StreamState state = streams.remove(key);
         if (state != null) {
             log.info("Stream closed for {}, removed state and notifying {} subscribers", key, state.subscribers.size());
@@ -102,7 +105,9 @@ public class MediaBunnyStreamRegistry {
         pendingInitSegments.remove(key);
     }
 
-    void onInitSegment(String key, byte[] initSegment) {
+    /** {@inheritDoc} */
+    @Override
+    public void onInitSegment(String key, byte[] initSegment) {
         StreamState state = streams.get(key);
         if (state == null) {
             pendingInitSegments.put(key, initSegment);
@@ -115,6 +120,16 @@ public class MediaBunnyStreamRegistry {
         }
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void onFragment(String key, byte[] fragment, CmafFragment.MediaType mediaType, boolean keyframe, double duration) {
+        if (keyframe) {
+            onKeyframeFragment(key, fragment);
+        } else {
+            onFragment(key, fragment);
+        }
+    }
+
     void onKeyframeFragment(String key, byte[] fragment) {
         StreamState state = streams.get(key);
         if (state == null) {
@@ -0,0 +1,50 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import org.red5.metrics.Metrics;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the server {@link Metrics} in the Prometheus text format for scraping. Responds with 404 when metrics are not enabled with the
+ * <code>red5.metrics</code> system property. The servlet has no access control of its own; map it in a web application where it is only
+ * reachable by the monitoring system.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class PrometheusServlet extends HttpServlet {
+
+    private static final long serialVersionUID = 6061384212738470412L;
+
+    /**
+     * Content type of the Prometheus text exposition format
+     */
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /** {@inheritDoc} */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws ServletException, IOException {
+        if (!Metrics.ENABLED) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND, "Metrics are not enabled");
+            return;
+        }
+        resp.setContentType(CONTENT_TYPE);
+        resp.setHeader("Cache-Control", "no-cache");
+        Writer writer = resp.getWriter();
+        Metrics.writePrometheus(writer);
+        writer.flush();
+    }
+
+}
@@ -7,14 +7,11 @@
 
 package org.red5.server.net.rtmp;
 
-import java.math.BigInteger;
-import java.nio.ByteBuffer;
 import java.security.KeyPair;
 import java.util.Arrays;
 
 import org.apache.commons.codec.binary.Hex;
 import org.apache.mina.core.buffer.IoBuffer;
-import org.bouncycastle.util.BigIntegers;
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.message.Constants;
 
@@ -92,6 +89,7 @@ public class InboundHandshake extends RTMPHandshake {
         if (log.isTraceEnabled()) {
             log.trace("decodeClientRequest1: {}", Hex.encodeHexString(in.array()));
         }
+        markHandshakeStart();
         // copy into a new array to ensure the position is respected
         c1 = new byte[Constants.HANDSHAKE_SIZE];
         in.get(c1);
@@ -164,6 +162,7 @@ public class InboundHandshake extends RTMPHandshake {
             log.debug("Client digest position offset: {}", digestPosClient);
             if (!verifyDigest(digestPosClient, c1, GENUINE_FP_KEY, 30)) {
                 log.warn("Client digest verification failed");
+                recordHandshake(false);
                 return null;
             }
         }
@@ -291,6 +290,7 @@ public class InboundHandshake extends RTMPHandshake {
                     // accept and unvalidated handshake; used to deal with ffmpeg
                     log.debug("Unvalidated client allowed to proceed");
                 } else {
+                    recordHandshake(false);
                     return false;
                 }
             } else {
@@ -301,6 +301,7 @@ public class InboundHandshake extends RTMPHandshake {
                 log.info("Client signature doesn't match!");
             }
         }
+        recordHandshake(true);
         return true;
     }
 
@@ -349,22 +350,7 @@ public class InboundHandshake extends RTMPHandshake {
         handshakeBytes[6] = 0;
         handshakeBytes[7] = 1;
         // fill the rest with random bytes
-        int randomHandshakeLength = (Constants.HANDSHAKE_SIZE - 8);
-        BigInteger bi = new BigInteger((randomHandshakeLength * 8), random);
-        byte[] rndBytes = BigIntegers.asUnsignedByteArray(bi);
-        // prevent AOOB error that can occur, sometimes
-        if (rndBytes.length == randomHandshakeLength) {
-            // copy random bytes into our handshake array
-            System.arraycopy(rndBytes, 0, handshakeBytes, 8, randomHandshakeLength);
-        } else {
-            // copy random bytes into our handshake array
-            ByteBuffer b = ByteBuffer.allocate(randomHandshakeLength);
-            b.put(rndBytes);
-            b.put((byte) 0x69);
-            b.flip();
-            // copy mostly random bytes into our handshake array
-            System.arraycopy(b.array(), 0, handshakeBytes, 8, randomHandshakeLength);
-        }
+        fillRandomBytes(handshakeBytes, 8, Constants.HANDSHAKE_SIZE - 8);
     }
 
     /**
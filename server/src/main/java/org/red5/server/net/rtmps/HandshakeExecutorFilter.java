@@ -0,0 +1,91 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.rtmps;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import org.apache.mina.core.filterchain.IoFilterChain;
+import org.apache.mina.core.filterchain.IoFilterEvent;
+import org.apache.mina.core.session.AttributeKey;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.executor.ExecutorFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Executor filter that only runs a session's TLS handshake on its threads. Events are handed to the pool, ordered per session, while the
+ * handshake is in progress. Once it has completed and every event handed off has run, the filter removes itself from the session's chain
+ * and the event which found it so is fired on the I/O processor, as are all later ones. Waiting for the handed off events to drain keeps
+ * the session's events in order across the switch.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class HandshakeExecutorFilter extends ExecutorFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(HandshakeExecutorFilter.class);
+
+    // events handed to the pool which have not yet run
+    private static final AttributeKey QUEUED = new AttributeKey(HandshakeExecutorFilter.class, "queued");
+
+    private final Predicate<IoSession> handshaking;
+
+    /**
+     * Creates the filter.
+     *
+     * @param maxThreads
+     *            maximum threads across all sessions
+     * @param threadFactory
+     *            factory for the pool threads
+     * @param handshaking
+     *            whether a session's handshake is still in progress
+     */
+    public HandshakeExecutorFilter(int maxThreads, ThreadFactory threadFactory, Predicate<IoSession> handshaking) {
+        super(0, maxThreads, 60L, TimeUnit.SECONDS, threadFactory);
+        this.handshaking = handshaking;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void fireEvent(IoFilterEvent event) {
+        IoSession session = event.getSession();
+        AtomicInteger queued = (AtomicInteger) session.getAttribute(QUEUED);
+        if (queued == null) {
+            queued = new AtomicInteger();
+            session.setAttribute(QUEUED, queued);
+        }
+        // events are only fired from the session's I/O processor, so nothing can be handed off between this check and the fire below
+        if (queued.get() == 0 && !handshaking.test(session)) {
+            IoFilterChain chain = session.getFilterChain();
+            if (chain.contains(this)) {
+                log.debug("Handshake completed, leaving the executor for session: {}", session.getId());
+                chain.remove(this);
+                session.removeAttribute(QUEUED);
+            }
+            event.fire();
+            return;
+        }
+        queued.incrementAndGet();
+        final AtomicInteger pending = queued;
+        super.fireEvent(new IoFilterEvent(event.getNextFilter(), event.getType(), session, event.getParameter()) {
+
+            @Override
+            public void fire() {
+                try {
+                    super.fire();
+                } finally {
+                    pending.decrementAndGet();
+                }
+            }
+
+        });
+    }
+
+}
@@ -12,6 +12,7 @@ import java.util.Optional;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
+import org.apache.mina.filter.ssl.SslFilter;
 import org.apache.mina.filter.ssl.SslFilter.SslFilterMessage;
 import org.red5.server.net.rtmp.InboundHandshake;
 import org.red5.server.net.rtmp.RTMPConnManager;
@@ -40,6 +41,9 @@ public class RTMPSIoFilter extends RTMPEIoFilter {
         log.trace("messageReceived nextFilter: {} session: {} message: {}", nextFilter, session, obj);
         if (obj instanceof SslFilterMessage || !session.isSecured()) {
             log.trace("Either ssl message or un-secured session: {}", session.isSecured());
+            if (obj == SslFilter.SESSION_SECURED && session.getHandler() instanceof RTMPSMinaIoHandler) {
+                ((RTMPSMinaIoHandler) session.getHandler()).handshakeCompleted(session);
+            }
             nextFilter.messageReceived(session, obj);
         } else {
             String sessionId = (String) session.getAttribute(RTMPConnection.RTMP_SESSION_ID);
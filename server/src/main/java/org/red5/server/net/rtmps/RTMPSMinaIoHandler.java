@@ -8,19 +8,34 @@
 package org.red5.server.net.rtmps;
 
 import java.io.NotActiveException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.security.Provider;
 import java.security.Security;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
 
 import org.apache.mina.core.filterchain.IoFilterChain;
 import org.apache.mina.core.session.IoSession;
 import org.apache.mina.filter.ssl.SslFilter;
 import org.red5.io.tls.TLSFactory;
+import org.red5.server.jmx.mxbeans.RTMPSMinaIoHandlerMXBean;
 import org.red5.server.net.rtmp.InboundHandshake;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.RTMPHandler;
@@ -28,6 +43,7 @@ import org.red5.server.net.rtmp.RTMPMinaConnection;
 import org.red5.server.net.rtmp.RTMPMinaIoHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 /**
  * Handles Native RTMPS protocol events fired by the MINA framework.
@@ -48,10 +64,13 @@ import org.slf4j.LoggerFactory;
  * @author Kevin Green (kevygreen@gmail.com)
  * @author Paul Gregoire (mondain@gmail.com)
  */
-public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
+public class RTMPSMinaIoHandler extends RTMPMinaIoHandler implements RTMPSMinaIoHandlerMXBean {
 
     private static Logger log = LoggerFactory.getLogger(RTMPSMinaIoHandler.class);
 
+    // session attribute holding the nano time at which the tls handshake started
+    private static final String TLS_HANDSHAKE_START = "rtmps.handshake.start";
+
     /**
      * Password for accessing the keystore and / or truststore.
      */
@@ -88,6 +107,51 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
      */
     private boolean wantClientAuth;
 
+    /**
+     * Maximum number of entries in the server TLS session cache; 0 means unlimited.
+     */
+    private int sessionCacheSize = 20480;
+
+    /**
+     * Lifetime in seconds of a cached TLS session; 0 means unlimited.
+     */
+    private int sessionTimeout = 3600;
+
+    /**
+     * Maximum threads used for TLS handshakes, so a burst of handshakes does not stall the I/O processors serving connected clients; 0
+     * keeps handshakes on the I/O processor threads.
+     */
+    private int handshakeThreads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * SSL context shared by all sessions; sharing it is what allows sessions to be resumed.
+     */
+    private volatile SSLContext sslContext;
+
+    private HandshakeExecutorFilter handshakeExecutorFilter;
+
+    // ids of recently secured sessions, a resumed session having the id of the one it resumes
+    private final Set<ByteBuffer> sessionIds = Collections.newSetFromMap(new LinkedHashMap<ByteBuffer, Boolean>() {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+            return size() > (sessionCacheSize > 0 ? sessionCacheSize : 20480);
+        }
+
+    });
+
+    private final LongAdder handshakeCount = new LongAdder();
+
+    private final LongAdder resumedCount = new LongAdder();
+
+    private final LongAdder handshakeNanos = new LongAdder();
+
+    private final AtomicLong maxHandshakeNanos = new AtomicLong();
+
+    private final AtomicInteger pendingHandshakes = new AtomicInteger();
+
     static {
         if (log.isTraceEnabled()) {
             Provider[] providers = Security.getProviders();
@@ -104,35 +168,8 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         if (keystorePath == null || truststorePath == null) {
             throw new NotActiveException("Keystore or truststore are null");
         }
-        // determine the keystore type by the file extension
-        String keyStoreType = keystorePath.lastIndexOf(".p12") > 0 ? "PKCS12" : "JKS";
-        // create the ssl context
-        SSLContext sslContext = null;
-        try {
-            sslContext = TLSFactory.getTLSContext(keyStoreType, keystorePassword, keystorePath, truststorePassword, truststorePath);
-            log.debug("SSL provider is: {}", sslContext.getProvider());
-            // get ssl context parameters
-            SSLParameters params = sslContext.getDefaultSSLParameters();
-            //params.setApplicationProtocols(protocols);
-            if (log.isDebugEnabled()) {
-                Arrays.asList(params.getCipherSuites()).forEach(cipher -> log.debug("Supported cipher suite: {}", cipher));
-            }
-            params.setCipherSuites(cipherSuites);
-            // set the endpoint identification algorithm
-            //params.setEndpointIdentificationAlgorithm("RTMPS");
-            //params.setProtocols(protocols);
-            // choose to honor the client's preference rather than its own preference
-            params.setUseCipherSuitesOrder(false);
-            if (log.isDebugEnabled()) {
-                log.debug("SSL context params - need client auth: {} want client auth: {} endpoint id algorithm: {}", params.getNeedClientAuth(), params.getWantClientAuth(), params.getEndpointIdentificationAlgorithm());
-                String[] supportedProtocols = params.getProtocols();
-                for (String protocol : supportedProtocols) {
-                    log.debug("SSL context supported protocol: {}", protocol);
-                }
-            }
-        } catch (Exception ex) {
-            log.error("Exception getting SSL context", ex);
-        }
+        // create or reuse the shared ssl context
+        SSLContext sslContext = getSSLContext();
         // create the ssl filter using server mode
         SslFilter sslFilter = new SslFilter(sslContext);
         sslFilter.setUseClientMode(useClientMode);
@@ -151,6 +188,12 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         IoFilterChain chain = session.getFilterChain();
         // add ssl first
         chain.addFirst("sslFilter", sslFilter);
+        // hand the handshake off to the bounded executor, ahead of the ssl filter
+        HandshakeExecutorFilter executorFilter = getHandshakeExecutorFilter();
+        if (executorFilter != null) {
+            chain.addFirst("tlsExecutor", executorFilter);
+        }
+        handshakeStarted(session);
         // use notification messages
         session.setAttribute(SslFilter.USE_NOTIFICATION, Boolean.TRUE);
         log.debug("isSslStarted: {}", sslFilter.isSslStarted(session));
@@ -172,6 +215,181 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         session.setAttribute(RTMPConnection.RTMP_HANDSHAKE, handshake);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void sessionClosed(IoSession session) throws Exception {
+        if (session.removeAttribute(TLS_HANDSHAKE_START) != null) {
+            pendingHandshakes.decrementAndGet();
+        }
+        super.sessionClosed(session);
+    }
+
+    /**
+     * Records the start of a session's TLS handshake.
+     *
+     * @param session
+     *            new session
+     */
+    void handshakeStarted(IoSession session) {
+        session.setAttribute(TLS_HANDSHAKE_START, System.nanoTime());
+        pendingHandshakes.incrementAndGet();
+    }
+
+    /**
+     * Whether a session's TLS handshake is still in progress.
+     *
+     * @param session
+     *            session
+     * @return true until the session has been secured
+     */
+    boolean isHandshaking(IoSession session) {
+        return session.containsAttribute(TLS_HANDSHAKE_START);
+    }
+
+    /**
+     * Records a completed TLS handshake; called when the ssl filter reports the session as secured. A handshake counts as a resumption
+     * when the session id is one already secured; TLS 1.3 issues a new id on every handshake, so its resumptions are not counted.
+     *
+     * @param session
+     *            secured session
+     */
+    public void handshakeCompleted(IoSession session) {
+        Long start = (Long) session.removeAttribute(TLS_HANDSHAKE_START);
+        if (start != null) {
+            pendingHandshakes.decrementAndGet();
+            long elapsed = System.nanoTime() - start;
+            handshakeCount.increment();
+            handshakeNanos.add(elapsed);
+            maxHandshakeNanos.accumulateAndGet(elapsed, Math::max);
+            SSLSession sslSession = (SSLSession) session.getAttribute(SslFilter.SSL_SESSION);
+            if (sslSession != null) {
+                byte[] id = sslSession.getId();
+                if (id != null && id.length > 0) {
+                    boolean resumed;
+                    synchronized (sessionIds) {
+                        resumed = !sessionIds.add(ByteBuffer.wrap(id));
+                    }
+                    if (resumed) {
+                        resumedCount.increment();
+                    }
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("TLS handshake completed in {}us for session: {}", TimeUnit.NANOSECONDS.toMicros(elapsed), session.getId());
+            }
+        }
+    }
+
+    /**
+     * Returns the shared SSL context, creating it from the configured key and trust stores on first use.
+     *
+     * @return ssl context or null if it could not be created
+     */
+    protected SSLContext getSSLContext() {
+        SSLContext ctx = sslContext;
+        if (ctx == null) {
+            synchronized (this) {
+                ctx = sslContext;
+                if (ctx == null) {
+                    // determine the keystore type by the file extension
+                    String keyStoreType = keystorePath.lastIndexOf(".p12") > 0 ? "PKCS12" : "JKS";
+                    try {
+                        ctx = TLSFactory.getTLSContext(keyStoreType, keystorePassword, keystorePath, truststorePassword, truststorePath);
+                        TLSFactory.configureSessionCache(ctx, sessionCacheSize, sessionTimeout);
+                        log.debug("SSL provider is: {}", ctx.getProvider());
+                        // get ssl context parameters
+                        SSLParameters params = ctx.getDefaultSSLParameters();
+                        if (log.isDebugEnabled()) {
+                            Arrays.asList(params.getCipherSuites()).forEach(cipher -> log.debug("Supported cipher suite: {}", cipher));
+                            log.debug("SSL context params - need client auth: {} want client auth: {} endpoint id algorithm: {}", params.getNeedClientAuth(), params.getWantClientAuth(), params.getEndpointIdentificationAlgorithm());
+                            String[] supportedProtocols = params.getProtocols();
+                            for (String protocol : supportedProtocols) {
+                                log.debug("SSL context supported protocol: {}", protocol);
+                            }
+                        }
+                        sslContext = ctx;
+                        registerJMX();
+                    } catch (Exception ex) {
+                        log.error("Exception getting SSL context", ex);
+                    }
+                }
+            }
+        }
+        return ctx;
+    }
+
+    /**
+     * Returns the executor filter shared by all sessions for tls handshakes, or null if disabled.
+     *
+     * @return executor filter
+     */
+    synchronized HandshakeExecutorFilter getHandshakeExecutorFilter() {
+        if (handshakeExecutorFilter == null && handshakeThreads > 0) {
+            // ordered per session, bounded in threads across all sessions
+            handshakeExecutorFilter = new HandshakeExecutorFilter(handshakeThreads, new CustomizableThreadFactory("RTMPSHandshake-"), this::isHandshaking);
+        }
+        return handshakeExecutorFilter;
+    }
+
+    private void registerJMX() {
+        try {
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName oName = new ObjectName("org.red5.server:type=RTMPSMinaIoHandler");
+            if (!mbs.isRegistered(oName)) {
+                mbs.registerMBean(new StandardMBean(this, RTMPSMinaIoHandlerMXBean.class, true), oName);
+            }
+        } catch (Exception e) {
+            log.warn("Error on jmx registration", e);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getHandshakeCount() {
+        return handshakeCount.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getResumedHandshakeCount() {
+        return resumedCount.sum();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public double getResumptionRate() {
+        long count = handshakeCount.sum();
+        return count > 0 ? (double) resumedCount.sum() / count : 0d;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getAverageHandshakeMicros() {
+        long count = handshakeCount.sum();
+        return count > 0 ? TimeUnit.NANOSECONDS.toMicros(handshakeNanos.sum() / count) : 0L;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public long getMaxHandshakeMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxHandshakeNanos.get());
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getPendingHandshakes() {
+        return pendingHandshakes.get();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void resetStatistics() {
+        handshakeCount.reset();
+        resumedCount.reset();
+        handshakeNanos.reset();
+        maxHandshakeNanos.set(0L);
+    }
+
     /**
      * Password used to access the keystore file.
      *
@@ -285,4 +503,71 @@ public class RTMPSMinaIoHandler extends RTMPMinaIoHandler {
         this.wantClientAuth = wantClientAuth;
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public int getSessionCacheSize() {
+        return sessionCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of entries in the server TLS session cache; 0 means unlimited.
+     *
+     * @param sessionCacheSize
+     *            cache size
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+        if (sslContext != null) {
+            TLSFactory.configureSessionCache(sslContext, sessionCacheSize, sessionTimeout);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getSessionTimeout() {
+        return sessionTimeout;
+    }
+
+    /**
+     * Sets the lifetime in seconds of a cached TLS session; 0 means unlimited.
+     *
+     * @param sessionTimeout
+     *            timeout in seconds
+     */
+    public void setSessionTimeout(int sessionTimeout) {
+        this.sessionTimeout = sessionTimeout;
+        if (sslContext != null) {
+            TLSFactory.configureSessionCache(sslContext, sessionCacheSize, sessionTimeout);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Tickets are switched off for the whole JVM at startup with <code>-Djdk.tls.server.enableSessionTicketExtension=false</code>.
+     */
+    @Override
+    public boolean isSessionTicketsEnabled() {
+        return Boolean.parseBoolean(System.getProperty("jdk.tls.server.enableSessionTicketExtension", "true"));
+    }
+
+    /**
+     * Returns the maximum threads used for TLS handshakes.
+     *
+     * @return handshake threads
+     */
+    public int getHandshakeThreads() {
+        return handshakeThreads;
+    }
+
+    /**
+     * Sets the maximum threads used for TLS handshakes; 0 keeps handshakes on the I/O processor threads.
+     *
+     * @param handshakeThreads
+     *            thread count
+     */
+    public void setHandshakeThreads(int handshakeThreads) {
+        this.handshakeThreads = handshakeThreads;
+    }
+
 }
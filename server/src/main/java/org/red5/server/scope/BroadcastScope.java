@@ -242,6 +242,10 @@ public class BroadcastScope extends BasicScope implements IBroadcastScope, IPipe
             }
         }
         this.clientBroadcastStream = clientBroadcastStream;
+        // aliases may have been set on the stream before it was attached here
+        if (clientBroadcastStream != null && parent instanceof Scope) {
+            ((Scope) parent).registerBroadcastAliases(this);
+        }
     }
 
     /*
@@ -13,6 +13,7 @@ import org.red5.server.messaging.IMessageOutput;
 import org.red5.server.messaging.IPipe;
 import org.red5.server.messaging.InMemoryPushPushPipe;
 import org.red5.server.net.rtmp.RTMPConnection;
+import org.red5.server.stream.consumer.AggregateBatcher;
 import org.red5.server.stream.consumer.ConnectionConsumer;
 
 /**
@@ -22,6 +23,26 @@ import org.red5.server.stream.consumer.ConnectionConsumer;
  */
 public class ConsumerService implements IConsumerService {
 
+    /**
+     * Whether audio and video are packed into aggregate messages for subscribers which support them
+     */
+    private boolean aggregateEgress;
+
+    /**
+     * Stream time an aggregate may span, in milliseconds
+     */
+    private int aggregateWindow = 40;
+
+    /**
+     * Longest a frame is held for an aggregate, in milliseconds
+     */
+    private int aggregateMaxLatency = 50;
+
+    /**
+     * Largest aggregate, in bytes
+     */
+    private int aggregateMaxBytes = 32768;
+
     /** {@inheritDoc} */
     public IMessageOutput getConsumerOutput(IClientStream stream) {
         IStreamCapableConnection streamConn = stream.getConnection();
@@ -31,10 +52,54 @@ public class ConsumerService implements IConsumerService {
             // now we use OutputStream as a channel wrapper.
             OutputStream o = conn.createOutputStream(stream.getStreamId());
             IPipe pipe = new InMemoryPushPushPipe();
-            pipe.subscribe(new ConnectionConsumer(conn, o.getVideo(), o.getAudio(), o.getData()), null);
+            ConnectionConsumer consumer = new ConnectionConsumer(conn, o.getVideo(), o.getAudio(), o.getData());
+            if (aggregateEgress && AggregateBatcher.isSupported(conn.getConnectParams())) {
+                consumer.setAggregateBatcher(new AggregateBatcher(o.getData(), conn.getScheduler(), aggregateWindow, aggregateMaxLatency, aggregateMaxBytes));
+            }
+            pipe.subscribe(consumer, null);
             return pipe;
         }
         return null;
     }
 
+    /**
+     * Sets whether audio and video are packed into aggregate messages for subscribers which support them.
+     *
+     * @param aggregateEgress
+     *            true to send aggregates
+     */
+    public void setAggregateEgress(boolean aggregateEgress) {
+        this.aggregateEgress = aggregateEgress;
+    }
+
+    /**
+     * Sets the stream time an aggregate may span.
+     *
+     * @param aggregateWindow
+     *            window in milliseconds
+     */
+    public void setAggregateWindow(int aggregateWindow) {
+        this.aggregateWindow = aggregateWindow;
+    }
+
+    /**
+     * Sets the longest a frame is held for an aggregate, bounding the latency added.
+     *
+     * @param aggregateMaxLatency
+     *            latency in milliseconds
+     */
+    public void setAggregateMaxLatency(int aggregateMaxLatency) {
+        this.aggregateMaxLatency = aggregateMaxLatency;
+    }
+
+    /**
+     * Sets the largest aggregate; larger frames are sent on their own.
+     *
+     * @param aggregateMaxBytes
+     *            size in bytes
+     */
+    public void setAggregateMaxBytes(int aggregateMaxBytes) {
+        this.aggregateMaxBytes = aggregateMaxBytes;
+    }
+
 }
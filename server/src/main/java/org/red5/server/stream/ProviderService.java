@@ -28,6 +28,7 @@ import org.red5.server.messaging.InMemoryPullPullPipe;
 import org.red5.server.scope.BasicScope;
 import org.red5.server.scope.BroadcastScope;
 import org.red5.server.scope.Scope;
+import org.red5.server.stream.consumer.RecordingJournal;
 import org.red5.server.stream.provider.FileProvider;
 import org.red5.server.util.ScopeUtils;
 import org.slf4j.Logger;
@@ -45,6 +46,9 @@ public class ProviderService implements IProviderService {
     // whether or not to support FCS/FMS/AMS live-wait (default to off)
     private boolean liveWaitSupport;
 
+    // cache of stream name to file resolutions, optional
+    private StreamFileCache fileCache;
+
     /** {@inheritDoc} */
     public INPUT_TYPE lookupProviderInput(IScope scope, String name, int type) {
         INPUT_TYPE result = INPUT_TYPE.NOT_FOUND;
@@ -111,7 +115,7 @@ public class ProviderService implements IProviderService {
             log.debug("getVODProviderFile - scope: {} name: {}", scope, name);
         }
         File file = getStreamFile(scope, name);
-        if (file == null || !file.exists()) {
+        if (file == null) {
             //if there is no file extension this is most likely a live stream
             if (name.indexOf('.') > 0) {
                 log.info("File was null or did not exist: {}", name);
@@ -182,11 +186,35 @@ public class ProviderService implements IProviderService {
         return scope.getBasicScope(ScopeType.BROADCAST, name) == null;
     }
 
-    @SuppressWarnings("null")
     private File getStreamFile(IScope scope, String name) {
         if (log.isDebugEnabled()) {
             log.debug("getStreamFile - name: {}", name);
         }
+        if (fileCache != null) {
+            StreamFileCache.Resolution resolution = fileCache.get(scope, name);
+            if (resolution != null) {
+                if (resolution.isFound()) {
+                    // deletions are not always seen by the watch, on network mounts for one
+                    if (resolution.getFile().exists()) {
+                        return resolution.getFile();
+                    }
+                    fileCache.invalidate(StreamFileCache.getKey(scope, name));
+                } else if (!RecordingJournal.materializePending(resolution.getCandidate())) {
+                    // a miss is only looked up again if a recording to the file has ended in the journal since
+                    return null;
+                }
+            }
+            // file which was looked for, so a miss can be invalidated when it appears
+            File[] candidate = new File[1];
+            File file = resolveStreamFile(scope, name, candidate);
+            fileCache.put(scope, name, file, candidate[0]);
+            return file;
+        }
+        return resolveStreamFile(scope, name, null);
+    }
+
+    @SuppressWarnings("null")
+    private File resolveStreamFile(IScope scope, String name, File[] candidate) {
         IStreamableFileFactory factory = (IStreamableFileFactory) ScopeUtils.getScopeService(scope, IStreamableFileFactory.class);
         if (name.indexOf(':') == -1 && name.indexOf('.') == -1) {
             // Default to .flv files if no prefix and no extension is given.
@@ -214,12 +242,21 @@ public class ProviderService implements IProviderService {
         try {
             // get ahead of the game with the direct check first
             File tmp = Paths.get(filename).toFile();
+            if (candidate != null) {
+                candidate[0] = tmp;
+            }
+            // a recording still held by the journal is written out before it is looked for
+            RecordingJournal.materializePending(tmp);
             // most likely case first
             if (tmp.exists()) {
                 file = tmp;
             } else if (!filenameGenerator.resolvesToAbsolutePath()) {
                 try {
                     file = scope.getContext().getResource(filename).getFile();
+                    if (candidate != null) {
+                        candidate[0] = file;
+                    }
+                    RecordingJournal.materializePending(file);
                 } catch (FileNotFoundException e) {
                     log.debug("File {} not found, nulling it", filename);
                 }
@@ -252,4 +289,18 @@ public class ProviderService implements IProviderService {
         this.liveWaitSupport = liveWaitSupport;
     }
 
+    public StreamFileCache getFileCache() {
+        return fileCache;
+    }
+
+    /**
+     * Sets the cache for stream file resolutions; without one every lookup goes to the filesystem.
+     *
+     * @param fileCache
+     *            cache
+     */
+    public void setFileCache(StreamFileCache fileCache) {
+        this.fileCache = fileCache;
+    }
+
 }
@@ -7,6 +7,7 @@
 
 package org.red5.server.stream.filter;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.messaging.IFilter;
 import org.red5.server.messaging.IMessage;
 import org.red5.server.messaging.IMessageComponent;
@@ -14,11 +15,15 @@ import org.red5.server.messaging.IPipe;
 import org.red5.server.messaging.IPipeConnectionListener;
 import org.red5.server.messaging.OOBControlMessage;
 import org.red5.server.messaging.PipeConnectionEvent;
+import org.red5.server.stream.IStreamData;
+import org.red5.server.stream.ITokenBucket;
+import org.red5.server.stream.message.RTMPMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Controls stream bandwidth
+ * Controls stream bandwidth: pulls messages from the provider and pushes them to the consumer no faster than its token bucket allows,
+ * taking one token per byte of stream data. Without a bucket messages are passed through as fast as they can be pulled.
  *
  * @author mondain
  */
@@ -54,6 +59,11 @@ public class StreamBandwidthController implements IFilter, IPipeConnectionListen
      */
     private volatile boolean isStarted;
 
+    /**
+     * Bucket pacing the pushed stream data
+     */
+    private volatile ITokenBucket bucket;
+
     /** {@inheritDoc} */
     public void onPipeConnectionEvent(PipeConnectionEvent event) {
         switch (event.getType()) {
@@ -96,6 +106,17 @@ public class StreamBandwidthController implements IFilter, IPipeConnectionListen
                 if (log.isDebugEnabled()) {
                     log.debug("got message: {}", message);
                 }
+                if (message == null) {
+                    break;
+                }
+                ITokenBucket tokens = bucket;
+                if (tokens != null && message instanceof RTMPMessage && ((RTMPMessage) message).getBody() instanceof IStreamData) {
+                    IoBuffer data = ((IStreamData<?>) ((RTMPMessage) message).getBody()).getData();
+                    // wait for the tokens; a reset of the bucket on close fails the wait
+                    if (data != null && !tokens.acquireToken(data.limit(), -1)) {
+                        break;
+                    }
+                }
                 consumerPipe.pushMessage(message);
             } catch (Exception e) {
                 log.warn("Exception in pull and push", e);
@@ -117,6 +138,24 @@ public class StreamBandwidthController implements IFilter, IPipeConnectionListen
      */
     public void close() {
         isStarted = false;
+        ITokenBucket tokens = bucket;
+        if (tokens != null) {
+            tokens.reset();
+        }
+    }
+
+    /**
+     * Sets the bucket pacing the stream, for instance one from {@link org.red5.server.stream.ITokenBucketService#createTokenBucket(long, long)}.
+     *
+     * @param bucket
+     *            token bucket or null to not pace
+     */
+    public void setBucket(ITokenBucket bucket) {
+        this.bucket = bucket;
+    }
+
+    public ITokenBucket getBucket() {
+        return bucket;
     }
 
     /**
@@ -272,13 +272,17 @@ public class FileProvider implements IPassive, ISeekableProvider, IPullableProvi
             reader.position(Long.MAX_VALUE);
             return (int) keyFrameMeta.duration;
         }
-        int frame = -1;
-        for (int i = 0; i < keyFrameMeta.positions.length; i++) {
-            if (keyFrameMeta.timestamps[i] >= ts) {
-                frame = i;
-                break;
+        // first key frame at or after ts, the timestamps are in file order
+        int low = 0, high = keyFrameMeta.timestamps.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keyFrameMeta.timestamps[mid] < ts) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
+        int frame = low < keyFrameMeta.timestamps.length ? low : -1;
         if (frame > -1) {
             reader.position(keyFrameMeta.positions[frame]);
             return keyFrameMeta.timestamps[frame];
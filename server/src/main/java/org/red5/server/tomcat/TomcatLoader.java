@@ -13,11 +13,18 @@ import java.lang.management.ManagementFactory;
 import java.net.BindException;
 import java.security.Security;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.management.JMX;
 import javax.management.MBeanServer;
@@ -201,6 +208,22 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
      */
     private ISSEService sseService;
 
+    /**
+     * Number of threads used to start the Red5 contexts of the webapps; 1 starts them one after another.
+     */
+    private int startupThreads = Math.min(Runtime.getRuntime().availableProcessors(), 8);
+
+    /**
+     * Applications which must be started before others, keyed by application name with comma separated names as values. These add to
+     * any dependencies a webapp declares with the <code>red5.startAfter</code> context parameter.
+     */
+    private Map<String, String> startupDependencies;
+
+    /**
+     * Start-up records of the webapps from the last start.
+     */
+    private volatile Map<String, WebappStartup> startups = Collections.emptyMap();
+
     {
         // allow setting to true if we're running in Red5 Pro
         if (!awaitPlugins) {
@@ -464,8 +487,8 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
         } catch (Exception ex) {
             log.warn("An exception occurred during network configuration", ex);
         }
-        // create an executor for "ordered" start-up of the webapps
-        ExecutorService executor = Executors.newSingleThreadExecutor();
+        // start-up records for the webapps, in the order the host returns them
+        final Map<String, WebappStartup> appStartups = new LinkedHashMap<>();
         try {
             log.info("Starting Tomcat servlet engine");
             embedded.start();
@@ -483,8 +506,11 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
                     servletContext.setAttribute("red5.host.id", getHostId());
                     final String prefix = servletContext.getRealPath("/");
                     log.info("Context initialized: {} path: {}", servletContext.getContextPath(), prefix);
+                    final WebappStartup appStartup = new WebappStartup(WebappStartup.toName(servletContext.getContextPath()));
                     try {
+                        long phaseStart = System.nanoTime();
                         ctx.resourcesStart();
+                        appStartup.phase("resources", phaseStart);
                         log.debug("Context - privileged: {}, start time: {}, reloadable: {}", new Object[] { ctx.getPrivileged(), ctx.getStartTime(), ctx.getReloadable() });
                         Loader cldr = ctx.getLoader();
                         log.debug("Loader delegate: {} type: {}", cldr.getDelegate(), cldr.getClass().getName());
@@ -501,75 +527,84 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
                         // get the (spring) parent context key
                         final String parentContextKey = servletContext.getInitParameter(LOCATOR_FACTORY_KEY_PARAM) == null ? defaultParentContextKey : servletContext.getInitParameter(LOCATOR_FACTORY_KEY_PARAM);
                         log.debug("Spring parent context key: {}", parentContextKey);
-                        // set current threads classloader to the webapp classloader
-                        Thread.currentThread().setContextClassLoader(webClassLoader);
-                        // create a thread to speed-up application loading
-                        Future<?> appStartTask = executor.submit(new Runnable() {
-                            @SuppressWarnings("null")
-                            public void run() {
-                                //set thread context classloader to web classloader
-                                Thread.currentThread().setContextClassLoader(webClassLoader);
-                                Thread.currentThread().setName("Loader:" + servletContext.getContextPath());
-                                //get the web app's parent context
-                                ApplicationContext parentContext = null;
-                                if (applicationContext.containsBean(parentContextKey)) {
-                                    parentContext = (ApplicationContext) applicationContext.getBean(parentContextKey);
+                        // applications which have to be running before this one, from the webapp and from our own configuration
+                        appStartup.addDependencies(servletContext.getInitParameter(WebappStartup.START_AFTER_PARAM));
+                        if (startupDependencies != null) {
+                            appStartup.addDependencies(startupDependencies.get(appStartup.getName()));
+                        }
+                        // the red5 (spring) context is started later on the startup executor
+                        appStartup.task = () -> {
+                            //set thread context classloader to web classloader
+                            Thread.currentThread().setContextClassLoader(webClassLoader);
+                            Thread.currentThread().setName("Loader:" + servletContext.getContextPath());
+                            long step = System.nanoTime();
+                            //get the web app's parent context
+                            ApplicationContext parentContext = null;
+                            if (applicationContext.containsBean(parentContextKey)) {
+                                parentContext = (ApplicationContext) applicationContext.getBean(parentContextKey);
+                            } else {
+                                log.warn("Parent context was not found: {}", parentContextKey);
+                            }
+                            // create a spring web application context
+                            final String contextClass = servletContext.getInitParameter(CONTEXT_CLASS_PARAM) == null ? XmlWebApplicationContext.class.getName() : servletContext.getInitParameter(CONTEXT_CLASS_PARAM);
+                            // web app context (spring)
+                            ConfigurableWebApplicationContext appctx = null;
+                            try {
+                                Class<?> clazz = Class.forName(contextClass, true, webClassLoader);
+                                appctx = (ConfigurableWebApplicationContext) clazz.getDeclaredConstructor().newInstance();
+                                // set the root webapp ctx attr on the each servlet context so spring can find it later
+                                servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, appctx);
+                                appctx.setConfigLocations(new String[] { contextConfigLocation });
+                                appctx.setServletContext(servletContext);
+                                // set parent context or use current app context
+                                if (parentContext != null) {
+                                    appctx.setParent(parentContext);
                                 } else {
-                                    log.warn("Parent context was not found: {}", parentContextKey);
+                                    appctx.setParent(applicationContext);
                                 }
-                                // create a spring web application context
-                                final String contextClass = servletContext.getInitParameter(CONTEXT_CLASS_PARAM) == null ? XmlWebApplicationContext.class.getName() : servletContext.getInitParameter(CONTEXT_CLASS_PARAM);
-                                // web app context (spring)
-                                ConfigurableWebApplicationContext appctx = null;
-                                try {
-                                    Class<?> clazz = Class.forName(contextClass, true, webClassLoader);
-                                    appctx = (ConfigurableWebApplicationContext) clazz.getDeclaredConstructor().newInstance();
-                                    // set the root webapp ctx attr on the each servlet context so spring can find it later
-                                    servletContext.setAttribute(WebApplicationContext.ROOT_WEB_APPLICATION_CONTEXT_ATTRIBUTE, appctx);
-                                    appctx.setConfigLocations(new String[] { contextConfigLocation });
-                                    appctx.setServletContext(servletContext);
-                                    // set parent context or use current app context
-                                    if (parentContext != null) {
-                                        appctx.setParent(parentContext);
-                                    } else {
-                                        appctx.setParent(applicationContext);
-                                    }
-                                    // refresh the factory
-                                    log.trace("Classloader prior to refresh: {}", appctx.getClassLoader());
-                                    appctx.refresh();
-                                    if (log.isDebugEnabled()) {
-                                        log.debug("Red5 app is active: {} running: {}", appctx.isActive(), appctx.isRunning());
-                                    }
-                                    // set a realm for the webapp if one is specified
-                                    if (appctx.containsBean("realm")) {
-                                        log.debug("Realm specified in context configuration");
-                                        Realm contextRealm = (Realm) appctx.getBean("realm");
-                                        if (contextRealm != null) {
-                                            log.debug("Realm class: {}", contextRealm.getClass().getName());
-                                            contextRealm.setContainer(cont);
-                                            ctx.setRealm(contextRealm);
-                                            // when a realm implements our red5 realm, add the app and servlet contexts
-                                            if (contextRealm instanceof IRed5Realm) {
-                                                ((IRed5Realm) contextRealm).setApplicationContext(appctx);
-                                                ((IRed5Realm) contextRealm).setServletContext(servletContext);
-                                            }
-                                            // set the system property to allow the config to be located
-                                            if (contextRealm instanceof JAASRealm) {
-                                                log.debug("Realm is JAAS type");
-                                                // this may interfere with other concurrently loaded jaas realms
-                                                System.setProperty("java.security.auth.login.config", prefix + "WEB-INF/jaas.config");
-                                            }
-                                            log.debug("Realm info: {} path: {}", contextRealm, ((RealmBase) contextRealm).getRealmPath());
+                                appStartup.phase("create", step);
+                                // refresh the factory
+                                log.trace("Classloader prior to refresh: {}", appctx.getClassLoader());
+                                step = System.nanoTime();
+                                appctx.refresh();
+                                appStartup.phase("refresh", step);
+                                if (log.isDebugEnabled()) {
+                                    log.debug("Red5 app is active: {} running: {}", appctx.isActive(), appctx.isRunning());
+                                }
+                                // set a realm for the webapp if one is specified
+                                if (appctx.containsBean("realm")) {
+                                    step = System.nanoTime();
+                                    log.debug("Realm specified in context configuration");
+                                    Realm contextRealm = (Realm) appctx.getBean("realm");
+                                    if (contextRealm != null) {
+                                        log.debug("Realm class: {}", contextRealm.getClass().getName());
+                                        contextRealm.setContainer(cont);
+                                        ctx.setRealm(contextRealm);
+                                        // when a realm implements our red5 realm, add the app and servlet contexts
+                                        if (contextRealm instanceof IRed5Realm) {
+                                            ((IRed5Realm) contextRealm).setApplicationContext(appctx);
+                                            ((IRed5Realm) contextRealm).setServletContext(servletContext);
+                                        }
+                                        // set the system property to allow the config to be located
+                                        if (contextRealm instanceof JAASRealm) {
+                                            log.debug("Realm is JAAS type");
+                                            // this may interfere with other concurrently loaded jaas realms
+                                            System.setProperty("java.security.auth.login.config", prefix + "WEB-INF/jaas.config");
                                         }
+                                        log.debug("Realm info: {} path: {}", contextRealm, ((RealmBase) contextRealm).getRealmPath());
                                     }
-                                    appctx.start();
-                                } catch (Throwable e) {
-                                    throw new RuntimeException("Failed to load webapplication context class", e);
+                                    appStartup.phase("realm", step);
                                 }
+                                step = System.nanoTime();
+                                appctx.start();
+                                appStartup.phase("start", step);
+                            } catch (Throwable e) {
+                                throw new RuntimeException("Failed to load webapplication context class", e);
+                            } finally {
+                                Thread.currentThread().setContextClassLoader(originalClassLoader);
                             }
-                        });
-                        // see if everything completed
-                        log.debug("Context: {} done: {}", servletContext.getContextPath(), appStartTask.isDone());
+                        };
+                        appStartups.put(appStartup.getName(), appStartup);
                     } catch (Throwable t) {
                         log.error("Error setting up context: {} due to: {}", servletContext.getContextPath(), t.getMessage());
                         t.printStackTrace();
@@ -579,6 +614,8 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
                     }
                 }
             }
+            // start the red5 contexts, independent ones in parallel
+            startApplications(appStartups);
             // if everything is ok at this point then call the rtmpt and rtmps beans so they will init
             if (applicationContext.containsBean("rtmpt.server")) {
                 log.debug("Initializing RTMPT");
@@ -601,14 +638,88 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
                 log.error("Error loading tomcat", e);
             }
         } finally {
-            // finish-up with the executor
-            executor.shutdown();
             // do our jmx stuff
             registerJMX();
         }
         log.debug("Tomcat load completed");
     }
 
+    /**
+     * Starts the Red5 contexts of the given webapps on a bounded pool. An application is started once the applications it depends on have
+     * finished starting, whether they succeeded or not; applications without dependencies start in parallel. Connections for an
+     * application are held by the RTMP handler until that application is up, see {@link LoaderBase#awaitApplication(String, long)}.
+     *
+     * @param appStartups
+     *            start-up records keyed by application name
+     */
+    private void startApplications(Map<String, WebappStartup> appStartups) {
+        startups = Collections.unmodifiableMap(appStartups);
+        if (appStartups.isEmpty()) {
+            return;
+        }
+        final long start = System.nanoTime();
+        final int threads = Math.max(1, Math.min(startupThreads, appStartups.size()));
+        final AtomicInteger threadId = new AtomicInteger();
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "WebappStartup-" + threadId.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        log.info("Starting {} web applications with {} threads", appStartups.size(), threads);
+        // gate connections per application before any of them start
+        Map<String, CompletableFuture<Boolean>> ready = new HashMap<>();
+        for (String name : appStartups.keySet()) {
+            ready.put(name, LoaderBase.applicationStarting(name));
+        }
+        for (WebappStartup appStartup : appStartups.values()) {
+            scheduleStartup(appStartup, appStartups, ready, executor, new HashSet<>());
+        }
+        CompletableFuture<?>[] all = appStartups.values().stream().map(appStartup -> appStartup.future).toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(all).whenComplete((v, t) -> {
+            executor.shutdown();
+            log.info("Web applications started in {}ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            for (WebappStartup appStartup : appStartups.values()) {
+                log.info("Startup report: {}", appStartup);
+            }
+        });
+    }
+
+    /**
+     * Schedules the start-up of an application after its dependencies, scheduling those first as needed.
+     */
+    private CompletableFuture<Void> scheduleStartup(WebappStartup appStartup, Map<String, WebappStartup> appStartups, Map<String, CompletableFuture<Boolean>> ready, ExecutorService executor, Set<String> visiting) {
+        if (appStartup.future != null) {
+            return appStartup.future;
+        }
+        visiting.add(appStartup.getName());
+        List<CompletableFuture<Void>> dependencies = new ArrayList<>();
+        for (String name : appStartup.getDependencies()) {
+            WebappStartup dependency = appStartups.get(name);
+            if (dependency == null) {
+                log.warn("Application {} depends on {} which is not deployed, ignoring", appStartup.getName(), name);
+            } else if (visiting.contains(name)) {
+                log.warn("Circular start-up dependency between {} and {}, ignoring", appStartup.getName(), name);
+            } else {
+                dependencies.add(scheduleStartup(dependency, appStartups, ready, executor, visiting));
+            }
+        }
+        visiting.remove(appStartup.getName());
+        final CompletableFuture<Boolean> started = ready.get(appStartup.getName());
+        appStartup.future = CompletableFuture.allOf(dependencies.toArray(CompletableFuture[]::new)).handle((v, t) -> null).thenRunAsync(() -> {
+            appStartup.starting();
+            try {
+                appStartup.task.run();
+                appStartup.started();
+                started.complete(Boolean.TRUE);
+            } catch (Throwable t) {
+                log.error("Error starting application: {}", appStartup.getName(), t);
+                appStartup.failed(t);
+                started.complete(Boolean.FALSE);
+            }
+        }, executor);
+        return appStartup.future;
+    }
+
     /**
      * Check for websocket plugin and load it if available.
      */
@@ -984,6 +1095,51 @@ public class TomcatLoader extends LoaderBase implements InitializingBean, Dispos
         return hostId;
     }
 
+    /**
+     * Returns the number of threads used to start webapps.
+     *
+     * @return start-up threads
+     */
+    public int getStartupThreads() {
+        return startupThreads;
+    }
+
+    /**
+     * Sets the number of threads used to start webapps; 1 restores one at a time start-up.
+     *
+     * @param startupThreads
+     *            start-up threads
+     */
+    public void setStartupThreads(int startupThreads) {
+        this.startupThreads = startupThreads;
+    }
+
+    /**
+     * Sets start-up dependencies between applications, for example <code>vod</code> to <code>live,auth</code> starts <code>live</code>
+     * and <code>auth</code> before <code>vod</code>.
+     *
+     * @param startupDependencies
+     *            dependencies keyed by application name
+     */
+    public void setStartupDependencies(Map<String, String> startupDependencies) {
+        this.startupDependencies = startupDependencies;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String[] getStartupReport() {
+        return startups.values().stream().map(WebappStartup::toString).toArray(String[]::new);
+    }
+
+    /**
+     * Returns the start-up records of the webapps from the last start, keyed by application name.
+     *
+     * @return start-up records
+     */
+    public Map<String, WebappStartup> getStartups() {
+        return startups;
+    }
+
     /**
      * <p>registerJMX.</p>
      */
@@ -0,0 +1,192 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.tomcat;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-up of a single web application by the {@link TomcatLoader}: its declared dependencies, its state and the time spent in each phase
+ * of the Red5 (Spring) context start-up, for the loader's start-up report.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class WebappStartup {
+
+    /**
+     * Servlet context init parameter listing, comma separated, the applications which must be started before this one.
+     */
+    public static final String START_AFTER_PARAM = "red5.startAfter";
+
+    public enum State {
+        PENDING, STARTING, STARTED, FAILED
+    }
+
+    private final String name;
+
+    private final Set<String> dependencies = new LinkedHashSet<>();
+
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    private final long created = System.nanoTime();
+
+    private volatile State state = State.PENDING;
+
+    private volatile long startedAt;
+
+    private volatile long finishedAt;
+
+    private volatile Throwable failure;
+
+    /**
+     * Starts the Red5 (Spring) context of the application.
+     */
+    Runnable task;
+
+    /**
+     * Start-up future, set when the loader schedules this application.
+     */
+    CompletableFuture<Void> future;
+
+    /**
+     * Creates a start-up record.
+     *
+     * @param name
+     *            application name, the context path without the leading slash
+     */
+    public WebappStartup(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Normalizes a context path or application name into an application name.
+     *
+     * @param path
+     *            context path, such as <code>/live</code>
+     * @return application name, such as <code>live</code>
+     */
+    public static String toName(String path) {
+        String name = path.trim();
+        return name.startsWith("/") ? name.substring(1) : name;
+    }
+
+    /**
+     * Adds dependencies from a comma separated list of application names or context paths.
+     *
+     * @param names
+     *            applications to start first, may be null
+     */
+    public void addDependencies(String names) {
+        if (names != null) {
+            for (String dependency : names.split(",")) {
+                dependency = toName(dependency);
+                if (!dependency.isEmpty() && !dependency.equals(name)) {
+                    dependencies.add(dependency);
+                }
+            }
+        }
+    }
+
+    /**
+     * Records the time taken by a phase which began at the given time.
+     *
+     * @param phase
+     *            phase name
+     * @param startNanos
+     *            {@link System#nanoTime()} when the phase began
+     */
+    public synchronized void phase(String phase, long startNanos) {
+        phases.merge(phase, System.nanoTime() - startNanos, Long::sum);
+    }
+
+    void starting() {
+        startedAt = System.nanoTime();
+        state = State.STARTING;
+    }
+
+    void started() {
+        finishedAt = System.nanoTime();
+        state = State.STARTED;
+    }
+
+    void failed(Throwable t) {
+        finishedAt = System.nanoTime();
+        failure = t;
+        state = State.FAILED;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Set<String> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns the phase durations in milliseconds, in the order the phases ran.
+     *
+     * @return phase durations
+     */
+    public synchronized Map<String, Long> getPhases() {
+        Map<String, Long> millis = new LinkedHashMap<>();
+        phases.forEach((phase, nanos) -> millis.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return millis;
+    }
+
+    /**
+     * Returns the time spent waiting for dependencies and a free loader thread, in milliseconds.
+     *
+     * @return queued time
+     */
+    public long getQueuedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis((state != State.PENDING ? startedAt : System.nanoTime()) - created);
+    }
+
+    /**
+     * Returns the time the start-up itself took, in milliseconds.
+     *
+     * @return start-up time, or the time so far if still starting
+     */
+    public long getStartupMillis() {
+        State current = state;
+        if (current == State.PENDING) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis((current != State.STARTING ? finishedAt : System.nanoTime()) - startedAt);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("/").append(name).append(' ').append(state);
+        sb.append(" in ").append(getStartupMillis()).append("ms queued ").append(getQueuedMillis()).append("ms");
+        getPhases().forEach((phase, millis) -> sb.append(' ').append(phase).append('=').append(millis).append("ms"));
+        if (!dependencies.isEmpty()) {
+            sb.append(" after ").append(dependencies);
+        }
+        if (failure != null) {
+            sb.append(" error: ").append(failure.getMessage());
+        }
+        return sb.toString();
+    }
+
+}
@@ -61,6 +61,11 @@ public class RTMPTLoader extends TomcatLoader {
      */
     protected Map<String, String> servletMappings = new HashMap<String, String>();
 
+    /**
+     * Time in milliseconds the RTMPT servlet holds idle requests open; 0 disables long-polling
+     */
+    protected long longPollTimeout;
+
     /**
      * Setter for server
      *
@@ -117,6 +122,11 @@ public class RTMPTLoader extends TomcatLoader {
         StandardWrapper wrapper = (StandardWrapper) ctx.createWrapper();
         wrapper.setServletName("RTMPTServlet");
         wrapper.setServletClass("org.red5.server.net.rtmpt.RTMPTServlet");
+        // idle requests may be held open with servlet async
+        wrapper.setAsyncSupported(true);
+        if (longPollTimeout > 0) {
+            wrapper.addInitParameter("longPollTimeout", String.valueOf(longPollTimeout));
+        }
         ctx.addChild(wrapper);
 
         // add servlet mappings
@@ -163,4 +173,14 @@ public class RTMPTLoader extends TomcatLoader {
         servletMappings.putAll(mappings);
     }
 
+    /**
+     * Set the time in milliseconds idle requests are held open waiting for outgoing data.
+     *
+     * @param longPollTimeout
+     *            timeout, 0 to disable long-polling
+     */
+    public void setLongPollTimeout(long longPollTimeout) {
+        this.longPollTimeout = longPollTimeout;
+    }
+
 }
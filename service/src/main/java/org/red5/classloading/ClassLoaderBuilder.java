@@ -9,12 +9,9 @@ package org.red5.classloading;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URL;
-import java.net.URLClassLoader;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -23,12 +20,14 @@ import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.jar.JarEntry;
-import java.util.jar.JarInputStream;
+import java.util.jar.JarFile;
 import java.util.regex.Pattern;
 
 /**
@@ -86,7 +85,7 @@ public final class ClassLoaderBuilder {
      * @return the Class loader to use to load the required class(es)
      */
     public static ClassLoader build(Path path, int mode, ClassLoader parent) {
-        final Set<URL> urlList = new HashSet<>();
+        final Set<URL> urlList = new LinkedHashSet<>();
         // the class loader to return
         ClassLoader loader = null;
         // urls to load resources / classes from
@@ -107,20 +106,16 @@ public final class ClassLoaderBuilder {
                 home = classLocation.substring(0, classLocation.lastIndexOf('/'));
                 homeDir = Paths.get(home);
             }
-            try {
-                // add red5.jar to the classpath
-                Path red5jar = homeDir.resolve("red5-server.jar");
-                if (!Files.exists(red5jar)) {
-                    System.out.println("Red5 server jar was not found, using fallback");
-                    red5jar = homeDir.resolve("red5.jar");
-                } else {
-                    System.out.println("Red5 server jar was found");
-                }
-                urlList.add(red5jar.toUri().toURL());
-            } catch (MalformedURLException e1) {
-                e1.printStackTrace();
+            // cache of the resolved class path from the previous start
+            ClasspathCache cache = ClasspathCache.open(homeDir);
+            // add red5.jar to the classpath
+            Path red5jar = homeDir.resolve("red5-server.jar");
+            if (!Files.exists(red5jar)) {
+                System.out.println("Red5 server jar was not found, using fallback");
+                red5jar = homeDir.resolve("red5.jar");
+            } else {
+                System.out.println("Red5 server jar was found");
             }
-            System.out.printf("URL list: %s\n", urlList);
             // get red5 lib system property, if not found build it
             Path libDir = null;
             String lib = System.getProperty("red5.lib_root");
@@ -129,29 +124,8 @@ public final class ClassLoaderBuilder {
             } else {
                 libDir = homeDir.resolve("lib");
             }
-            try {
-                // add lib dir
-                //urlList.add(libDir.toUri().toURL());
-                // get all the lib jars
-                Files.walkFileTree(libDir, new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                        //System.out.printf("Lib file: %s%n", file.toAbsolutePath());
-                        if (file.toFile().getName().endsWith(".jar")) {
-                            try {
-                                urlList.add(file.toUri().toURL());
-                            } catch (MalformedURLException e) {
-                                System.err.printf("Exception %s\n", e);
-                            }
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
-            } catch (Exception e) {
-                System.err.printf("Exception %s\n", e);
-            }
-            // look over the libraries and remove the old versions
-            scrubURLList(urlList);
+            // get all the lib jars
+            final List<Path> libJars = findJars(libDir);
             // get config dir
             Path confDir = null;
             String conf = System.getProperty("red5.config_root");
@@ -160,12 +134,6 @@ public final class ClassLoaderBuilder {
             } else {
                 confDir = homeDir.resolve("conf");
             }
-            // add config dir
-            try {
-                urlList.add(confDir.toUri().toURL());
-            } catch (MalformedURLException e) {
-                System.err.printf("Exception %s\n", e);
-            }
             // get red5 plugins system property, if not found build it
             String pluginsPath = System.getProperty("red5.plugins_root");
             if (pluginsPath == null) {
@@ -174,41 +142,59 @@ public final class ClassLoaderBuilder {
                 // update the property
                 System.setProperty("red5.plugins_root", pluginsPath);
             }
+            Path pluginsDir = Paths.get(pluginsPath);
             try {
                 // create the directory if it doesnt exist
-                Path pluginsDir = Files.createDirectories(Paths.get(pluginsPath));
-                // add the plugin directory to the path so that configs will be resolved and not have to be copied to conf
-                urlList.add(pluginsDir.toUri().toURL());
-                // get all the plugin jars
-                Files.walkFileTree(pluginsDir, new SimpleFileVisitor<Path>() {
-                    @Override
-                    public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                        if (file.toFile().getName().endsWith(".jar")) {
-                            try {
-                                urlList.add(file.toUri().toURL());
-                            } catch (MalformedURLException e) {
-                                System.err.printf("Exception %s\n", e);
-                            }
-                        }
-                        return FileVisitResult.CONTINUE;
-                    }
-                });
+                pluginsDir = Files.createDirectories(pluginsDir);
             } catch (Exception e) {
                 System.err.printf("Exception %s\n", e);
             }
+            // get all the plugin jars
+            final List<Path> pluginJars = findJars(pluginsDir);
+            // the cached class path is valid as long as none of the jars or locations changed
+            List<Path> allJars = new ArrayList<>(libJars);
+            allJars.add(red5jar);
+            allJars.addAll(pluginJars);
+            String cacheKey = ClasspathCache.key(allJars, confDir.toString(), pluginsDir.toString());
+            ClasspathCache.Entry cached = cache.load(cacheKey);
+            if (cached != null) {
+                System.out.printf("Using cached class path: %d entries%n", cached.urls.size());
+            } else {
+                try {
+                    urlList.add(red5jar.toUri().toURL());
+                } catch (MalformedURLException e1) {
+                    e1.printStackTrace();
+                }
+                System.out.printf("URL list: %s\n", urlList);
+                addAll(urlList, libJars);
+                // look over the libraries and remove the old versions
+                scrubURLList(urlList);
+                // add config dir
+                try {
+                    urlList.add(confDir.toUri().toURL());
+                } catch (MalformedURLException e) {
+                    System.err.printf("Exception %s\n", e);
+                }
+                // add the plugin directory to the path so that configs will be resolved and not have to be copied to conf
+                try {
+                    urlList.add(pluginsDir.toUri().toURL());
+                } catch (MalformedURLException e) {
+                    System.err.printf("Exception %s\n", e);
+                }
+                addAll(urlList, pluginJars);
+                List<URL> resolved = new ArrayList<>(urlList);
+                cached = new ClasspathCache.Entry(resolved, ClasspathCache.index(resolved));
+                cache.store(cacheKey, cached);
+            }
             // create the url array that the classloader wants
-            urls = urlList.toArray(new URL[0]);
+            urls = cached.urls.toArray(new URL[0]);
             //System.out.printf("Selected libraries: (%s items)\n", urls.length);
             //for (URL url : urls) {
             //    System.out.println(url);
             //}
             //System.out.println();
-            // instance a url classloader using the selected jars
-            if (parent == null) {
-                loader = new URLClassLoader(urls);
-            } else {
-                loader = new URLClassLoader(urls, parent);
-            }
+            // instance a url classloader using the selected jars, going directly to the jar holding a package when loading classes
+            loader = new IndexedClassLoader(urls, parent != null ? parent : ClassLoader.getSystemClassLoader(), cached.packages);
         } else {
             List<String> standardLibs = new ArrayList<String>(7);
             if (path != null) {
@@ -256,17 +242,19 @@ public final class ClassLoaderBuilder {
                         System.err.printf("Exception %s\n", e);
                     }
                 } else {
-                    try (InputStream is = Files.newInputStream(path); JarInputStream jarStream = new JarInputStream(is)) {
-                        JarEntry entry = jarStream.getNextJarEntry();
-                        while (entry != null) {
+                    // nested jars are unpacked once and reused on later starts while their checksum is unchanged
+                    String home = System.getProperty("red5.root", System.getenv("RED5_HOME"));
+                    ClasspathCache cache = ClasspathCache.open(home != null ? Paths.get(home) : path.toAbsolutePath().getParent());
+                    try (JarFile war = new JarFile(path.toFile())) {
+                        Enumeration<JarEntry> entries = war.entries();
+                        while (entries.hasMoreElements()) {
+                            JarEntry entry = entries.nextElement();
                             String entryName = entry.getName();
                             if (entryName.startsWith("WEB-INF/lib/") && entryName.endsWith(".jar") && !standardLibs.contains(entryName.substring(12))) {
-                                Path tempJarFile = unpack(jarStream, entryName);
-                                urlList.add(tempJarFile.toUri().toURL());
+                                Path jarFile = cache.unpack(war, entry);
+                                urlList.add(jarFile.toUri().toURL());
                             }
-                            entry = jarStream.getNextJarEntry();
                         }
-                        jarStream.close();
                     } catch (IOException e) {
                         System.err.printf("Exception %s\n", e);
                     }
@@ -285,28 +273,39 @@ public final class ClassLoaderBuilder {
     }
 
     /**
-     * Unpack the specified entry from the JAR file.
+     * Returns the jars found under the given directory.
      *
-     * @param jarStream
-     *            The input stream of the JAR file positioned at the entry
-     * @param entryName
-     *            The name of the entry to extract
-     * @return The extracted file. The created file is a temporary file in the temporary directory
-     * @throws IOException
-     *             if the JAR file cannot be read or is incorrect
+     * @param dir
+     *            directory to walk
+     * @return jar files, empty if the directory cannot be read
      */
-    private static Path unpack(JarInputStream jarStream, String entryName) throws IOException {
-        String libName = entryName.substring(entryName.lastIndexOf('/') + 1, entryName.length() - 4);
-        Path tempJarFile = Files.createTempFile("tmp_" + libName, ".jar");
-        try (OutputStream os = Files.newOutputStream(tempJarFile)) {
-            // Transfer bytes from the JAR file to the output file
-            byte[] buf = new byte[1024];
-            int len;
-            while ((len = jarStream.read(buf)) > 0) {
-                os.write(buf, 0, len);
+    private static List<Path> findJars(Path dir) {
+        final List<Path> jars = new ArrayList<>();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    //System.out.printf("Lib file: %s%n", file.toAbsolutePath());
+                    if (file.toFile().getName().endsWith(".jar")) {
+                        jars.add(file);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (Exception e) {
+            System.err.printf("Exception %s\n", e);
+        }
+        return jars;
+    }
+
+    private static void addAll(Collection<URL> urlList, List<Path> jars) {
+        for (Path jar : jars) {
+            try {
+                urlList.add(jar.toUri().toURL());
+            } catch (MalformedURLException e) {
+                System.err.printf("Exception %s\n", e);
             }
         }
-        return tempJarFile;
     }
 
     /**
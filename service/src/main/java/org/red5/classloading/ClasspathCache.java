@@ -0,0 +1,276 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.classloading;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.zip.ZipFile;
+
+/**
+ * Persistent cache for the server class path, kept between restarts so that start-up does not repeat work whose inputs have not changed.
+ * It holds the resolved (scrubbed) library list together with a package to jar index for {@link IndexedClassLoader}, keyed by a checksum
+ * over the path, size and modification time of every candidate jar, and the jars unpacked from a war file, keyed by the CRC of their
+ * entry. The cache lives in the directory named by the <code>red5.classpath.cache</code> system property, by default
+ * <code>work/classpath</code> under the Red5 home, and is disabled when that directory cannot be written.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class ClasspathCache {
+
+    /**
+     * System property naming the cache directory.
+     */
+    static final String CACHE_PROPERTY = "red5.classpath.cache";
+
+    private static final String INDEX_FILE = "classpath.idx";
+
+    private static final String UNPACK_DIR = "jars";
+
+    private final Path dir;
+
+    /**
+     * Resolved class path and package index read from, or written to, the cache.
+     */
+    static final class Entry {
+
+        final List<URL> urls;
+
+        final Map<String, List<URL>> packages;
+
+        Entry(List<URL> urls, Map<String, List<URL>> packages) {
+            this.urls = urls;
+            this.packages = packages;
+        }
+
+    }
+
+    private ClasspathCache(Path dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Opens the cache for the given Red5 home.
+     *
+     * @param homeDir
+     *            Red5 home directory, may be null
+     * @return cache, disabled if no usable directory exists
+     */
+    static ClasspathCache open(Path homeDir) {
+        String location = System.getProperty(CACHE_PROPERTY);
+        Path cacheDir = location != null ? Paths.get(location) : (homeDir != null ? homeDir.resolve("work").resolve("classpath") : null);
+        if (cacheDir != null) {
+            try {
+                Files.createDirectories(cacheDir.resolve(UNPACK_DIR));
+                if (Files.isWritable(cacheDir)) {
+                    return new ClasspathCache(cacheDir);
+                }
+            } catch (IOException e) {
+                System.err.printf("Class path cache unavailable at %s: %s%n", cacheDir, e);
+            }
+        }
+        return new ClasspathCache(null);
+    }
+
+    boolean isEnabled() {
+        return dir != null;
+    }
+
+    /**
+     * Returns a checksum over the path, size and modification time of the given files plus any extra key material. Any added, removed,
+     * replaced or touched jar changes the key.
+     *
+     * @param files
+     *            candidate jars
+     * @param extra
+     *            other inputs of the class path such as the config directory
+     * @return hex key
+     */
+    static String key(Collection<Path> files, String... extra) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String value : extra) {
+                digest.update(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) '\n');
+            }
+            TreeSet<Path> sorted = new TreeSet<>(files);
+            for (Path file : sorted) {
+                File f = file.toFile();
+                digest.update(String.format("%s|%d|%d%n", f.getAbsolutePath(), f.length(), f.lastModified()).getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Loads the cached class path if it was written for the given key.
+     *
+     * @param key
+     *            checksum from {@link #key(Collection, String...)}
+     * @return cached entry or null on a miss
+     */
+    Entry load(String key) {
+        if (dir == null) {
+            return null;
+        }
+        Path file = dir.resolve(INDEX_FILE);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            if (line == null || !line.equals("K " + key)) {
+                return null;
+            }
+            List<URL> urls = new ArrayList<>();
+            Map<String, List<URL>> packages = new LinkedHashMap<>();
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("U ")) {
+                    urls.add(URI.create(line.substring(2)).toURL());
+                } else if (line.startsWith("P ")) {
+                    String[] parts = line.substring(2).split(" ");
+                    List<URL> jars = new ArrayList<>(parts.length - 1);
+                    for (int i = 1; i < parts.length; i++) {
+                        jars.add(urls.get(Integer.parseInt(parts[i])));
+                    }
+                    packages.put(parts[0].equals("/") ? "" : parts[0], jars);
+                }
+            }
+            return new Entry(urls, packages);
+        } catch (Exception e) {
+            System.err.printf("Class path cache could not be read: %s%n", e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the class path and its package index for the given key, replacing any previous content.
+     *
+     * @param key
+     *            checksum from {@link #key(Collection, String...)}
+     * @param entry
+     *            class path and package index
+     */
+    void store(String key, Entry entry) {
+        if (dir == null) {
+            return;
+        }
+        try {
+            Path tmp = Files.createTempFile(dir, INDEX_FILE, ".tmp");
+            try (BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                writer.write("K " + key);
+                writer.newLine();
+                Map<URL, Integer> positions = new LinkedHashMap<>();
+                for (URL url : entry.urls) {
+                    positions.put(url, positions.size());
+                    writer.write("U " + url.toExternalForm());
+                    writer.newLine();
+                }
+                for (Map.Entry<String, List<URL>> pkg : entry.packages.entrySet()) {
+                    // package names never contain spaces, the default package is written as a slash
+                    StringBuilder sb = new StringBuilder("P ").append(pkg.getKey().isEmpty() ? "/" : pkg.getKey());
+                    for (URL url : pkg.getValue()) {
+                        sb.append(' ').append(positions.get(url));
+                    }
+                    writer.write(sb.toString());
+                    writer.newLine();
+                }
+            }
+            Files.move(tmp, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.printf("Class path cache could not be written: %s%n", e);
+        }
+    }
+
+    /**
+     * Builds the package to jar index for the jars in the given class path; directories are not indexed. Packages are keyed by their
+     * directory, for example <code>org/red5/server</code>, and list the jars containing them in class path order.
+     *
+     * @param urls
+     *            class path
+     * @return package index
+     */
+    static Map<String, List<URL>> index(List<URL> urls) {
+        Map<String, List<URL>> packages = new LinkedHashMap<>();
+        for (URL url : urls) {
+            if (!url.getPath().endsWith(".jar")) {
+                continue;
+            }
+            try (JarFile jar = new JarFile(new File(url.toURI()), false, ZipFile.OPEN_READ, Runtime.version())) {
+                jar.versionedStream().filter(e -> !e.isDirectory()).forEach(e -> {
+                    String name = e.getName();
+                    int slash = name.lastIndexOf('/');
+                    List<URL> jars = packages.computeIfAbsent(slash > 0 ? name.substring(0, slash) : "", p -> new ArrayList<>(1));
+                    if (jars.isEmpty() || jars.get(jars.size() - 1) != url) {
+                        jars.add(url);
+                    }
+                });
+            } catch (Exception e) {
+                System.err.printf("Could not index %s: %s%n", url, e);
+            }
+        }
+        return packages;
+    }
+
+    /**
+     * Returns the unpacked copy of a jar nested in a war file, extracting it only if no copy with the same CRC exists yet. Without a usable
+     * cache directory the jar is unpacked to a temporary file which is removed on exit.
+     *
+     * @param war
+     *            war file
+     * @param entry
+     *            nested jar entry
+     * @return unpacked jar
+     * @throws IOException
+     *             if the jar cannot be extracted
+     */
+    Path unpack(JarFile war, JarEntry entry) throws IOException {
+        String entryName = entry.getName();
+        String libName = entryName.substring(entryName.lastIndexOf('/') + 1, entryName.length() - 4);
+        Path target;
+        if (dir != null && entry.getCrc() != -1) {
+            target = dir.resolve(UNPACK_DIR).resolve(String.format("%s-%08x.jar", libName, entry.getCrc()));
+            if (Files.isRegularFile(target) && Files.size(target) == entry.getSize()) {
+                return target;
+            }
+        } else {
+            target = null;
+        }
+        Path tmp = target != null ? Files.createTempFile(target.getParent(), libName, ".tmp") : Files.createTempFile("tmp_" + libName, ".jar");
+        try (InputStream in = war.getInputStream(entry)) {
+            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (target == null) {
+            tmp.toFile().deleteOnExit();
+            return tmp;
+        }
+        return Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+}
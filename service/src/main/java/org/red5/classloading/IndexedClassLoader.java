@@ -0,0 +1,148 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.classloading;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.CodeSource;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipFile;
+
+/**
+ * Parent-first {@link URLClassLoader} which uses a package to jar index to go straight to the jar holding a class, rather than probing
+ * every entry of a long class path in turn. Classes in packages missing from the index, or not found in the indexed jars, are looked up
+ * the usual way. Directories are not indexed, so only jars ahead of the first directory on the class path are gone to directly; a class
+ * found in a later jar is looked up the usual way, in case a directory ahead of it holds the same class. Resources other than classes are always looked up the usual way so that directories such as <code>conf</code> keep
+ * their place in the search order.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public final class IndexedClassLoader extends URLClassLoader {
+
+    static {
+        ClassLoader.registerAsParallelCapable();
+    }
+
+    private final Map<String, List<URL>> packages;
+
+    // jars which no directory precedes on the class path
+    private final Set<URL> direct = new HashSet<>();
+
+    private final ConcurrentMap<URL, JarFile> jars = new ConcurrentHashMap<>();
+
+    /**
+     * <p>Constructor for IndexedClassLoader.</p>
+     *
+     * @param urls
+     *            class path
+     * @param parent
+     *            parent class loader
+     * @param packages
+     *            package directory to jars index
+     */
+    public IndexedClassLoader(URL[] urls, ClassLoader parent, Map<String, List<URL>> packages) {
+        super(urls, parent);
+        this.packages = packages;
+        for (URL url : urls) {
+            if (!url.getPath().endsWith(".jar")) {
+                break;
+            }
+            direct.add(url);
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        String path = name.replace('.', '/').concat(".class");
+        int slash = path.lastIndexOf('/');
+        List<URL> candidates = packages.get(slash > 0 ? path.substring(0, slash) : "");
+        if (candidates != null) {
+            for (URL url : candidates) {
+                if (!direct.contains(url)) {
+                    break;
+                }
+                JarFile jar = jar(url);
+                JarEntry entry = jar != null ? jar.getJarEntry(path) : null;
+                if (entry != null) {
+                    try {
+                        return define(name, url, jar, entry);
+                    } catch (IOException e) {
+                        throw new ClassNotFoundException(name, e);
+                    }
+                }
+            }
+        }
+        return super.findClass(name);
+    }
+
+    private Class<?> define(String name, URL url, JarFile jar, JarEntry entry) throws IOException {
+        byte[] bytes;
+        try (InputStream in = jar.getInputStream(entry)) {
+            bytes = in.readAllBytes();
+        }
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            String pkg = name.substring(0, dot);
+            if (getDefinedPackage(pkg) == null) {
+                try {
+                    Manifest manifest = jar.getManifest();
+                    if (manifest != null) {
+                        definePackage(pkg, manifest, url);
+                    } else {
+                        definePackage(pkg, null, null, null, null, null, null, null);
+                    }
+                } catch (IllegalArgumentException e) {
+                    // defined concurrently by another thread
+                }
+            }
+        }
+        // code signers are only available once the entry has been read
+        return defineClass(name, bytes, 0, bytes.length, new CodeSource(url, entry.getCodeSigners()));
+    }
+
+    private JarFile jar(URL url) {
+        JarFile jar = jars.get(url);
+        if (jar == null) {
+            try {
+                jar = new JarFile(new File(url.toURI()), true, ZipFile.OPEN_READ, Runtime.version());
+                JarFile existing = jars.putIfAbsent(url, jar);
+                if (existing != null) {
+                    jar.close();
+                    jar = existing;
+                }
+            } catch (Exception e) {
+                System.err.printf("Could not open %s: %s%n", url, e);
+                return null;
+            }
+        }
+        return jar;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void close() throws IOException {
+        for (JarFile jar : jars.values()) {
+            jar.close();
+        }
+        jars.clear();
+        super.close();
+    }
+
+}
@@ -0,0 +1,176 @@
+package org.red5.classloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for the class path cache: keys, hits and misses, corrupt files and the package index.
+ */
+public class ClasspathCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Path home;
+
+    private Path first;
+
+    private Path second;
+
+    @Before
+    public void setUp() throws Exception {
+        System.clearProperty(ClasspathCache.CACHE_PROPERTY);
+        home = folder.newFolder("home").toPath();
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("org/red5/a/A.class", new byte[] { 1 });
+        entries.put("org/red5/b/B.class", new byte[] { 2 });
+        entries.put("Root.class", new byte[] { 3 });
+        first = IndexedClassLoaderTest.jar(home.resolve("first.jar"), "first", entries);
+        second = IndexedClassLoaderTest.jar(home.resolve("second.jar"), "second", Map.of("org/red5/b/C.class", new byte[] { 4 }));
+    }
+
+    @After
+    public void tearDown() {
+        System.clearProperty(ClasspathCache.CACHE_PROPERTY);
+    }
+
+    private Map.Entry<List<URL>, Map<String, List<URL>>> resolve() throws Exception {
+        List<URL> urls = List.of(first.toUri().toURL(), home.toUri().toURL(), second.toUri().toURL());
+        return Map.entry(urls, ClasspathCache.index(urls));
+    }
+
+    @Test
+    public void testOpen() throws Exception {
+        ClasspathCache cache = ClasspathCache.open(home);
+        assertTrue(cache.isEnabled());
+        assertTrue(Files.isDirectory(home.resolve("work").resolve("classpath").resolve("jars")));
+        // a location which cannot be a directory disables the cache
+        Path file = Files.createFile(home.resolve("not-a-dir"));
+        System.setProperty(ClasspathCache.CACHE_PROPERTY, file.toString());
+        ClasspathCache disabled = ClasspathCache.open(home);
+        assertFalse(disabled.isEnabled());
+        disabled.store("key", new ClasspathCache.Entry(List.of(), Map.of()));
+        assertNull(disabled.load("key"));
+        assertFalse(ClasspathCache.open(null).isEnabled());
+    }
+
+    @Test
+    public void testKey() throws Exception {
+        List<Path> jars = List.of(first, second);
+        String key = ClasspathCache.key(jars, "conf", "plugins");
+        assertEquals(key, ClasspathCache.key(jars, "conf", "plugins"));
+        // order of the jars does not matter, the other inputs do
+        assertEquals(key, ClasspathCache.key(List.of(second, first), "conf", "plugins"));
+        assertNotEquals(key, ClasspathCache.key(jars, "conf2", "plugins"));
+        assertNotEquals(key, ClasspathCache.key(List.of(first), "conf", "plugins"));
+        // touched jar
+        assertTrue(second.toFile().setLastModified(second.toFile().lastModified() - 10000L));
+        String touched = ClasspathCache.key(jars, "conf", "plugins");
+        assertNotEquals(key, touched);
+        // replaced jar of another size with the same modification time
+        long modified = second.toFile().lastModified();
+        IndexedClassLoaderTest.jar(second, "second", Map.of("org/red5/b/C.class", new byte[] { 4 }, "org/red5/b/D.class", new byte[] { 5 }));
+        assertTrue(second.toFile().setLastModified(modified));
+        assertNotEquals(touched, ClasspathCache.key(jars, "conf", "plugins"));
+    }
+
+    @Test
+    public void testIndex() throws Exception {
+        Map.Entry<List<URL>, Map<String, List<URL>>> resolved = resolve();
+        List<URL> urls = resolved.getKey();
+        Map<String, List<URL>> packages = resolved.getValue();
+        assertEquals(List.of(urls.get(0)), packages.get("org/red5/a"));
+        // class path order, directories left out
+        assertEquals(List.of(urls.get(0), urls.get(2)), packages.get("org/red5/b"));
+        assertEquals(List.of(urls.get(0)), packages.get(""));
+        assertEquals(List.of(urls.get(0), urls.get(2)), packages.get("META-INF"));
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        ClasspathCache cache = ClasspathCache.open(home);
+        String key = ClasspathCache.key(List.of(first, second), "conf");
+        assertNull(cache.load(key));
+        Map.Entry<List<URL>, Map<String, List<URL>>> resolved = resolve();
+        cache.store(key, new ClasspathCache.Entry(resolved.getKey(), resolved.getValue()));
+        ClasspathCache.Entry entry = ClasspathCache.open(home).load(key);
+        assertNotNull(entry);
+        assertEquals(resolved.getKey(), entry.urls);
+        assertEquals(resolved.getValue(), entry.packages);
+        assertEquals(List.of(resolved.getKey().get(0)), entry.packages.get(""));
+        // a touched jar gives another key, which misses
+        assertTrue(first.toFile().setLastModified(first.toFile().lastModified() - 10000L));
+        assertNull(cache.load(ClasspathCache.key(List.of(first, second), "conf")));
+    }
+
+    @Test
+    public void testCorrupt() throws Exception {
+        ClasspathCache cache = ClasspathCache.open(home);
+        Path index = home.resolve("work").resolve("classpath").resolve("classpath.idx");
+        // package pointing past the class path
+        Files.writeString(index, "K key\nU " + first.toUri() + "\nP org/red5/a 5\n", StandardCharsets.UTF_8);
+        assertNull(cache.load("key"));
+        Files.writeString(index, "K key\nU not a uri\n", StandardCharsets.UTF_8);
+        assertNull(cache.load("key"));
+        Files.writeString(index, "K key\nU " + first.toUri() + "\nP org/red5/a x\n", StandardCharsets.UTF_8);
+        assertNull(cache.load("key"));
+        Files.write(index, new byte[0]);
+        assertNull(cache.load("key"));
+        // a good store replaces the corrupt file
+        cache.store("key", new ClasspathCache.Entry(List.of(first.toUri().toURL()), Map.of()));
+        assertNotNull(cache.load("key"));
+    }
+
+    @Test
+    public void testUnpack() throws Exception {
+        ClasspathCache cache = ClasspathCache.open(home);
+        byte[] lib = Files.readAllBytes(first);
+        CRC32 crc = new CRC32();
+        crc.update(lib);
+        Path war = home.resolve("app.war");
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(war))) {
+            // stored, so the size and CRC are known from the central directory
+            JarEntry entry = new JarEntry("WEB-INF/lib/lib.jar");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(lib.length);
+            entry.setCrc(crc.getValue());
+            out.putNextEntry(entry);
+            out.write(lib);
+            out.closeEntry();
+        }
+        try (JarFile jar = new JarFile(war.toFile())) {
+            JarEntry entry = jar.getJarEntry("WEB-INF/lib/lib.jar");
+            Path unpacked = cache.unpack(jar, entry);
+            assertEquals(String.format("lib-%08x.jar", crc.getValue()), unpacked.getFileName().toString());
+            assertEquals(lib.length, Files.size(unpacked));
+            // unchanged jar is reused, not extracted again
+            assertTrue(unpacked.toFile().setLastModified(1000L));
+            assertEquals(unpacked, cache.unpack(jar, entry));
+            assertEquals(1000L, unpacked.toFile().lastModified());
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+package org.red5.classloading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests for class and resource lookup through the package index, compared with a plain URLClassLoader.
+ */
+public class IndexedClassLoaderTest {
+
+    private static final String SAMPLE = Sample.class.getName();
+
+    private static final String ONLY_SECOND = OnlySecond.class.getName();
+
+    private static final String RESOURCE = "org/red5/classloading/sample.txt";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    static byte[] classBytes(Class<?> clazz) throws IOException {
+        try (InputStream in = clazz.getResourceAsStream("/" + entryName(clazz))) {
+            return in.readAllBytes();
+        }
+    }
+
+    static String entryName(Class<?> clazz) {
+        return clazz.getName().replace('.', '/') + ".class";
+    }
+
+    static Path jar(Path file, String title, Map<String, byte[]> entries) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (title != null) {
+            manifest.getMainAttributes().put(Attributes.Name.IMPLEMENTATION_TITLE, title);
+        }
+        try (OutputStream out = Files.newOutputStream(file); JarOutputStream jar = title != null ? new JarOutputStream(out, manifest) : new JarOutputStream(out)) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                jar.putNextEntry(new JarEntry(entry.getKey()));
+                jar.write(entry.getValue());
+                jar.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private URL[] classPath() throws IOException {
+        Map<String, byte[]> first = new LinkedHashMap<>();
+        first.put(entryName(Sample.class), classBytes(Sample.class));
+        first.put(RESOURCE, "first".getBytes(StandardCharsets.UTF_8));
+        Map<String, byte[]> second = new LinkedHashMap<>();
+        second.put(entryName(Sample.class), classBytes(Sample.class));
+        second.put(entryName(OnlySecond.class), classBytes(OnlySecond.class));
+        second.put(RESOURCE, "second".getBytes(StandardCharsets.UTF_8));
+        return new URL[] { jar(folder.getRoot().toPath().resolve("first.jar"), "first", first).toUri().toURL(), jar(folder.getRoot().toPath().resolve("second.jar"), "second", second).toUri().toURL() };
+    }
+
+    private static IndexedClassLoader indexed(URL[] urls) {
+        return new IndexedClassLoader(urls, ClassLoader.getPlatformClassLoader(), ClasspathCache.index(List.of(urls)));
+    }
+
+    private static String read(URL url) throws IOException {
+        try (InputStream in = url.openStream()) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testFirstJarWins() throws Exception {
+        URL[] urls = classPath();
+        try (IndexedClassLoader loader = indexed(urls); URLClassLoader plain = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+            Class<?> sample = loader.loadClass(SAMPLE);
+            assertEquals(loader, sample.getClassLoader());
+            assertEquals(urls[0], sample.getProtectionDomain().getCodeSource().getLocation());
+            assertEquals(plain.loadClass(SAMPLE).getProtectionDomain().getCodeSource().getLocation(), sample.getProtectionDomain().getCodeSource().getLocation());
+            // indexed in both jars but only present in the second
+            Class<?> onlySecond = loader.loadClass(ONLY_SECOND);
+            assertEquals(urls[1], onlySecond.getProtectionDomain().getCodeSource().getLocation());
+        }
+    }
+
+    @Test
+    public void testPackages() throws Exception {
+        URL[] urls = classPath();
+        try (IndexedClassLoader loader = indexed(urls); URLClassLoader plain = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+            Package pkg = loader.loadClass(SAMPLE).getPackage();
+            assertNotNull(pkg);
+            assertEquals("first", pkg.getImplementationTitle());
+            assertEquals(plain.loadClass(SAMPLE).getPackage().getImplementationTitle(), pkg.getImplementationTitle());
+            // the package is defined once, from the jar of the first class loaded
+            assertEquals(pkg, loader.loadClass(ONLY_SECOND).getPackage());
+        }
+    }
+
+    @Test
+    public void testPackageWithoutManifest() throws Exception {
+        Path file = jar(folder.getRoot().toPath().resolve("plain.jar"), null, Map.of(entryName(Sample.class), classBytes(Sample.class)));
+        URL[] urls = { file.toUri().toURL() };
+        try (IndexedClassLoader loader = indexed(urls)) {
+            Package pkg = loader.loadClass(SAMPLE).getPackage();
+            assertEquals("org.red5.classloading", pkg.getName());
+            assertNull(pkg.getImplementationTitle());
+        }
+    }
+
+    @Test
+    public void testResources() throws Exception {
+        URL[] urls = classPath();
+        try (IndexedClassLoader loader = indexed(urls); URLClassLoader plain = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+            assertEquals("first", read(loader.getResource(RESOURCE)));
+            assertEquals(plain.getResource(RESOURCE), loader.getResource(RESOURCE));
+            List<URL> all = new ArrayList<>();
+            loader.getResources(RESOURCE).asIterator().forEachRemaining(all::add);
+            List<URL> expected = new ArrayList<>();
+            plain.getResources(RESOURCE).asIterator().forEachRemaining(expected::add);
+            assertEquals(expected, all);
+            assertEquals(2, all.size());
+        }
+    }
+
+    @Test
+    public void testDirectoryAheadOfJar() throws Exception {
+        URL[] jars = classPath();
+        // a directory holding the same class sits between the jars
+        Path dir = folder.newFolder("classes").toPath();
+        Path classFile = dir.resolve(entryName(Sample.class));
+        Files.createDirectories(classFile.getParent());
+        Files.write(classFile, classBytes(Sample.class));
+        URL[] urls = { dir.toUri().toURL(), jars[0], jars[1] };
+        try (IndexedClassLoader loader = indexed(urls); URLClassLoader plain = new URLClassLoader(urls, ClassLoader.getPlatformClassLoader())) {
+            assertEquals(plain.loadClass(SAMPLE).getProtectionDomain().getCodeSource().getLocation(), loader.loadClass(SAMPLE).getProtectionDomain().getCodeSource().getLocation());
+            assertEquals(urls[0], loader.loadClass(SAMPLE).getProtectionDomain().getCodeSource().getLocation());
+        }
+    }
+
+    @Test
+    public void testUnindexedPackage() throws Exception {
+        URL[] urls = classPath();
+        // nothing indexed, so every class goes through the usual lookup
+        try (IndexedClassLoader loader = new IndexedClassLoader(urls, ClassLoader.getPlatformClassLoader(), Map.of())) {
+            assertEquals(urls[0], loader.loadClass(SAMPLE).getProtectionDomain().getCodeSource().getLocation());
+            assertEquals(urls[1], loader.loadClass(ONLY_SECOND).getProtectionDomain().getCodeSource().getLocation());
+        }
+    }
+
+    public static class Sample {
+    }
+
+    public static class OnlySecond {
+    }
+
+}
@@ -163,6 +163,11 @@ public class RemotingConnection implements IRemotingConnection {
         notSupported();
     }
 
+    /** {@inheritDoc} */
+    public void uninitialize() {
+        notSupported();
+    }
+
     /** {@inheritDoc} */
     public boolean connect(IScope scope) {
         notSupported();
@@ -482,9 +487,23 @@ public class RemotingConnection implements IRemotingConnection {
     }
 
     /** {@inheritDoc} */
-    @SuppressWarnings("deprecation")
+    public Object setAttributeIfAbsent(String name, Object value) {
+        if (name == null) {
+            return null;
+        }
+        // synchronize so that only the first value is set
+        synchronized (session) {
+            Object result = session.getAttribute(name);
+            if (result == null && value != null) {
+                session.setAttribute(name, value);
+            }
+            return result;
+        }
+    }
+
+    /** {@inheritDoc} */
     public int size() {
-        return session != null ? session.getValueNames().length : 0;
+        return session != null ? Collections.list(session.getAttributeNames()).size() : 0;
     }
 
     /** {@inheritDoc} */
@@ -52,74 +52,100 @@ public class RemotingProtocolEncoder {
         RemotingPacket resp = (RemotingPacket) message;
         IoBuffer buf = IoBuffer.allocate(1024);
         buf.setAutoExpand(true);
+        IRemotingConnection conn = (IRemotingConnection) Red5.getConnectionLocal();
+        encodePreamble(buf, resp.getEncoding(), conn.getHeaders(), resp.getCalls().size());
+        for (RemotingCall call : resp.getCalls()) {
+            encodeCall(buf, call);
+        }
+        buf.flip();
+        if (log.isDebugEnabled()) {
+            log.debug(">>{}", buf.getHexDump());
+        }
+        return buf;
+
+    }
+
+    /**
+     * Encodes what precedes the message bodies of a response: the version, the headers and the number of bodies. The headers are cleared
+     * once written.
+     *
+     * @param buf
+     *            output buffer
+     * @param encoding
+     *            response encoding
+     * @param headers
+     *            headers to send to the client
+     * @param bodies
+     *            number of message bodies which will follow
+     */
+    public void encodePreamble(IoBuffer buf, Encoding encoding, Collection<IRemotingHeader> headers, int bodies) {
         Output output;
-        if (resp.getEncoding() == Encoding.AMF0) {
+        if (encoding == Encoding.AMF0) {
             buf.putShort((short) 0); // encoded using AMF0
+            output = new Output(buf);
         } else {
             buf.putShort((short) 3); // encoded using AMF3
+            output = new org.red5.io.amf3.Output(buf);
+        }
+        synchronized (headers) {
+            buf.putShort((short) headers.size()); // write the header count
+            for (IRemotingHeader header : headers) {
+                Output.putString(buf, IRemotingHeader.PERSISTENT_HEADER);
+                output.writeBoolean(false);
+                Map<String, Object> param = new HashMap<String, Object>();
+                param.put("name", header.getName());
+                param.put("mustUnderstand", header.getMustUnderstand() ? Boolean.TRUE : Boolean.FALSE);
+                param.put("data", header.getValue());
+                Serializer.serialize(output, param);
+            }
+            headers.clear();
         }
+        buf.putShort((short) bodies); // write the number of bodies
+    }
 
-        IRemotingConnection conn = (IRemotingConnection) Red5.getConnectionLocal();
-        Collection<IRemotingHeader> headers = conn.getHeaders();
-        buf.putShort((short) headers.size()); // write the header count
-        if (resp.getEncoding() == Encoding.AMF0) {
-            output = new Output(buf);
+    /**
+     * Encodes the message body holding the result of a call.
+     *
+     * @param buf
+     *            output buffer
+     * @param call
+     *            completed call
+     */
+    public void encodeCall(IoBuffer buf, RemotingCall call) {
+        log.debug("Call");
+        Output.putString(buf, call.getClientResponse());
+        if (!call.isMessaging) {
+            Output.putString(buf, "null");
         } else {
-            output = new org.red5.io.amf3.Output(buf);
+            Output.putString(buf, "");
         }
-        for (IRemotingHeader header : headers) {
-            Output.putString(buf, IRemotingHeader.PERSISTENT_HEADER);
-            output.writeBoolean(false);
-            Map<String, Object> param = new HashMap<String, Object>();
-            param.put("name", header.getName());
-            param.put("mustUnderstand", header.getMustUnderstand() ? Boolean.TRUE : Boolean.FALSE);
-            param.put("data", header.getValue());
-            Serializer.serialize(output, param);
+        buf.putInt(-1);
+        log.info("result: {}", call.getResult());
+        Output output;
+        if (call.isAMF3) {
+            output = new org.red5.io.amf3.Output(buf);
+        } else {
+            output = new Output(buf);
         }
-        headers.clear();
-
-        buf.putShort((short) resp.getCalls().size()); // write the number of bodies
-        for (RemotingCall call : resp.getCalls()) {
-            log.debug("Call");
-            Output.putString(buf, call.getClientResponse());
-            if (!call.isMessaging) {
-                Output.putString(buf, "null");
-            } else {
-                Output.putString(buf, "");
-            }
-            buf.putInt(-1);
-            log.info("result: {}", call.getResult());
-            if (call.isAMF3) {
-                output = new org.red5.io.amf3.Output(buf);
-            } else {
-                output = new Output(buf);
-            }
-            Object result = call.getClientResult();
-            if (!call.isSuccess()) {
-                if (call.isMessaging && !(result instanceof ErrorMessage)) {
-                    // Generate proper error result for the Flex messaging client
-                    AbstractMessage request = (AbstractMessage) call.getArguments()[0];
-                    if (result instanceof ServiceNotFoundException) {
-                        ServiceNotFoundException ex = (ServiceNotFoundException) result;
-                        result = FlexMessagingService.returnError(request, "serviceNotAvailable", "Flex messaging not activated", ex.getMessage());
-                    } else if (result instanceof Throwable) {
-                        result = FlexMessagingService.returnError(request, "Server.Invoke.Error", ((Throwable) result).getMessage(), (Throwable) result);
-                    } else {
-                        result = FlexMessagingService.returnError(request, "Server.Invoke.Error", result.toString(), "");
-                    }
-                } else if (!call.isMessaging) {
-                    // Generate proper error object to return
-                    result = generateErrorResult(StatusCodes.NC_CALL_FAILED, call.getException());
+        Object result = call.getClientResult();
+        if (!call.isSuccess()) {
+            if (call.isMessaging && !(result instanceof ErrorMessage)) {
+                // Generate proper error result for the Flex messaging client
+                AbstractMessage request = (AbstractMessage) call.getArguments()[0];
+                if (result instanceof ServiceNotFoundException) {
+                    ServiceNotFoundException ex = (ServiceNotFoundException) result;
+                    result = FlexMessagingService.returnError(request, "serviceNotAvailable", "Flex messaging not activated", ex.getMessage());
+                } else if (result instanceof Throwable) {
+                    result = FlexMessagingService.returnError(request, "Server.Invoke.Error", ((Throwable) result).getMessage(), (Throwable) result);
+                } else {
+                    result = FlexMessagingService.returnError(request, "Server.Invoke.Error", result.toString(), "");
                 }
+            } else if (!call.isMessaging) {
+                // Generate proper error object to return
+                result = generateErrorResult(StatusCodes.NC_CALL_FAILED, call.getException());
             }
-            Serializer.serialize(output, result);
         }
-        buf.flip();
-        if (log.isDebugEnabled()) {
-            log.debug(">>{}", buf.getHexDump());
-        }
-        return buf;
-
+        Serializer.serialize(output, result);
     }
 
     /**
@@ -0,0 +1,228 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.remoting.codec;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.red5.server.net.remoting.message.RemotingCall;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Incremental decoder for a single remoting request, fed with the request body as it arrives. The headers, the body count and each
+ * message body are decoded as soon as they are complete, so that a call can be dispatched while the rest of the batch is still being read
+ * and only the body currently being received has to be held in memory.
+ * <p>
+ * AMF values read past the end of the available data as null or zero rather than failing, so the end of the headers or of a body has to
+ * be known before they are decoded. It is taken from the declared lengths, and a part is only decoded once a few bytes beyond it have
+ * been received as well: a wrong length then makes the decode run past the declared end, rather than stop at it reading nothing, and the
+ * decode is discarded. Some clients send a length of -1 or a wrong one, in which case the rest of the request is decoded once it has been
+ * received completely.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+public class RemotingRequestDecoder {
+
+    private static Logger log = LoggerFactory.getLogger(RemotingRequestDecoder.class);
+
+    // end of the next part cannot be told from the declared lengths
+    private static final int UNKNOWN = -1;
+
+    // next part has not been received completely
+    private static final int INCOMPLETE = Integer.MAX_VALUE;
+
+    // bytes needed beyond a part before it is decoded, the largest fixed size value
+    private static final int MARGIN = 8;
+
+    private final RemotingProtocolDecoder decoder;
+
+    private Map<String, Object> headers;
+
+    private int count = -1;
+
+    private int decoded;
+
+    // declared lengths cannot be relied on, so the rest waits for the end of the request
+    private boolean unframed;
+
+    /**
+     * Creates a decoder for one request.
+     *
+     * @param decoder
+     *            remoting protocol decoder doing the actual decoding
+     */
+    public RemotingRequestDecoder(RemotingProtocolDecoder decoder) {
+        this.decoder = decoder;
+    }
+
+    /**
+     * Decodes as much of the request as the buffer holds. On return the buffer is positioned at the first byte which has not been consumed;
+     * the caller should compact it before adding more data.
+     *
+     * @param in
+     *            received, not yet consumed, request data
+     * @param last
+     *            true if the buffer holds the end of the request
+     * @return calls completed by this invocation, possibly empty
+     */
+    public List<RemotingCall> decode(IoBuffer in, boolean last) {
+        List<RemotingCall> calls = Collections.emptyList();
+        while (!isComplete()) {
+            int start = in.position();
+            int end = UNKNOWN;
+            if (!last) {
+                if (unframed) {
+                    return calls;
+                }
+                if (headers != null && count < 0) {
+                    // body count, which cannot be misread
+                    end = start + 2;
+                    if (end > in.limit()) {
+                        return calls;
+                    }
+                } else {
+                    end = headers == null ? headersEnd(in) : bodyEnd(in);
+                    if (end == UNKNOWN) {
+                        log.debug("No usable length, waiting for the whole request");
+                        unframed = true;
+                        return calls;
+                    }
+                    if (end > in.limit() - MARGIN) {
+                        return calls;
+                    }
+                }
+            }
+            try {
+                if (headers == null) {
+                    Map<String, Object> result = decoder.readHeaders(in);
+                    checkEnd(in, end);
+                    headers = result;
+                } else if (count < 0) {
+                    count = in.getUnsignedShort();
+                    log.debug("Calls: {}", count);
+                } else {
+                    RemotingCall call = decoder.decodeCall(in);
+                    checkEnd(in, end);
+                    if (calls.isEmpty()) {
+                        calls = new ArrayList<>(2);
+                    }
+                    calls.add(call);
+                    decoded++;
+                }
+            } catch (RuntimeException e) {
+                if (last) {
+                    throw e;
+                }
+                log.debug("Declared length does not match, waiting for the whole request", e);
+                unframed = true;
+                in.position(start);
+                return calls;
+            }
+        }
+        return calls;
+    }
+
+    private static void checkEnd(IoBuffer in, int end) {
+        if (end != UNKNOWN && in.position() != end) {
+            throw new IllegalStateException(String.format("Decoding ended at %d rather than %d", in.position(), end));
+        }
+    }
+
+    /**
+     * Returns where the headers starting at the current position end, going by their declared lengths.
+     */
+    private static int headersEnd(IoBuffer in) {
+        int limit = in.limit();
+        int pos = in.position();
+        if (pos + 4 > limit) {
+            return INCOMPLETE;
+        }
+        int headerCount = in.getUnsignedShort(pos + 2);
+        pos += 4;
+        for (int i = 0; i < headerCount; i++) {
+            // name, must understand flag and length
+            if (pos + 2 > limit) {
+                return INCOMPLETE;
+            }
+            pos += 2 + in.getUnsignedShort(pos);
+            if (pos + 5 > limit) {
+                return INCOMPLETE;
+            }
+            int length = in.getInt(pos + 1);
+            if (length < 0 || length > limit - pos - 5) {
+                return length < 0 ? UNKNOWN : INCOMPLETE;
+            }
+            pos += 5 + length;
+        }
+        return pos;
+    }
+
+    /**
+     * Returns where the body starting at the current position ends, going by its declared length.
+     */
+    private static int bodyEnd(IoBuffer in) {
+        int limit = in.limit();
+        int pos = in.position();
+        // target and response uri
+        for (int i = 0; i < 2; i++) {
+            if (pos + 2 > limit) {
+                return INCOMPLETE;
+            }
+            pos += 2 + in.getUnsignedShort(pos);
+        }
+        if (pos + 4 > limit) {
+            return INCOMPLETE;
+        }
+        int length = in.getInt(pos);
+        if (length < 0 || length > limit - pos - 4) {
+            return length < 0 ? UNKNOWN : INCOMPLETE;
+        }
+        return pos + 4 + length;
+    }
+
+    /**
+     * Returns the request headers.
+     *
+     * @return headers or null if not decoded yet
+     */
+    public Map<String, Object> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Returns the number of message bodies in the request.
+     *
+     * @return body count or -1 if not decoded yet
+     */
+    public int getCallCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of message bodies decoded so far.
+     *
+     * @return decoded bodies
+     */
+    public int getDecodedCount() {
+        return decoded;
+    }
+
+    /**
+     * Returns whether the whole request has been decoded.
+     *
+     * @return true once every message body has been decoded
+     */
+    public boolean isComplete() {
+        return count >= 0 && decoded >= count;
+    }
+
+}
@@ -7,15 +7,13 @@
 
 package org.red5.server.net.rtmpt;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.RTMPConnection;
@@ -69,9 +67,44 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     private volatile IoBuffer buffer;
 
     /**
-     * List of pending outgoing messages. Default size is 8192.
+     * What to do when the outgoing queue is full.
      */
-    protected transient volatile LinkedBlockingQueue<PendingData> pendingOutMessages = new LinkedBlockingQueue<PendingData>(8192);
+    public enum OverflowPolicy {
+        /** discard the message being written */
+        DROP,
+        /** close the connection, the client is not keeping up */
+        CLOSE;
+    }
+
+    /**
+     * List of pending outgoing messages; bounded by maxPendingMessages. Writers never block on this queue.
+     */
+    protected transient final ConcurrentLinkedQueue<PendingData> pendingOutMessages = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of entries in pendingOutMessages; ConcurrentLinkedQueue.size() is a traversal
+     */
+    private final AtomicInteger pendingOutCount = new AtomicInteger();
+
+    /**
+     * Number of encoded bytes in pendingOutMessages
+     */
+    private final AtomicLong pendingOutBytes = new AtomicLong();
+
+    /**
+     * Number of outgoing messages dropped due to a full queue
+     */
+    private final AtomicLong droppedMessages = new AtomicLong();
+
+    /**
+     * Maximum number of outgoing messages to hold for the client. Default size is 8192.
+     */
+    protected int maxPendingMessages = 8192;
+
+    /**
+     * Policy to apply when maxPendingMessages is reached
+     */
+    protected OverflowPolicy overflowPolicy = OverflowPolicy.DROP;
 
     /**
      * Maximum incoming messages to process at a time per client
@@ -80,12 +113,18 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
 
     /**
      * Maximum amount of time in milliseconds to wait before allowing an offer to fail
+     *
+     * @deprecated the outgoing queue no longer blocks, see {@link #overflowPolicy}
      */
+    @Deprecated
     protected long maxQueueOfferTime = 500L;
 
     /**
      * Maximum offer attempts before failing on incoming or outgoing queues
+     *
+     * @deprecated the outgoing queue no longer blocks, see {@link #overflowPolicy}
      */
+    @Deprecated
     protected int maxQueueOfferAttempts = 4;
 
     public BaseRTMPTConnection(String type) {
@@ -106,11 +145,11 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     @Override
     public void close() {
         closing = true;
-        if (pendingOutMessages.size() > 0) {
+        if (pendingOutCount.get() > 0) {
             if (log.isTraceEnabled()) {
-                log.trace("Clearing pending messages out: {}", pendingOutMessages.size());
+                log.trace("Clearing pending messages out: {}", pendingOutCount.get());
             }
-            pendingOutMessages.clear();
+            clearPendingMessages();
         }
         // clean up buffer
         if (buffer != null) {
@@ -155,9 +194,77 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         log.debug("Checking pending queue size. Session id: {} closing: {} state: {}", sessionId, closing, state);
         if (state.getState() == RTMP.STATE_DISCONNECTED) {
             log.debug("Connection is disconnected");
-            pendingOutMessages.clear();
+            clearPendingMessages();
+        }
+        return pendingOutCount.get();
+    }
+
+    /**
+     * Returns whether or not there is outgoing data waiting for the client.
+     *
+     * @return true if messages are pending
+     */
+    public boolean hasPendingMessages() {
+        return pendingOutCount.get() > 0;
+    }
+
+    /**
+     * Returns the number of encoded bytes waiting for the client.
+     *
+     * @return pending byte count
+     */
+    public long getPendingBytes() {
+        return pendingOutBytes.get();
+    }
+
+    /**
+     * Returns the number of outgoing messages dropped because the queue was full.
+     *
+     * @return dropped message count
+     */
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    private void clearPendingMessages() {
+        PendingData pendingData;
+        while ((pendingData = pendingOutMessages.poll()) != null) {
+            pendingOutCount.decrementAndGet();
+            pendingOutBytes.addAndGet(-pendingData.getBufferSize());
+            pendingData.free();
+        }
+    }
+
+    /**
+     * Adds data to the outgoing queue without blocking. When the queue is full the overflow policy is applied.
+     *
+     * @param pendingData
+     *            data to send
+     * @return true if queued
+     */
+    private boolean enqueue(PendingData pendingData) {
+        if (pendingOutCount.incrementAndGet() > maxPendingMessages) {
+            pendingOutCount.decrementAndGet();
+            droppedMessages.incrementAndGet();
+            pendingData.free();
+            if (overflowPolicy == OverflowPolicy.CLOSE) {
+                log.warn("Outgoing queue full ({}), closing connection {}", maxPendingMessages, sessionId);
+                close();
+            } else {
+                log.debug("Outgoing queue full ({}), message dropped", maxPendingMessages);
+            }
+            return false;
         }
-        return pendingOutMessages.size();
+        pendingOutBytes.addAndGet(pendingData.getBufferSize());
+        pendingOutMessages.offer(pendingData);
+        onPendingData();
+        return true;
+    }
+
+    /**
+     * Called after data has been added to the outgoing queue. Subclasses holding a request open may use this to complete it.
+     */
+    protected void onPendingData() {
     }
 
     /**
@@ -209,18 +316,8 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
                 if (data != null) {
                     // add to pending
                     log.debug("Adding outgoing message packet");
-                    PendingData pendingData = new PendingData(data, packet);
-                    try {
-                        int attempt = 0;
-                        while (!pendingOutMessages.offer(pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
-                            log.trace("Packet was not added to out queue");
-                            attempt++;
-                            if (attempt >= maxQueueOfferAttempts) {
-                                break;
-                            }
-                        }
-                    } catch (InterruptedException ex) {
-                        log.warn("Offering packet to out queue failed", ex);
+                    if (!enqueue(new PendingData(data, packet))) {
+                        log.trace("Packet was not added to out queue");
                     }
                 } else {
                     log.warn("Response buffer was null after encoding");
@@ -242,51 +339,64 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         if (log.isDebugEnabled()) {
             log.debug("write - io buffer: {}", packet);
         }
-        PendingData pendingData = new PendingData(packet);
-        try {
-            int attempt = 0;
-            while (!pendingOutMessages.offer(pendingData, maxQueueOfferTime, TimeUnit.MILLISECONDS)) {
-                log.trace("Packet was not added to out queue");
-                attempt++;
-                if (attempt >= maxQueueOfferAttempts) {
-                    break;
+        if (!enqueue(new PendingData(packet))) {
+            log.trace("Packet was not added to out queue");
+        }
+    }
+
+    /**
+     * Removes pending messages from the outgoing queue until at least targetSize bytes have been collected or the queue is empty. The
+     * encoded buffers are returned as-is so that they may be written to the response without copying; the stream subsystem is notified
+     * for each message.
+     *
+     * @param targetSize
+     *            minimum number of bytes to collect when available
+     * @return buffers to send, empty if nothing is pending
+     */
+    protected List<IoBuffer> drainPendingMessages(int targetSize) {
+        log.debug("drainPendingMessages - target size: {}", targetSize);
+        if (pendingOutCount.get() == 0) {
+            return Collections.emptyList();
+        }
+        List<IoBuffer> sendList = new ArrayList<>(Math.min(pendingOutCount.get(), 164));
+        int size = 0;
+        PendingData pendingMessage;
+        while (size < targetSize && (pendingMessage = pendingOutMessages.poll()) != null) {
+            pendingOutCount.decrementAndGet();
+            int length = pendingMessage.getBufferSize();
+            pendingOutBytes.addAndGet(-length);
+            size += length;
+            sendList.add(pendingMessage.getBuffer());
+            Packet packet = pendingMessage.getPacket();
+            if (packet != null) {
+                try {
+                    handler.messageSent(this, packet);
+                    // mark packet as being written
+                    writingMessage(packet);
+                } catch (Exception e) {
+                    log.error("Could not notify stream subsystem about sent message", e);
                 }
+            } else {
+                log.trace("Pending message did not have a packet");
             }
-        } catch (InterruptedException ex) {
-            log.warn("Offering io buffer to out queue failed", ex);
         }
+        if (log.isDebugEnabled()) {
+            log.debug("Send size: {} messages: {}", size, sendList.size());
+        }
+        return sendList;
     }
 
     protected IoBuffer foldPendingMessages(int targetSize) {
         log.debug("foldPendingMessages - target size: {}", targetSize);
         IoBuffer result = null;
-        if (!pendingOutMessages.isEmpty()) {
-            int available = pendingOutMessages.size();
-            // create list to hold outgoing data
-            LinkedList<PendingData> sendList = new LinkedList<PendingData>();
-            pendingOutMessages.drainTo(sendList, Math.min(164, available));
+        List<IoBuffer> sendList = drainPendingMessages(targetSize);
+        if (!sendList.isEmpty()) {
             result = IoBuffer.allocate(targetSize).setAutoExpand(true);
-            for (PendingData pendingMessage : sendList) {
-                result.put(pendingMessage.getBuffer());
-                Packet packet = pendingMessage.getPacket();
-                if (packet != null) {
-                    try {
-                        handler.messageSent(this, packet);
-                        // mark packet as being written
-                        writingMessage(packet);
-                    } catch (Exception e) {
-                        log.error("Could not notify stream subsystem about sent message", e);
-                    }
-                } else {
-                    log.trace("Pending message did not have a packet");
-                }
+            for (IoBuffer buf : sendList) {
+                result.put(buf);
+                buf.free();
             }
-            sendList.clear();
             result.flip();
-            // send byte length
-            if (log.isDebugEnabled()) {
-                log.debug("Send size: {}", result.limit());
-            }
         }
         return result;
     }
@@ -310,7 +420,9 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     /**
      * @param maxQueueOfferTime
      *            the maxQueueOfferTime to set
+     * @deprecated the outgoing queue no longer blocks
      */
+    @Deprecated
     public void setMaxQueueOfferTime(long maxQueueOfferTime) {
         this.maxQueueOfferTime = maxQueueOfferTime;
     }
@@ -318,13 +430,32 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
     /**
      * @param maxQueueOfferAttempts
      *            the maxQueueOfferAttempts to set
+     * @deprecated the outgoing queue no longer blocks
      */
+    @Deprecated
     public void setMaxQueueOfferAttempts(int maxQueueOfferAttempts) {
         this.maxQueueOfferAttempts = maxQueueOfferAttempts;
     }
 
     /**
-     * Holder for data destined for a requester that is not ready to be sent.
+     * @param maxPendingMessages
+     *            the maximum number of outgoing messages to hold for the client
+     */
+    public void setMaxPendingMessages(int maxPendingMessages) {
+        this.maxPendingMessages = maxPendingMessages;
+    }
+
+    /**
+     * @param overflowPolicy
+     *            the policy to apply when the outgoing queue is full
+     */
+    public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    /**
+     * Holder for data destined for a requester that is not ready to be sent. The encoded buffer is kept rather than copied; encoders
+     * hand over a fresh buffer per packet.
      */
     private static class PendingData {
 
@@ -332,45 +463,34 @@ public abstract class BaseRTMPTConnection extends RTMPConnection {
         private final Packet packet;
 
         // encoded packet data
-        private final byte[] byteBuffer;
+        private final IoBuffer buffer;
 
         private PendingData(IoBuffer buffer, Packet packet) {
-            int size = buffer.limit();
-            this.byteBuffer = new byte[size];
-            buffer.get(byteBuffer);
+            this.buffer = buffer;
             this.packet = packet;
             if (log.isTraceEnabled()) {
-                log.trace("Buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
+                log.trace("Buffer: {}", buffer.getHexDump(32));
             }
         }
 
         private PendingData(IoBuffer buffer) {
-            int size = buffer.limit();
-            this.byteBuffer = new byte[size];
-            buffer.get(byteBuffer);
-            this.packet = null;
-            if (log.isTraceEnabled()) {
-                log.trace("Buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
-            }
+            this(buffer, null);
         }
 
-        public byte[] getBuffer() {
-            if (log.isTraceEnabled()) {
-                log.trace("Get buffer: {}", Arrays.toString(ArrayUtils.subarray(byteBuffer, 0, 32)));
-            }
-            return byteBuffer;
+        public IoBuffer getBuffer() {
+            return buffer;
         }
 
         public Packet getPacket() {
             return packet;
         }
 
-        @SuppressWarnings("unused")
         public int getBufferSize() {
-            if (byteBuffer != null) {
-                return byteBuffer.length;
-            }
-            return 0;
+            return buffer.remaining();
+        }
+
+        public void free() {
+            buffer.free();
         }
 
     }
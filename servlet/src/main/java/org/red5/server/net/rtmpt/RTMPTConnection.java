@@ -7,20 +7,25 @@
 
 package org.red5.server.net.rtmpt;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
 import jakarta.servlet.http.HttpServletRequest;
 
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.DummySession;
 import org.apache.mina.core.session.IoSession;
-import org.red5.logging.Red5LoggerFactory;
 import org.red5.server.api.IConnection;
 import org.red5.server.net.rtmp.RTMPConnection;
 import org.red5.server.net.rtmp.codec.RTMP;
 import org.red5.server.net.rtmp.message.Packet;
 import org.red5.server.net.servlet.ServletUtils;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * A RTMPT client / session.
@@ -74,6 +79,11 @@ public class RTMPTConnection extends BaseRTMPTConnection {
 
     private transient IoSession ioSession;
 
+    /**
+     * Idle request being held open until outgoing data is available (long-poll mode)
+     */
+    private final transient AtomicReference<AsyncContext> parkedRequest = new AtomicReference<>();
+
     /** Constructs a new RTMPTConnection */
     RTMPTConnection() {
         super(IConnection.Type.POLLING.name().toLowerCase());
@@ -116,6 +126,11 @@ public class RTMPTConnection extends BaseRTMPTConnection {
             }
             // now close
             super.close();
+            // release any parked idle request with a close notification
+            AsyncContext asyncContext = parkedRequest.getAndSet(null);
+            if (asyncContext != null && servlet != null) {
+                servlet.completeIdleRequest(this, asyncContext);
+            }
             if (servlet != null) {
                 servlet = null;
             }
@@ -223,7 +238,8 @@ public class RTMPTConnection extends BaseRTMPTConnection {
     }
 
     /**
-     * Return the polling delay to use.
+     * Return the polling delay to use. While idle requests are being held open the client is asked to poll again immediately, since the
+     * server decides when to answer.
      *
      * @return the polling delay
      */
@@ -232,18 +248,99 @@ public class RTMPTConnection extends BaseRTMPTConnection {
             log.trace("getPollingDelay {}", pollingDelay);
             log.trace("Polling delay: {} loops without messages: {}", pollingDelay, noPendingMessages);
         }
+        if (servlet != null && servlet.getLongPollTimeout() > 0) {
+            return (byte) (INITIAL_POLLING_DELAY + 1);
+        }
         return (byte) (pollingDelay + 1);
     }
 
+    /**
+     * Holds an idle request open until data is queued for the client or the async timeout expires. Only one request is parked at a
+     * time; a newer poll replaces and answers the older one.
+     *
+     * @param asyncContext
+     *            async context of the idle request
+     */
+    protected void parkIdleRequest(AsyncContext asyncContext) {
+        asyncContext.addListener(new AsyncListener() {
+
+            @Override
+            public void onTimeout(AsyncEvent event) {
+                // nothing was queued in time, answer with the polling delay
+                if (parkedRequest.compareAndSet(asyncContext, null)) {
+                    RTMPTServlet srv = servlet;
+                    if (srv != null) {
+                        srv.completeIdleRequest(RTMPTConnection.this, asyncContext);
+                    } else {
+                        asyncContext.complete();
+                    }
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                log.debug("Parked request error", event.getThrowable());
+                parkedRequest.compareAndSet(asyncContext, null);
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+                parkedRequest.compareAndSet(asyncContext, null);
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+
+        });
+        AsyncContext previous = parkedRequest.getAndSet(asyncContext);
+        if (previous != null && servlet != null) {
+            servlet.completeIdleRequest(this, previous);
+        }
+        // data may have been queued between the caller's check and parking
+        if (hasPendingMessages() || isClosing()) {
+            onPendingData();
+        }
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    protected void onPendingData() {
+        if (parkedRequest.get() != null) {
+            AsyncContext asyncContext = parkedRequest.getAndSet(null);
+            RTMPTServlet srv = servlet;
+            if (asyncContext != null && srv != null) {
+                srv.completeIdleRequest(this, asyncContext);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public IoBuffer getPendingMessages(int targetSize) {
+        adjustPollingDelay();
+        return foldPendingMessages(targetSize);
+    }
+
+    /**
+     * Return any pending messages up to a given size as the encoded buffers, without folding them into a single buffer.
+     *
+     * @param targetSize
+     *            the number of bytes to collect when available
+     * @return buffers to send, empty if no messages are pending
+     */
+    public List<IoBuffer> getPendingMessageBuffers(int targetSize) {
+        adjustPollingDelay();
+        return drainPendingMessages(targetSize);
+    }
+
+    private void adjustPollingDelay() {
         if (log.isTraceEnabled()) {
-            log.trace("Pending messages out: {}", pendingOutMessages.size());
+            log.trace("Pending messages out: {}", getPendingMessages());
         }
-        if (!pendingOutMessages.isEmpty()) {
+        if (hasPendingMessages()) {
             pollingDelay = INITIAL_POLLING_DELAY;
             noPendingMessages = 0;
         } else {
@@ -259,7 +356,6 @@ public class RTMPTConnection extends BaseRTMPTConnection {
                 }
             }
         }
-        return foldPendingMessages(targetSize);
     }
 
     /**
@@ -12,7 +12,9 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletException;
 import jakarta.servlet.ServletOutputStream;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
@@ -21,7 +23,6 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.apache.commons.codec.binary.Hex;
 import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.session.IoSession;
-import org.red5.logging.Red5LoggerFactory;
 import org.red5.server.BaseConnection;
 import org.red5.server.api.Red5;
 import org.red5.server.net.rtmp.InboundHandshake;
@@ -38,6 +39,7 @@ import org.red5.server.net.rtmp.status.StatusCodes;
 import org.red5.server.net.servlet.ServletUtils;
 import org.red5.server.service.PendingCall;
 import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
@@ -75,6 +77,12 @@ public class RTMPTServlet extends HttpServlet {
      */
     private static int targetResponseSize = Short.MAX_VALUE + 1;
 
+    /**
+     * Time in milliseconds to hold an idle request open while waiting for outgoing data; 0 disables long-polling and idle requests are
+     * answered immediately.
+     */
+    private static long longPollTimeout = Long.getLong("rtmpt.longpoll.timeout", 0L);
+
     /**
      * Reference to RTMPT handler;
      */
@@ -226,6 +234,47 @@ public class RTMPTServlet extends HttpServlet {
         buffer = null;
     }
 
+    /**
+     * Return the encoded buffers to the client in a single response, writing each buffer directly to the output stream.
+     *
+     * @param conn
+     *            RTMP connection
+     * @param buffers
+     *            encoded messages
+     * @param resp
+     *            Servlet response
+     * @throws IOException
+     *             I/O exception
+     */
+    protected void returnMessages(RTMPTConnection conn, List<IoBuffer> buffers, HttpServletResponse resp) throws IOException {
+        int size = 0;
+        for (IoBuffer buffer : buffers) {
+            size += buffer.remaining();
+        }
+        resp.setStatus(HttpServletResponse.SC_OK);
+        resp.setHeader("Connection", "Keep-Alive");
+        resp.setHeader("Cache-Control", "no-cache");
+        resp.setContentType(CONTENT_TYPE);
+        int contentLength = size + 1;
+        resp.setContentLength(contentLength);
+        ServletOutputStream output = resp.getOutputStream();
+        byte pollingDelay = conn.getPollingDelay();
+        log.debug("Sending {} bytes in {} messages; polling delay: {}", size, buffers.size(), pollingDelay);
+        output.write(pollingDelay);
+        try {
+            for (IoBuffer buffer : buffers) {
+                if (buffer.hasArray()) {
+                    output.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                } else {
+                    ServletUtils.copy(buffer.asInputStream(), output);
+                }
+            }
+        } finally {
+            buffers.forEach(IoBuffer::free);
+        }
+        conn.updateWrittenBytes(contentLength);
+    }
+
     /**
      * Sets the request info for the current request. Request info contains the session id and request number gathered from the incoming
      * request. The URI is in this form /[method]/[session id]/[request number] ie. /send/CAFEBEEF01/7
@@ -271,10 +320,10 @@ public class RTMPTServlet extends HttpServlet {
     protected void returnPendingMessages(RTMPTConnection conn, HttpServletResponse resp) {
         log.debug("returnPendingMessages {}", conn);
         // grab any pending outgoing data
-        IoBuffer data = conn.getPendingMessages(targetResponseSize);
-        if (data != null) {
+        List<IoBuffer> data = conn.getPendingMessageBuffers(targetResponseSize);
+        if (!data.isEmpty()) {
             try {
-                returnMessage(conn, data, resp);
+                returnMessages(conn, data, resp);
             } catch (Exception ex) {
                 // using "Exception" is meant to catch any exception that would occur when doing a write
                 // this can be an IOException or a container specific one like ClientAbortException from catalina
@@ -301,6 +350,31 @@ public class RTMPTServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Answers an idle request that was held open, on a container thread.
+     *
+     * @param conn
+     *            RTMP connection
+     * @param asyncContext
+     *            async context of the parked request
+     */
+    protected void completeIdleRequest(RTMPTConnection conn, AsyncContext asyncContext) {
+        try {
+            asyncContext.start(() -> {
+                try {
+                    Red5.setConnectionLocal(conn);
+                    returnPendingMessages(conn, (HttpServletResponse) asyncContext.getResponse());
+                } finally {
+                    Red5.setConnectionLocal(null);
+                    asyncContext.complete();
+                }
+            });
+        } catch (IllegalStateException e) {
+            // request already completed or timed out
+            log.debug("Parked request for {} is no longer active", conn.getSessionId());
+        }
+    }
+
     /**
      * Start a new RTMPT session.
      *
@@ -501,8 +575,15 @@ public class RTMPTServlet extends HttpServlet {
         if (conn != null) {
             conn.dataReceived();
             conn.updateReadBytes(req.getContentLength());
-            // return pending
-            returnPendingMessages(conn, resp);
+            if (longPollTimeout > 0 && req.isAsyncSupported() && !conn.hasPendingMessages() && !conn.isClosing()) {
+                // hold the request until there is something to send
+                AsyncContext asyncContext = req.startAsync();
+                asyncContext.setTimeout(longPollTimeout);
+                conn.parkIdleRequest(asyncContext);
+            } else {
+                // return pending
+                returnPendingMessages(conn, resp);
+            }
         } else {
             handleBadRequest(String.format("Idle: unknown client session: %s", requestInfo.get().getSessionId()), resp);
         }
@@ -613,6 +694,17 @@ public class RTMPTServlet extends HttpServlet {
         Red5.setConnectionLocal(null);
     }
 
+    /** {@inheritDoc} */
+    @Override
+    public void init() throws ServletException {
+        super.init();
+        String timeout = getInitParameter("longPollTimeout");
+        if (timeout != null) {
+            setLongPollTimeout(Long.parseLong(timeout));
+        }
+        log.debug("Long-poll timeout: {}", longPollTimeout);
+    }
+
     /** {@inheritDoc} */
     @Override
     public void destroy() {
@@ -694,6 +786,25 @@ public class RTMPTServlet extends HttpServlet {
         RTMPTServlet.targetResponseSize = targetResponseSize;
     }
 
+    /**
+     * Returns the time in milliseconds an idle request is held open waiting for data.
+     *
+     * @return the longPollTimeout, 0 if disabled
+     */
+    public long getLongPollTimeout() {
+        return longPollTimeout;
+    }
+
+    /**
+     * Sets the time in milliseconds an idle request is held open waiting for data; 0 disables long-polling.
+     *
+     * @param longPollTimeout
+     *            the longPollTimeout to set
+     */
+    public void setLongPollTimeout(long longPollTimeout) {
+        RTMPTServlet.longPollTimeout = longPollTimeout;
+    }
+
     /**
      * @return the enforceContentTypeCheck
      */
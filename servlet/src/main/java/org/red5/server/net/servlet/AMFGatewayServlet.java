@@ -8,10 +8,25 @@
 package org.red5.server.net.servlet;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -27,14 +42,29 @@ import org.red5.server.api.scope.IScope;
 import org.red5.server.api.service.IServiceInvoker;
 import org.red5.server.net.remoting.RemotingConnection;
 import org.red5.server.net.remoting.codec.RemotingCodecFactory;
+import org.red5.server.net.remoting.codec.RemotingProtocolEncoder;
+import org.red5.server.net.remoting.codec.RemotingRequestDecoder;
 import org.red5.server.net.remoting.message.RemotingCall;
 import org.red5.server.net.remoting.message.RemotingPacket;
+import org.red5.server.service.Call;
 import org.slf4j.Logger;
 import org.springframework.web.context.WebApplicationContext;
 import org.springframework.web.context.support.WebApplicationContextUtils;
 
 /**
  * Servlet that handles remoting requests.
+ * <p>
+ * When the container supports asynchronous processing for the servlet (<code>&lt;async-supported&gt;true&lt;/async-supported&gt;</code>)
+ * requests are read with non-blocking I/O into pooled buffers and decoded one message body at a time; each call is dispatched to a virtual
+ * thread as soon as its body has been decoded. Any call may add a header to the response, so the response is written once every call has
+ * completed, with the results in the order of the calls, and its status is 417 if any of them failed, as for blocking requests. The
+ * following init parameters tune this behavior:
+ * <ul>
+ * <li><code>gateway.concurrentCalls</code> - run the calls of a batch concurrently rather than one after the other, default false</li>
+ * <li><code>gateway.bufferSize</code> - initial size of the pooled request and response buffers, default 8192</li>
+ * <li><code>gateway.bufferPoolSize</code> - number of idle buffers kept, default 64</li>
+ * <li><code>gateway.asyncTimeout</code> - request timeout in milliseconds, the container default if not set</li>
+ * </ul>
  *
  * @author The Red5 Project
  * @author Luke Hubbard (luke@codegent.com)
@@ -47,7 +77,7 @@ public class AMFGatewayServlet extends HttpServlet {
     /**
      * Logger
      */
-    protected Logger log = LoggerFactory.getLogger(AMFGatewayServlet.class);
+    protected Logger log = Red5LoggerFactory.getLogger(AMFGatewayServlet.class);
 
     /**
      * AMF MIME type
@@ -74,9 +104,57 @@ public class AMFGatewayServlet extends HttpServlet {
      */
     private static final String CONNECTION = "red5.remotingConnection";
 
+    /**
+     * Whether the calls of a batch run concurrently
+     */
+    protected boolean concurrentCalls;
+
+    /**
+     * Initial size of pooled buffers
+     */
+    protected int bufferSize = 8192;
+
+    /**
+     * Asynchronous request timeout in milliseconds, negative for the container default
+     */
+    protected long asyncTimeout = -1;
+
+    private transient BufferPool bufferPool;
+
+    private transient ExecutorService executor;
+
     /** {@inheritDoc} */
     @Override
     public void init() throws ServletException {
+        String param = getInitParameter("gateway.concurrentCalls");
+        if (param != null) {
+            concurrentCalls = Boolean.parseBoolean(param);
+        }
+        param = getInitParameter("gateway.bufferSize");
+        if (param != null) {
+            bufferSize = Integer.parseInt(param);
+        }
+        int poolSize = 64;
+        param = getInitParameter("gateway.bufferPoolSize");
+        if (param != null) {
+            poolSize = Integer.parseInt(param);
+        }
+        param = getInitParameter("gateway.asyncTimeout");
+        if (param != null) {
+            asyncTimeout = Long.parseLong(param);
+        }
+        bufferPool = new BufferPool(poolSize, bufferSize);
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("AMFGateway-", 0).factory());
+        log.debug("Concurrent calls: {} buffer size: {} pool size: {}", concurrentCalls, bufferSize, poolSize);
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+        super.destroy();
     }
 
     /** {@inheritDoc} */
@@ -103,7 +181,11 @@ public class AMFGatewayServlet extends HttpServlet {
         }
         log.debug("Remoting request {} {}", req.getContextPath(), req.getServletPath());
         if (APPLICATION_AMF.equals(req.getContentType())) {
-            serviceAMF(req, resp);
+            if (req.isAsyncSupported()) {
+                serviceAMFAsync(req, resp);
+            } else {
+                serviceAMF(req, resp);
+            }
         } else {
             resp.getWriter().write("Red5 : Remoting Gateway");
         }
@@ -135,6 +217,27 @@ public class AMFGatewayServlet extends HttpServlet {
         return global;
     }
 
+    /**
+     * Works out AMF request asynchronously, see the class description.
+     *
+     * @param req
+     *            Request
+     * @param resp
+     *            Response
+     * @throws IOException
+     *             I/O exception
+     */
+    protected void serviceAMFAsync(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        log.debug("Servicing AMF asynchronously");
+        AsyncContext async = req.startAsync();
+        if (asyncTimeout >= 0) {
+            async.setTimeout(asyncTimeout);
+        }
+        AMFExchange exchange = new AMFExchange(req, resp, async);
+        async.addListener(exchange);
+        req.getInputStream().setReadListener(exchange);
+    }
+
     /**
      * Works out AMF request
      *
@@ -206,6 +309,22 @@ public class AMFGatewayServlet extends HttpServlet {
         ServletUtils.copy(req, reqBuffer.asOutputStream());
         reqBuffer.flip();
         RemotingPacket packet = (RemotingPacket) codecFactory.getRemotingDecoder().decode(reqBuffer);
+        String path = getScopePath(req);
+        log.debug("Path: {} Scope path: {}", path, packet.getScopePath());
+        packet.setScopePath(path);
+        reqBuffer.free();
+        reqBuffer = null;
+        return packet;
+    }
+
+    /**
+     * Return the scope path for the given request.
+     *
+     * @param req
+     *            Request
+     * @return scope path, without a leading slash
+     */
+    protected String getScopePath(HttpServletRequest req) {
         String path = req.getContextPath();
         if (path == null) {
             path = "";
@@ -222,11 +341,7 @@ public class AMFGatewayServlet extends HttpServlet {
         if (path.length() > 0 && path.charAt(0) == '/') {
             path = path.substring(1);
         }
-        log.debug("Path: {} Scope path: {}", path, packet.getScopePath());
-        packet.setScopePath(path);
-        reqBuffer.free();
-        reqBuffer = null;
-        return packet;
+        return path;
     }
 
     /**
@@ -286,4 +401,310 @@ public class AMFGatewayServlet extends HttpServlet {
         }
     }
 
+    /**
+     * A remoting request being serviced asynchronously: reads and decodes the request as it arrives, dispatches the calls and writes the
+     * response without blocking a container thread.
+     */
+    private final class AMFExchange implements ReadListener, WriteListener, AsyncListener {
+
+        private final HttpServletRequest req;
+
+        private final HttpServletResponse resp;
+
+        private final AsyncContext async;
+
+        private final ServletInputStream in;
+
+        private final RemotingRequestDecoder decoder = new RemotingRequestDecoder(codecFactory.getRemotingDecoder());
+
+        private final RemotingProtocolEncoder encoder = codecFactory.getRemotingEncoder();
+
+        // calls in the order they were decoded, shared with the packet, which is the order their results are written in
+        private final List<RemotingCall> calls = Collections.synchronizedList(new ArrayList<>());
+
+        private final AtomicInteger completed = new AtomicInteger();
+
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        // response bodies waiting for the output stream
+        private final ArrayDeque<IoBuffer> pending = new ArrayDeque<>();
+
+        private IoBuffer reqBuffer;
+
+        private volatile int count = -1;
+
+        private volatile boolean failed;
+
+        private RemotingPacket packet;
+
+        private RemotingConnection conn;
+
+        private IScope scope;
+
+        private IServiceInvoker invoker;
+
+        // tail of the chain running the calls one after the other
+        private CompletableFuture<Boolean> sequence = CompletableFuture.completedFuture(Boolean.TRUE);
+
+        private ServletOutputStream out;
+
+        // response has been committed
+        private boolean started;
+
+        // output stream is in non-blocking mode and may be written to
+        private boolean writable;
+
+        private boolean closing;
+
+        AMFExchange(HttpServletRequest req, HttpServletResponse resp, AsyncContext async) throws IOException {
+            this.req = req;
+            this.resp = resp;
+            this.async = async;
+            this.in = req.getInputStream();
+            this.reqBuffer = bufferPool.acquire();
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onDataAvailable() throws IOException {
+            try {
+                int read = 0;
+                while (in.isReady()) {
+                    reqBuffer.expand(bufferSize);
+                    int n = in.read(reqBuffer.array(), reqBuffer.arrayOffset() + reqBuffer.position(), reqBuffer.remaining());
+                    if (n < 0) {
+                        break;
+                    }
+                    reqBuffer.position(reqBuffer.position() + n);
+                    read += n;
+                }
+                if (read > 0) {
+                    decode(false);
+                }
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onAllDataRead() throws IOException {
+            try {
+                if (reqBuffer != null) {
+                    decode(true);
+                }
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        private void decode(boolean last) {
+            if (reqBuffer == null) {
+                // request already complete, ignore trailing data
+                return;
+            }
+            reqBuffer.flip();
+            List<RemotingCall> decoded = decoder.decode(reqBuffer, last);
+            reqBuffer.compact();
+            if (conn == null && decoder.getHeaders() != null) {
+                open();
+            }
+            for (RemotingCall call : decoded) {
+                calls.add(call);
+                dispatch(call);
+            }
+            if (decoder.isComplete()) {
+                bufferPool.release(reqBuffer);
+                reqBuffer = null;
+                count = decoder.getCallCount();
+                log.debug("Decoded {} calls", count);
+                if (count == 0 || completed.get() == count) {
+                    finish();
+                }
+            }
+        }
+
+        private void open() {
+            packet = new RemotingPacket(decoder.getHeaders(), calls);
+            packet.setScopePath(getScopePath(req));
+            final IGlobalScope global = getGlobalScope(req);
+            final IContext context = global.getContext();
+            scope = context.resolveScope(global, packet.getScopePath());
+            invoker = context.getServiceInvoker();
+            conn = new RemotingConnection(req, scope, packet);
+            // Make sure the connection object isn't garbage collected
+            req.setAttribute(CONNECTION, conn);
+        }
+
+        private void dispatch(RemotingCall call) {
+            if (concurrentCalls) {
+                executor.execute(() -> callCompleted(call, invoke(call)));
+            } else {
+                // if we encounter a failure the remaining calls are not invoked
+                sequence = sequence.thenApplyAsync(passed -> {
+                    boolean result = passed && invoke(call);
+                    callCompleted(call, result);
+                    return result;
+                }, executor);
+            }
+        }
+
+        private boolean invoke(RemotingCall call) {
+            // set thread local reference
+            Red5.setConnectionLocal(conn);
+            try {
+                return invoker.invoke(call, scope);
+            } catch (Exception e) {
+                log.warn("Error invoking {}", call, e);
+                call.setException(e);
+                call.setStatus(Call.STATUS_GENERAL_EXCEPTION);
+                return false;
+            } finally {
+                Red5.setConnectionLocal(null);
+            }
+        }
+
+        private void callCompleted(RemotingCall call, boolean result) {
+            try {
+                if (!result) {
+                    log.warn("At least one invocation failed to execute");
+                    failed = true;
+                }
+                // the count is set once every call has been decoded, which may be after the last one completed
+                if (completed.incrementAndGet() == count) {
+                    finish();
+                }
+            } catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        private synchronized void finish() {
+            if (packet == null || closing || started) {
+                return;
+            }
+            started = true;
+            resp.setStatus(failed ? HttpServletResponse.SC_EXPECTATION_FAILED : HttpServletResponse.SC_OK);
+            resp.setContentType(APPLICATION_AMF);
+            // every call has completed, so no more headers can be added
+            IoBuffer buf = bufferPool.acquire();
+            encoder.encodePreamble(buf, packet.getEncoding(), conn.getHeaders(), decoder.getCallCount());
+            write(buf);
+            synchronized (calls) {
+                for (RemotingCall call : calls) {
+                    buf = bufferPool.acquire();
+                    encoder.encodeCall(buf, call);
+                    write(buf);
+                }
+            }
+            closing = true;
+            drain();
+        }
+
+        private synchronized void write(IoBuffer buf) {
+            buf.flip();
+            pending.add(buf);
+            if (out == null) {
+                try {
+                    out = resp.getOutputStream();
+                    out.setWriteListener(this);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else {
+                drain();
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public synchronized void onWritePossible() throws IOException {
+            writable = true;
+            drain();
+        }
+
+        private synchronized void drain() {
+            if (!writable || closed.get()) {
+                return;
+            }
+            try {
+                while (out.isReady()) {
+                    IoBuffer buf = pending.poll();
+                    if (buf == null) {
+                        if (closing) {
+                            close(true);
+                        }
+                        return;
+                    }
+                    out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                    bufferPool.release(buf);
+                }
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onError(Throwable t) {
+            fail(t);
+        }
+
+        private void fail(Throwable t) {
+            log.error("Error handling remoting call", t);
+            synchronized (this) {
+                if (!started) {
+                    started = true;
+                    resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                }
+            }
+            close(true);
+        }
+
+        private void close(boolean complete) {
+            if (closed.compareAndSet(false, true)) {
+                if (conn != null) {
+                    //ensure the conn attr gets removed
+                    req.removeAttribute(CONNECTION);
+                    //unregister the remote connection client
+                    conn.cleanup();
+                }
+                synchronized (this) {
+                    bufferPool.release(reqBuffer);
+                    reqBuffer = null;
+                    pending.forEach(bufferPool::release);
+                    pending.clear();
+                }
+                if (complete) {
+                    async.complete();
+                }
+            }
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            close(false);
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            log.warn("Remoting request timed out after {} of {} calls", completed.get(), decoder.getCallCount());
+            fail(new IOException("Request timed out"));
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onError(AsyncEvent event) throws IOException {
+            fail(event.getThrowable());
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public void onStartAsync(AsyncEvent event) throws IOException {
+        }
+
+    }
+
 }
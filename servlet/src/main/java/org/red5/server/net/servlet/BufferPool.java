@@ -0,0 +1,71 @@
+/*
+ * RED5 Open Source Media Server - https://github.com/Red5/ Copyright 2006-2023 by respective authors (see below). All rights reserved. Licensed under the Apache License, Version
+ * 2.0 (the "License"); you may not use this file except in compliance with the License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless
+ * required by applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language governing permissions and limitations under the License.
+ */
+
+package org.red5.server.net.servlet;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.mina.core.buffer.IoBuffer;
+
+/**
+ * Small pool of auto expanding heap buffers for the request and response bodies of the gateway. Buffers which have grown beyond the
+ * retained capacity, or which find the pool full, are freed instead of being pooled so that a single large request does not pin memory.
+ *
+ * @author Paul Gregoire (mondain@gmail.com)
+ */
+final class BufferPool {
+
+    private final ArrayBlockingQueue<IoBuffer> buffers;
+
+    private final int bufferSize;
+
+    private final int maxRetainedCapacity;
+
+    /**
+     * Creates a pool.
+     *
+     * @param poolSize
+     *            maximum number of idle buffers kept
+     * @param bufferSize
+     *            initial capacity of a new buffer
+     */
+    BufferPool(int poolSize, int bufferSize) {
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+        this.bufferSize = bufferSize;
+        this.maxRetainedCapacity = bufferSize * 8;
+    }
+
+    /**
+     * Returns an empty, auto expanding buffer.
+     *
+     * @return buffer
+     */
+    IoBuffer acquire() {
+        IoBuffer buf = buffers.poll();
+        if (buf == null) {
+            buf = IoBuffer.allocate(bufferSize, false);
+            buf.setAutoExpand(true);
+        }
+        return buf;
+    }
+
+    /**
+     * Returns a buffer to the pool.
+     *
+     * @param buf
+     *            buffer no longer in use, may be null
+     */
+    void release(IoBuffer buf) {
+        if (buf != null) {
+            buf.clear();
+            if (buf.capacity() > maxRetainedCapacity || !buffers.offer(buf)) {
+                buf.free();
+            }
+        }
+    }
+
+}
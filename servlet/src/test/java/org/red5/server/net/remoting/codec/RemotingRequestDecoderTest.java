@@ -0,0 +1,157 @@
+package org.red5.server.net.remoting.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.io.amf.AMF;
+import org.red5.io.amf.Output;
+import org.red5.io.object.Serializer;
+import org.red5.server.net.remoting.message.RemotingCall;
+import org.red5.server.net.remoting.message.RemotingPacket;
+
+/**
+ * Tests for decoding a remoting request as it arrives.
+ */
+public class RemotingRequestDecoderTest {
+
+    /**
+     * Encodes an AMF0 request with a credentials header, calling each method with its index and name as arguments.
+     *
+     * @param length
+     *            length declared for the header and each body, or null for the actual length
+     * @param methods
+     *            service methods to call
+     * @return request
+     */
+    public static byte[] request(Integer length, String... methods) {
+        IoBuffer buf = IoBuffer.allocate(256).setAutoExpand(true);
+        Output output = new Output(buf);
+        buf.putShort((short) 0);
+        buf.putShort((short) 1);
+        Output.putString(buf, "credentials");
+        buf.put((byte) 0);
+        int headerLengthAt = buf.position();
+        buf.putInt(0);
+        Serializer.serialize(output, "secret");
+        buf.putInt(headerLengthAt, length != null ? length : buf.position() - headerLengthAt - 4);
+        buf.putShort((short) methods.length);
+        for (int i = 0; i < methods.length; i++) {
+            Output.putString(buf, "service." + methods[i]);
+            Output.putString(buf, "/" + (i + 1));
+            int lengthAt = buf.position();
+            buf.putInt(0);
+            int start = buf.position();
+            buf.put(AMF.TYPE_ARRAY);
+            buf.putInt(2);
+            output = new Output(buf);
+            Serializer.serialize(output, i);
+            Serializer.serialize(output, methods[i]);
+            buf.putInt(lengthAt, length != null ? length : buf.position() - start);
+        }
+        buf.flip();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        return bytes;
+    }
+
+    private static List<RemotingCall> decodeInChunks(RemotingRequestDecoder decoder, byte[] request, int chunk) {
+        List<RemotingCall> calls = new ArrayList<>();
+        IoBuffer buf = IoBuffer.allocate(16).setAutoExpand(true);
+        for (int offset = 0; offset < request.length; offset += chunk) {
+            buf.put(request, offset, Math.min(chunk, request.length - offset));
+            buf.flip();
+            calls.addAll(decoder.decode(buf, offset + chunk >= request.length));
+            buf.compact();
+        }
+        return calls;
+    }
+
+    private static void assertCalls(List<RemotingCall> expected, List<RemotingCall> calls) {
+        assertEquals(expected.size(), calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            assertEquals(expected.get(i).getServiceName(), calls.get(i).getServiceName());
+            assertEquals(expected.get(i).getServiceMethodName(), calls.get(i).getServiceMethodName());
+            assertEquals(expected.get(i).getClientResponse(), calls.get(i).getClientResponse());
+            assertArrayEquals(expected.get(i).getArguments(), calls.get(i).getArguments());
+        }
+    }
+
+    @Test
+    public void testSplitInput() throws Exception {
+        byte[] request = request(null, "first", "second", "third");
+        RemotingPacket whole = (RemotingPacket) new RemotingProtocolDecoder().decode(IoBuffer.wrap(request));
+        assertEquals(3, whole.getCalls().size());
+        for (int chunk = 1; chunk <= request.length; chunk++) {
+            RemotingRequestDecoder decoder = new RemotingRequestDecoder(new RemotingProtocolDecoder());
+            List<RemotingCall> calls = decodeInChunks(decoder, request, chunk);
+            assertTrue(decoder.isComplete());
+            assertEquals(Map.of("credentials", "secret"), decoder.getHeaders());
+            assertEquals(3, decoder.getCallCount());
+            assertCalls(whole.getCalls(), calls);
+        }
+        assertEquals("second", whole.getCalls().get(1).getServiceMethodName());
+        assertEquals(Arrays.asList(1d, "second"), Arrays.asList(whole.getCalls().get(1).getArguments()));
+    }
+
+    @Test
+    public void testEachBodyAsSoonAsComplete() {
+        byte[] request = request(null, "first", "second");
+        byte[] single = request(null, "first");
+        RemotingRequestDecoder decoder = new RemotingRequestDecoder(new RemotingProtocolDecoder());
+        // everything up to the end of the first body
+        IoBuffer buf = IoBuffer.allocate(request.length);
+        buf.put(request, 0, single.length);
+        buf.flip();
+        // a few bytes of what follows are needed to be sure the body ends there
+        assertTrue(decoder.decode(buf, false).isEmpty());
+        assertEquals(0, decoder.getDecodedCount());
+        buf.compact();
+        buf.put(request, single.length, 8);
+        buf.flip();
+        List<RemotingCall> calls = decoder.decode(buf, false);
+        assertEquals(1, calls.size());
+        assertEquals("first", calls.get(0).getServiceMethodName());
+        assertFalse(decoder.isComplete());
+        assertEquals(1, decoder.getDecodedCount());
+        buf.compact();
+        buf.put(request, single.length + 8, request.length - single.length - 8);
+        buf.flip();
+        calls = decoder.decode(buf, true);
+        assertEquals(1, calls.size());
+        assertEquals("second", calls.get(0).getServiceMethodName());
+        assertTrue(decoder.isComplete());
+        assertFalse(buf.hasRemaining());
+    }
+
+    @Test
+    public void testUnusableLength() throws Exception {
+        // some clients declare -1 or a length which does not match
+        for (int length : new int[] { -1, 0, 3 }) {
+            byte[] request = request(length, "first", "second");
+            RemotingPacket whole = (RemotingPacket) new RemotingProtocolDecoder().decode(IoBuffer.wrap(request));
+            for (int chunk = 1; chunk <= request.length; chunk++) {
+                RemotingRequestDecoder decoder = new RemotingRequestDecoder(new RemotingProtocolDecoder());
+                assertCalls(whole.getCalls(), decodeInChunks(decoder, request, chunk));
+                assertTrue(decoder.isComplete());
+                assertEquals(Map.of("credentials", "secret"), decoder.getHeaders());
+            }
+            // nothing is taken from a partial request
+            RemotingRequestDecoder decoder = new RemotingRequestDecoder(new RemotingProtocolDecoder());
+            IoBuffer buf = IoBuffer.wrap(request, 0, request.length - 1);
+            assertTrue(decoder.decode(buf, false).isEmpty());
+            assertEquals(0, buf.position());
+            assertNull(decoder.getHeaders());
+        }
+    }
+
+}
@@ -0,0 +1,280 @@
+package org.red5.server.net.rtmpt;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.net.rtmpt.BaseRTMPTConnection.OverflowPolicy;
+
+/**
+ * Tests for RTMPT long-poll idle requests and the outgoing queue.
+ */
+public class RTMPTConnectionTest {
+
+    private RTMPTServlet servlet;
+
+    private RTMPTConnection conn;
+
+    @Before
+    public void setUp() {
+        servlet = new RTMPTServlet();
+        servlet.setLongPollTimeout(1000L);
+        conn = new RTMPTConnection();
+        conn.setServlet(servlet);
+    }
+
+    @After
+    public void tearDown() {
+        servlet.setLongPollTimeout(0L);
+    }
+
+    private static IoBuffer data(int size) {
+        return IoBuffer.allocate(size).fill((byte) 7, size).flip();
+    }
+
+    @Test
+    public void testIdleHeldUntilData() {
+        ParkedRequest request = new ParkedRequest();
+        conn.parkIdleRequest(request);
+        assertFalse(request.completed);
+        conn.writeRaw(data(10));
+        assertTrue(request.completed);
+        byte[] body = request.body.toByteArray();
+        assertEquals(11, body.length);
+        // the client is asked to poll again straight away
+        assertEquals(1, body[0]);
+        assertEquals(7, body[10]);
+        assertFalse(conn.hasPendingMessages());
+    }
+
+    @Test
+    public void testIdleReleasedOnTimeout() {
+        ParkedRequest request = new ParkedRequest();
+        conn.parkIdleRequest(request);
+        request.timeout();
+        assertTrue(request.completed);
+        assertArrayEquals(new byte[] { 1 }, request.body.toByteArray());
+        // data queued afterwards waits for the next poll
+        conn.writeRaw(data(10));
+        assertEquals(1, request.body.size());
+        assertTrue(conn.hasPendingMessages());
+    }
+
+    @Test
+    public void testNewerPollReplacesParked() {
+        ParkedRequest first = new ParkedRequest();
+        ParkedRequest second = new ParkedRequest();
+        conn.parkIdleRequest(first);
+        conn.parkIdleRequest(second);
+        assertTrue(first.completed);
+        assertArrayEquals(new byte[] { 1 }, first.body.toByteArray());
+        assertFalse(second.completed);
+        conn.writeRaw(data(4));
+        assertTrue(second.completed);
+        assertEquals(5, second.body.size());
+    }
+
+    @Test
+    public void testDataQueuedBeforeParking() {
+        conn.writeRaw(data(4));
+        ParkedRequest request = new ParkedRequest();
+        conn.parkIdleRequest(request);
+        assertTrue(request.completed);
+        assertEquals(5, request.body.size());
+    }
+
+    @Test
+    public void testIdleReleasedOnClose() {
+        ParkedRequest request = new ParkedRequest();
+        conn.parkIdleRequest(request);
+        conn.close();
+        assertTrue(request.completed);
+        // close notification
+        assertArrayEquals(new byte[] { 0 }, request.body.toByteArray());
+    }
+
+    @Test
+    public void testOverflowDrop() {
+        conn.setMaxPendingMessages(2);
+        for (int i = 0; i < 5; i++) {
+            conn.writeRaw(data(8));
+        }
+        assertEquals(2, conn.getPendingMessages());
+        assertEquals(16, conn.getPendingBytes());
+        assertEquals(3, conn.getDroppedMessages());
+        assertFalse(conn.isClosing());
+        // draining makes room again
+        assertEquals(2, conn.getPendingMessageBuffers(1024).size());
+        conn.writeRaw(data(8));
+        assertEquals(1, conn.getPendingMessages());
+        assertEquals(3, conn.getDroppedMessages());
+    }
+
+    @Test
+    public void testOverflowClose() {
+        conn.setMaxPendingMessages(2);
+        conn.setOverflowPolicy(OverflowPolicy.CLOSE);
+        conn.writeRaw(data(8));
+        conn.writeRaw(data(8));
+        assertFalse(conn.isClosing());
+        conn.writeRaw(data(8));
+        assertTrue(conn.isClosing());
+        assertEquals(1, conn.getDroppedMessages());
+        assertEquals(0, conn.getPendingBytes());
+    }
+
+    /**
+     * Async context of a held idle request, running started work inline and capturing the response body.
+     */
+    private static class ParkedRequest implements AsyncContext {
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        final List<AsyncListener> listeners = new ArrayList<>();
+
+        boolean completed;
+
+        final HttpServletResponse response = (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "getOutputStream":
+                    return new ServletOutputStream() {
+
+                        @Override
+                        public void write(int b) {
+                            body.write(b);
+                        }
+
+                        @Override
+                        public boolean isReady() {
+                            return true;
+                        }
+
+                        @Override
+                        public void setWriteListener(WriteListener writeListener) {
+                        }
+
+                    };
+                case "getWriter":
+                    // single byte replies go through the writer
+                    return new PrintWriter(body, true, StandardCharsets.ISO_8859_1) {
+
+                        @Override
+                        public void write(int c) {
+                            body.write(c);
+                        }
+
+                    };
+                default:
+                    return null;
+            }
+        });
+
+        void timeout() {
+            for (AsyncListener listener : new ArrayList<>(listeners)) {
+                try {
+                    listener.onTimeout(new AsyncEvent(this));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        @Override
+        public ServletRequest getRequest() {
+            return null;
+        }
+
+        @Override
+        public ServletResponse getResponse() {
+            return response;
+        }
+
+        @Override
+        public boolean hasOriginalRequestAndResponse() {
+            return true;
+        }
+
+        @Override
+        public void dispatch() {
+        }
+
+        @Override
+        public void dispatch(String path) {
+        }
+
+        @Override
+        public void dispatch(ServletContext context, String path) {
+        }
+
+        @Override
+        public void complete() {
+            if (completed) {
+                throw new IllegalStateException("Already completed");
+            }
+            completed = true;
+            for (AsyncListener listener : new ArrayList<>(listeners)) {
+                try {
+                    listener.onComplete(new AsyncEvent(this));
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+
+        @Override
+        public void start(Runnable run) {
+            if (completed) {
+                throw new IllegalStateException("Already completed");
+            }
+            run.run();
+        }
+
+        @Override
+        public void addListener(AsyncListener listener) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public void addListener(AsyncListener listener, ServletRequest servletRequest, ServletResponse servletResponse) {
+            listeners.add(listener);
+        }
+
+        @Override
+        public <T extends AsyncListener> T createListener(Class<T> clazz) {
+            return null;
+        }
+
+        @Override
+        public void setTimeout(long timeout) {
+        }
+
+        @Override
+        public long getTimeout() {
+            return 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,350 @@
+package org.red5.server.net.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpSession;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.Test;
+import org.red5.io.amf.Input;
+import org.red5.io.object.Deserializer;
+import org.red5.server.api.IContext;
+import org.red5.server.api.Red5;
+import org.red5.server.api.remoting.IRemotingConnection;
+import org.red5.server.api.scope.IGlobalScope;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.service.IPendingServiceCall;
+import org.red5.server.api.service.IServiceCall;
+import org.red5.server.api.service.IServiceInvoker;
+import org.red5.server.net.remoting.codec.RemotingCodecFactory;
+import org.red5.server.net.remoting.codec.RemotingRequestDecoderTest;
+
+/**
+ * Tests for the asynchronous remoting gateway: split requests, headers added by calls and the order of the results.
+ */
+public class AMFGatewayServletTest {
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, Map<String, Object> values) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, (proxy, method, args) -> {
+            if (values.containsKey(method.getName())) {
+                return values.get(method.getName());
+            }
+            Class<?> returnType = method.getReturnType();
+            if (returnType == boolean.class) {
+                return false;
+            } else if (returnType == int.class) {
+                return 0;
+            } else if (returnType == long.class) {
+                return 0L;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs each call by its method name: "slow" completes after the others, "header" adds a response header.
+     */
+    private static final IServiceInvoker INVOKER = new IServiceInvoker() {
+
+        @Override
+        public boolean invoke(IServiceCall call, IScope scope) {
+            String method = call.getServiceMethodName();
+            if ("slow".equals(method)) {
+                try {
+                    Thread.sleep(300L);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            } else if ("header".equals(method)) {
+                ((IRemotingConnection) Red5.getConnectionLocal()).addHeader("token", "abc");
+            }
+            ((IPendingServiceCall) call).setResult(method);
+            return true;
+        }
+
+        @Override
+        public boolean invoke(IServiceCall call, Object service) {
+            return invoke(call, (IScope) null);
+        }
+
+    };
+
+    private static Exchange service(boolean concurrent, byte[] request, int chunk) throws Exception {
+        IScope scope = stub(IScope.class, Map.of("getClassLoader", AMFGatewayServletTest.class.getClassLoader()));
+        IContext context = stub(IContext.class, Map.of("resolveScope", scope, "getServiceInvoker", INVOKER));
+        IGlobalScope global = stub(IGlobalScope.class, Map.of("getContext", context));
+        AMFGatewayServlet servlet = new AMFGatewayServlet() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public String getInitParameter(String name) {
+                return "gateway.concurrentCalls".equals(name) ? String.valueOf(concurrent) : null;
+            }
+
+            @Override
+            protected IGlobalScope getGlobalScope(HttpServletRequest req) {
+                return global;
+            }
+
+        };
+        servlet.codecFactory = new RemotingCodecFactory();
+        servlet.codecFactory.init();
+        servlet.init();
+        Exchange exchange = new Exchange(request, chunk);
+        try {
+            servlet.service(exchange.request, exchange.response);
+            exchange.feed();
+            assertTrue(exchange.done.await(5, TimeUnit.SECONDS));
+        } finally {
+            servlet.destroy();
+        }
+        return exchange;
+    }
+
+    private static String string(IoBuffer buf) {
+        byte[] bytes = new byte[buf.getUnsignedShort()];
+        buf.get(bytes);
+        return new String(bytes);
+    }
+
+    @Test
+    public void testResultsInCallOrder() throws Exception {
+        byte[] request = RemotingRequestDecoderTest.request(null, "slow", "fast", "fast");
+        Exchange exchange = service(true, request, request.length);
+        assertEquals(HttpServletResponse.SC_OK, exchange.status);
+        Response response = new Response(exchange.body.toByteArray());
+        assertEquals(List.of("/1/onResult", "/2/onResult", "/3/onResult"), response.targets);
+        assertEquals(List.of("slow", "fast", "fast"), response.results);
+    }
+
+    @Test
+    public void testHeaderFromLaterCall() throws Exception {
+        byte[] request = RemotingRequestDecoderTest.request(null, "fast", "header");
+        // a few bytes at a time, so the first call runs before the second has been received
+        Exchange exchange = service(false, request, 5);
+        Response response = new Response(exchange.body.toByteArray());
+        assertEquals(List.of("fast", "header"), response.results);
+        assertEquals(1, response.headers.size());
+        assertEquals("token", response.headers.get(0).get("name"));
+        assertEquals("abc", response.headers.get(0).get("data"));
+    }
+
+    @Test
+    public void testConcurrentHeader() throws Exception {
+        byte[] request = RemotingRequestDecoderTest.request(null, "fast", "slow", "header");
+        Response response = new Response(service(true, request, 7).body.toByteArray());
+        assertEquals(List.of("fast", "slow", "header"), response.results);
+        assertEquals(1, response.headers.size());
+    }
+
+    /**
+     * Decoded response.
+     */
+    private static class Response {
+
+        final List<Map<String, Object>> headers = new ArrayList<>();
+
+        final List<String> targets = new ArrayList<>();
+
+        final List<Object> results = new ArrayList<>();
+
+        @SuppressWarnings("unchecked")
+        Response(byte[] body) {
+            IoBuffer buf = IoBuffer.wrap(body);
+            assertEquals(0, buf.getUnsignedShort());
+            int count = buf.getUnsignedShort();
+            Input input = new Input(buf);
+            for (int i = 0; i < count; i++) {
+                string(buf);
+                // must understand flag, written as a boolean value
+                Deserializer.deserialize(input, Object.class);
+                headers.add((Map<String, Object>) Deserializer.deserialize(input, Object.class));
+            }
+            count = buf.getUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                targets.add(string(buf));
+                string(buf);
+                buf.getInt();
+                results.add(Deserializer.deserialize(new Input(buf), Object.class));
+            }
+            assertEquals(0, buf.remaining());
+        }
+
+    }
+
+    /**
+     * Request and response of one exchange, with the request body delivered in chunks through the read listener.
+     */
+    private static class Exchange {
+
+        final byte[] data;
+
+        final int chunk;
+
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        final CountDownLatch done = new CountDownLatch(1);
+
+        final List<AsyncListener> listeners = new ArrayList<>();
+
+        final HttpServletRequest request;
+
+        final HttpServletResponse response;
+
+        volatile int status;
+
+        ReadListener readListener;
+
+        int offset;
+
+        int available;
+
+        Exchange(byte[] data, int chunk) {
+            this.data = data;
+            this.chunk = chunk;
+            Map<String, Object> attributes = new ConcurrentHashMap<>();
+            HttpSession session = (HttpSession) Proxy.newProxyInstance(HttpSession.class.getClassLoader(), new Class<?>[] { HttpSession.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getAttribute":
+                        return attributes.get(args[0]);
+                    case "setAttribute":
+                        attributes.put((String) args[0], args[1]);
+                        return null;
+                    case "removeAttribute":
+                        attributes.remove(args[0]);
+                        return null;
+                    case "getId":
+                        return "session";
+                    default:
+                        return null;
+                }
+            });
+            ServletInputStream in = new ServletInputStream() {
+
+                @Override
+                public int read() {
+                    throw new UnsupportedOperationException();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    int n = Math.min(len, available);
+                    System.arraycopy(data, offset, b, off, n);
+                    offset += n;
+                    available -= n;
+                    return n;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return available > 0;
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return offset == data.length;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    readListener = listener;
+                }
+
+            };
+            AsyncContext async = (AsyncContext) Proxy.newProxyInstance(AsyncContext.class.getClassLoader(), new Class<?>[] { AsyncContext.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "addListener":
+                        listeners.add((AsyncListener) args[0]);
+                        return null;
+                    case "complete":
+                        done.countDown();
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+            Map<String, Object> requestValues = new HashMap<>();
+            requestValues.put("getContentType", AMFGatewayServlet.APPLICATION_AMF);
+            requestValues.put("isAsyncSupported", true);
+            requestValues.put("startAsync", async);
+            requestValues.put("getInputStream", in);
+            requestValues.put("getSession", session);
+            requestValues.put("getContextPath", "/test");
+            requestValues.put("getServletPath", "/gateway");
+            request = stub(HttpServletRequest.class, requestValues);
+            ServletOutputStream out = new ServletOutputStream() {
+
+                @Override
+                public void write(int b) {
+                    body.write(b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    body.write(b, off, len);
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setWriteListener(WriteListener listener) {
+                    try {
+                        listener.onWritePossible();
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+
+            };
+            response = (HttpServletResponse) Proxy.newProxyInstance(HttpServletResponse.class.getClassLoader(), new Class<?>[] { HttpServletResponse.class }, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getOutputStream":
+                        return out;
+                    case "setStatus":
+                        status = (Integer) args[0];
+                        return null;
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        void feed() throws Exception {
+            while (offset < data.length) {
+                available = Math.min(chunk, data.length - offset);
+                readListener.onDataAvailable();
+                // let dispatched calls get going between chunks
+                Thread.sleep(10L);
+            }
+            readListener.onAllDataRead();
+        }
+
+    }
+
+}
@@ -0,0 +1,191 @@
+package org.red5.server.net.hls;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.io.moq.cmaf.model.CmafFragment;
+
+/**
+ * Tests for HLS segmenting, playlists and requests waiting for media.
+ */
+public class HlsStreamTest {
+
+    private HlsSegmentStore store;
+
+    private HlsStream stream;
+
+    @Before
+    public void setUp() {
+        store = new HlsSegmentStore();
+        store.setTargetDuration(2d);
+        store.setPartTarget(0.5d);
+        store.setWindowSize(10);
+        stream = new HlsStream("live:test", store, null);
+    }
+
+    /**
+     * Pushes a 100 byte, quarter second video fragment.
+     */
+    private void video(boolean keyframe) {
+        stream.onFragment("live:test", new byte[100], CmafFragment.MediaType.VIDEO, keyframe, 0.25d);
+    }
+
+    /**
+     * Pushes the two seconds of video of a segment, which the next key frame closes.
+     */
+    private void segment() {
+        video(true);
+        for (int i = 0; i < 7; i++) {
+            video(false);
+        }
+    }
+
+    private String playlist(boolean skip) throws Exception {
+        return stream.awaitPlaylist(-1, -1, skip).get();
+    }
+
+    @Test
+    public void testSegmenting() throws Exception {
+        segment();
+        assertEquals(0, stream.getNextSequence());
+        // the key frame after the target duration starts the next segment
+        video(true);
+        assertEquals(1, stream.getNextSequence());
+        List<byte[]> fragments = stream.awaitSegment(0).get();
+        assertEquals(8, fragments.size());
+        // a frame which is not a key frame never starts a segment, however long the segment gets
+        for (int i = 0; i < 9; i++) {
+            video(false);
+        }
+        assertEquals(1, stream.getNextSequence());
+        video(true);
+        assertEquals(2, stream.getNextSequence());
+        assertEquals(10, stream.awaitSegment(1).get().size());
+        assertEquals(1900, store.getMemoryUsed());
+    }
+
+    @Test
+    public void testParts() throws Exception {
+        video(true);
+        CompletableFuture<List<byte[]>> first = stream.awaitPart(0, 0);
+        assertFalse(first.isDone());
+        // another fragment like this one would overrun the part target, so the part closes
+        video(false);
+        assertTrue(first.isDone());
+        assertEquals(2, first.get().size());
+        CompletableFuture<List<byte[]>> second = stream.awaitPart(0, 1);
+        video(false);
+        assertFalse(second.isDone());
+        video(false);
+        assertEquals(2, second.get().size());
+        // too far ahead to wait for
+        assertNull(stream.awaitPart(2, 0).get());
+    }
+
+    @Test
+    public void testPlaylist() throws Exception {
+        segment();
+        video(true);
+        video(false);
+        String playlist = playlist(false);
+        assertTrue(playlist.startsWith("#EXTM3U\n#EXT-X-VERSION:9\n#EXT-X-TARGETDURATION:2\n"));
+        assertTrue(playlist.contains("#EXT-X-SERVER-CONTROL:CAN-BLOCK-RELOAD=YES,CAN-SKIP-UNTIL=12.000,PART-HOLD-BACK=1.500\n"));
+        assertTrue(playlist.contains("#EXT-X-PART-INF:PART-TARGET=0.500\n"));
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:0\n"));
+        assertTrue(playlist.contains("#EXT-X-PART:DURATION=0.500,URI=\"part0.0.m4s\",INDEPENDENT=YES\n#EXT-X-PART:DURATION=0.500,URI=\"part0.1.m4s\"\n"));
+        assertTrue(playlist.contains("#EXTINF:2.000,\nseg0.m4s\n"));
+        // the parts of the open segment, then the one being built
+        assertTrue(playlist.endsWith("#EXT-X-PART:DURATION=0.500,URI=\"part1.0.m4s\",INDEPENDENT=YES\n#EXT-X-PRELOAD-HINT:TYPE=PART,URI=\"part1.1.m4s\"\n"));
+        stream.onStreamClosed("live:test");
+        playlist = playlist(false);
+        assertTrue(playlist.endsWith("seg1.m4s\n#EXT-X-ENDLIST\n"));
+        assertFalse(playlist.contains("PRELOAD-HINT"));
+    }
+
+    @Test
+    public void testDeltaUpdate() throws Exception {
+        for (int i = 0; i < 9; i++) {
+            segment();
+        }
+        video(true);
+        String full = playlist(false);
+        assertFalse(full.contains("#EXT-X-SKIP"));
+        assertTrue(full.contains("\nseg0.m4s\n"));
+        // 18 seconds listed; segments ending 12 seconds or more before the end are skipped
+        String delta = playlist(true);
+        assertTrue(delta.contains("#EXT-X-MEDIA-SEQUENCE:0\n"));
+        assertTrue(delta.contains("#EXT-X-SKIP:SKIPPED-SEGMENTS=3\n"));
+        assertFalse(delta.contains("\nseg2.m4s\n"));
+        assertTrue(delta.contains("\nseg3.m4s\n"));
+        assertTrue(delta.contains("\nseg8.m4s\n"));
+    }
+
+    @Test
+    public void testAwaitPlaylist() throws Exception {
+        segment();
+        video(true);
+        CompletableFuture<String> whole = stream.awaitPlaylist(1, -1, false);
+        CompletableFuture<String> part = stream.awaitPlaylist(1, 0, false);
+        CompletableFuture<String> abandoned = stream.awaitPlaylist(1, 1, false);
+        assertFalse(whole.isDone());
+        assertFalse(part.isDone());
+        assertEquals(3, stream.getWaiting());
+        // a request given up on is no longer held
+        abandoned.cancel(false);
+        assertEquals(2, stream.getWaiting());
+        video(false);
+        assertTrue(part.get().contains("URI=\"part1.0.m4s\""));
+        assertFalse(whole.isDone());
+        for (int i = 0; i < 6; i++) {
+            video(false);
+        }
+        video(true);
+        assertTrue(whole.get().contains("\nseg1.m4s\n"));
+        assertEquals(0, stream.getWaiting());
+        // the end of the stream answers whatever is still waiting
+        CompletableFuture<List<byte[]>> segment = stream.awaitSegment(2);
+        CompletableFuture<byte[]> initSegment = stream.awaitInitSegment();
+        stream.onStreamClosed("live:test");
+        assertEquals(1, segment.get().size());
+        assertNull(initSegment.get());
+    }
+
+    @Test
+    public void testInitSegment() throws Exception {
+        CompletableFuture<byte[]> initSegment = stream.awaitInitSegment();
+        assertFalse(initSegment.isDone());
+        byte[] data = new byte[16];
+        stream.onInitSegment("live:test", data);
+        assertTrue(data == initSegment.get());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        store.setWindowSize(2);
+        stream = new HlsStream("live:test", store, null);
+        for (int i = 0; i < 3; i++) {
+            segment();
+        }
+        video(true);
+        // the window holds the last two segments
+        assertNull(stream.awaitSegment(0).get());
+        assertEquals(8, stream.awaitSegment(1).get().size());
+        assertEquals(1700, store.getMemoryUsed());
+        String playlist = playlist(false);
+        assertTrue(playlist.contains("#EXT-X-MEDIA-SEQUENCE:1\n"));
+        assertFalse(playlist.contains("seg0.m4s"));
+        // the memory budget takes the oldest, but never the newest segment
+        assertEquals(800, stream.evictOldest());
+        assertEquals(0, stream.evictOldest());
+        assertNull(stream.awaitSegment(1).get());
+        assertEquals(8, stream.awaitSegment(2).get().size());
+    }
+
+}
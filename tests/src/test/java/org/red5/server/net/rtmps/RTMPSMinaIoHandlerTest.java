@@ -0,0 +1,105 @@
+package org.red5.server.net.rtmps;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadPoolExecutor;
+
+import javax.net.ssl.SSLSession;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.ssl.SslFilter;
+import org.junit.Test;
+
+/**
+ * Tests for the RTMPS handshake executor and resumption statistics.
+ */
+public class RTMPSMinaIoHandlerTest {
+
+    private static SSLSession sslSession(byte[] id) {
+        return (SSLSession) Proxy.newProxyInstance(SSLSession.class.getClassLoader(), new Class<?>[] { SSLSession.class }, (proxy, method, args) -> "getId".equals(method.getName()) ? id : null);
+    }
+
+    private static void secure(RTMPSMinaIoHandler handler, byte[] id) {
+        IoSession session = new DummySession();
+        handler.handshakeStarted(session);
+        session.setAttribute(SslFilter.SSL_SESSION, sslSession(id));
+        handler.handshakeCompleted(session);
+    }
+
+    @Test
+    public void testResumption() {
+        RTMPSMinaIoHandler handler = new RTMPSMinaIoHandler();
+        secure(handler, new byte[] { 1, 2, 3 });
+        // same id, resumed from the cache or a ticket
+        secure(handler, new byte[] { 1, 2, 3 });
+        secure(handler, new byte[] { 4, 5, 6 });
+        // no id, as with some TLS 1.3 resumptions
+        secure(handler, new byte[0]);
+        assertEquals(4, handler.getHandshakeCount());
+        assertEquals(1, handler.getResumedHandshakeCount());
+        assertEquals(0.25d, handler.getResumptionRate(), 0.0001d);
+        assertEquals(0, handler.getPendingHandshakes());
+    }
+
+    @Test
+    public void testHandshakeExecutor() throws Exception {
+        RTMPSMinaIoHandler handler = new RTMPSMinaIoHandler();
+        handler.setHandshakeThreads(2);
+        HandshakeExecutorFilter executorFilter = handler.getHandshakeExecutorFilter();
+        List<String> received = new CopyOnWriteArrayList<>();
+        List<Thread> threads = new CopyOnWriteArrayList<>();
+        DummySession session = new DummySession();
+        session.getFilterChain().addLast("recorder", new IoFilterAdapter() {
+
+            @Override
+            public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception {
+                received.add((String) message);
+                threads.add(Thread.currentThread());
+                if ("finished".equals(message)) {
+                    // the ssl filter reporting the session secured
+                    handler.handshakeCompleted(session);
+                }
+            }
+
+        });
+        session.getFilterChain().addFirst("tlsExecutor", executorFilter);
+        handler.handshakeStarted(session);
+        assertTrue(handler.isHandshaking(session));
+        session.getFilterChain().fireMessageReceived("hello");
+        session.getFilterChain().fireMessageReceived("finished");
+        long deadline = System.currentTimeMillis() + 2000;
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) executorFilter.getExecutor();
+        while ((received.size() < 2 || executor.getActiveCount() > 0) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of("hello", "finished"), received);
+        assertNotSame(Thread.currentThread(), threads.get(0));
+        assertFalse(handler.isHandshaking(session));
+        // once secured and drained, the executor leaves the chain and events stay on the calling thread
+        session.getFilterChain().fireMessageReceived("data");
+        assertEquals(List.of("hello", "finished", "data"), received);
+        assertSame(Thread.currentThread(), threads.get(2));
+        assertFalse(session.getFilterChain().contains(executorFilter));
+        session.getFilterChain().fireMessageReceived("more");
+        assertSame(Thread.currentThread(), threads.get(3));
+        executorFilter.destroy();
+    }
+
+    @Test
+    public void testHandshakeThreadsDisabled() {
+        RTMPSMinaIoHandler handler = new RTMPSMinaIoHandler();
+        handler.setHandshakeThreads(0);
+        assertNull(handler.getHandshakeExecutorFilter());
+    }
+
+}
@@ -2,6 +2,7 @@ package org.red5.server.scope;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -101,6 +102,11 @@ public class ScopeTest extends AbstractJUnit4SpringContextTests {
         // check again after stream added alias
         stream1Scope = appScope.getBasicScope(ScopeType.BROADCAST, "streamA");
         log.debug(">>>>>>>>>>>> Stream#1: {}", stream1Scope);
+        assertEquals(stream1, stream1Scope);
+        assertTrue(appScope.getBasicScopeNames(ScopeType.BROADCAST).contains("streamA"));
+        assertTrue(appScope.getBroadcastStreams().contains(stream));
+        // an unknown alias must not resolve
+        assertNull(appScope.getBasicScope(ScopeType.BROADCAST, "streamB"));
         // XXX to test adding rooms etc, uncomment this section
         /*
         // test runnables represent worker threads creating scopes
@@ -0,0 +1,144 @@
+package org.red5.server.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.red5.server.api.scope.IScope;
+import org.red5.server.api.stream.IStreamFilenameGenerator;
+import org.red5.server.api.stream.IStreamableFileFactory;
+import org.red5.server.net.rtmp.event.AudioData;
+import org.red5.server.stream.IProviderService.INPUT_TYPE;
+import org.red5.server.stream.consumer.JournalFileConsumer;
+import org.red5.server.stream.consumer.RecordingJournal;
+import org.red5.server.stream.message.RTMPMessage;
+
+/**
+ * Tests for resolving recordings which are still held by the recording journal.
+ */
+public class ProviderServiceTest {
+
+    private Path dir;
+
+    private RecordingJournal journal;
+
+    private IScope scope;
+
+    private ProviderService service;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("provider");
+        journal = new RecordingJournal();
+        journal.setDirectory(dir.resolve("journal").toString());
+        journal.setSync(false);
+        // recordings are only written once played
+        journal.setDemuxOnClose(false);
+        journal.start();
+        IStreamableFileFactory factory = (IStreamableFileFactory) Proxy.newProxyInstance(IStreamableFileFactory.class.getClassLoader(), new Class<?>[] { IStreamableFileFactory.class }, (proxy, method, args) -> "getServices".equals(method.getName()) ? Collections.emptySet() : null);
+        IStreamFilenameGenerator generator = (IStreamFilenameGenerator) Proxy.newProxyInstance(IStreamFilenameGenerator.class.getClassLoader(), new Class<?>[] { IStreamFilenameGenerator.class }, (proxy, method, args) -> {
+            if ("resolvesToAbsolutePath".equals(method.getName())) {
+                return true;
+            }
+            // flv:name
+            return dir.resolve(((String) args[1]).substring(4) + ".flv").toString();
+        });
+        // services are looked up through the scope's service cache attributes
+        scope = (IScope) Proxy.newProxyInstance(IScope.class.getClassLoader(), new Class<?>[] { IScope.class }, (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "hasAttribute":
+                    return true;
+                case "getAttribute":
+                    return ((String) args[0]).endsWith(IStreamableFileFactory.class.getCanonicalName()) ? factory : generator;
+                case "getContextPath":
+                    return "/test";
+                case "toString":
+                    return "test";
+                default:
+                    return null;
+            }
+        });
+        service = new ProviderService();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        journal.stop();
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private void record(String name) throws Exception {
+        JournalFileConsumer consumer = new JournalFileConsumer(null, dir.resolve(name + ".flv").toFile(), journal);
+        consumer.setMode("record");
+        for (int t = 0; t < 200; t += 20) {
+            AudioData audio = new AudioData(IoBuffer.wrap(new byte[] { (byte) 0xaf, 0x01, 1, 2, 3 }));
+            audio.setTimestamp(t);
+            consumer.pushMessage(null, RTMPMessage.build(audio));
+        }
+        consumer.uninit();
+    }
+
+    @Test
+    public void testLookupWritesPendingRecording() throws Exception {
+        record("recorded");
+        File file = dir.resolve("recorded.flv").toFile();
+        assertFalse(file.exists());
+        assertEquals(INPUT_TYPE.VOD, service.lookupProviderInput(scope, "recorded", 0));
+        assertTrue(file.exists());
+        assertEquals(0, journal.getPendingCount());
+    }
+
+    @Test
+    public void testPendingRecordingUnderCachedMiss() throws Exception {
+        StreamFileCache fileCache = new StreamFileCache();
+        fileCache.setWatchEnabled(false);
+        fileCache.afterPropertiesSet();
+        service.setFileCache(fileCache);
+        try {
+            assertNull(service.getVODProviderFile(scope, "recorded"));
+            record("recorded");
+            // the miss is still cached, but the recording has ended since
+            File file = service.getVODProviderFile(scope, "recorded");
+            assertNotNull(file);
+            assertTrue(file.exists());
+        } finally {
+            fileCache.destroy();
+        }
+    }
+
+    @Test
+    public void testCachedFileDeleted() throws Exception {
+        StreamFileCache fileCache = new StreamFileCache();
+        fileCache.setWatchEnabled(false);
+        fileCache.afterPropertiesSet();
+        service.setFileCache(fileCache);
+        try {
+            File file = dir.resolve("vod.flv").toFile();
+            Files.write(file.toPath(), new byte[16]);
+            assertEquals(file, service.getVODProviderFile(scope, "vod"));
+            // gone without the cache hearing of it
+            assertTrue(file.delete());
+            assertNull(service.getVODProviderFile(scope, "vod"));
+        } finally {
+            fileCache.destroy();
+        }
+    }
+
+}